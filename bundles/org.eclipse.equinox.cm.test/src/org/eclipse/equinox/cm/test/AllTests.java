@@ -24,6 +24,8 @@ public class AllTests {
 		suite.addTestSuite(ConfigurationPluginTest.class);
 		suite.addTestSuite(ConfigurationListenerTest.class);
 		suite.addTestSuite(ConfigurationEventAdapterTest.class);
+		suite.addTestSuite(ConfigurationJournalTest.class);
+		suite.addTestSuite(ManagedUpdateDispatcherTest.class);
 		return suite;
 	}
 
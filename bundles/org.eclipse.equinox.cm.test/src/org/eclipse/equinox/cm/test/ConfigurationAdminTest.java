@@ -10,8 +10,12 @@
  *******************************************************************************/
 package org.eclipse.equinox.cm.test;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Properties;
 import junit.framework.TestCase;
+import org.eclipse.equinox.internal.cm.BatchConfigurationAdmin;
+import org.eclipse.equinox.internal.cm.ConfigurationBatch;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.Configuration;
@@ -195,6 +199,24 @@ public class ConfigurationAdminTest extends TestCase {
 		}
 	}
 
+	public void testListConfigurationWithChangedLocation() throws Exception {
+		Configuration config = cm.createFactoryConfiguration("test", "x");
+		config.update();
+		try {
+			String filterString = "(&(" + ConfigurationAdmin.SERVICE_BUNDLELOCATION + "=y)" + "(" + ConfigurationAdmin.SERVICE_FACTORYPID + "=test)" + ")";
+			assertNull(cm.listConfigurations(filterString));
+			config.setBundleLocation("y");
+			Configuration[] configs = cm.listConfigurations(filterString);
+			assertTrue(configs != null && configs.length == 1);
+			configs = cm.listConfigurations("(" + ConfigurationAdmin.SERVICE_BUNDLELOCATION + "=y)");
+			assertTrue(configs != null && configs.length == 1);
+			assertNull(cm.listConfigurations("(" + ConfigurationAdmin.SERVICE_BUNDLELOCATION + "=x)"));
+		} finally {
+			config.delete();
+		}
+		assertNull(cm.listConfigurations("(" + ConfigurationAdmin.SERVICE_FACTORYPID + "=test)"));
+	}
+
 	public void testListConfigurationNull() throws Exception {
 		Configuration config = cm.createFactoryConfiguration("test", null);
 		config.update();
@@ -206,6 +228,60 @@ public class ConfigurationAdminTest extends TestCase {
 		}
 	}
 
+	public void testBatch() throws Exception {
+		Configuration config = cm.getConfiguration("test", null);
+		config.update();
+		ConfigurationBatch batch = ((BatchConfigurationAdmin) cm).createBatch();
+		Properties props = new Properties();
+		props.put("testkey", "testvalue");
+		batch.update("test2", props);
+		String factoryConfigPid = batch.createFactoryConfiguration("testFactory", props);
+		batch.delete("test");
+		assertNull(cm.listConfigurations("(testkey=testvalue)"));
+		batch.commit();
+		try {
+			Configuration[] configs = cm.listConfigurations("(testkey=testvalue)");
+			assertTrue(configs != null && configs.length == 2);
+			assertNull(cm.listConfigurations("(" + Constants.SERVICE_PID + "=test)"));
+			configs = cm.listConfigurations("(" + ConfigurationAdmin.SERVICE_FACTORYPID + "=testFactory)");
+			assertTrue(configs != null && configs.length == 1);
+			assertEquals(factoryConfigPid, configs[0].getPid());
+		} finally {
+			cm.getConfiguration("test2", null).delete();
+			cm.getConfiguration(factoryConfigPid, null).delete();
+		}
+	}
+
+	public void testBatchRollback() throws Exception {
+		ConfigurationBatch batch = ((BatchConfigurationAdmin) cm).createBatch();
+		Properties props = new Properties();
+		props.put("testkey", "testvalue");
+		String factoryConfigPid = batch.createFactoryConfiguration("testFactory", props);
+		batch.update("testBlocked", props);
+		// a directory in place of the file of a configuration makes the batch fail
+		File store = Activator.getBundle("org.eclipse.equinox.cm").getBundleContext().getDataFile("store");
+		File blocked = new File(store, "testBlocked.pid");
+		assertTrue(blocked.mkdirs());
+		try {
+			batch.commit();
+			fail("The batch should not be stored");
+		} catch (IOException e) {
+			// expected
+		} finally {
+			blocked.delete();
+		}
+		assertNull(cm.listConfigurations("(testkey=testvalue)"));
+		// the configurations created by the batch are removed
+		Configuration config = cm.getConfiguration(factoryConfigPid, null);
+		try {
+			assertNull(config.getFactoryPid());
+			assertNull(config.getProperties());
+		} finally {
+			config.delete();
+			cm.getConfiguration("testBlocked", null).delete();
+		}
+	}
+
 	public void testPersistentConfig() throws Exception {
 		Configuration config = cm.getConfiguration("test");
 		assertNull(config.getProperties());
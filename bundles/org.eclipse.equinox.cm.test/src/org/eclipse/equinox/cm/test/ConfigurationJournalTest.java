@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.cm.test;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import junit.framework.TestCase;
+import org.eclipse.equinox.internal.cm.ConfigurationJournal;
+import org.osgi.framework.*;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.log.LogService;
+
+public class ConfigurationJournalTest extends TestCase {
+
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_BATCH = 3;
+
+	private File journalFile;
+	private List logged = new ArrayList();
+
+	public ConfigurationJournalTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		journalFile = Activator.getBundleContext().getDataFile("test.journal");
+		deleteJournal();
+	}
+
+	protected void tearDown() throws Exception {
+		deleteJournal();
+	}
+
+	public void testDictionaryRoundTrip() throws Exception {
+		Hashtable dictionary = new Hashtable();
+		dictionary.put("string", "x");
+		dictionary.put("integer", new Integer(1));
+		dictionary.put("long", new Long(2));
+		dictionary.put("float", new Float(3));
+		dictionary.put("double", new Double(4));
+		dictionary.put("byte", new Byte((byte) 5));
+		dictionary.put("short", new Short((short) 6));
+		dictionary.put("char", new Character('a'));
+		dictionary.put("boolean", Boolean.TRUE);
+		dictionary.put("strings", new String[] {"x", null, "y"});
+		dictionary.put("integers", new Integer[] {new Integer(1), new Integer(2)});
+		dictionary.put("ints", new int[] {1, 2, 3});
+		dictionary.put("chars", new char[] {'a', 'b'});
+		dictionary.put("booleans", new boolean[] {true, false});
+		Vector vector = new Vector();
+		vector.add("x");
+		vector.add(new Long(1));
+		dictionary.put("vector", vector);
+		dictionary.put("unicode", "\u00e9\u4e2d");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		ConfigurationJournal.writeDictionary(out, dictionary);
+		out.flush();
+		Dictionary copy = ConfigurationJournal.readDictionary(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(dictionary.size(), copy.size());
+		for (Enumeration keys = dictionary.keys(); keys.hasMoreElements();) {
+			String key = (String) keys.nextElement();
+			assertValueEquals(key, dictionary.get(key), copy.get(key));
+		}
+	}
+
+	public void testUnsupportedValue() throws Exception {
+		Hashtable dictionary = new Hashtable();
+		dictionary.put("object", new Object());
+		try {
+			ConfigurationJournal.writeDictionary(new DataOutputStream(new ByteArrayOutputStream()), dictionary);
+			fail("An unsupported value should not be written");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testOpen() throws Exception {
+		ConfigurationJournal journal = createJournal();
+		assertEquals("A new journal should be empty", 0, journal.open().length);
+		journal.write("a", createDictionary("a", "1"));
+		journal.write("b", createDictionary("b", "1"));
+		journal.write("a", createDictionary("a", "2"));
+		journal.delete("b");
+		assertTrue(journal.contains("a"));
+		assertFalse(journal.contains("b"));
+		journal.close();
+
+		Map stored = openJournal();
+		assertEquals(1, stored.size());
+		assertEquals("2", ((Dictionary) stored.get("a")).get("value"));
+	}
+
+	public void testBatch() throws Exception {
+		ConfigurationJournal journal = createJournal();
+		journal.open();
+		journal.write("c", createDictionary("c", "1"));
+		Map updates = new HashMap();
+		updates.put("a", createDictionary("a", "1"));
+		updates.put("b", createDictionary("b", "1"));
+		journal.writeBatch(updates, Collections.singleton("c"));
+		journal.close();
+
+		Map stored = openJournal();
+		assertEquals(2, stored.size());
+		assertTrue(stored.containsKey("a"));
+		assertTrue(stored.containsKey("b"));
+	}
+
+	public void testTornTail() throws Exception {
+		ConfigurationJournal journal = createJournal();
+		journal.open();
+		journal.write("a", createDictionary("a", "1"));
+		journal.close();
+		long length = journalFile.length();
+
+		// the beginning of a record whose write was interrupted
+		byte[] record = createRecord(RECORD_PUT, createPut("b", createDictionary("b", "1")));
+		appendBytes(record, record.length / 2);
+
+		Map stored = openJournal();
+		assertEquals(1, stored.size());
+		assertTrue(stored.containsKey("a"));
+		assertEquals("The incomplete record should be discarded", length, journalFile.length());
+		assertEquals("The discarded bytes should be logged", 1, logged.size());
+	}
+
+	public void testChecksumRecovery() throws Exception {
+		ConfigurationJournal journal = createJournal();
+		journal.open();
+		journal.write("a", createDictionary("a", "1"));
+		journal.close();
+		long length = journalFile.length();
+
+		byte[] record = createRecord(RECORD_PUT, createPut("b", createDictionary("b", "1")));
+		record[record.length - 6]++;
+		appendBytes(record, record.length);
+
+		Map stored = openJournal();
+		assertEquals(1, stored.size());
+		assertTrue(stored.containsKey("a"));
+		assertEquals("The record with a wrong checksum should be discarded", length, journalFile.length());
+	}
+
+	public void testTruncation() throws Exception {
+		ConfigurationJournal journal = createJournal();
+		journal.open();
+		journal.write("a", createDictionary("a", "1"));
+		long length = journalFile.length();
+		journal.write("b", createDictionary("b", "1"));
+		journal.close();
+
+		RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+		try {
+			file.setLength(file.length() - 3);
+		} finally {
+			file.close();
+		}
+
+		Map stored = openJournal();
+		assertEquals(1, stored.size());
+		assertTrue(stored.containsKey("a"));
+		assertEquals(length, journalFile.length());
+
+		// the journal can be written after the recovery
+		journal = createJournal();
+		journal.open();
+		journal.write("b", createDictionary("b", "2"));
+		journal.close();
+		assertEquals(2, openJournal().size());
+	}
+
+	public void testInvalidBatchEntry() throws Exception {
+		ConfigurationJournal journal = createJournal();
+		journal.open();
+		journal.write("a", createDictionary("a", "1"));
+		journal.close();
+
+		// a batch with a valid checksum whose second entry has an unknown type
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(2);
+		byte[] put = createPut("b", createDictionary("b", "1"));
+		out.writeByte(RECORD_PUT);
+		out.writeInt(put.length);
+		out.write(put);
+		byte[] unknown = createPut("c", createDictionary("c", "1"));
+		out.writeByte(7);
+		out.writeInt(unknown.length);
+		out.write(unknown);
+		out.flush();
+		byte[] record = createRecord(RECORD_BATCH, bytes.toByteArray());
+		appendBytes(record, record.length);
+
+		Map stored = openJournal();
+		assertEquals("No entry of the invalid batch should be restored", 1, stored.size());
+		assertTrue(stored.containsKey("a"));
+	}
+
+	public void testCompaction() throws Exception {
+		ConfigurationJournal journal = createJournal();
+		journal.open();
+		Hashtable dictionary = createDictionary("a", "1");
+		dictionary.put("data", new byte[16 * 1024]);
+		// the replaced records take more than the compaction threshold
+		for (int i = 0; i < 40; i++) {
+			dictionary.put("value", Integer.toString(i));
+			journal.write("a", dictionary);
+		}
+		assertTrue("The journal should be compacted when it is written: " + journalFile.length(), journalFile.length() < 20 * 16 * 1024);
+		journal.write("b", createDictionary("b", "1"));
+		journal.write("b", createDictionary("b", "2"));
+		long length = journalFile.length();
+		journal.close();
+		assertTrue("The journal should be compacted when it is closed", journalFile.length() < length);
+
+		Map stored = openJournal();
+		assertEquals(2, stored.size());
+		assertEquals("39", ((Dictionary) stored.get("a")).get("value"));
+		assertEquals("2", ((Dictionary) stored.get("b")).get("value"));
+	}
+
+	public void testCompactedCopyRecovery() throws Exception {
+		ConfigurationJournal journal = createJournal();
+		journal.open();
+		journal.write("a", createDictionary("a", "1"));
+		journal.close();
+
+		// a crash after the journal was deleted but before its compacted copy was renamed
+		File compactFile = new File(journalFile.getPath() + ".compact");
+		assertTrue(journalFile.renameTo(compactFile));
+
+		Map stored = openJournal();
+		assertEquals(1, stored.size());
+		assertTrue(stored.containsKey("a"));
+		assertFalse(compactFile.exists());
+	}
+
+	public void testPidFileMigration() throws Exception {
+		Bundle cmBundle = Activator.getBundle("org.eclipse.equinox.cm");
+		String oldStore = System.getProperty("equinox.cm.store");
+		cmBundle.start();
+		try {
+			// stored in a pid file
+			ConfigurationAdmin cm = getConfigurationAdmin();
+			Configuration config = cm.getConfiguration("test.migration");
+			Hashtable properties = new Hashtable();
+			properties.put("key", "value");
+			config.update(properties);
+			cmBundle.stop();
+
+			System.setProperty("equinox.cm.store", "journal");
+			cmBundle.start();
+			File store = cmBundle.getBundleContext().getDataFile("store");
+			cm = getConfigurationAdmin();
+			config = cm.getConfiguration("test.migration");
+			assertEquals("value", config.getProperties().get("key"));
+			assertTrue("The journal should be created", new File(store, "configurations.journal").exists());
+			String[] files = store.list();
+			for (int i = 0; i < files.length; i++)
+				assertFalse("The pid files should be migrated to the journal: " + files[i], files[i].endsWith(".pid"));
+
+			// the migrated configuration is read from the journal
+			cmBundle.stop();
+			cmBundle.start();
+			cm = getConfigurationAdmin();
+			config = cm.getConfiguration("test.migration");
+			assertEquals("value", config.getProperties().get("key"));
+			config.delete();
+		} finally {
+			cmBundle.stop();
+			if (oldStore == null)
+				System.getProperties().remove("equinox.cm.store");
+			else
+				System.setProperty("equinox.cm.store", oldStore);
+		}
+	}
+
+	private ConfigurationAdmin getConfigurationAdmin() {
+		ServiceReference reference = Activator.getBundleContext().getServiceReference(ConfigurationAdmin.class.getName());
+		return (ConfigurationAdmin) Activator.getBundleContext().getService(reference);
+	}
+
+	private ConfigurationJournal createJournal() {
+		return new ConfigurationJournal(new RecordingLog(), journalFile, 2);
+	}
+
+	// returns the stored dictionaries by pid
+	private Map openJournal() throws IOException {
+		ConfigurationJournal journal = createJournal();
+		Dictionary[] dictionaries = journal.open();
+		journal.close();
+		Map result = new HashMap();
+		for (int i = 0; i < dictionaries.length; i++)
+			result.put(dictionaries[i].get(Constants.SERVICE_PID), dictionaries[i]);
+		return result;
+	}
+
+	private void deleteJournal() {
+		journalFile.delete();
+		new File(journalFile.getPath() + ".compact").delete();
+		new File(journalFile.getPath() + ".corrupt").delete();
+	}
+
+	private static Hashtable createDictionary(String pid, String value) {
+		Hashtable dictionary = new Hashtable();
+		dictionary.put(Constants.SERVICE_PID, pid);
+		dictionary.put("value", value);
+		return dictionary;
+	}
+
+	// the payload of a PUT record: the pid followed by the dictionary
+	private static byte[] createPut(String pid, Dictionary dictionary) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		byte[] pidBytes = pid.getBytes("UTF-8");
+		out.writeInt(pidBytes.length);
+		out.write(pidBytes);
+		ConfigurationJournal.writeDictionary(out, dictionary);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static byte[] createRecord(byte type, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(payload);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(payload.length);
+		out.writeByte(type);
+		out.write(payload);
+		out.writeInt((int) crc.getValue());
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private void appendBytes(byte[] bytes, int length) throws IOException {
+		OutputStream out = new FileOutputStream(journalFile.getPath(), true);
+		try {
+			out.write(bytes, 0, length);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void assertValueEquals(String key, Object expected, Object actual) {
+		if (expected.getClass().isArray()) {
+			assertEquals(key, expected.getClass(), actual.getClass());
+			int length = java.lang.reflect.Array.getLength(expected);
+			assertEquals(key, length, java.lang.reflect.Array.getLength(actual));
+			for (int i = 0; i < length; i++)
+				assertEquals(key, java.lang.reflect.Array.get(expected, i), java.lang.reflect.Array.get(actual, i));
+		} else {
+			assertEquals(key, expected, actual);
+		}
+	}
+
+	private class RecordingLog implements LogService {
+		public void log(int level, String message) {
+			logged.add(message);
+		}
+
+		public void log(int level, String message, Throwable exception) {
+			logged.add(message);
+		}
+
+		public void log(ServiceReference sr, int level, String message) {
+			logged.add(message);
+		}
+
+		public void log(ServiceReference sr, int level, String message, Throwable exception) {
+			logged.add(message);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.cm.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import org.eclipse.equinox.internal.cm.ManagedUpdateDispatcher;
+
+public class ManagedUpdateDispatcherTest extends TestCase {
+
+	private static final long TIMEOUT = 5000;
+
+	private ManagedUpdateDispatcher dispatcher;
+	private final List delivered = new ArrayList();
+	private boolean blocked = false;
+
+	public ManagedUpdateDispatcherTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		dispatcher = new ManagedUpdateDispatcher("Test Update Dispatcher", 2);
+	}
+
+	protected void tearDown() throws Exception {
+		release();
+		dispatcher.stop();
+	}
+
+	public void testTargetOrder() throws Exception {
+		Object target = new Object();
+		for (int i = 0; i < 10; i++)
+			dispatcher.dispatch(target, "pid" + i, new RecordingUpdate("pid" + i, false));
+		waitForDelivered(10);
+		for (int i = 0; i < 10; i++)
+			assertEquals("Wrong update order", "pid" + i, getDelivered(i));
+	}
+
+	public void testSlowTarget() throws Exception {
+		Object slowTarget = new Object();
+		Object target = new Object();
+		dispatcher.dispatch(slowTarget, "slow", new RecordingUpdate("slow", true));
+		waitForDelivered(1);
+		dispatcher.dispatch(slowTarget, "slow2", new RecordingUpdate("slow2", false));
+		dispatcher.dispatch(target, "pid", new RecordingUpdate("pid", false));
+		// the other target is not delayed by the blocked one
+		waitForDelivered(2);
+		assertEquals("pid", getDelivered(1));
+		release();
+		waitForDelivered(3);
+		assertEquals("slow2", getDelivered(2));
+	}
+
+	public void testIdleThread() throws Exception {
+		dispatcher.dispatch(this, "pid", new RecordingUpdate("pid", false));
+		waitForDelivered(1);
+		waitForStatistics(1);
+		// let the thread become idle
+		Thread.sleep(100);
+		Object slowTarget = new Object();
+		Object target = new Object();
+		synchronized (dispatcher) {
+			// the idle thread can take only one of the targets
+			dispatcher.dispatch(slowTarget, "slow", new RecordingUpdate("slow", true));
+			dispatcher.dispatch(target, "pid2", new RecordingUpdate("pid2", false));
+		}
+		// the other target is delivered while the slow one is blocked
+		waitForDelivered(3);
+		assertTrue(getDelivered(1).equals("pid2") || getDelivered(2).equals("pid2"));
+	}
+
+	public void testCoalescing() throws Exception {
+		Object target = new Object();
+		dispatcher.dispatch(target, "pid", new RecordingUpdate("first", true));
+		waitForDelivered(1);
+		for (int i = 0; i < 5; i++)
+			dispatcher.dispatch(target, "pid", new RecordingUpdate("value" + i, false));
+		dispatcher.dispatch(target, "other", new RecordingUpdate("other", false));
+		assertEquals("The updates of a pid should be queued once", 2, dispatcher.getQueuedUpdates());
+		assertEquals(4, dispatcher.getCoalescedUpdates());
+
+		release();
+		waitForDelivered(3);
+		// the coalesced update keeps the place of the first queued one
+		assertEquals("value4", getDelivered(1));
+		assertEquals("other", getDelivered(2));
+		waitForStatistics(3);
+		assertEquals(0, dispatcher.getQueuedUpdates());
+	}
+
+	public void testStatistics() throws Exception {
+		assertEquals(0, dispatcher.getDeliveredUpdates());
+		assertEquals(0, dispatcher.getAverageCallbackTime());
+		dispatcher.dispatch(this, "pid", new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				record("pid");
+			}
+		});
+		dispatcher.dispatch(this, "pid2", new Runnable() {
+			public void run() {
+				throw new RuntimeException("Expected failure");
+			}
+		});
+		dispatcher.dispatch(this, "pid3", new RecordingUpdate("pid3", false));
+		waitForDelivered(2);
+		waitForStatistics(3);
+		assertTrue("Wrong maximum callback time: " + dispatcher.getMaxCallbackTime(), dispatcher.getMaxCallbackTime() >= 90);
+		assertTrue("Wrong average callback time: " + dispatcher.getAverageCallbackTime(), dispatcher.getAverageCallbackTime() >= 25);
+		assertEquals(0, dispatcher.getCoalescedUpdates());
+	}
+
+	public void testStop() throws Exception {
+		final boolean[] daemon = new boolean[1];
+		dispatcher.dispatch(this, "pid", new Runnable() {
+			public void run() {
+				daemon[0] = Thread.currentThread().isDaemon();
+				record("pid");
+			}
+		});
+		waitForDelivered(1);
+		assertTrue("The dispatcher threads should be daemon threads", daemon[0]);
+
+		dispatcher.dispatch(this, "blocked", new RecordingUpdate("blocked", true));
+		waitForDelivered(2);
+		dispatcher.dispatch(this, "queued", new RecordingUpdate("queued", false));
+		dispatcher.stop();
+		assertEquals(0, dispatcher.getQueuedUpdates());
+		dispatcher.dispatch(this, "stopped", new RecordingUpdate("stopped", false));
+		release();
+		Thread.sleep(200);
+		assertEquals("No update should be delivered after the dispatcher is stopped", 2, getDeliveredCount());
+	}
+
+	void record(String value) {
+		record(value, false);
+	}
+
+	// blocks the update until it is released if block is true
+	synchronized void record(String value, boolean block) {
+		delivered.add(value);
+		notifyAll();
+		if (!block)
+			return;
+		blocked = true;
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (blocked && System.currentTimeMillis() < end) {
+			try {
+				wait(Math.max(end - System.currentTimeMillis(), 1));
+			} catch (InterruptedException e) {
+				// ignore
+			}
+		}
+	}
+
+	private synchronized void release() {
+		blocked = false;
+		notifyAll();
+	}
+
+	private synchronized void waitForDelivered(int count) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (delivered.size() < count && System.currentTimeMillis() < end)
+			wait(Math.max(end - System.currentTimeMillis(), 1));
+		assertEquals("Wrong number of updates delivered", count, delivered.size());
+	}
+
+	// the statistics are updated after an update returns
+	private void waitForStatistics(int count) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (dispatcher.getDeliveredUpdates() < count && System.currentTimeMillis() < end)
+			Thread.sleep(10);
+		assertEquals("Wrong number of delivered updates", count, dispatcher.getDeliveredUpdates());
+	}
+
+	private synchronized Object getDelivered(int i) {
+		return delivered.get(i);
+	}
+
+	private synchronized int getDeliveredCount() {
+		return delivered.size();
+	}
+
+	private class RecordingUpdate implements Runnable {
+		private final String value;
+		private final boolean block;
+
+		RecordingUpdate(String value, boolean block) {
+			this.value = value;
+			this.block = block;
+		}
+
+		public void run() {
+			record(value, block);
+		}
+	}
+}
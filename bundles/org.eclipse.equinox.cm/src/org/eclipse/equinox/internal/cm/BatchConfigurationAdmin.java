@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.cm;
+
+import org.osgi.service.cm.ConfigurationAdmin;
+
+/**
+ * BatchConfigurationAdmin is implemented by the ConfigurationAdmin service objects. It lets a
+ * deployer apply many configuration changes at once with a {@link ConfigurationBatch}.
+ */
+public interface BatchConfigurationAdmin extends ConfigurationAdmin {
+
+	/**
+	 * Creates a batch of configuration changes. The caller must have the
+	 * ConfigurationPermission to configure.
+	 * 
+	 * @return a new batch
+	 * @throws SecurityException if the caller does not have the permission to configure
+	 */
+	public ConfigurationBatch createBatch();
+}
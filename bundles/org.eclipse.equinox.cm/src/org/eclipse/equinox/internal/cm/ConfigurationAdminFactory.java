@@ -24,12 +24,16 @@ import org.osgi.service.log.LogService;
 
 public class ConfigurationAdminFactory implements ServiceFactory, BundleListener {
 
+	private static final String PROP_UPDATE_THREADS = "equinox.cm.update.threads"; //$NON-NLS-1$
+	private static final int DEFAULT_UPDATE_THREADS = 4;
+
 	private final Permission configurationPermission = new ConfigurationPermission("*", ConfigurationPermission.CONFIGURE); //$NON-NLS-1$
 	private final EventDispatcher eventDispatcher;
 	private final PluginManager pluginManager;
 	private final LogService log;
 	private final ManagedServiceTracker managedServiceTracker;
 	private final ManagedServiceFactoryTracker managedServiceFactoryTracker;
+	private final ManagedUpdateDispatcher updateDispatcher;
 	private final ConfigurationStore configurationStore;
 
 	public ConfigurationAdminFactory(BundleContext context, LogService log) {
@@ -37,8 +41,24 @@ public class ConfigurationAdminFactory implements ServiceFactory, BundleListener
 		configurationStore = new ConfigurationStore(this, context);
 		eventDispatcher = new EventDispatcher(context, log);
 		pluginManager = new PluginManager(context);
-		managedServiceTracker = new ManagedServiceTracker(this, configurationStore, context);
-		managedServiceFactoryTracker = new ManagedServiceFactoryTracker(this, configurationStore, context);
+		updateDispatcher = new ManagedUpdateDispatcher("Configuration Admin Update Dispatcher", getUpdateThreads(context)); //$NON-NLS-1$
+		managedServiceTracker = new ManagedServiceTracker(this, configurationStore, updateDispatcher, context);
+		managedServiceFactoryTracker = new ManagedServiceFactoryTracker(this, configurationStore, updateDispatcher, context);
+	}
+
+	private static int getUpdateThreads(BundleContext context) {
+		String prop = context.getProperty(PROP_UPDATE_THREADS);
+		if (prop != null) {
+			try {
+				return Integer.parseInt(prop);
+			} catch (NumberFormatException e) {/*ignore*/
+			}
+		}
+		return DEFAULT_UPDATE_THREADS;
+	}
+
+	ManagedUpdateDispatcher getUpdateDispatcher() {
+		return updateDispatcher;
 	}
 
 	void start() {
@@ -51,8 +71,10 @@ public class ConfigurationAdminFactory implements ServiceFactory, BundleListener
 	void stop() {
 		managedServiceTracker.close();
 		managedServiceFactoryTracker.close();
+		updateDispatcher.stop();
 		eventDispatcher.stop();
 		pluginManager.stop();
+		configurationStore.stop();
 	}
 
 	public Object getService(Bundle bundle, ServiceRegistration registration) {
@@ -76,6 +98,10 @@ public class ConfigurationAdminFactory implements ServiceFactory, BundleListener
 			sm.checkPermission(configurationPermission);
 	}
 
+	LogService getLog() {
+		return log;
+	}
+
 	void log(int level, String message) {
 		log.log(level, message);
 	}
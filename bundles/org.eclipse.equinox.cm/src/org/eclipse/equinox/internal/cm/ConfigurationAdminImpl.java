@@ -19,7 +19,7 @@ import org.osgi.service.cm.ConfigurationAdmin;
 /**
  * ConfigurationAdminImpl provides the ConfigurationAdmin service implementation 
  */
-class ConfigurationAdminImpl implements ConfigurationAdmin {
+class ConfigurationAdminImpl implements BatchConfigurationAdmin, ConfigurationAdminStatistics {
 
 	private final ConfigurationAdminFactory configurationAdminFactory;
 	private final Bundle bundle;
@@ -69,6 +69,31 @@ class ConfigurationAdminImpl implements ConfigurationAdmin {
 		return configurationStore.listConfigurations(FrameworkUtil.createFilter(filterString));
 	}
 
+	public ConfigurationBatch createBatch() {
+		this.configurationAdminFactory.checkConfigurationPermission();
+		return new ConfigurationBatch(configurationAdminFactory, configurationStore);
+	}
+
+	public int getQueuedUpdates() {
+		return configurationAdminFactory.getUpdateDispatcher().getQueuedUpdates();
+	}
+
+	public long getDeliveredUpdates() {
+		return configurationAdminFactory.getUpdateDispatcher().getDeliveredUpdates();
+	}
+
+	public long getCoalescedUpdates() {
+		return configurationAdminFactory.getUpdateDispatcher().getCoalescedUpdates();
+	}
+
+	public long getAverageCallbackTime() {
+		return configurationAdminFactory.getUpdateDispatcher().getAverageCallbackTime();
+	}
+
+	public long getMaxCallbackTime() {
+		return configurationAdminFactory.getUpdateDispatcher().getMaxCallbackTime();
+	}
+
 	private void checkPID(String pid) {
 		if (pid == null)
 			throw new IllegalArgumentException("PID cannot be null"); //$NON-NLS-1$
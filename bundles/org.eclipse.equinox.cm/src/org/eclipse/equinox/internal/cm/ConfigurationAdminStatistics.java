@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.cm;
+
+/**
+ * ConfigurationAdminStatistics is implemented by the ConfigurationAdmin service objects. It reports
+ * how the updates are delivered to the ManagedServices and ManagedServiceFactories.
+ */
+public interface ConfigurationAdminStatistics {
+
+	/**
+	 * Returns the number of updates waiting to be delivered.
+	 */
+	public int getQueuedUpdates();
+
+	/**
+	 * Returns the number of updates delivered since Configuration Admin was started.
+	 */
+	public long getDeliveredUpdates();
+
+	/**
+	 * Returns the number of queued updates replaced by a newer update of the same pid
+	 * before they were delivered.
+	 */
+	public long getCoalescedUpdates();
+
+	/**
+	 * Returns the average time in milliseconds spent in the updated and deleted callbacks.
+	 */
+	public long getAverageCallbackTime();
+
+	/**
+	 * Returns the maximum time in milliseconds spent in an updated or deleted callback.
+	 */
+	public long getMaxCallbackTime();
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.cm;
+
+import java.io.IOException;
+import java.util.*;
+import org.osgi.service.cm.ConfigurationEvent;
+
+/**
+ * ConfigurationBatch collects updates, creations and deletions of configurations and applies
+ * them together when it is committed. The configurations are locked while the batch is applied,
+ * so the other users of Configuration Admin see either none or all of the changes, and the changes
+ * are stored with a single write. If the changes cannot be stored none of them is applied.
+ * <p>
+ * When several changes of a batch concern the same pid only the last one is applied. The
+ * configurations created by a batch have no bundle location. They are created when the batch is
+ * committed and removed again if the changes cannot be applied.
+ * </p>
+ * @see BatchConfigurationAdmin#createBatch()
+ */
+public class ConfigurationBatch {
+
+	private final ConfigurationAdminFactory configurationAdminFactory;
+	private final ConfigurationStore configurationStore;
+	private final Map operations = new LinkedHashMap(); // pid -> Operation
+	private boolean committed = false;
+
+	ConfigurationBatch(ConfigurationAdminFactory configurationAdminFactory, ConfigurationStore configurationStore) {
+		this.configurationAdminFactory = configurationAdminFactory;
+		this.configurationStore = configurationStore;
+	}
+
+	/**
+	 * Updates the properties of a configuration. The configuration is created if it does not exist.
+	 *
+	 * @param pid the pid of the configuration
+	 * @param properties the new properties of the configuration
+	 * @throws IllegalArgumentException if the properties are not valid configuration properties
+	 */
+	public synchronized void update(String pid, Dictionary properties) {
+		if (pid == null || properties == null)
+			throw new IllegalArgumentException("The pid and the properties cannot be null"); //$NON-NLS-1$
+		put(new Operation(pid, null, ConfigurationImpl.createDictionary(properties)));
+	}
+
+	/**
+	 * Creates a factory configuration. The pid of the new configuration is reserved immediately
+	 * but the configuration is created when the batch is committed.
+	 *
+	 * @param factoryPid the factory pid of the configuration
+	 * @param properties the properties of the configuration
+	 * @return the pid of the new configuration
+	 * @throws IllegalArgumentException if the properties are not valid configuration properties
+	 */
+	public synchronized String createFactoryConfiguration(String factoryPid, Dictionary properties) {
+		if (factoryPid == null || properties == null)
+			throw new IllegalArgumentException("The factory pid and the properties cannot be null"); //$NON-NLS-1$
+		ConfigurationDictionary dictionary = ConfigurationImpl.createDictionary(properties);
+		checkNotCommitted();
+		String pid = configurationStore.createFactoryPid(factoryPid);
+		put(new Operation(pid, factoryPid, dictionary));
+		return pid;
+	}
+
+	/**
+	 * Deletes a configuration. Nothing is done if the configuration does not exist when the
+	 * batch is committed.
+	 *
+	 * @param pid the pid of the configuration
+	 */
+	public synchronized void delete(String pid) {
+		if (pid == null)
+			throw new IllegalArgumentException("The pid cannot be null"); //$NON-NLS-1$
+		put(new Operation(pid, null, null));
+	}
+
+	private void put(Operation operation) {
+		checkNotCommitted();
+		Operation previous = (Operation) operations.remove(operation.pid);
+		if (previous != null && operation.factoryPid == null)
+			operation.factoryPid = previous.factoryPid;
+		operations.put(operation.pid, operation);
+	}
+
+	private void checkNotCommitted() {
+		if (committed)
+			throw new IllegalStateException("The batch is already committed"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Applies and stores the changes, then notifies the managed services and the configuration
+	 * listeners. A batch can be committed only once.
+	 *
+	 * @throws IOException if the changes cannot be stored; none of them is applied
+	 * @throws IllegalStateException if a configuration of the batch is deleted by someone else
+	 * while the batch is committed
+	 */
+	public synchronized void commit() throws IOException {
+		checkNotCommitted();
+		committed = true;
+
+		List batch = new ArrayList(operations.size());
+		int locked = 0;
+		boolean applied = false;
+		try {
+			// the store is the first lock taken by those who lock several configurations
+			synchronized (configurationStore) {
+				for (Iterator it = operations.values().iterator(); it.hasNext();) {
+					Operation operation = (Operation) it.next();
+					if (resolve(operation))
+						batch.add(operation);
+				}
+				// the created configurations are locked before the store is released
+				for (; locked < batch.size(); locked++)
+					((Operation) batch.get(locked)).config.lock();
+			}
+			Operation[] ops = (Operation[]) batch.toArray(new Operation[batch.size()]);
+			apply(ops);
+			applied = true;
+			notifyListeners(ops);
+		} finally {
+			for (int i = locked - 1; i >= 0; i--) {
+				Operation operation = (Operation) batch.get(i);
+				if (!applied && operation.created)
+					operation.config.setDeleted(true);
+				operation.config.unlock();
+			}
+			for (Iterator it = batch.iterator(); it.hasNext();) {
+				Operation operation = (Operation) it.next();
+				if (applied ? operation.properties == null : operation.created)
+					configurationStore.removeConfiguration(operation.pid, false);
+			}
+		}
+	}
+
+	// finds or creates the configuration of an operation; returns false if there is nothing to do
+	private boolean resolve(Operation operation) {
+		operation.config = configurationStore.findConfiguration(operation.pid);
+		if (operation.config == null && operation.properties != null) {
+			if (operation.factoryPid != null)
+				operation.config = configurationStore.createFactoryConfiguration(operation.factoryPid, operation.pid, null);
+			else
+				operation.config = configurationStore.getConfiguration(operation.pid, null);
+			operation.created = true;
+		}
+		return operation.config != null;
+	}
+
+	// applies and stores the changes; the configurations are locked
+	private void apply(Operation[] ops) throws IOException {
+		List updated = new ArrayList(ops.length);
+		List deleted = new ArrayList();
+		for (int i = 0; i < ops.length; i++) {
+			if (ops[i].config.isDeleted())
+				throw new IllegalStateException("deleted " + ops[i].pid); //$NON-NLS-1$
+			if (ops[i].properties != null)
+				updated.add(ops[i].config);
+			else
+				deleted.add(ops[i].pid);
+		}
+
+		ConfigurationDictionary[] previous = new ConfigurationDictionary[ops.length];
+		for (int i = 0; i < ops.length; i++) {
+			if (ops[i].properties != null)
+				previous[i] = ops[i].config.setDictionary(ops[i].properties);
+			else
+				ops[i].config.setDeleted(true);
+		}
+		boolean stored = false;
+		try {
+			configurationStore.saveConfigurations((ConfigurationImpl[]) updated.toArray(new ConfigurationImpl[updated.size()]), deleted);
+			stored = true;
+		} finally {
+			if (!stored) {
+				for (int i = 0; i < ops.length; i++) {
+					if (ops[i].properties != null)
+						ops[i].config.setDictionary(previous[i]);
+					else
+						ops[i].config.setDeleted(false);
+				}
+			}
+		}
+	}
+
+	// the configurations are locked
+	private void notifyListeners(Operation[] ops) {
+		for (int i = 0; i < ops.length; i++) {
+			ConfigurationImpl config = ops[i].config;
+			String factoryPid = config.getFactoryPid(false);
+			if (ops[i].properties != null) {
+				configurationAdminFactory.notifyConfigurationUpdated(config, factoryPid != null);
+				configurationAdminFactory.dispatchEvent(ConfigurationEvent.CM_UPDATED, factoryPid, ops[i].pid);
+			} else {
+				configurationAdminFactory.notifyConfigurationDeleted(config, factoryPid != null);
+				configurationAdminFactory.dispatchEvent(ConfigurationEvent.CM_DELETED, factoryPid, ops[i].pid);
+			}
+		}
+	}
+
+	private static class Operation {
+		final String pid;
+		final ConfigurationDictionary properties; // null for a deletion
+		String factoryPid; // not null for a factory configuration created by the batch
+		ConfigurationImpl config;
+		boolean created = false;
+
+		Operation(String pid, String factoryPid, ConfigurationDictionary properties) {
+			this.pid = pid;
+			this.factoryPid = factoryPid;
+			this.properties = properties;
+		}
+	}
+}
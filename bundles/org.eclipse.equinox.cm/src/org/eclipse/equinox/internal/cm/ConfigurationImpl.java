@@ -32,6 +32,8 @@ class ConfigurationImpl implements Configuration {
 	private final String factoryPid;
 	private final String pid;
 	private ConfigurationDictionary dictionary;
+	/** the properties matched by filters; it is never modified, only replaced */
+	private volatile Dictionary snapshot;
 	/** @GuardedBy this*/
 	private boolean deleted = false;
 	/** @GuardedBy this*/
@@ -101,8 +103,10 @@ class ConfigurationImpl implements Configuration {
 	protected boolean bind(Bundle bundle) {
 		try {
 			lock();
-			if (boundBundle == null && (bundleLocation == null || bundleLocation.equals(bundle.getLocation())))
+			if (boundBundle == null && (bundleLocation == null || bundleLocation.equals(bundle.getLocation()))) {
 				boundBundle = bundle;
+				snapshot = null;
+			}
 			return (boundBundle == bundle);
 		} finally {
 			unlock();
@@ -112,8 +116,10 @@ class ConfigurationImpl implements Configuration {
 	protected void unbind(Bundle bundle) {
 		try {
 			lock();
-			if (boundBundle == bundle)
+			if (boundBundle == bundle) {
 				boundBundle = null;
+				snapshot = null;
+			}
 		} finally {
 			unlock();
 		}
@@ -124,6 +130,7 @@ class ConfigurationImpl implements Configuration {
 			lock();
 			checkDeleted();
 			deleted = true;
+			snapshot = null;
 			configurationAdminFactory.notifyConfigurationDeleted(this, factoryPid != null);
 			configurationAdminFactory.dispatchEvent(ConfigurationEvent.CM_DELETED, factoryPid, pid);
 		} finally {
@@ -222,6 +229,38 @@ class ConfigurationImpl implements Configuration {
 		}
 	}
 
+	/**
+	 * Returns the properties used to match filters, including the pid, the factory pid and the
+	 * bundle location. The returned dictionary is shared and must not be modified.
+	 * 
+	 * @return the properties or null if the configuration is deleted or has no properties yet
+	 */
+	protected Dictionary getPropertiesSnapshot() {
+		Dictionary result = snapshot;
+		if (result != null)
+			return result;
+		try {
+			lock();
+			if (deleted || dictionary == null)
+				return null;
+			if (snapshot == null) {
+				// the values are not copied; the dictionary is replaced on update and never modified
+				ConfigurationDictionary properties = new ConfigurationDictionary();
+				properties.configurationProperties.putAll(dictionary.configurationProperties);
+				properties.configurationProperties.put(Constants.SERVICE_PID, pid);
+				if (factoryPid != null)
+					properties.configurationProperties.put(ConfigurationAdmin.SERVICE_FACTORYPID, factoryPid);
+				String boundLocation = getBundleLocation(false);
+				if (boundLocation != null)
+					properties.configurationProperties.put(ConfigurationAdmin.SERVICE_BUNDLELOCATION, boundLocation);
+				snapshot = properties;
+			}
+			return snapshot;
+		} finally {
+			unlock();
+		}
+	}
+
 	public void setBundleLocation(String bundleLocation) {
 		try {
 			lock();
@@ -229,6 +268,8 @@ class ConfigurationImpl implements Configuration {
 			configurationAdminFactory.checkConfigurationPermission();
 			this.bundleLocation = bundleLocation;
 			boundBundle = null; // always reset the boundBundle when setBundleLocation is called
+			snapshot = null;
+			configurationStore.bundleLocationChanged(this, bundleLocation);
 		} finally {
 			unlock();
 		}
@@ -238,8 +279,10 @@ class ConfigurationImpl implements Configuration {
 		try {
 			lock();
 			checkDeleted();
-			if (dictionary == null)
+			if (dictionary == null) {
 				dictionary = new ConfigurationDictionary();
+				snapshot = null;
+			}
 			configurationStore.saveConfiguration(pid, this);
 			configurationAdminFactory.notifyConfigurationUpdated(this, factoryPid != null);
 		} finally {
@@ -261,6 +304,38 @@ class ConfigurationImpl implements Configuration {
 	}
 
 	private void updateDictionary(Dictionary properties) {
+		dictionary = createDictionary(properties);
+		snapshot = null;
+	}
+
+	/**
+	 * Replaces the properties of the configuration without storing or notifying them. It is
+	 * used by a {@link ConfigurationBatch} holding the lock of the configuration.
+	 * 
+	 * @return the previous properties
+	 */
+	ConfigurationDictionary setDictionary(ConfigurationDictionary newDictionary) {
+		checkLocked();
+		ConfigurationDictionary previous = dictionary;
+		dictionary = newDictionary;
+		snapshot = null;
+		return previous;
+	}
+
+	/**
+	 * Marks the configuration as deleted, or restores it, without notifying the deletion. It is
+	 * used by a {@link ConfigurationBatch} holding the lock of the configuration.
+	 */
+	void setDeleted(boolean deleted) {
+		checkLocked();
+		this.deleted = deleted;
+		snapshot = null;
+	}
+
+	/**
+	 * Copies the properties of an update, checking their keys and values.
+	 */
+	static ConfigurationDictionary createDictionary(Dictionary properties) {
 		ConfigurationDictionary newDictionary = new ConfigurationDictionary();
 		Enumeration keys = properties.keys();
 		while (keys.hasMoreElements()) {
@@ -282,8 +357,7 @@ class ConfigurationImpl implements Configuration {
 		newDictionary.remove(Constants.SERVICE_PID);
 		newDictionary.remove(ConfigurationAdmin.SERVICE_FACTORYPID);
 		newDictionary.remove(ConfigurationAdmin.SERVICE_BUNDLELOCATION);
-
-		dictionary = newDictionary;
+		return newDictionary;
 	}
 
 	public boolean equals(Object obj) {
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.cm;
+
+import java.util.*;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+/**
+ * ConfigurationIndex indexes the configurations of the {@link ConfigurationStore} by pid,
+ * factory pid and bundle location, so that factory configurations and the configurations
+ * matching the common filters can be found without scanning all the configurations.
+ * <p>
+ * The index has its own lock which is never held while calling out, so it can be updated
+ * by a configuration holding its lock.
+ * </p>
+ */
+class ConfigurationIndex {
+
+	private static final ConfigurationImpl[] EMPTY = new ConfigurationImpl[0];
+
+	private final Map configurations = new HashMap(); // pid -> ConfigurationImpl
+	private final Map factoryConfigurations = new HashMap(); // factory pid -> Set of ConfigurationImpl
+	private final Map locatedConfigurations = new HashMap(); // bundle location -> Set of ConfigurationImpl
+	private final Set unlocatedConfigurations = new HashSet(); // the configurations having no bundle location
+	private final Map locations = new HashMap(); // ConfigurationImpl -> the bundle location it is indexed with
+
+	public synchronized void add(ConfigurationImpl config, String pid, String factoryPid, String bundleLocation) {
+		configurations.put(pid, config);
+		if (factoryPid != null)
+			addToSet(factoryConfigurations, factoryPid, config);
+		addLocation(config, bundleLocation);
+	}
+
+	public synchronized void remove(ConfigurationImpl config, String pid, String factoryPid) {
+		if (configurations.get(pid) != config)
+			return;
+		configurations.remove(pid);
+		if (factoryPid != null)
+			removeFromSet(factoryConfigurations, factoryPid, config);
+		removeLocation(config);
+	}
+
+	/**
+	 * Moves a configuration to its new bundle location. The bound bundle is not indexed; the
+	 * configurations without a bundle location are candidates for any location.
+	 */
+	public synchronized void setBundleLocation(ConfigurationImpl config, String bundleLocation) {
+		if (!locations.containsKey(config))
+			return; // not indexed or removed
+		removeLocation(config);
+		addLocation(config, bundleLocation);
+	}
+
+	public synchronized ConfigurationImpl[] getFactoryConfigurations(String factoryPid) {
+		Set configs = (Set) factoryConfigurations.get(factoryPid);
+		return configs == null ? EMPTY : (ConfigurationImpl[]) configs.toArray(new ConfigurationImpl[configs.size()]);
+	}
+
+	public synchronized ConfigurationImpl[] getConfigurations() {
+		return (ConfigurationImpl[]) configurations.values().toArray(new ConfigurationImpl[configurations.size()]);
+	}
+
+	/**
+	 * Returns the configurations which may match a filter. The filter must still be matched
+	 * against each returned configuration.
+	 */
+	public ConfigurationImpl[] getCandidates(Filter filter) {
+		String[] values = getIndexedValues(filter.toString());
+		if (values == null)
+			return getConfigurations();
+		synchronized (this) {
+			if (values[0] != null) {
+				ConfigurationImpl config = (ConfigurationImpl) configurations.get(values[0]);
+				return config == null ? EMPTY : new ConfigurationImpl[] {config};
+			}
+			if (values[1] != null)
+				return getFactoryConfigurations(values[1]);
+			Set configs = (Set) locatedConfigurations.get(values[2]);
+			List result = new ArrayList(unlocatedConfigurations);
+			if (configs != null)
+				result.addAll(configs);
+			return (ConfigurationImpl[]) result.toArray(new ConfigurationImpl[result.size()]);
+		}
+	}
+
+	private void addLocation(ConfigurationImpl config, String bundleLocation) {
+		locations.put(config, bundleLocation);
+		if (bundleLocation == null)
+			unlocatedConfigurations.add(config);
+		else
+			addToSet(locatedConfigurations, bundleLocation, config);
+	}
+
+	private void removeLocation(ConfigurationImpl config) {
+		String bundleLocation = (String) locations.remove(config);
+		if (bundleLocation == null)
+			unlocatedConfigurations.remove(config);
+		else
+			removeFromSet(locatedConfigurations, bundleLocation, config);
+	}
+
+	private static void addToSet(Map map, Object key, ConfigurationImpl config) {
+		Set configs = (Set) map.get(key);
+		if (configs == null) {
+			configs = new HashSet();
+			map.put(key, configs);
+		}
+		configs.add(config);
+	}
+
+	private static void removeFromSet(Map map, Object key, ConfigurationImpl config) {
+		Set configs = (Set) map.get(key);
+		if (configs != null) {
+			configs.remove(config);
+			if (configs.isEmpty())
+				map.remove(key);
+		}
+	}
+
+	/**
+	 * Finds the values the filter requires for the pid, the factory pid and the bundle location.
+	 * Only a filter which is an equality test, or a conjunction with an equality test, of one of
+	 * these properties can use the index.
+	 *
+	 * @return an array with the required pid, factory pid and bundle location, or null
+	 * if the filter does not require any of them
+	 */
+	static String[] getIndexedValues(String filter) {
+		String[] values = new String[3];
+		if (filter.startsWith("(&")) { //$NON-NLS-1$
+			int pos = 2;
+			while (pos < filter.length() && filter.charAt(pos) == '(') {
+				int end = findEnd(filter, pos);
+				if (end == -1)
+					return null;
+				getIndexedValue(filter.substring(pos, end + 1), values);
+				pos = end + 1;
+			}
+		} else {
+			getIndexedValue(filter, values);
+		}
+		return values[0] == null && values[1] == null && values[2] == null ? null : values;
+	}
+
+	// returns the position of the parenthesis closing the one at the start position
+	private static int findEnd(String filter, int start) {
+		int depth = 0;
+		for (int i = start; i < filter.length(); i++) {
+			char c = filter.charAt(i);
+			if (c == '\\')
+				i++;
+			else if (c == '(')
+				depth++;
+			else if (c == ')' && --depth == 0)
+				return i;
+		}
+		return -1;
+	}
+
+	private static void getIndexedValue(String item, String[] values) {
+		if (item.length() < 2 || item.charAt(0) != '(' || item.charAt(item.length() - 1) != ')')
+			return;
+		int eq = item.indexOf('=');
+		if (eq < 2 || "&|!~<>".indexOf(item.charAt(1)) != -1 || "~<>".indexOf(item.charAt(eq - 1)) != -1) //$NON-NLS-1$ //$NON-NLS-2$
+			return;
+		String value = unescape(item.substring(eq + 1, item.length() - 1));
+		if (value == null || value.length() == 0 || value.trim().length() != value.length())
+			return;
+		String attribute = item.substring(1, eq).trim();
+		int index;
+		if (attribute.equalsIgnoreCase(Constants.SERVICE_PID))
+			index = 0;
+		else if (attribute.equalsIgnoreCase(ConfigurationAdmin.SERVICE_FACTORYPID))
+			index = 1;
+		else if (attribute.equalsIgnoreCase(ConfigurationAdmin.SERVICE_BUNDLELOCATION))
+			index = 2;
+		else
+			return;
+		if (values[index] == null)
+			values[index] = value;
+	}
+
+	// returns null if the value has a wildcard
+	private static String unescape(String value) {
+		StringBuffer result = new StringBuffer(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\') {
+				if (++i == value.length())
+					return null;
+				c = value.charAt(i);
+			} else if (c == '*') {
+				return null;
+			}
+			result.append(c);
+		}
+		return result.toString();
+	}
+}
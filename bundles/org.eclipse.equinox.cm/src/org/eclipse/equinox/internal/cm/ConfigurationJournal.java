@@ -0,0 +1,644 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.cm;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.zip.CRC32;
+import org.osgi.service.log.LogService;
+
+/**
+ * ConfigurationJournal persists all the configurations in a single append-only file. Each update
+ * or deletion of a configuration appends a record; the journal keeps in memory the position of the
+ * latest record of each pid. When the records replaced by later ones take more space than the live
+ * records, the journal is compacted by copying the live records to a new file.
+ * <p>
+ * The file starts with a magic number, followed by records of the form
+ * <pre>
+ *   int     payload length
+ *   byte    record type (PUT, DELETE or BATCH)
+ *   byte[]  payload: the pid followed, for PUT, by the encoded dictionary
+ *   int     CRC32 of the record type and the payload
+ * </pre>
+ * The payload of a BATCH record is the number of entries followed by the entries; each entry
+ * is its type (PUT or DELETE), its length and the payload of the corresponding record. A record
+ * that is incomplete or has a wrong checksum ends the journal; it is truncated when the journal
+ * is opened, so a crash during a write loses only that write, and the updates of a batch are
+ * stored all together or not at all.
+ * </p>
+ */
+public class ConfigurationJournal {
+
+	private static final int MAGIC = 0x434D4A31; // CMJ1
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_DELETE = 2;
+	private static final byte RECORD_BATCH = 3;
+	private static final int RECORD_OVERHEAD = 9; // length, type and CRC
+	private static final long COMPACT_THRESHOLD = 256 * 1024;
+	private static final String COMPACT_EXT = ".compact"; //$NON-NLS-1$
+
+	// the types of the values; the simple types are also the element types of arrays and vectors
+	private static final Class[] SIMPLES = {String.class, Integer.class, Long.class, Float.class, Double.class, Byte.class, Short.class, Character.class, Boolean.class};
+	private static final Class[] SIMPLE_ARRAYS = {String[].class, Integer[].class, Long[].class, Float[].class, Double[].class, Byte[].class, Short[].class, Character[].class, Boolean[].class};
+	private static final Class[] PRIMITIVE_ARRAYS = {null, int[].class, long[].class, float[].class, double[].class, byte[].class, short[].class, char[].class, boolean[].class};
+	private static final int SCALAR = 0;
+	private static final int SIMPLE_ARRAY = 1;
+	private static final int PRIMITIVE_ARRAY = 2;
+	private static final int VECTOR = 3;
+
+	private final LogService log;
+	private final File journalFile;
+	private final File compactFile;
+	private final int loadThreads;
+
+	private final Map records = new HashMap(); // pid -> Record of the latest PUT or batch entry
+	private RandomAccessFile file;
+	private long end;
+	private long liveBytes;
+	private long garbageBytes;
+
+	public ConfigurationJournal(LogService log, File journalFile, int loadThreads) {
+		this.log = log;
+		this.journalFile = journalFile;
+		this.compactFile = new File(journalFile.getPath() + COMPACT_EXT);
+		this.loadThreads = loadThreads < 1 ? 1 : loadThreads;
+	}
+
+	/**
+	 * Opens the journal and reads the stored configurations. The dictionaries are decoded by
+	 * several threads.
+	 *
+	 * @return the dictionaries of the stored configurations
+	 */
+	public synchronized Dictionary[] open() throws IOException {
+		if (!journalFile.exists() && compactFile.exists()) {
+			// the journal was replaced by its compacted copy when the process stopped
+			if (!compactFile.renameTo(journalFile))
+				throw new IOException("Cannot rename " + compactFile); //$NON-NLS-1$
+		}
+		records.clear();
+		liveBytes = 0;
+		garbageBytes = 0;
+		byte[] data = readFully(journalFile);
+		if (data.length >= 4 && readInt(data, 0) != MAGIC) {
+			File corrupt = new File(journalFile.getPath() + ".corrupt"); //$NON-NLS-1$
+			corrupt.delete();
+			journalFile.renameTo(corrupt);
+			log.log(LogService.LOG_ERROR, "{Configuration Admin} " + journalFile + " is not a configuration journal. It is moved to " + corrupt); //$NON-NLS-1$ //$NON-NLS-2$
+			data = new byte[0];
+		}
+		int valid = data.length < 4 ? 0 : scan(data);
+		file = new RandomAccessFile(journalFile, "rw"); //$NON-NLS-1$
+		if (valid == 0) {
+			file.setLength(0);
+			file.writeInt(MAGIC);
+			sync();
+			valid = 4;
+		} else if (valid < data.length) {
+			log.log(LogService.LOG_WARNING, "{Configuration Admin} The last " + (data.length - valid) + " bytes of " + journalFile + " are incomplete and were discarded."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			file.setLength(valid);
+			sync();
+		}
+		end = valid;
+		return decodeAll(data);
+	}
+
+	// indexes the records of the journal; returns the length of the valid part
+	private int scan(byte[] data) {
+		CRC32 crc = new CRC32();
+		int pos = 4;
+		while (pos + RECORD_OVERHEAD <= data.length) {
+			int length = readInt(data, pos);
+			if (length < 4 || pos + RECORD_OVERHEAD + length > data.length)
+				break;
+			crc.reset();
+			crc.update(data, pos + 4, length + 1);
+			if ((int) crc.getValue() != readInt(data, pos + 5 + length))
+				break;
+			byte type = data[pos + 4];
+			try {
+				if (type == RECORD_BATCH)
+					scanBatch(data, pos + 5, length);
+				else if (type == RECORD_PUT || type == RECORD_DELETE)
+					scanEntry(data, type, pos + 5, length);
+				else
+					break;
+			} catch (IOException e) {
+				break;
+			}
+			pos += length + RECORD_OVERHEAD;
+		}
+		return pos;
+	}
+
+	// indexes the entries of a batch, or none of them if one of the entries is not valid
+	private void scanBatch(byte[] data, int offset, int length) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+		int count = in.readInt();
+		// an entry takes at least its type, its length and the length of the pid
+		if (count < 0 || count > (length - 4) / 9)
+			throw new IOException("Invalid batch size " + count); //$NON-NLS-1$
+		String[] pids = new String[count];
+		Record[] entries = new Record[count]; // null for a deletion
+		int[] sizes = new int[count];
+		int pos = offset + 4;
+		for (int i = 0; i < count; i++) {
+			byte type = in.readByte();
+			int entryLength = in.readInt();
+			if ((type != RECORD_PUT && type != RECORD_DELETE) || entryLength < 4 || pos + 5 + entryLength > offset + length)
+				throw new IOException("Invalid batch entry"); //$NON-NLS-1$
+			pids[i] = readString(new DataInputStream(new ByteArrayInputStream(data, pos + 5, entryLength)));
+			entries[i] = type == RECORD_PUT ? new Record(pos + 5, entryLength) : null;
+			sizes[i] = entryLength + RECORD_OVERHEAD;
+			in.skipBytes(entryLength);
+			pos += 5 + entryLength;
+		}
+		if (pos != offset + length)
+			throw new IOException("Invalid batch length"); //$NON-NLS-1$
+		for (int i = 0; i < count; i++)
+			index(pids[i], entries[i], sizes[i]);
+	}
+
+	private void scanEntry(byte[] data, byte type, int offset, int length) throws IOException {
+		String pid = readString(new DataInputStream(new ByteArrayInputStream(data, offset, length)));
+		index(pid, type == RECORD_PUT ? new Record(offset, length) : null, length + RECORD_OVERHEAD);
+	}
+
+	// updates the index with a new record; a null record is a deletion of the given size
+	private void index(String pid, Record record, int size) {
+		Record previous = record == null ? (Record) records.remove(pid) : (Record) records.put(pid, record);
+		if (previous != null) {
+			liveBytes -= previous.size;
+			garbageBytes += previous.size;
+		}
+		if (record == null)
+			garbageBytes += size;
+		else
+			liveBytes += record.size;
+	}
+
+	private Dictionary[] decodeAll(final byte[] data) {
+		final Record[] live = (Record[]) records.values().toArray(new Record[records.size()]);
+		final Dictionary[] result = new Dictionary[live.length];
+		Runnable decoder = new Runnable() {
+			private int next = 0;
+
+			public void run() {
+				int i;
+				while ((i = next()) < live.length) {
+					try {
+						result[i] = decode(data, live[i]);
+					} catch (Exception e) {
+						log.log(LogService.LOG_ERROR, "{Configuration Admin} A configuration could not be restored from " + journalFile + ". " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+					}
+				}
+			}
+
+			private synchronized int next() {
+				return next++;
+			}
+		};
+		int threads = Math.min(loadThreads, live.length / 64 + 1);
+		Thread[] helpers = new Thread[threads - 1];
+		for (int i = 0; i < helpers.length; i++) {
+			helpers[i] = new Thread(decoder, "Configuration Admin Store Loader"); //$NON-NLS-1$
+			helpers[i].start();
+		}
+		decoder.run();
+		for (int i = 0; i < helpers.length; i++) {
+			while (helpers[i].isAlive()) {
+				try {
+					helpers[i].join();
+				} catch (InterruptedException e) {
+					// the helpers do not block; continue waiting
+				}
+			}
+		}
+		return result;
+	}
+
+	private Dictionary decode(byte[] data, Record record) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, (int) record.offset, record.length));
+		readString(in); // the pid
+		return readDictionary(in);
+	}
+
+	public synchronized void write(String pid, Dictionary dictionary) throws IOException {
+		append(RECORD_PUT, encode(pid, dictionary), new String[] {pid}, new int[] {0});
+	}
+
+	public synchronized void delete(String pid) throws IOException {
+		if (!records.containsKey(pid))
+			return;
+		append(RECORD_DELETE, encode(pid, null), new String[] {pid}, new int[] {0});
+	}
+
+	/**
+	 * Writes the updates and the deletions of several configurations in a single record.
+	 *
+	 * @param updates the dictionaries of the updated configurations by pid
+	 * @param deletions the pids of the deleted configurations
+	 */
+	public synchronized void writeBatch(Map updates, Collection deletions) throws IOException {
+		String[] pids = new String[updates.size() + deletions.size()];
+		int[] offsets = new int[pids.length];
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * pids.length);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(pids.length);
+		int i = 0;
+		for (Iterator it = updates.entrySet().iterator(); it.hasNext(); i++) {
+			Map.Entry entry = (Map.Entry) it.next();
+			pids[i] = (String) entry.getKey();
+			offsets[i] = writeEntry(out, RECORD_PUT, encode(pids[i], (Dictionary) entry.getValue()));
+		}
+		for (Iterator it = deletions.iterator(); it.hasNext(); i++) {
+			pids[i] = (String) it.next();
+			offsets[i] = -writeEntry(out, RECORD_DELETE, encode(pids[i], null));
+		}
+		out.flush();
+		append(RECORD_BATCH, bytes.toByteArray(), pids, offsets);
+	}
+
+	// returns the offset of the entry payload in the batch payload
+	private static int writeEntry(DataOutputStream out, byte type, byte[] payload) throws IOException {
+		out.writeByte(type);
+		out.writeInt(payload.length);
+		int offset = out.size();
+		out.write(payload);
+		return offset;
+	}
+
+	// the payload of a PUT or a DELETE; a null dictionary is a deletion
+	private static byte[] encode(String pid, Dictionary dictionary) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(dictionary == null ? 64 : 256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		writeString(out, pid);
+		if (dictionary != null)
+			writeDictionary(out, dictionary);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	public synchronized boolean contains(String pid) {
+		return records.containsKey(pid);
+	}
+
+	/*
+	 * Appends a record for the given pids. The offsets are the positions of the pid entries in
+	 * the payload; they are negative for deletions, except for a DELETE record.
+	 */
+	private void append(byte type, byte[] payload, String[] pids, int[] offsets) throws IOException {
+		if (file == null)
+			throw new IOException("The configuration journal is closed"); //$NON-NLS-1$
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(payload);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + RECORD_OVERHEAD);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(payload.length);
+		out.writeByte(type);
+		out.write(payload);
+		out.writeInt((int) crc.getValue());
+		out.flush();
+		int size = bytes.size();
+		try {
+			file.seek(end);
+			file.write(bytes.toByteArray());
+			sync();
+		} catch (IOException e) {
+			// drop the partial record so the next records are not appended after it
+			try {
+				file.setLength(end);
+			} catch (IOException ignored) {
+				// the partial record is discarded when the journal is opened
+			}
+			throw e;
+		}
+		if (type == RECORD_BATCH) {
+			for (int i = 0; i < pids.length; i++) {
+				int length = readInt(payload, Math.abs(offsets[i]) - 4);
+				index(pids[i], offsets[i] > 0 ? new Record(end + 5 + offsets[i], length) : null, length + RECORD_OVERHEAD);
+			}
+		} else {
+			index(pids[0], type == RECORD_PUT ? new Record(end + 5, payload.length) : null, size);
+		}
+		end += size;
+		if (garbageBytes > COMPACT_THRESHOLD && garbageBytes > liveBytes)
+			compact();
+	}
+
+	/**
+	 * Copies the live records to a new file which replaces the journal. The entries of the
+	 * batches are copied as PUT records.
+	 */
+	private void compact() throws IOException {
+		FileOutputStream fos = new FileOutputStream(compactFile);
+		DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+		Map moved = new HashMap(records.size());
+		long position = 4;
+		try {
+			compacted.writeInt(MAGIC);
+			byte[] buffer = new byte[4096];
+			CRC32 crc = new CRC32();
+			for (Iterator it = records.entrySet().iterator(); it.hasNext();) {
+				Map.Entry entry = (Map.Entry) it.next();
+				Record record = (Record) entry.getValue();
+				if (buffer.length < record.length)
+					buffer = new byte[record.length];
+				file.seek(record.offset);
+				file.readFully(buffer, 0, record.length);
+				crc.reset();
+				crc.update(RECORD_PUT);
+				crc.update(buffer, 0, record.length);
+				compacted.writeInt(record.length);
+				compacted.writeByte(RECORD_PUT);
+				compacted.write(buffer, 0, record.length);
+				compacted.writeInt((int) crc.getValue());
+				moved.put(entry.getKey(), new Record(position + 5, record.length));
+				position += record.size;
+			}
+			compacted.flush();
+			fos.getFD().sync();
+		} finally {
+			compacted.close();
+		}
+		file.close();
+		file = null;
+		if (!journalFile.delete()) {
+			// keep using the journal as it is
+			compactFile.delete();
+			file = new RandomAccessFile(journalFile, "rw"); //$NON-NLS-1$
+			throw new IOException("Cannot delete " + journalFile); //$NON-NLS-1$
+		}
+		// a crash or a failure before the rename is recovered by open()
+		if (!compactFile.renameTo(journalFile))
+			throw new IOException("Cannot rename " + compactFile + " to " + journalFile); //$NON-NLS-1$ //$NON-NLS-2$
+		file = new RandomAccessFile(journalFile, "rw"); //$NON-NLS-1$
+		records.clear();
+		records.putAll(moved);
+		end = position;
+		liveBytes = position - 4;
+		garbageBytes = 0;
+	}
+
+	/**
+	 * Compacts the journal if it has replaced records and closes it.
+	 */
+	public synchronized void close() {
+		if (file == null)
+			return;
+		try {
+			if (garbageBytes > 0)
+				compact();
+		} catch (IOException e) {
+			log.log(LogService.LOG_WARNING, "{Configuration Admin} " + journalFile + " could not be compacted. " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		try {
+			if (file != null)
+				file.close();
+		} catch (IOException e) {
+			// ignore
+		}
+		file = null;
+	}
+
+	private void sync() throws IOException {
+		file.getFD().sync();
+	}
+
+	private static byte[] readFully(File f) throws IOException {
+		if (!f.exists())
+			return new byte[0];
+		InputStream in = new FileInputStream(f);
+		try {
+			long length = f.length();
+			if (length > Integer.MAX_VALUE)
+				throw new IOException(f + " is too large"); //$NON-NLS-1$
+			byte[] data = new byte[(int) length];
+			int read = 0;
+			while (read < data.length) {
+				int count = in.read(data, read, data.length - read);
+				if (count == -1)
+					break;
+				read += count;
+			}
+			if (read == data.length)
+				return data;
+			byte[] result = new byte[read];
+			System.arraycopy(data, 0, result, 0, read);
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static int readInt(byte[] data, int pos) {
+		return ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+	}
+
+	/* the binary encoding of the dictionaries */
+
+	public static void writeDictionary(DataOutputStream out, Dictionary dictionary) throws IOException {
+		out.writeInt(dictionary.size());
+		for (Enumeration keys = dictionary.keys(); keys.hasMoreElements();) {
+			Object key = keys.nextElement();
+			writeString(out, (String) key);
+			writeValue(out, dictionary.get(key));
+		}
+	}
+
+	public static Dictionary readDictionary(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		ConfigurationDictionary dictionary = new ConfigurationDictionary();
+		for (int i = 0; i < size; i++) {
+			String key = readString(in);
+			dictionary.put(key, readValue(in));
+		}
+		return dictionary;
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		Class clazz = value.getClass();
+		int type = indexOf(SIMPLES, clazz);
+		if (type != -1) {
+			out.writeByte(SCALAR << 4 | type);
+			writeSimple(out, type, value);
+			return;
+		}
+		type = indexOf(SIMPLE_ARRAYS, clazz);
+		if (type != -1) {
+			Object[] array = (Object[]) value;
+			out.writeByte(SIMPLE_ARRAY << 4 | type);
+			out.writeInt(array.length);
+			for (int i = 0; i < array.length; i++) {
+				out.writeBoolean(array[i] != null);
+				if (array[i] != null)
+					writeSimple(out, type, array[i]);
+			}
+			return;
+		}
+		type = indexOf(PRIMITIVE_ARRAYS, clazz);
+		if (type != -1) {
+			int length = Array.getLength(value);
+			out.writeByte(PRIMITIVE_ARRAY << 4 | type);
+			out.writeInt(length);
+			for (int i = 0; i < length; i++)
+				writeSimple(out, type, Array.get(value, i));
+			return;
+		}
+		if (value instanceof Collection) {
+			Collection collection = (Collection) value;
+			out.writeByte(VECTOR << 4);
+			out.writeInt(collection.size());
+			for (Iterator it = collection.iterator(); it.hasNext();) {
+				Object element = it.next();
+				type = indexOf(SIMPLES, element.getClass());
+				if (type == -1)
+					throw new IOException("Unsupported type " + element.getClass().getName()); //$NON-NLS-1$
+				out.writeByte(type);
+				writeSimple(out, type, element);
+			}
+			return;
+		}
+		throw new IOException("Unsupported type " + clazz.getName()); //$NON-NLS-1$
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		int tag = in.readUnsignedByte();
+		int type = tag & 0x0F;
+		if (type >= SIMPLES.length)
+			throw new IOException("Unknown type " + tag); //$NON-NLS-1$
+		switch (tag >> 4) {
+			case SCALAR :
+				return readSimple(in, type);
+			case SIMPLE_ARRAY : {
+				Object[] array = (Object[]) Array.newInstance(SIMPLES[type], in.readInt());
+				for (int i = 0; i < array.length; i++)
+					if (in.readBoolean())
+						array[i] = readSimple(in, type);
+				return array;
+			}
+			case PRIMITIVE_ARRAY : {
+				if (PRIMITIVE_ARRAYS[type] == null)
+					throw new IOException("Unknown type " + tag); //$NON-NLS-1$
+				int length = in.readInt();
+				Object array = Array.newInstance(PRIMITIVE_ARRAYS[type].getComponentType(), length);
+				for (int i = 0; i < length; i++)
+					Array.set(array, i, readSimple(in, type));
+				return array;
+			}
+			case VECTOR : {
+				int size = in.readInt();
+				Vector vector = new Vector(size);
+				for (int i = 0; i < size; i++) {
+					int elementType = in.readUnsignedByte();
+					if (elementType >= SIMPLES.length)
+						throw new IOException("Unknown type " + elementType); //$NON-NLS-1$
+					vector.addElement(readSimple(in, elementType));
+				}
+				return vector;
+			}
+			default :
+				throw new IOException("Unknown type " + tag); //$NON-NLS-1$
+		}
+	}
+
+	private static void writeSimple(DataOutputStream out, int type, Object value) throws IOException {
+		switch (type) {
+			case 0 :
+				writeString(out, (String) value);
+				break;
+			case 1 :
+				out.writeInt(((Integer) value).intValue());
+				break;
+			case 2 :
+				out.writeLong(((Long) value).longValue());
+				break;
+			case 3 :
+				out.writeFloat(((Float) value).floatValue());
+				break;
+			case 4 :
+				out.writeDouble(((Double) value).doubleValue());
+				break;
+			case 5 :
+				out.writeByte(((Byte) value).byteValue());
+				break;
+			case 6 :
+				out.writeShort(((Short) value).shortValue());
+				break;
+			case 7 :
+				out.writeChar(((Character) value).charValue());
+				break;
+			default :
+				out.writeBoolean(((Boolean) value).booleanValue());
+		}
+	}
+
+	private static Object readSimple(DataInputStream in, int type) throws IOException {
+		switch (type) {
+			case 0 :
+				return readString(in);
+			case 1 :
+				return new Integer(in.readInt());
+			case 2 :
+				return new Long(in.readLong());
+			case 3 :
+				return new Float(in.readFloat());
+			case 4 :
+				return new Double(in.readDouble());
+			case 5 :
+				return new Byte(in.readByte());
+			case 6 :
+				return new Short(in.readShort());
+			case 7 :
+				return new Character(in.readChar());
+			default :
+				return in.readBoolean() ? Boolean.TRUE : Boolean.FALSE;
+		}
+	}
+
+	// unlike DataOutputStream.writeUTF the length of the strings is not limited
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8"); //$NON-NLS-1$
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > in.available())
+			throw new IOException("Invalid string length " + length); //$NON-NLS-1$
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8"); //$NON-NLS-1$
+	}
+
+	private static int indexOf(Class[] classes, Class clazz) {
+		for (int i = 0; i < classes.length; i++)
+			if (classes[i] == clazz)
+				return i;
+		return -1;
+	}
+
+	// the position of the payload of a PUT record or a PUT entry of a batch
+	private static class Record {
+		final long offset;
+		final int length;
+		final int size; // the size of the record the payload would be copied to
+
+		Record(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+			this.size = length + RECORD_OVERHEAD;
+		}
+	}
+}
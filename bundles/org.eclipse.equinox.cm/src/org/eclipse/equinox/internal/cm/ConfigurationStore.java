@@ -16,22 +16,30 @@ import java.security.*;
 import java.util.*;
 import org.eclipse.equinox.internal.cm.reliablefile.*;
 import org.osgi.framework.*;
+import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.log.LogService;
 
 /**
- * ConfigurationStore manages all active configurations along with persistence. The current
- * implementation uses a filestore and serialization of the configuration dictionaries to files
- * identified by their pid. Persistence details are in the constructor, saveConfiguration, and
- * deleteConfiguration and can be factored out separately if required.
+ * ConfigurationStore manages all active configurations along with persistence. By default
+ * the configuration dictionaries are serialized to files identified by their pid. If the
+ * equinox.cm.store property is set to "journal" all the configurations are stored in a
+ * {@link ConfigurationJournal} instead, and the existing pid files are migrated to the journal.
+ * Persistence details are in the constructor, saveConfiguration, and deleteConfiguration.
  */
 class ConfigurationStore {
 
 	private final ConfigurationAdminFactory configurationAdminFactory;
 	private static final String STORE_DIR = "store"; //$NON-NLS-1$
 	private static final String PID_EXT = ".pid"; //$NON-NLS-1$
+	private static final String PROP_STORE = "equinox.cm.store"; //$NON-NLS-1$
+	private static final String PROP_LOAD_THREADS = "equinox.cm.store.loadThreads"; //$NON-NLS-1$
+	private static final String STORE_JOURNAL = "journal"; //$NON-NLS-1$
+	private static final String JOURNAL_FILE = "configurations.journal"; //$NON-NLS-1$
 	private final Map configurations = new HashMap();
+	private final ConfigurationIndex index = new ConfigurationIndex();
 	private int createdPidCount = 0;
 	private final File store;
+	private ConfigurationJournal journal;
 
 	public ConfigurationStore(ConfigurationAdminFactory configurationAdminFactory, BundleContext context) {
 		this.configurationAdminFactory = configurationAdminFactory;
@@ -40,50 +48,109 @@ class ConfigurationStore {
 			return; // no persistent store
 
 		store.mkdir();
+		if (STORE_JOURNAL.equals(context.getProperty(PROP_STORE))) {
+			journal = new ConfigurationJournal(configurationAdminFactory.getLog(), new File(store, JOURNAL_FILE), getLoadThreads(context));
+			try {
+				Dictionary[] dictionaries = journal.open();
+				for (int i = 0; i < dictionaries.length; i++) {
+					if (dictionaries[i] != null)
+						restoreConfiguration(dictionaries[i]);
+				}
+			} catch (IOException e) {
+				configurationAdminFactory.log(LogService.LOG_ERROR, "{Configuration Admin} The configuration journal could not be opened. " + e.getMessage()); //$NON-NLS-1$
+				journal = null;
+			}
+		}
 		File[] configurationFiles = store.listFiles();
 		for (int i = 0; i < configurationFiles.length; ++i) {
 			String configurationFileName = configurationFiles[i].getName();
 			if (!configurationFileName.endsWith(PID_EXT))
 				continue;
 
-			InputStream ris = null;
-			ObjectInputStream ois = null;
-			boolean deleteFile = false;
+			Dictionary dictionary = readConfigurationFile(configurationFiles[i]);
+			if (dictionary == null || journal == null) {
+				if (dictionary != null)
+					restoreConfiguration(dictionary);
+				continue;
+			}
+			// migrate the file to the journal
+			String pid = (String) dictionary.get(Constants.SERVICE_PID);
 			try {
-				ris = new ReliableFileInputStream(configurationFiles[i]);
-				ois = new ObjectInputStream(ris);
-				Dictionary dictionary = (Dictionary) ois.readObject();
-				ConfigurationImpl config = new ConfigurationImpl(configurationAdminFactory, this, dictionary);
-				configurations.put(config.getPid(), config);
+				if (!journal.contains(pid)) {
+					journal.write(pid, dictionary);
+					restoreConfiguration(dictionary);
+				}
+				deleteConfigurationFile(configurationFiles[i]);
 			} catch (IOException e) {
-				String message = e.getMessage();
-				String pid = configurationFileName.substring(0, configurationFileName.length() - 4);
-				String errorMessage = "{Configuration Admin - pid = " + pid + "} could not be restored." + ((message == null) ? "" : " " + message); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
-				configurationAdminFactory.log(LogService.LOG_ERROR, errorMessage);
-				deleteFile = true;
-			} catch (ClassNotFoundException e) {
-				configurationAdminFactory.log(LogService.LOG_ERROR, e.getMessage());
-			} finally {
-				if (ois != null) {
-					try {
-						ois.close();
-					} catch (IOException e) {
-						// ignore 
-					}
+				configurationAdminFactory.log(LogService.LOG_ERROR, "{Configuration Admin - pid = " + pid + "} could not be migrated to the configuration journal. " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+				restoreConfiguration(dictionary);
+			}
+		}
+	}
+
+	private static int getLoadThreads(BundleContext context) {
+		String prop = context.getProperty(PROP_LOAD_THREADS);
+		if (prop != null) {
+			try {
+				return Integer.parseInt(prop);
+			} catch (NumberFormatException e) {/*ignore*/
+			}
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	private void restoreConfiguration(Dictionary dictionary) {
+		ConfigurationImpl config = new ConfigurationImpl(configurationAdminFactory, this, dictionary);
+		addConfiguration(config, config.getPid(), config.getFactoryPid(), (String) dictionary.get(ConfigurationAdmin.SERVICE_BUNDLELOCATION));
+	}
+
+	// returns null if the file cannot be read; a corrupted file is deleted
+	private Dictionary readConfigurationFile(File configurationFile) {
+		String configurationFileName = configurationFile.getName();
+		InputStream ris = null;
+		ObjectInputStream ois = null;
+		boolean deleteFile = false;
+		try {
+			ris = new ReliableFileInputStream(configurationFile);
+			ois = new ObjectInputStream(ris);
+			return (Dictionary) ois.readObject();
+		} catch (IOException e) {
+			String message = e.getMessage();
+			String pid = configurationFileName.substring(0, configurationFileName.length() - 4);
+			String errorMessage = "{Configuration Admin - pid = " + pid + "} could not be restored." + ((message == null) ? "" : " " + message); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			configurationAdminFactory.log(LogService.LOG_ERROR, errorMessage);
+			deleteFile = true;
+		} catch (ClassNotFoundException e) {
+			configurationAdminFactory.log(LogService.LOG_ERROR, e.getMessage());
+		} finally {
+			if (ois != null) {
+				try {
+					ois.close();
+				} catch (IOException e) {
+					// ignore 
 				}
-				if (ris != null) {
-					try {
-						ris.close();
-					} catch (IOException e) {
-						// ignore 
-					}
+			}
+			if (ris != null) {
+				try {
+					ris.close();
+				} catch (IOException e) {
+					// ignore 
 				}
 			}
 			if (deleteFile) {
-				ReliableFile.delete(configurationFiles[i]);
-				configurationFiles[i].delete();
+				ReliableFile.delete(configurationFile);
+				configurationFile.delete();
 			}
 		}
+		return null;
+	}
+
+	/**
+	 * Closes the configuration journal, if it is used.
+	 */
+	public void stop() {
+		if (journal != null)
+			journal.close();
 	}
 
 	public void saveConfiguration(String pid, ConfigurationImpl config) throws IOException {
@@ -91,12 +158,16 @@ class ConfigurationStore {
 			return; // no persistent store
 
 		config.checkLocked();
+		final String configPid = pid;
 		final File configFile = new File(store, pid + PID_EXT);
 		final Dictionary configProperties = config.getAllProperties();
 		try {
 			AccessController.doPrivileged(new PrivilegedExceptionAction() {
 				public Object run() throws Exception {
-					writeConfigurationFile(configFile, configProperties);
+					if (journal != null)
+						journal.write(configPid, configProperties);
+					else
+						writeConfigurationFile(configFile, configProperties);
 					return null;
 				}
 			});
@@ -131,19 +202,84 @@ class ConfigurationStore {
 		}
 	}
 
-	public synchronized void removeConfiguration(String pid) {
-		configurations.remove(pid);
-		if (store == null)
+	private void addConfiguration(ConfigurationImpl config, String pid, String factoryPid, String location) {
+		configurations.put(pid, config);
+		index.add(config, pid, factoryPid, location);
+	}
+
+	/**
+	 * Stores the updates and the deletions of a batch. The journal stores them in a single
+	 * write; the file store writes a file for each configuration.
+	 *
+	 * @param configs the updated configurations, locked by the caller
+	 * @param deletedPids the pids of the deleted configurations
+	 */
+	public void saveConfigurations(ConfigurationImpl[] configs, final Collection deletedPids) throws IOException {
+		if (store == null || configs.length == 0 && deletedPids.isEmpty())
+			return; // no persistent store or nothing to store
+
+		final Map properties = new HashMap(configs.length);
+		for (int i = 0; i < configs.length; i++) {
+			configs[i].checkLocked();
+			properties.put(configs[i].getPid(false), configs[i].getAllProperties());
+		}
+		try {
+			AccessController.doPrivileged(new PrivilegedExceptionAction() {
+				public Object run() throws Exception {
+					if (journal != null) {
+						journal.writeBatch(properties, deletedPids);
+						return null;
+					}
+					for (Iterator it = properties.entrySet().iterator(); it.hasNext();) {
+						Map.Entry entry = (Map.Entry) it.next();
+						writeConfigurationFile(new File(store, entry.getKey() + PID_EXT), (Dictionary) entry.getValue());
+					}
+					for (Iterator it = deletedPids.iterator(); it.hasNext();)
+						deleteConfigurationFile(new File(store, it.next() + PID_EXT));
+					return null;
+				}
+			});
+		} catch (PrivilegedActionException e) {
+			throw (IOException) e.getException();
+		}
+	}
+
+	public void removeConfiguration(String pid) {
+		removeConfiguration(pid, true);
+	}
+
+	/**
+	 * Removes a deleted configuration from the store.
+	 *
+	 * @param persist false if the deletion is already persisted
+	 */
+	synchronized void removeConfiguration(String pid, boolean persist) {
+		ConfigurationImpl config = (ConfigurationImpl) configurations.remove(pid);
+		if (config != null)
+			index.remove(config, pid, config.getFactoryPid(false));
+		if (store == null || !persist)
 			return; // no persistent store
+		final String configPid = pid;
 		final File configFile = new File(store, pid + PID_EXT);
 		AccessController.doPrivileged(new PrivilegedAction() {
 			public Object run() {
-				deleteConfigurationFile(configFile);
+				if (journal != null)
+					deleteJournalRecord(configPid);
+				else
+					deleteConfigurationFile(configFile);
 				return null;
 			}
 		});
 	}
 
+	void deleteJournalRecord(String pid) {
+		try {
+			journal.delete(pid);
+		} catch (IOException e) {
+			configurationAdminFactory.log(LogService.LOG_ERROR, "{Configuration Admin - pid = " + pid + "} could not be deleted from the configuration journal. " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
 	void deleteConfigurationFile(File configFile) {
 		ReliableFile.delete(configFile);
 		configFile.delete();
@@ -153,15 +289,25 @@ class ConfigurationStore {
 		ConfigurationImpl config = (ConfigurationImpl) configurations.get(pid);
 		if (config == null) {
 			config = new ConfigurationImpl(configurationAdminFactory, this, null, pid, location);
-			configurations.put(pid, config);
+			addConfiguration(config, pid, null, location);
 		}
 		return config;
 	}
 
 	public synchronized ConfigurationImpl createFactoryConfiguration(String factoryPid, String location) {
-		String pid = factoryPid + "-" + new Date().getTime() + "-" + createdPidCount++; //$NON-NLS-1$ //$NON-NLS-2$
+		return createFactoryConfiguration(factoryPid, createFactoryPid(factoryPid), location);
+	}
+
+	/**
+	 * Returns a new pid for a configuration of the given factory without creating the configuration.
+	 */
+	synchronized String createFactoryPid(String factoryPid) {
+		return factoryPid + "-" + new Date().getTime() + "-" + createdPidCount++; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	synchronized ConfigurationImpl createFactoryConfiguration(String factoryPid, String pid, String location) {
 		ConfigurationImpl config = new ConfigurationImpl(configurationAdminFactory, this, factoryPid, pid, location);
-		configurations.put(pid, config);
+		addConfiguration(config, pid, factoryPid, location);
 		return config;
 	}
 
@@ -169,24 +315,24 @@ class ConfigurationStore {
 		return (ConfigurationImpl) configurations.get(pid);
 	}
 
-	public synchronized ConfigurationImpl[] getFactoryConfigurations(String factoryPid) {
-		List resultList = new ArrayList();
-		for (Iterator it = configurations.values().iterator(); it.hasNext();) {
-			ConfigurationImpl config = (ConfigurationImpl) it.next();
-			String otherFactoryPid = config.getFactoryPid();
-			if (otherFactoryPid != null && otherFactoryPid.equals(factoryPid))
-				resultList.add(config);
-		}
-		return (ConfigurationImpl[]) resultList.toArray(new ConfigurationImpl[0]);
+	// called by a configuration holding its lock; must not take the store lock
+	void bundleLocationChanged(ConfigurationImpl config, String location) {
+		index.setBundleLocation(config, location);
 	}
 
-	public synchronized ConfigurationImpl[] listConfigurations(Filter filter) {
+	public ConfigurationImpl[] getFactoryConfigurations(String factoryPid) {
+		return index.getFactoryConfigurations(factoryPid);
+	}
+
+	public ConfigurationImpl[] listConfigurations(Filter filter) {
+		// the candidates are matched without holding the store lock. The keys of the
+		// snapshots are case insensitive so they are not copied by Filter.match
+		ConfigurationImpl[] candidates = index.getCandidates(filter);
 		List resultList = new ArrayList();
-		for (Iterator it = configurations.values().iterator(); it.hasNext();) {
-			ConfigurationImpl config = (ConfigurationImpl) it.next();
-			Dictionary properties = config.getAllProperties();
-			if (properties != null && filter.match(properties))
-				resultList.add(config);
+		for (int i = 0; i < candidates.length; i++) {
+			Dictionary properties = candidates[i].getPropertiesSnapshot();
+			if (properties != null && filter.matchCase(properties))
+				resultList.add(candidates[i]);
 		}
 		int size = resultList.size();
 		return size == 0 ? null : (ConfigurationImpl[]) resultList.toArray(new ConfigurationImpl[size]);
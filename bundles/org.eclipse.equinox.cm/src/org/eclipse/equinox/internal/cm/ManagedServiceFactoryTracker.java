@@ -31,12 +31,13 @@ class ManagedServiceFactoryTracker extends ServiceTracker {
 	private final Map managedServiceFactories = new HashMap();
 	private final Map managedServiceFactoryReferences = new HashMap();
 
-	private final SerializedTaskQueue queue = new SerializedTaskQueue("ManagedServiceFactory Update Queue"); //$NON-NLS-1$
+	private final ManagedUpdateDispatcher dispatcher;
 
-	public ManagedServiceFactoryTracker(ConfigurationAdminFactory configurationAdminFactory, ConfigurationStore configurationStore, BundleContext context) {
+	public ManagedServiceFactoryTracker(ConfigurationAdminFactory configurationAdminFactory, ConfigurationStore configurationStore, ManagedUpdateDispatcher dispatcher, BundleContext context) {
 		super(context, ManagedServiceFactory.class.getName(), null);
 		this.configurationAdminFactory = configurationAdminFactory;
 		this.configurationStore = configurationStore;
+		this.dispatcher = dispatcher;
 	}
 
 	protected void notifyDeleted(ConfigurationImpl config) {
@@ -171,8 +172,9 @@ class ManagedServiceFactoryTracker extends ServiceTracker {
 		}
 	}
 
+	// a deletion replaces a queued update of the pid
 	private void asynchDeleted(final ManagedServiceFactory service, final String pid) {
-		queue.put(new Runnable() {
+		dispatcher.dispatch(service, pid, new Runnable() {
 			public void run() {
 				try {
 					service.deleted(pid);
@@ -184,7 +186,7 @@ class ManagedServiceFactoryTracker extends ServiceTracker {
 	}
 
 	private void asynchUpdated(final ManagedServiceFactory service, final String pid, final Dictionary properties) {
-		queue.put(new Runnable() {
+		dispatcher.dispatch(service, pid, new Runnable() {
 			public void run() {
 				try {
 					service.updated(pid, properties);
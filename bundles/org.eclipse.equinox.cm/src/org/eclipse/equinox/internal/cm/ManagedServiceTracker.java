@@ -30,12 +30,13 @@ class ManagedServiceTracker extends ServiceTracker {
 	private final Map managedServices = new HashMap();
 	private final Map managedServiceReferences = new HashMap();
 
-	private final SerializedTaskQueue queue = new SerializedTaskQueue("ManagedService Update Queue"); //$NON-NLS-1$
+	private final ManagedUpdateDispatcher dispatcher;
 
-	public ManagedServiceTracker(ConfigurationAdminFactory configurationAdminFactory, ConfigurationStore configurationStore, BundleContext context) {
+	public ManagedServiceTracker(ConfigurationAdminFactory configurationAdminFactory, ConfigurationStore configurationStore, ManagedUpdateDispatcher dispatcher, BundleContext context) {
 		super(context, ManagedService.class.getName(), null);
 		this.configurationAdminFactory = configurationAdminFactory;
 		this.configurationStore = configurationStore;
+		this.dispatcher = dispatcher;
 	}
 
 	protected void notifyDeleted(ConfigurationImpl config) {
@@ -43,7 +44,7 @@ class ManagedServiceTracker extends ServiceTracker {
 		String pid = config.getPid(false);
 		ServiceReference reference = getManagedServiceReference(pid);
 		if (reference != null && config.bind(reference.getBundle()))
-			asynchUpdated(getManagedService(pid), null);
+			asynchUpdated(getManagedService(pid), pid, null);
 	}
 
 	protected void notifyUpdated(ConfigurationImpl config) {
@@ -53,7 +54,7 @@ class ManagedServiceTracker extends ServiceTracker {
 		if (reference != null && config.bind(reference.getBundle())) {
 			Dictionary properties = config.getProperties();
 			configurationAdminFactory.modifyConfiguration(reference, properties);
-			asynchUpdated(getManagedService(pid), properties);
+			asynchUpdated(getManagedService(pid), pid, properties);
 		}
 	}
 
@@ -94,7 +95,7 @@ class ManagedServiceTracker extends ServiceTracker {
 	private void add(ServiceReference reference, String pid, ManagedService service) {
 		ConfigurationImpl config = configurationStore.findConfiguration(pid);
 		if (config == null && trackManagedService(pid, reference, service)) {
-			asynchUpdated(service, null);
+			asynchUpdated(service, pid, null);
 		} else {
 			try {
 				config.lock();
@@ -102,11 +103,11 @@ class ManagedServiceTracker extends ServiceTracker {
 					if (config.getFactoryPid() != null) {
 						configurationAdminFactory.log(LogService.LOG_WARNING, "Configuration for " + Constants.SERVICE_PID + "=" + pid + " should only be used by a " + ManagedServiceFactory.class.getName()); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$
 					} else if (config.isDeleted()) {
-						asynchUpdated(service, null);
+						asynchUpdated(service, pid, null);
 					} else if (config.bind(reference.getBundle())) {
 						Dictionary properties = config.getProperties();
 						configurationAdminFactory.modifyConfiguration(reference, properties);
-						asynchUpdated(service, properties);
+						asynchUpdated(service, pid, properties);
 					} else {
 						configurationAdminFactory.log(LogService.LOG_WARNING, "Configuration for " + Constants.SERVICE_PID + "=" + pid + " could not be bound to " + reference.getBundle().getLocation()); //$NON-NLS-1$//$NON-NLS-2$ //$NON-NLS-3$
 					}
@@ -174,8 +175,8 @@ class ManagedServiceTracker extends ServiceTracker {
 		}
 	}
 
-	private void asynchUpdated(final ManagedService service, final Dictionary properties) {
-		queue.put(new Runnable() {
+	private void asynchUpdated(final ManagedService service, String pid, final Dictionary properties) {
+		dispatcher.dispatch(service, pid, new Runnable() {
 			public void run() {
 				try {
 					service.updated(properties);
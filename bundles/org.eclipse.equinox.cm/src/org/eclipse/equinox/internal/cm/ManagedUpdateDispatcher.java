@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.cm;
+
+import java.util.*;
+
+/**
+ * ManagedUpdateDispatcher delivers the updates to the ManagedServices and ManagedServiceFactories
+ * on a bounded pool of threads.
+ * <p>
+ * Each target service has its own queue. The updates of a target are delivered in order and never
+ * concurrently, but a slow target does not delay the other targets. An update which is still queued
+ * is replaced by a newer update of the same pid, so a target only gets the latest properties.
+ * The threads are daemon threads and stop when they have been idle for a while or when the
+ * dispatcher is stopped.
+ * </p>
+ */
+public class ManagedUpdateDispatcher {
+
+	private static final int MAX_WAIT = 5000;
+
+	private final String threadName;
+	private final int maxThreads;
+	private int threads = 0;
+	private int idleThreads = 0;
+	private boolean stopped = false;
+
+	// the target queues that have updates and are not being processed by a thread
+	private final LinkedList readyQueues = new LinkedList();
+	// key: target service, value: TargetQueue
+	private final Map queues = new HashMap();
+
+	private int queuedUpdates = 0;
+	private long deliveredUpdates = 0;
+	private long coalescedUpdates = 0;
+	private long totalCallbackTime = 0;
+	private long maxCallbackTime = 0;
+
+	public ManagedUpdateDispatcher(String threadName, int maxThreads) {
+		this.threadName = threadName;
+		this.maxThreads = maxThreads < 1 ? 1 : maxThreads;
+	}
+
+	/**
+	 * Queues an update for a target service.
+	 *
+	 * @param target the ManagedService or ManagedServiceFactory
+	 * @param pid the pid of the updated configuration; a queued update of the same target and
+	 * pid is replaced
+	 * @param update the call to the target
+	 */
+	public synchronized void dispatch(Object target, String pid, Runnable update) {
+		if (stopped)
+			return;
+		TargetQueue queue = (TargetQueue) queues.get(target);
+		if (queue == null) {
+			queue = new TargetQueue(target);
+			queues.put(target, queue);
+		}
+		Update pending = (Update) queue.pendingByPid.get(pid);
+		if (pending != null) {
+			// the stale update keeps its place in the queue
+			pending.task = update;
+			coalescedUpdates++;
+			return;
+		}
+		pending = new Update(pid, update);
+		queue.pending.add(pending);
+		queue.pendingByPid.put(pid, pending);
+		queuedUpdates++;
+		if (!queue.scheduled) {
+			queue.scheduled = true;
+			readyQueues.add(queue);
+			// an idle thread takes only one queue, the others need threads of their own
+			if (readyQueues.size() > idleThreads && threads < maxThreads)
+				startThread();
+		}
+		notify();
+	}
+
+	// must be called while holding the lock
+	private void startThread() {
+		threads++;
+		Thread thread = new Thread(threadName + " " + threads) { //$NON-NLS-1$
+			public void run() {
+				dispatchLoop();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the dispatcher. The queued updates are dropped and the updates dispatched later are
+	 * ignored. An update which is being delivered completes.
+	 */
+	public synchronized void stop() {
+		stopped = true;
+		readyQueues.clear();
+		queues.clear();
+		queuedUpdates = 0;
+		notifyAll();
+	}
+
+	void dispatchLoop() {
+		TargetQueue queue = null;
+		while (true) {
+			Update update;
+			synchronized (this) {
+				if (stopped) {
+					threads--;
+					return;
+				}
+				if (queue != null) {
+					// put the queue back at the end so the other targets get their turn
+					if (queue.pending.isEmpty()) {
+						queue.scheduled = false;
+						queues.remove(queue.target);
+					} else {
+						readyQueues.add(queue);
+					}
+				}
+				if (readyQueues.isEmpty()) {
+					idleThreads++;
+					try {
+						wait(MAX_WAIT);
+					} catch (InterruptedException e) {
+						// ignore -- we control the stack here and do not need to propagate it.
+					}
+					idleThreads--;
+					if (stopped || readyQueues.isEmpty()) {
+						threads--;
+						return;
+					}
+				}
+				queue = (TargetQueue) readyQueues.removeFirst();
+				update = (Update) queue.pending.removeFirst();
+				queue.pendingByPid.remove(update.pid);
+				queuedUpdates--;
+			}
+			long start = System.currentTimeMillis();
+			try {
+				update.task.run();
+			} catch (Throwable t) {
+				// the updates log the exceptions of the targets
+			}
+			long time = System.currentTimeMillis() - start;
+			synchronized (this) {
+				deliveredUpdates++;
+				totalCallbackTime += time;
+				if (time > maxCallbackTime)
+					maxCallbackTime = time;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of updates waiting to be delivered.
+	 */
+	public synchronized int getQueuedUpdates() {
+		return queuedUpdates;
+	}
+
+	/**
+	 * Returns the number of updates delivered to the targets.
+	 */
+	public synchronized long getDeliveredUpdates() {
+		return deliveredUpdates;
+	}
+
+	/**
+	 * Returns the number of queued updates replaced by a newer update of the same pid.
+	 */
+	public synchronized long getCoalescedUpdates() {
+		return coalescedUpdates;
+	}
+
+	/**
+	 * Returns the average time in milliseconds spent in the callbacks of the targets.
+	 */
+	public synchronized long getAverageCallbackTime() {
+		return deliveredUpdates == 0 ? 0 : totalCallbackTime / deliveredUpdates;
+	}
+
+	/**
+	 * Returns the maximum time in milliseconds spent in a callback of a target.
+	 */
+	public synchronized long getMaxCallbackTime() {
+		return maxCallbackTime;
+	}
+
+	// The updates waiting to be delivered to one target
+	private static class TargetQueue {
+		final Object target;
+		final LinkedList pending = new LinkedList(); // of Update
+		final Map pendingByPid = new HashMap(); // pid -> Update
+		boolean scheduled = false; // true while the queue is ready or being processed by a thread
+
+		TargetQueue(Object target) {
+			this.target = target;
+		}
+	}
+
+	private static class Update {
+		final String pid;
+		Runnable task;
+
+		Update(String pid, Runnable task) {
+			this.pid = pid;
+			this.task = task;
+		}
+	}
+}
@@ -10,10 +10,12 @@
  *******************************************************************************/
 package org.eclipse.equinox.event.tests;
 
-import java.util.Dictionary;
-import java.util.Hashtable;
+import java.util.*;
 import junit.framework.TestCase;
 import org.eclipse.equinox.compendium.tests.Activator;
+import org.eclipse.equinox.internal.event.EventAdminStatistics;
+import org.eclipse.equinox.internal.event.EventHandlerStatistics;
+import org.eclipse.equinox.internal.event.ExtendedEventAdmin;
 import org.osgi.framework.*;
 import org.osgi.service.event.*;
 
@@ -150,4 +152,444 @@ public class EventAdminTest extends TestCase {
 		assertNotNull("Did not receive event published to topic 'a/b/c/d' while listening to 'a/b/c/*'", handler.lastEvent()); //$NON-NLS-1$
 		handlerRegistration.unregister();
 	}
+
+	/*
+	 * Ensures EventAdmin delivers events posted asynchronously to a handler in 
+	 * the order they were posted.
+	 */
+	public void testAsyncEventDeliveryOrder() throws InterruptedException {
+		final int count = 100;
+		final List received = new ArrayList();
+		Dictionary properties = new Hashtable();
+		properties.put(EventConstants.EVENT_TOPIC, "a/b/c"); //$NON-NLS-1$
+		BundleContext bundleContext = Activator.getBundleContext();
+		EventHandler handler = new EventHandler() {
+			public void handleEvent(Event event) {
+				synchronized (received) {
+					received.add(event);
+					if (received.size() == count)
+						received.notifyAll();
+				}
+			}
+		};
+		ServiceRegistration handlerRegistration = bundleContext.registerService(EventHandler.class, handler, properties);
+		Event[] events = new Event[count];
+		for (int i = 0; i < count; i++) {
+			events[i] = new Event("a/b/c", (Dictionary) null); //$NON-NLS-1$
+			eventAdmin.postEvent(events[i]);
+		}
+		synchronized (received) {
+			long end = System.currentTimeMillis() + 10000;
+			while (received.size() < count && System.currentTimeMillis() < end)
+				received.wait(end - System.currentTimeMillis());
+			assertEquals("Wrong number of events received", count, received.size()); //$NON-NLS-1$
+			for (int i = 0; i < count; i++)
+				assertSame("Event received out of order", events[i], received.get(i)); //$NON-NLS-1$
+		}
+		handlerRegistration.unregister();
+	}
+
+	/*
+	 * Ensures the handlers resolved for a topic are resolved again when a 
+	 * handler subscribing to the topic is registered, modified or unregistered
+	 * after an event was published to the topic.
+	 */
+	public void testHandlerCacheInvalidation() {
+		Dictionary properties1 = new Hashtable();
+		properties1.put(EventConstants.EVENT_TOPIC, "a/b/c"); //$NON-NLS-1$
+		BundleContext bundleContext = Activator.getBundleContext();
+		EventHandlerHelper handler1 = new EventHandlerHelper();
+		ServiceRegistration handlerRegistration1 = bundleContext.registerService(EventHandler.class, handler1, properties1);
+		Event event = new Event("a/b/c", (Dictionary) null); //$NON-NLS-1$
+		eventAdmin.sendEvent(event);
+		assertNotNull("Did not receive event published to topic 'a/b/c' while listening to 'a/b/c'", handler1.clearLastEvent()); //$NON-NLS-1$
+
+		Dictionary properties2 = new Hashtable();
+		properties2.put(EventConstants.EVENT_TOPIC, "a/b/*"); //$NON-NLS-1$
+		EventHandlerHelper handler2 = new EventHandlerHelper();
+		ServiceRegistration handlerRegistration2 = bundleContext.registerService(EventHandler.class, handler2, properties2);
+		eventAdmin.sendEvent(event);
+		assertNotNull("Registered handler did not receive event", handler1.clearLastEvent()); //$NON-NLS-1$
+		assertNotNull("Handler registered after the topic was published did not receive event", handler2.clearLastEvent()); //$NON-NLS-1$
+
+		handlerRegistration1.unregister();
+		eventAdmin.sendEvent(event);
+		assertNull("Unregistered handler received event", handler1.lastEvent()); //$NON-NLS-1$
+		assertNotNull("Remaining handler did not receive event", handler2.clearLastEvent()); //$NON-NLS-1$
+
+		properties2.put(EventConstants.EVENT_TOPIC, "x/y/*"); //$NON-NLS-1$
+		handlerRegistration2.setProperties(properties2);
+		eventAdmin.sendEvent(event);
+		assertNull("Handler which no longer listens to the topic received event", handler2.lastEvent()); //$NON-NLS-1$
+		eventAdmin.sendEvent(new Event("x/y/z", (Dictionary) null)); //$NON-NLS-1$
+		assertNotNull("Handler did not receive event for its new topic", handler2.lastEvent()); //$NON-NLS-1$
+		handlerRegistration2.unregister();
+	}
+
+	/*
+	 * Ensures the statistics service reports the events handled by a handler 
+	 * while a handler timeout is configured, and that handlers are not timed 
+	 * without a timeout.
+	 */
+	public void testHandlerStatistics() throws Exception {
+		Dictionary properties = new Hashtable();
+		properties.put(EventConstants.EVENT_TOPIC, "a/b/c"); //$NON-NLS-1$
+		BundleContext bundleContext = Activator.getBundleContext();
+		EventHandlerHelper handler = new EventHandlerHelper();
+		ServiceRegistration handlerRegistration = bundleContext.registerService(EventHandler.class, handler, properties);
+		eventAdmin.sendEvent(new Event("a/b/c", (Dictionary) null)); //$NON-NLS-1$
+		assertNotNull("Did not receive event", handler.lastEvent()); //$NON-NLS-1$
+		assertEquals("Event counted without a timeout", 0, getHandlerStatistics(handlerRegistration).getEventCount()); //$NON-NLS-1$
+		handlerRegistration.unregister();
+
+		restartEventAdmin("10000", null); //$NON-NLS-1$
+		try {
+			handlerRegistration = bundleContext.registerService(EventHandler.class, handler, properties);
+			for (int i = 0; i < 3; i++)
+				eventAdmin.sendEvent(new Event("a/b/c", (Dictionary) null)); //$NON-NLS-1$
+			eventAdmin.sendEvent(new Event("x/y/z", (Dictionary) null)); //$NON-NLS-1$
+			EventHandlerStatistics statistics = getHandlerStatistics(handlerRegistration);
+			assertNotNull("No statistics for handler", statistics); //$NON-NLS-1$
+			assertEquals("Wrong event count", 3, statistics.getEventCount()); //$NON-NLS-1$
+			assertTrue("Wrong max time", statistics.getMaxTime() <= statistics.getTotalTime()); //$NON-NLS-1$
+			assertEquals("Wrong timeout count", 0, statistics.getTimeoutCount()); //$NON-NLS-1$
+			assertFalse("Handler denied", statistics.isDenied()); //$NON-NLS-1$
+			handlerRegistration.unregister();
+			assertNull("Statistics for unregistered handler", getHandlerStatistics(handlerRegistration)); //$NON-NLS-1$
+		} finally {
+			restartEventAdmin(null, null);
+		}
+	}
+
+	/*
+	 * Ensures a handler which hangs is detected while it is still running, is 
+	 * denied further events, and receives events again once its properties are 
+	 * modified.
+	 */
+	public void testHandlerTimeout() throws Exception {
+		restartEventAdmin("200", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			final Object release = new Object();
+			final boolean[] released = new boolean[1];
+			Dictionary properties = new Hashtable();
+			properties.put(EventConstants.EVENT_TOPIC, "a/b/c"); //$NON-NLS-1$
+			BundleContext bundleContext = Activator.getBundleContext();
+			EventHandlerHelper handler = new EventHandlerHelper() {
+				public void handleEvent(Event event) {
+					super.handleEvent(event);
+					if (event.getProperty("hang") == null) //$NON-NLS-1$
+						return;
+					synchronized (release) {
+						while (!released[0]) {
+							try {
+								release.wait();
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+					}
+				}
+			};
+			ServiceRegistration handlerRegistration = bundleContext.registerService(EventHandler.class, handler, properties);
+			Dictionary hang = new Hashtable();
+			hang.put("hang", Boolean.TRUE); //$NON-NLS-1$
+			eventAdmin.postEvent(new Event("a/b/c", hang)); //$NON-NLS-1$
+			try {
+				EventHandlerStatistics statistics = getHandlerStatistics(handlerRegistration);
+				long end = System.currentTimeMillis() + 10000;
+				while (!statistics.isDenied() && System.currentTimeMillis() < end)
+					Thread.sleep(50);
+				assertTrue("Hung handler not denied", statistics.isDenied()); //$NON-NLS-1$
+				assertEquals("Wrong timeout count", 1, statistics.getTimeoutCount()); //$NON-NLS-1$
+				assertEquals("Hung delivery counted as handled", 0, statistics.getEventCount()); //$NON-NLS-1$
+			} finally {
+				synchronized (release) {
+					released[0] = true;
+					release.notifyAll();
+				}
+			}
+
+			handler.clearLastEvent();
+			eventAdmin.sendEvent(new Event("a/b/c", (Dictionary) null)); //$NON-NLS-1$
+			assertNull("Denied handler received event", handler.lastEvent()); //$NON-NLS-1$
+
+			properties.put("modified", Boolean.TRUE); //$NON-NLS-1$
+			handlerRegistration.setProperties(properties);
+			eventAdmin.sendEvent(new Event("a/b/c", (Dictionary) null)); //$NON-NLS-1$
+			assertNotNull("Modified handler did not receive event", handler.lastEvent()); //$NON-NLS-1$
+			EventHandlerStatistics statistics = getHandlerStatistics(handlerRegistration);
+			assertFalse("Modified handler still denied", statistics.isDenied()); //$NON-NLS-1$
+			assertEquals("Timeout counted twice", 1, statistics.getTimeoutCount()); //$NON-NLS-1$
+			handlerRegistration.unregister();
+		} finally {
+			restartEventAdmin(null, null);
+		}
+	}
+
+	/*
+	 * Ensures a batch sent synchronously is delivered in batch order to each 
+	 * handler, which only receives the events for its topics.
+	 */
+	public void testSendEventsOrder() {
+		List received1 = new ArrayList();
+		List received2 = new ArrayList();
+		ServiceRegistration handlerRegistration1 = registerRecordingHandler("a/b/*", received1); //$NON-NLS-1$
+		ServiceRegistration handlerRegistration2 = registerRecordingHandler("a/b/c", received2); //$NON-NLS-1$
+		Event[] events = new Event[] {new Event("a/b/c", (Dictionary) null), new Event("a/b/d", (Dictionary) null), new Event("x/y/z", (Dictionary) null), new Event("a/b/c", (Dictionary) null)}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		((ExtendedEventAdmin) eventAdmin).sendEvents(events);
+		assertEquals("Wrong events received", Arrays.asList(new Event[] {events[0], events[1], events[3]}), received1); //$NON-NLS-1$
+		assertEquals("Wrong events received", Arrays.asList(new Event[] {events[0], events[3]}), received2); //$NON-NLS-1$
+		handlerRegistration1.unregister();
+		handlerRegistration2.unregister();
+	}
+
+	/*
+	 * Ensures a batch posted asynchronously is delivered in batch order, and 
+	 * after batches and single events posted before it.
+	 */
+	public void testPostEventsOrder() throws InterruptedException {
+		List received = new ArrayList();
+		ServiceRegistration handlerRegistration = registerRecordingHandler("a/b/c", received); //$NON-NLS-1$
+		Event[] events = new Event[7];
+		for (int i = 0; i < events.length; i++)
+			events[i] = new Event("a/b/c", (Dictionary) null); //$NON-NLS-1$
+		eventAdmin.postEvent(events[0]);
+		((ExtendedEventAdmin) eventAdmin).postEvents(new Event[] {events[1], events[2], events[3]});
+		((ExtendedEventAdmin) eventAdmin).postEvents(new Event[] {events[4], events[5]});
+		eventAdmin.postEvent(events[6]);
+		waitForEvents(received, events.length);
+		assertEquals("Events received out of order", Arrays.asList(events), received); //$NON-NLS-1$
+		handlerRegistration.unregister();
+	}
+
+	/*
+	 * Ensures a coalesced batch delivers only the last event for each topic, 
+	 * or for each topic and property value, keeping the batch order.
+	 */
+	public void testPostEventsCoalesce() throws InterruptedException {
+		List received = new ArrayList();
+		ServiceRegistration handlerRegistration = registerRecordingHandler("a/b/*", received); //$NON-NLS-1$
+		Event c1 = createEvent("a/b/c", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		Event d1 = createEvent("a/b/d", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		Event c2 = createEvent("a/b/c", "2"); //$NON-NLS-1$ //$NON-NLS-2$
+		Event c1Again = createEvent("a/b/c", "1"); //$NON-NLS-1$ //$NON-NLS-2$
+		Event noId = new Event("a/b/c", (Dictionary) null); //$NON-NLS-1$
+		Event[] events = new Event[] {c1, d1, c2, c1Again, noId};
+
+		((ExtendedEventAdmin) eventAdmin).postEvents(events, null);
+		waitForEvents(received, 2);
+		assertEquals("Wrong events after coalescing by topic", Arrays.asList(new Event[] {d1, noId}), received); //$NON-NLS-1$
+
+		received.clear();
+		((ExtendedEventAdmin) eventAdmin).postEvents(events, "id"); //$NON-NLS-1$
+		waitForEvents(received, 4);
+		assertEquals("Wrong events after coalescing by topic and property", Arrays.asList(new Event[] {d1, c2, c1Again, noId}), received); //$NON-NLS-1$
+		handlerRegistration.unregister();
+	}
+
+	/*
+	 * Ensures events posted asynchronously over several lanes are delivered to 
+	 * each ordered handler in the order they were posted, and that a handler 
+	 * blocked on one lane does not hold back a handler on another lane.
+	 */
+	public void testAsyncLanesOrder() throws Exception {
+		final int lanes = 3;
+		restartEventAdmin(String.valueOf(lanes));
+		final Object release = new Object();
+		final boolean[] released = new boolean[1];
+		try {
+			// ordered handlers are pinned to the lane of their service id
+			List[] received = new List[lanes + 1];
+			ServiceRegistration[] registrations = new ServiceRegistration[lanes + 1];
+			for (int i = 0; i < registrations.length; i++) {
+				received[i] = new ArrayList();
+				registrations[i] = registerRecordingHandler("a/b/c", received[i]); //$NON-NLS-1$
+			}
+			List blockedReceived = new ArrayList();
+			ServiceRegistration blockedRegistration = registerBlockingHandler("a/b/c", blockedReceived, release, released); //$NON-NLS-1$
+			int blockedLane = getLane(blockedRegistration, lanes);
+
+			Event[] events = new Event[50];
+			for (int i = 0; i < events.length; i++) {
+				events[i] = new Event("a/b/c", (Dictionary) null); //$NON-NLS-1$
+				eventAdmin.postEvent(events[i]);
+			}
+			for (int i = 0; i < registrations.length; i++) {
+				if (getLane(registrations[i], lanes) == blockedLane)
+					continue;
+				waitForEvents(received[i], events.length);
+				assertEquals("Events received out of order", Arrays.asList(events), received[i]); //$NON-NLS-1$
+			}
+			synchronized (blockedReceived) {
+				assertEquals("The blocked handler received more events", 1, blockedReceived.size()); //$NON-NLS-1$
+			}
+
+			synchronized (release) {
+				released[0] = true;
+				release.notifyAll();
+			}
+			waitForEvents(blockedReceived, events.length);
+			assertEquals("Events received out of order", Arrays.asList(events), blockedReceived); //$NON-NLS-1$
+			for (int i = 0; i < registrations.length; i++) {
+				waitForEvents(received[i], events.length);
+				assertEquals("Events received out of order", Arrays.asList(events), received[i]); //$NON-NLS-1$
+				registrations[i].unregister();
+			}
+			blockedRegistration.unregister();
+		} finally {
+			synchronized (release) {
+				released[0] = true;
+				release.notifyAll();
+			}
+			restartEventAdmin(null);
+		}
+	}
+
+	/*
+	 * Ensures the handlers which only request unordered delivery are spread 
+	 * over the lanes in turn.
+	 */
+	public void testAsyncUnorderedLanes() throws Exception {
+		final int lanes = 3;
+		restartEventAdmin(String.valueOf(lanes));
+		try {
+			List threads1 = new ArrayList();
+			List threads2 = new ArrayList();
+			ServiceRegistration registration1 = registerUnorderedHandler("a/b/c", threads1); //$NON-NLS-1$
+			ServiceRegistration registration2 = registerUnorderedHandler("a/b/c", threads2); //$NON-NLS-1$
+			for (int i = 0; i < lanes; i++) {
+				eventAdmin.postEvent(new Event("a/b/c", (Dictionary) null)); //$NON-NLS-1$
+				waitForEvents(threads1, i + 1);
+				waitForEvents(threads2, i + 1);
+				assertNotSame("Both handlers were given the same lane", threads1.get(i), threads2.get(i)); //$NON-NLS-1$
+			}
+			// two handlers per event move each handler to another of the three lanes
+			assertEquals("The handler did not get every lane in turn", lanes, new HashSet(threads1).size()); //$NON-NLS-1$
+			assertEquals("The handler did not get every lane in turn", lanes, new HashSet(threads2).size()); //$NON-NLS-1$
+			registration1.unregister();
+			registration2.unregister();
+		} finally {
+			restartEventAdmin(null);
+		}
+	}
+
+	private static int getLane(ServiceRegistration registration, int lanes) {
+		return (int) (((Long) registration.getReference().getProperty(Constants.SERVICE_ID)).longValue() % lanes);
+	}
+
+	private static ServiceRegistration registerBlockingHandler(String topic, final List received, final Object release, final boolean[] released) {
+		Dictionary properties = new Hashtable();
+		properties.put(EventConstants.EVENT_TOPIC, topic);
+		EventHandler handler = new EventHandler() {
+			public void handleEvent(Event event) {
+				synchronized (received) {
+					received.add(event);
+					received.notifyAll();
+				}
+				synchronized (release) {
+					long end = System.currentTimeMillis() + 10000;
+					while (!released[0] && System.currentTimeMillis() < end) {
+						try {
+							release.wait(end - System.currentTimeMillis());
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+			}
+		};
+		return Activator.getBundleContext().registerService(EventHandler.class, handler, properties);
+	}
+
+	private static ServiceRegistration registerUnorderedHandler(String topic, final List threads) {
+		Dictionary properties = new Hashtable();
+		properties.put(EventConstants.EVENT_TOPIC, topic);
+		properties.put(EventConstants.EVENT_DELIVERY, EventConstants.DELIVERY_ASYNC_UNORDERED);
+		EventHandler handler = new EventHandler() {
+			public void handleEvent(Event event) {
+				synchronized (threads) {
+					threads.add(Thread.currentThread());
+					threads.notifyAll();
+				}
+			}
+		};
+		return Activator.getBundleContext().registerService(EventHandler.class, handler, properties);
+	}
+
+	private static Event createEvent(String topic, String id) {
+		Dictionary properties = new Hashtable();
+		properties.put("id", id); //$NON-NLS-1$
+		return new Event(topic, properties);
+	}
+
+	private static ServiceRegistration registerRecordingHandler(String topic, final List received) {
+		Dictionary properties = new Hashtable();
+		properties.put(EventConstants.EVENT_TOPIC, topic);
+		EventHandler handler = new EventHandler() {
+			public void handleEvent(Event event) {
+				synchronized (received) {
+					received.add(event);
+					received.notifyAll();
+				}
+			}
+		};
+		return Activator.getBundleContext().registerService(EventHandler.class, handler, properties);
+	}
+
+	private static void waitForEvents(List received, int count) throws InterruptedException {
+		synchronized (received) {
+			long end = System.currentTimeMillis() + 10000;
+			while (received.size() < count && System.currentTimeMillis() < end)
+				received.wait(end - System.currentTimeMillis());
+			assertEquals("Wrong number of events received", count, received.size()); //$NON-NLS-1$
+		}
+		// give an unexpected extra event a chance to arrive
+		Thread.sleep(100);
+	}
+
+	private EventHandlerStatistics getHandlerStatistics(ServiceRegistration handlerRegistration) {
+		BundleContext bundleContext = Activator.getBundleContext();
+		ServiceReference statisticsReference = bundleContext.getServiceReference(EventAdminStatistics.class.getName());
+		assertNotNull("No statistics service", statisticsReference); //$NON-NLS-1$
+		EventAdminStatistics statistics = (EventAdminStatistics) bundleContext.getService(statisticsReference);
+		try {
+			EventHandlerStatistics[] handlers = statistics.getHandlerStatistics();
+			Object id = handlerRegistration.getReference().getProperty(Constants.SERVICE_ID);
+			for (int i = 0; i < handlers.length; i++)
+				if (id.equals(handlers[i].getReference().getProperty(Constants.SERVICE_ID)))
+					return handlers[i];
+			return null;
+		} catch (IllegalStateException e) {
+			// the handler is unregistered
+			return null;
+		} finally {
+			bundleContext.ungetService(statisticsReference);
+		}
+	}
+
+	private void restartEventAdmin(String timeout, String timeoutLimit) throws BundleException {
+		setProperty("org.eclipse.equinox.event.handler.timeout", timeout); //$NON-NLS-1$
+		setProperty("org.eclipse.equinox.event.handler.timeout.limit", timeoutLimit); //$NON-NLS-1$
+		restartEventAdmin();
+	}
+
+	private void restartEventAdmin(String asyncThreads) throws BundleException {
+		setProperty("org.eclipse.equinox.event.async.threads", asyncThreads); //$NON-NLS-1$
+		restartEventAdmin();
+	}
+
+	private void restartEventAdmin() throws BundleException {
+		Activator.getBundleContext().ungetService(eventAdminReference);
+		Activator.getBundle(Activator.BUNDLE_EVENT).stop();
+		Activator.getBundle(Activator.BUNDLE_EVENT).start();
+		eventAdminReference = Activator.getBundleContext().getServiceReference(EventAdmin.class.getName());
+		eventAdmin = (EventAdmin) Activator.getBundleContext().getService(eventAdminReference);
+	}
+
+	private static void setProperty(String key, String value) {
+		if (value == null)
+			System.getProperties().remove(key);
+		else
+			System.setProperty(key, value);
+	}
 }
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.ds.tests.tb25;
+
+import org.osgi.service.component.ComponentContext;
+
+public class FailingComp {
+  private static int activations = 0;
+
+  protected void activate(ComponentContext ctxt) {
+    synchronized (FailingComp.class) {
+      activations++;
+    }
+    throw new RuntimeException("Test method activate(ComponentContext) is called!");
+  }
+
+  static synchronized int getActivations() {
+    return activations;
+  }
+}
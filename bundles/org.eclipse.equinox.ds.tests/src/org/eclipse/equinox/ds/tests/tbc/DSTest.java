@@ -11,15 +11,20 @@
  *******************************************************************************/
 package org.eclipse.equinox.ds.tests.tbc;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
 import org.eclipse.equinox.ds.tests.BundleInstaller;
 import org.eclipse.equinox.ds.tests.DSTestsActivator;
+import org.eclipse.osgi.framework.console.CommandInterpreter;
+import org.eclipse.osgi.framework.console.CommandProvider;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
@@ -28,6 +33,7 @@ import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.PackagePermission;
 import org.osgi.framework.ServicePermission;
+import org.osgi.framework.ServiceFactory;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.cm.Configuration;
@@ -2521,6 +2527,490 @@ public class DSTest extends TestCase {
     }
   }
 
+  // Builds the components of a bundle on several threads: the row of components of
+  // TB4 is built in waves, the circular references of TB7 are built one by one at
+  // the end and the helper threads share the build lock of the SCR thread
+  public void testParallelActivation() throws Exception {
+    final String TAIL_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component3";
+    final String MIDDLE_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component2";
+    final String HEAD_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component1";
+    final String DYN_BREAKABLE = "org.eclipse.equinox.ds.tests.tb7.DynamicCircuit";
+    final String STATIC_BREAKABLE = "org.eclipse.equinox.ds.tests.tb7.StaticCircuit";
+    final String UNBREAKABLE = "org.eclipse.equinox.ds.tests.tb7.UnbreakableCircuit";
+    // the time a thread waits for the build lock before it builds without it
+    final long LOCK_TIMEOUT = 10000;
+
+    String oldThreads = System.getProperty("equinox.ds.activation_threads");
+    System.setProperty("equinox.ds.activation_threads", "4");
+    Bundle tb4 = null;
+    Bundle tb7 = null;
+    try {
+      restartSCR();
+
+      long start = System.currentTimeMillis();
+      tb4 = installBundle("tb4");
+      tb4.start();
+      tb7 = installBundle("tb7");
+      tb7.start();
+      waitBundleStart();
+
+      // the row of components is built in successive waves
+      assertTrue("The Component3 should be available", checkAvailability(TAIL_CLASS));
+      assertTrue("The Component2 should be available", checkAvailability(MIDDLE_CLASS));
+      assertTrue("The Component1 should be available", checkAvailability(HEAD_CLASS));
+      assertTrue("The ServiceProvider should be activated", TestHelper.isActivatedServiceProvider());
+
+      // the circular references are handled as when building on a single thread
+      assertTrue("The first service from the breakable dynamic circularity should be available",
+          checkAvailability(DYN_BREAKABLE + "1"));
+      assertTrue("The second service from the breakable dynamic circularity should be available",
+          checkAvailability(DYN_BREAKABLE + "2"));
+      assertTrue("The first service from the breakable static circularity should be available",
+          checkAvailability(STATIC_BREAKABLE + "1"));
+      assertTrue("The second service from the breakable static circularity should be available",
+          checkAvailability(STATIC_BREAKABLE + "2"));
+      assertTrue("The first service from the unbreakable circularity shouldn't be available",
+          !checkAvailability(UNBREAKABLE + "1"));
+      assertTrue("The second service from the unbreakable circularity shouldn't be available",
+          !checkAvailability(UNBREAKABLE + "2"));
+
+      // a helper thread not sharing the lock would wait for it until the timeout
+      long time = System.currentTimeMillis() - start - (synchronousBuild ? 0 : 2 * timeout);
+      assertTrue("The helper threads should not wait for the build lock (" + time + "ms)", time < LOCK_TIMEOUT);
+    } finally {
+      if (tb7 != null) {
+        uninstallBundle(tb7);
+      }
+      if (tb4 != null) {
+        uninstallBundle(tb4);
+      }
+      if (oldThreads == null) {
+        System.getProperties().remove("equinox.ds.activation_threads");
+      } else {
+        System.setProperty("equinox.ds.activation_threads", oldThreads);
+      }
+      restartSCR();
+    }
+  }
+
+  // Loads the component descriptions of the bundles started before SCR on several
+  // parse threads: the components of every bundle are registered
+  public void testParallelParse() throws Exception {
+    final String TAIL_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component3";
+    final String HEAD_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component1";
+    final String DYN_BREAKABLE = "org.eclipse.equinox.ds.tests.tb7.DynamicCircuit";
+
+    String oldThreads = System.getProperty("equinox.ds.parse_threads");
+    System.setProperty("equinox.ds.parse_threads", "3");
+    Bundle tb4 = null;
+    Bundle tb7 = null;
+    Bundle tb8 = null;
+    try {
+      tb4 = installBundle("tb4");
+      tb4.start();
+      tb7 = installBundle("tb7");
+      tb7.start();
+      tb8 = installBundle("tb8");
+      tb8.start();
+      waitBundleStart();
+
+      // without the cache the four bundles are parsed on the parse threads when SCR starts
+      restartSCRWithoutCache();
+      assertTrue("TB1 should be parsed", isParsed(tb1));
+      assertTrue("TB4 should be parsed", isParsed(tb4));
+      assertTrue("TB7 should be parsed", isParsed(tb7));
+      assertTrue("TB8 should be parsed", isParsed(tb8));
+
+      assertNotNull("The BindUnbindSuccessor component should be available", trackerExtendedClass.getService());
+      assertTrue("The Component3 should be available", checkAvailability(TAIL_CLASS));
+      assertTrue("The Component1 should be available", checkAvailability(HEAD_CLASS));
+      assertTrue("The first service from the breakable dynamic circularity should be available",
+          checkAvailability(DYN_BREAKABLE + "1"));
+      assertTrue("The second service from the breakable dynamic circularity should be available",
+          checkAvailability(DYN_BREAKABLE + "2"));
+      assertTrue("The root1 component should be available", isNSComponentAvailable(101));
+      assertTrue("The root3 component should not be available", !isNSComponentAvailable(103));
+      assertTrue("The nonroot2 component should be available", isNSComponentAvailable(112));
+    } finally {
+      if (tb8 != null) {
+        uninstallBundle(tb8);
+      }
+      if (tb7 != null) {
+        uninstallBundle(tb7);
+      }
+      if (tb4 != null) {
+        uninstallBundle(tb4);
+      }
+      restoreProperty("equinox.ds.parse_threads", oldThreads);
+      restartSCR();
+    }
+  }
+
+  // A description which fails to parse on one of the parse threads does not drop the
+  // components parsed by the same job or by the other jobs
+  public void testParallelParseFailure() throws Exception {
+    final String PARSED = "org.eclipse.equinox.ds.tests.tb26.parsed";
+    final String BROKEN = "org.eclipse.equinox.ds.tests.tb26.broken";
+    final String HEAD_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component1";
+    final String DYN_BREAKABLE = "org.eclipse.equinox.ds.tests.tb7.DynamicCircuit";
+
+    String oldThreads = System.getProperty("equinox.ds.parse_threads");
+    System.setProperty("equinox.ds.parse_threads", "4");
+    Bundle tb4 = null;
+    Bundle tb7 = null;
+    Bundle tb26 = null;
+    try {
+      tb26 = installBundle("tb26");
+      tb26.start();
+      tb4 = installBundle("tb4");
+      tb4.start();
+      tb7 = installBundle("tb7");
+      tb7.start();
+      waitBundleStart();
+
+      restartSCRWithoutCache();
+      assertTrue("TB26 should be parsed", isParsed(tb26));
+      assertNull("The component with the broken description should not be available", getBaseService(BROKEN));
+      assertNotNull("The component of TB26 with a valid description should be available", getBaseService(PARSED));
+
+      // the other bundles are not affected
+      assertNotNull("The BindUnbindSuccessor component should be available", trackerExtendedClass.getService());
+      assertTrue("The Component1 should be available", checkAvailability(HEAD_CLASS));
+      assertTrue("The first service from the breakable dynamic circularity should be available",
+          checkAvailability(DYN_BREAKABLE + "1"));
+    } finally {
+      if (tb7 != null) {
+        uninstallBundle(tb7);
+      }
+      if (tb4 != null) {
+        uninstallBundle(tb4);
+      }
+      if (tb26 != null) {
+        uninstallBundle(tb26);
+      }
+      restoreProperty("equinox.ds.parse_threads", oldThreads);
+      restartSCR();
+    }
+  }
+
+  // Caches the component descriptions in the record log storage: the components of
+  // TB4 are saved when the bundle is started and read from the log after SCR restarts
+  public void testRecordFileStorage() throws Exception {
+    final String TAIL_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component3";
+    final String MIDDLE_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component2";
+    final String HEAD_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component1";
+
+    String oldStorage = System.getProperty("scr.storage.class");
+    System.setProperty("scr.storage.class", "org.eclipse.equinox.internal.ds.storage.file.RecordFileStorage");
+    Bundle tb4 = null;
+    try {
+      restartSCR();
+
+      tb4 = installBundle("tb4");
+      tb4.start();
+      waitBundleStart();
+      assertTrue("The Component3 should be available", checkAvailability(TAIL_CLASS));
+      assertTrue("The Component2 should be available", checkAvailability(MIDDLE_CLASS));
+      assertTrue("The Component1 should be available", checkAvailability(HEAD_CLASS));
+
+      assertTrue("TB4 should be parsed when it is started", isParsed(tb4));
+
+      // the components are read from the log
+      restartSCR();
+      assertTrue("The Component3 should be available after SCR restart", checkAvailability(TAIL_CLASS));
+      assertTrue("The Component2 should be available after SCR restart", checkAvailability(MIDDLE_CLASS));
+      assertTrue("The Component1 should be available after SCR restart", checkAvailability(HEAD_CLASS));
+      assertTrue("TB4 should not be parsed again after SCR restart", !isParsed(tb4));
+      assertTrue("TB1 should not be parsed again after SCR restart", !isParsed(tb1));
+
+      // the removal of the bundle does not drop the components of the other bundles
+      uninstallBundle(tb4);
+      tb4 = null;
+      restartSCR();
+      assertTrue("The Component1 should not be available", !checkAvailability(HEAD_CLASS));
+      assertNotNull("The BindUnbindSuccessor component should be available", trackerExtendedClass.getService());
+
+      tb4 = installBundle("tb4");
+      tb4.start();
+      waitBundleStart();
+      assertTrue("The Component1 should be available after the bundle is installed again", checkAvailability(HEAD_CLASS));
+    } finally {
+      if (tb4 != null) {
+        uninstallBundle(tb4);
+      }
+      if (oldStorage == null) {
+        System.getProperties().remove("scr.storage.class");
+      } else {
+        System.setProperty("scr.storage.class", oldStorage);
+      }
+      restartSCR();
+    }
+  }
+
+  // A record of the log torn by a crash is dropped and a record with a wrong checksum
+  // is skipped: the components of the bundle are parsed again and saved anew
+  public void testRecordFileStorageDamagedRecords() throws Exception {
+    final String HEAD_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component1";
+
+    String oldStorage = System.getProperty("scr.storage.class");
+    System.setProperty("scr.storage.class", "org.eclipse.equinox.internal.ds.storage.file.RecordFileStorage");
+    Bundle tb4 = null;
+    try {
+      restartSCR();
+      File records = getSCRDataFile("SCR.records");
+      File index = getSCRDataFile("SCR.index");
+
+      // the record of TB4 is the last one of the log
+      tb4 = installBundle("tb4");
+      tb4.start();
+      waitBundleStart();
+      assertTrue("The Component1 should be available", checkAvailability(HEAD_CLASS));
+      stopSCR();
+      long length = records.length();
+
+      // a record appended after the index was saved is torn
+      RandomAccessFile file = new RandomAccessFile(records, "rw");
+      try {
+        file.seek(length);
+        file.write(new byte[] {1, 0, 0, 0});
+      } finally {
+        file.close();
+      }
+      startSCR();
+      assertTrue("The Component1 should be available after the torn record is dropped", checkAvailability(HEAD_CLASS));
+      assertTrue("TB4 should not be parsed because of a torn record", !isParsed(tb4));
+      stopSCR();
+      assertEquals("The torn record should be dropped from the log", length, records.length());
+
+      // the checksum of the record of TB4 does not match its data
+      file = new RandomAccessFile(records, "rw");
+      try {
+        file.seek(length - 1);
+        int last = file.read();
+        file.seek(length - 1);
+        file.write(last ^ 0xFF);
+      } finally {
+        file.close();
+      }
+      startSCR();
+      assertTrue("The Component1 should be available after the damaged record is skipped", checkAvailability(HEAD_CLASS));
+      assertTrue("TB4 should be parsed again when its record is damaged", isParsed(tb4));
+      assertTrue("TB1 should not be parsed because of the damaged record of TB4", !isParsed(tb1));
+
+      // the parsed components are saved again
+      restartSCR();
+      assertTrue("The Component1 should be available after SCR restart", checkAvailability(HEAD_CLASS));
+      assertTrue("TB4 should not be parsed after its components are saved again", !isParsed(tb4));
+      stopSCR();
+
+      // without the index the whole log is read and the torn last record is dropped
+      length = records.length();
+      file = new RandomAccessFile(records, "rw");
+      try {
+        file.setLength(length - 4);
+      } finally {
+        file.close();
+      }
+      assertTrue("The index file should be deleted", index.delete());
+      startSCR();
+      assertTrue("The Component1 should be available after the torn record is dropped", checkAvailability(HEAD_CLASS));
+      assertTrue("TB4 should be parsed again when its record is torn", isParsed(tb4));
+      assertTrue("TB1 should be read from the log without the index", !isParsed(tb1));
+    } finally {
+      if (tb4 != null) {
+        uninstallBundle(tb4);
+      }
+      if (oldStorage == null) {
+        System.getProperties().remove("scr.storage.class");
+      } else {
+        System.setProperty("scr.storage.class", oldStorage);
+      }
+      restartSCR();
+    }
+  }
+
+  // The records of the uninstalled bundles are dropped from the log when SCR stops
+  // and the log holds more dead records than live ones
+  public void testRecordFileStorageCompaction() throws Exception {
+    final String HEAD_CLASS = "org.eclipse.equinox.ds.tests.tb4.Component1";
+    // the log is not compacted while its dead records take less than this
+    final long COMPACT_THRESHOLD = 64 * 1024;
+
+    String oldStorage = System.getProperty("scr.storage.class");
+    System.setProperty("scr.storage.class", "org.eclipse.equinox.internal.ds.storage.file.RecordFileStorage");
+    Bundle tb4 = null;
+    try {
+      restartSCR();
+      File records = getSCRDataFile("SCR.records");
+      long initial = records.length();
+
+      // every uninstalled TB4 leaves a dead record in the log
+      for (int i = 0; i < 200 && records.length() < initial + 4 * COMPACT_THRESHOLD; i++) {
+        tb4 = installBundle("tb4");
+        tb4.start();
+        waitBundleStart();
+        uninstallBundle(tb4);
+        tb4 = null;
+      }
+      long length = records.length();
+      assertTrue("The log should grow with the records of TB4", length >= initial + 4 * COMPACT_THRESHOLD);
+
+      restartSCR();
+      assertTrue("The log should be compacted when SCR stops (" + records.length() + " bytes)", records.length() < COMPACT_THRESHOLD);
+      assertNotNull("The BindUnbindSuccessor component should be available", trackerExtendedClass.getService());
+      assertTrue("TB1 should be read from the compacted log", !isParsed(tb1));
+
+      // the compacted log is appended to
+      tb4 = installBundle("tb4");
+      tb4.start();
+      waitBundleStart();
+      restartSCR();
+      assertTrue("The Component1 should be available after SCR restart", checkAvailability(HEAD_CLASS));
+      assertTrue("TB4 should be read from the compacted log", !isParsed(tb4));
+    } finally {
+      if (tb4 != null) {
+        uninstallBundle(tb4);
+      }
+      if (oldStorage == null) {
+        System.getProperties().remove("scr.storage.class");
+      } else {
+        System.setProperty("scr.storage.class", oldStorage);
+      }
+      restartSCR();
+    }
+  }
+
+  // Checks the output of the parseTimes console command and of its pt shortcut
+  public void testParseTimesCommand() throws Exception {
+    Bundle tb4 = installBundle("tb4");
+    try {
+      tb4.start();
+      waitBundleStart();
+
+      CommandProvider scrCommands = getSCRCommandProvider();
+      assertNotNull("The SCR command provider should be registered", scrCommands);
+
+      String output = executeCommand(scrCommands, "_parseTimes", new String[] {Long.toString(tb4.getBundleId())});
+      String[] lines = output.split("\n");
+      assertEquals("The parse times of one bundle should be printed: " + output, 3, lines.length);
+      assertTrue("The parse time of TB4 should be printed: " + output, lines[1].startsWith(tb4.getBundleId() + "\t"));
+      assertTrue("TB4 should be parsed: " + output, lines[1].indexOf("ms\t") > 0);
+
+      // the shortcut lists all bundles with components
+      output = executeCommand(scrCommands, "_pt", new String[0]);
+      assertTrue("The parse time of TB4 should be printed: " + output, output.indexOf("\n" + tb4.getBundleId() + "\t") >= 0);
+      assertTrue("The parse time of TB1 should be printed: " + output, output.indexOf("\n" + tb1.getBundleId() + "\t") >= 0);
+      assertTrue("Bundles without components should not be printed: " + output,
+          output.indexOf("\n" + getContext().getBundle().getBundleId() + "\t") < 0);
+    } finally {
+      uninstallBundle(tb4);
+    }
+  }
+
+  // A component which failed to activate is only built again on the events of the
+  // services it references: the events of the other services do not re-resolve it
+  public void testUnrelatedServiceEvents() throws Exception {
+    final String COUNTER = "org.eclipse.equinox.ds.tests.tb25.counter";
+    Bundle tb25 = installBundle("tb25");
+    ServiceRegistration unrelated = null;
+    ServiceRegistration dependency = null;
+    try {
+      tb25.start();
+      waitBundleStart();
+      int activations = getBaseConfigData(COUNTER);
+      assertTrue("The failing component should have been activated", activations > 0);
+
+      unrelated = registerFactoryService("org.eclipse.equinox.ds.tests.tb25.Unrelated");
+      Hashtable props = new Hashtable();
+      props.put("unrelated.modified", Boolean.TRUE);
+      unrelated.setProperties(props);
+      sleep0(timeout);
+      assertEquals("The failing component should not be built again on the events of an unrelated service",
+          activations, getBaseConfigData(COUNTER));
+
+      dependency = registerFactoryService("org.eclipse.equinox.ds.tests.tb25.Dependency");
+      sleep0(timeout);
+      assertTrue("The failing component should be built again when a referenced service is registered",
+          getBaseConfigData(COUNTER) > activations);
+    } finally {
+      if (dependency != null) {
+        dependency.unregister();
+      }
+      if (unrelated != null) {
+        unrelated.unregister();
+      }
+      uninstallBundle(tb25);
+    }
+  }
+
+  // Registers a service under a class name the test bundle cannot load
+  private ServiceRegistration registerFactoryService(String clazz) {
+    return getContext().registerService(clazz, new ServiceFactory() {
+      public Object getService(Bundle bundle, ServiceRegistration registration) {
+        return null;
+      }
+
+      public void ungetService(Bundle bundle, ServiceRegistration registration, Object service) {
+      }
+    }, null);
+  }
+
+  // Replays a trace of service registrations, modifications and unregistrations and
+  // reports the time SCR needs to process it. Most of the services are not referenced
+  // by any component; the rest match a referenced interface but not the target filter.
+  // This is a performance test, it only runs if the scr.test.perf property is true
+  public void testServiceChurn() throws Exception {
+    if (!Boolean.getBoolean("scr.test.perf")) {
+      return;
+    }
+    final String REFERENCED_INTERFACE = "org.eclipse.equinox.ds.tests.tb1.impl.AnotherComponent";
+    final String CHURN_INTERFACE = "org.eclipse.equinox.ds.tests.tbc.ChurnService";
+    int services = getSystemProperty("scr.test.churn.services", 500);
+    int interfaces = 50;
+
+    Object s = trackerExtendedClass.getService();
+    assertNotNull("The BindUnbindSuccessor component should be available", s);
+    int boundCount = ((BoundTester) s).getBoundObjectsCount();
+
+    Random random = new Random(services);
+    ServiceRegistration[] registrations = new ServiceRegistration[services];
+    int events = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < services * 4; i++) {
+      int index = random.nextInt(services);
+      if (registrations[index] == null) {
+        Hashtable props = new Hashtable();
+        props.put("churn.index", new Integer(index));
+        String[] classes = (index % 10 == 0) ? new String[] {CHURN_INTERFACE + index % interfaces, REFERENCED_INTERFACE}
+            : new String[] {CHURN_INTERFACE + index % interfaces};
+        registrations[index] = getContext().registerService(classes, new Object(), props);
+      } else if (random.nextBoolean()) {
+        Hashtable props = new Hashtable();
+        props.put("churn.index", new Integer(index));
+        props.put("churn.modified", Boolean.TRUE);
+        registrations[index].setProperties(props);
+      } else {
+        registrations[index].unregister();
+        registrations[index] = null;
+      }
+      events++;
+    }
+    for (int i = 0; i < services; i++) {
+      if (registrations[i] != null) {
+        registrations[i].unregister();
+        events++;
+      }
+    }
+    long time = System.currentTimeMillis() - start;
+    System.out.println("[Declarative Service TC] Service churn: " + events + " service events processed in " + time + "ms");
+
+    s = trackerExtendedClass.getService();
+    assertNotNull("The BindUnbindSuccessor component should still be available", s);
+    assertEquals("The services not matching the target filter should not be bound", boundCount, ((BoundTester) s)
+        .getBoundObjectsCount());
+    assertNotNull("The SAC component should still be available", trackerSAC.getServiceReference());
+  }
+
   /**
    * Searches for component with name componentName which provides
    * PropertiesProvider. Returns value of its "config.base.data" property.
@@ -2574,6 +3064,114 @@ public class DSTest extends TestCase {
     return DSTestsActivator.getContext();
   }
 
+  private CommandProvider getSCRCommandProvider() throws InvalidSyntaxException {
+    ServiceReference[] refs = getContext().getServiceReferences(CommandProvider.class.getName(), null);
+    for (int i = 0; refs != null && i < refs.length; i++) {
+      if ("org.eclipse.equinox.ds".equals(refs[i].getBundle().getSymbolicName())) {
+        return (CommandProvider) getContext().getService(refs[i]);
+      }
+    }
+    return null;
+  }
+
+  // runs a console command of the provider and returns what it printed
+  private String executeCommand(CommandProvider provider, String command, final String[] args) throws Exception {
+    final StringBuffer output = new StringBuffer();
+    CommandInterpreter intp = new CommandInterpreter() {
+      private int next = 0;
+
+      public String nextArgument() {
+        return next < args.length ? args[next++] : null;
+      }
+
+      public Object execute(String cmd) {
+        return null;
+      }
+
+      public void print(Object o) {
+        output.append(o);
+      }
+
+      public void println() {
+        output.append('\n');
+      }
+
+      public void println(Object o) {
+        output.append(o).append('\n');
+      }
+
+      public void printStackTrace(Throwable t) {
+        output.append(t).append('\n');
+      }
+
+      public void printDictionary(Dictionary dic, String title) {
+        output.append(title).append('\n');
+      }
+
+      public void printBundleResource(Bundle bundle, String resource) {
+        output.append(resource).append('\n');
+      }
+    };
+    provider.getClass().getMethod(command, new Class[] {CommandInterpreter.class}).invoke(provider, new Object[] {intp});
+    return output.toString();
+  }
+
+  // restarts the SCR so that it reads its configuration properties again
+  private void restartSCR() throws BundleException {
+    stopSCR();
+    startSCR();
+  }
+
+  private void restoreProperty(String key, String value) {
+    if (value == null) {
+      System.getProperties().remove(key);
+    } else {
+      System.setProperty(key, value);
+    }
+  }
+
+  // restarts the SCR after deleting the component descriptions cached by the default storage
+  private void restartSCRWithoutCache() throws BundleException {
+    File cache = getSCRDataFile("SCR");
+    stopSCR();
+    cache.delete();
+    startSCR();
+  }
+
+  private void stopSCR() throws BundleException {
+    getSCRBundle().stop(Bundle.STOP_TRANSIENT);
+  }
+
+  private void startSCR() throws BundleException {
+    getSCRBundle().start(Bundle.START_TRANSIENT);
+    waitBundleStart();
+  }
+
+  private Bundle getSCRBundle() {
+    Bundle[] bundles = getContext().getBundles();
+    for (int i = 0; i < bundles.length; i++) {
+      if ("org.eclipse.equinox.ds".equals(bundles[i].getSymbolicName())) {
+        return bundles[i];
+      }
+    }
+    fail("The SCR bundle is not installed");
+    return null;
+  }
+
+  // a file in the data area of the SCR bundle, which has to be active
+  private File getSCRDataFile(String name) {
+    return getSCRBundle().getBundleContext().getDataFile(name);
+  }
+
+  // whether the SCR parsed the component descriptions of the bundle since it was started
+  private boolean isParsed(Bundle bundle) throws Exception {
+    CommandProvider scrCommands = getSCRCommandProvider();
+    assertNotNull("The SCR command provider should be registered", scrCommands);
+    String output = executeCommand(scrCommands, "_parseTimes", new String[] {Long.toString(bundle.getBundleId())});
+    String[] lines = output.split("\n");
+    return lines[1].indexOf("ms\t") > 0;
+  }
+
   private Bundle installBundle(String bundle) throws BundleException {
     Bundle b = installer.installBundle(bundle);
     return b;
@@ -56,6 +56,8 @@ public class Activator implements BundleActivator, SynchronousBundleListener, Se
 	public static boolean PERF;
 	public static boolean DBSTORE;
 	public static boolean INSTANTIATE_ALL;
+	public static int ACTIVATION_THREADS;
+	public static int PARSE_THREADS;
 	public static boolean startup;
 
 	static long time[] = null;
@@ -83,6 +85,11 @@ public class Activator implements BundleActivator, SynchronousBundleListener, Se
 
 		WorkThread.IDLE_TIMEOUT = getInteger("equinox.ds.idle_timeout", 1000); //$NON-NLS-1$
 		WorkThread.BLOCK_TIMEOUT = getInteger("equinox.ds.block_timeout", 30000); //$NON-NLS-1$
+		// the number of threads building components in parallel; 1 builds them one by one
+		ACTIVATION_THREADS = getInteger("equinox.ds.activation_threads", 1); //$NON-NLS-1$
+		// the number of threads parsing the component definitions of the bundles started before SCR;
+		// the bundles started later are parsed one by one when their STARTED event is delivered
+		PARSE_THREADS = getInteger("equinox.ds.parse_threads", 1); //$NON-NLS-1$
 
 		try {
 			bc.addServiceListener(this, "(objectClass=" + ConfigurationAdmin.class.getName() + ')'); //$NON-NLS-1$
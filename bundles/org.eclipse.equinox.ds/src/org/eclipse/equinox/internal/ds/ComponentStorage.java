@@ -14,12 +14,13 @@ package org.eclipse.equinox.internal.ds;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.util.Enumeration;
-import java.util.Vector;
+import java.net.URLConnection;
+import java.util.*;
 import org.eclipse.equinox.internal.ds.model.DeclarationParser;
 import org.eclipse.osgi.util.ManifestElement;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
 import org.osgi.service.component.ComponentConstants;
 import org.osgi.service.log.LogService;
 
@@ -30,7 +31,11 @@ import org.osgi.service.log.LogService;
 
 public abstract class ComponentStorage {
 
-	private final DeclarationParser parser = new DeclarationParser();
+	// the parsers which are not in use. A parser is not thread safe so each parsing thread takes its own
+	private final Vector idleParsers = new Vector(2);
+
+	// key - Long bundle id; value - ParseTime of the last parsing of the bundle's component definitions
+	private final Hashtable parseTimes = new Hashtable(11);
 
 	/**
 	 * This method will load the component definitions from a bundle. The
@@ -53,13 +58,28 @@ public abstract class ComponentStorage {
 	 */
 	public abstract void stop();
 
+	/**
+	 * Returns the time spent parsing the component definitions of the bundles. Bundles
+	 * whose components were loaded from the cache have no entry.
+	 * 
+	 * @return a Hashtable with Long bundle ids as keys and ParseTime values
+	 */
+	public Hashtable getParseTimes() {
+		return (Hashtable) parseTimes.clone();
+	}
+
 	protected Vector parseXMLDeclaration(Bundle bundle, String dsHeader) throws Exception {
 		Vector components = new Vector();
 		if (dsHeader == null)
 			return components;
+		long start = System.currentTimeMillis();
 		ManifestElement[] elements = ManifestElement.parseHeader(ComponentConstants.SERVICE_COMPONENT, dsHeader);
 		// the parser is not thread safe!!!
-		synchronized (parser) {
+		DeclarationParser parser;
+		synchronized (idleParsers) {
+			parser = idleParsers.isEmpty() ? new DeclarationParser() : (DeclarationParser) idleParsers.remove(idleParsers.size() - 1);
+		}
+		try {
 			// process all definition file
 			for (int i = 0; i < elements.length; i++) {
 				String[] definitionFiles = elements[i].getValueComponents();
@@ -109,11 +129,67 @@ public abstract class ComponentStorage {
 			} // end for elements
 
 			components = parser.components;
+		} finally {
 			// make sure the clean-up the parser cache, for the next bundle to
 			// work properly!!!
 			parser.components = null;
+			idleParsers.addElement(parser);
 		}
+		parseTimes.put(new Long(bundle.getBundleId()), new ParseTime(System.currentTimeMillis() - start, components == null ? 0 : components.size()));
 		return components;
 	}
 
+	/**
+	 * The last modified timestamp of the bundle. Should only be called in development mode
+	 * 
+	 * @param bundle
+	 * @return the last modified timestamp of the bundle
+	 */
+	protected long getLastModifiedTimestamp(Bundle bundle) {
+		if (bundle == null)
+			return 0;
+		long result = 0;
+		ManifestElement[] elements = parseManifestHeader(bundle);
+		for (int i = 0; i < elements.length; i++) {
+			URL componentURL = bundle.getEntry(elements[i].getValue());
+			if (componentURL != null) {
+				try {
+					URLConnection connection = componentURL.openConnection();
+					long lastModified = connection.getLastModified();
+					if (lastModified > result)
+						result = lastModified;
+				} catch (IOException e) {
+					//last modified cannot be calculated. should force reparse 
+					return Long.MAX_VALUE;
+				}
+			}
+		}
+		return result;
+	}
+
+	private ManifestElement[] parseManifestHeader(Bundle bundle) {
+		Dictionary headers = bundle.getHeaders(""); //$NON-NLS-1$
+		String files = (String) headers.get(ComponentConstants.SERVICE_COMPONENT);
+		if (files == null)
+			return new ManifestElement[0];
+		try {
+			return ManifestElement.parseHeader(ComponentConstants.SERVICE_COMPONENT, files);
+		} catch (BundleException e) {
+			Activator.log(bundle.getBundleContext(), LogService.LOG_ERROR, Messages.ERROR_PARSING_MANIFEST_HEADER, e);
+			return new ManifestElement[0];
+		}
+	}
+
+	/**
+	 * The time spent parsing the component definitions of a bundle
+	 */
+	public static class ParseTime {
+		public final long time;
+		public final int components;
+
+		ParseTime(long time, int components) {
+			this.time = time;
+			this.components = components;
+		}
+	}
 }
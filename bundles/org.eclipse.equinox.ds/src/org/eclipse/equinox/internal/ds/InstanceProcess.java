@@ -61,6 +61,8 @@ public class InstanceProcess {
 	Object lock = new Object();
 	//used to count the number of times a lock is held when required recursively 
 	int lockCounter = 0;
+	//the threads building components in parallel on behalf of the working thread. They share its lock
+	Vector parallelThreads = new Vector(4);
 
 	/**
 	 * Handle Instance processing building and disposing.
@@ -90,10 +92,10 @@ public class InstanceProcess {
 				busyBuilding = true;
 				lockCounter++;
 				workingThread = currentThread;
-			} else if (workingThread == currentThread) {
+			} else if (workingThread == currentThread || parallelThreads.contains(currentThread)) {
 				//increase the lock counter - the lock is required recursively
 				lockCounter++;
-			} else if (workingThread != currentThread) {
+			} else {
 				long start = System.currentTimeMillis();
 				long timeToWait = waitTime;
 				boolean lockSucceeded = false;
@@ -126,8 +128,8 @@ public class InstanceProcess {
 	void freeLock() {
 		synchronized (lock) {
 			if (busyBuilding) {
-				if (workingThread == Thread.currentThread()) {
-					//only the thread holding the lock can release it
+				if (workingThread == Thread.currentThread() || parallelThreads.contains(Thread.currentThread())) {
+					//only the threads holding the lock can release it
 					lockCounter--;
 				}
 				// release the lock in case the lock counter has decreased to 0
@@ -150,8 +152,6 @@ public class InstanceProcess {
 	 */
 	public void buildComponents(Vector list, boolean security) {
 		ServiceComponentProp scp = null;
-		ServiceComponent sc;
-		String factoryPid = null;
 
 		// loop through SCP list of enabled
 		if (list != null) {
@@ -169,110 +169,230 @@ public class InstanceProcess {
 				listToBuild.addElement(scp);
 			}
 			freeLock();
+			if (Activator.ACTIVATION_THREADS > 1 && listToBuild.size() > 1) {
+				buildComponentsInParallel(listToBuild, security);
+				return;
+			}
 			for (int i = 0; i < listToBuild.size(); i++) {
-				scp = (ServiceComponentProp) listToBuild.elementAt(i);
-				getLock();
-				if (scp.getState() != Component.STATE_ACTIVATING) {
-					//no need to build the component:
-					// 1) it is disposed or about to be disposed
-					// 2) it is already built or being built
-					freeLock();
-					continue;
+				buildComponentConfiguration((ServiceComponentProp) listToBuild.elementAt(i), security);
+			} // end for
+		} // end if (list != null)
+	}
+
+	/**
+	 * Builds a component configuration marked as activating by {@link #buildComponents(Vector, boolean)}
+	 * 
+	 * @param scp the component configuration to build
+	 * @param security specifies whether to use security privileged call
+	 */
+	private void buildComponentConfiguration(ServiceComponentProp scp, boolean security) {
+		ServiceComponent sc;
+		String factoryPid = null;
+		getLock();
+		if (scp.getState() != Component.STATE_ACTIVATING) {
+			//no need to build the component:
+			// 1) it is disposed or about to be disposed
+			// 2) it is already built or being built
+			freeLock();
+			return;
+		}
+		long start = 0l;
+		boolean successfullyBuilt = true;
+		try {
+			if (Activator.PERF) {
+				start = System.currentTimeMillis();
+				Activator.log.info("[DS perf] Start building component " + scp); //$NON-NLS-1$
+			}
+			sc = scp.serviceComponent;
+			if (sc.immediate || (sc.factory == null && Activator.INSTANTIATE_ALL)) {
+				if (Activator.DEBUG) {
+					Activator.log.debug("InstanceProcess.buildComponents(): building immediate component " + scp.name, null); //$NON-NLS-1$
 				}
-				long start = 0l;
-				boolean successfullyBuilt = true;
-				try {
-					if (Activator.PERF) {
-						start = System.currentTimeMillis();
-						Activator.log.info("[DS perf] Start building component " + scp); //$NON-NLS-1$
+				if (scp.instances.isEmpty()) {
+					try {
+						buildComponent(null, scp, null, security);
+					} catch (Throwable e) {
+						resolver.reorderSCP(scp);
+						successfullyBuilt = false;
+						if (!(e instanceof ComponentException)) {
+							Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.CANNOT_BUILD_COMPONENT, scp), e);
+						}
+					}
+				}
+				if (successfullyBuilt) {
+					if (sc.serviceInterfaces != null) {
+						// this component registers service
+						//the service will be registered only if the component was successfully built
+
+						// this will create either plain service component registration
+						// or a service factory registration
+						registerService(scp, sc.serviceFactory, null);
 					}
-					sc = scp.serviceComponent;
-					if (sc.immediate || (sc.factory == null && Activator.INSTANTIATE_ALL)) {
+					scp.setState(Component.STATE_ACTIVE);
+				}
+			} else {
+
+				// ComponentFactory
+				if (sc.factory != null) {
+					// check if it is NOT a component config created by a
+					// component factory
+					if (scp.isComponentFactory()) {
 						if (Activator.DEBUG) {
-							Activator.log.debug("InstanceProcess.buildComponents(): building immediate component " + scp.name, null); //$NON-NLS-1$
+							Activator.log.debug("InstanceProcess.buildComponents(): building component factory " + scp.name, null); //$NON-NLS-1$
 						}
-						if (scp.instances.isEmpty()) {
-							try {
-								buildComponent(null, scp, null, security);
-							} catch (Throwable e) {
-								resolver.reorderSCP(scp);
-								successfullyBuilt = false;
-								if (!(e instanceof ComponentException)) {
-									Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.CANNOT_BUILD_COMPONENT, scp), e);
-								}
-							}
-						}
-						if (successfullyBuilt) {
-							if (sc.serviceInterfaces != null) {
-								// this component registers service
-								//the service will be registered only if the component was successfully built
-
-								// this will create either plain service component registration
-								// or a service factory registration
-								registerService(scp, sc.serviceFactory, null);
-							}
-							scp.setState(Component.STATE_ACTIVE);
-						}
-					} else {
-
-						// ComponentFactory
-						if (sc.factory != null) {
-							// check if it is NOT a component config created by a
-							// component factory
-							if (scp.isComponentFactory()) {
-								if (Activator.DEBUG) {
-									Activator.log.debug("InstanceProcess.buildComponents(): building component factory " + scp.name, null); //$NON-NLS-1$
-								}
-
-								// check if MSF
-								try {
-									Configuration config = Activator.getConfiguration(sc.name);
-									if (config != null) {
-										factoryPid = config.getFactoryPid();
-									}
-								} catch (Exception e) {
-									Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.CANNOT_GET_CONFIGURATION, sc.name), e);
-								}
-
-								// if MSF throw exception - can't be
-								// ComponentFactory add MSF
-								if (factoryPid != null) {
-									Vector toDisable = new Vector(1);
-									toDisable.addElement(sc);
-									InstanceProcess.resolver.disableComponents(toDisable, ComponentConstants.DEACTIVATION_REASON_UNSPECIFIED);
-									successfullyBuilt = false;
-									throw new org.osgi.service.component.ComponentException(Messages.INCOMPATIBLE_COMBINATION);
-								}
-								scp.setState(Component.STATE_FACTORY);
-								registerComponentFactory(scp);
-								// when registering a ComponentFactory we must not
-								// register the component configuration as service
-								continue;
+
+						// check if MSF
+						try {
+							Configuration config = Activator.getConfiguration(sc.name);
+							if (config != null) {
+								factoryPid = config.getFactoryPid();
 							}
+						} catch (Exception e) {
+							Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.CANNOT_GET_CONFIGURATION, sc.name), e);
 						}
 
-						// check whether there is a service to register
-						if (sc.provides != null) {
-							// this will create either plain service component
-							// registration or a service factory registration
-							scp.setState(Component.STATE_REGISTERED);
-							registerService(scp, sc.serviceFactory, null);
+						// if MSF throw exception - can't be
+						// ComponentFactory add MSF
+						if (factoryPid != null) {
+							Vector toDisable = new Vector(1);
+							toDisable.addElement(sc);
+							InstanceProcess.resolver.disableComponents(toDisable, ComponentConstants.DEACTIVATION_REASON_UNSPECIFIED);
+							successfullyBuilt = false;
+							throw new org.osgi.service.component.ComponentException(Messages.INCOMPATIBLE_COMBINATION);
 						}
+						scp.setState(Component.STATE_FACTORY);
+						registerComponentFactory(scp);
+						// when registering a ComponentFactory we must not
+						// register the component configuration as service
+						return;
 					}
-				} catch (Throwable t) {
-					Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.EXCEPTION_BUILDING_COMPONENT, scp.serviceComponent), t);
-				} finally {
-					if (!successfullyBuilt) {
-						scp.setState(Component.STATE_UNSATISFIED);
+				}
+
+				// check whether there is a service to register
+				if (sc.provides != null) {
+					// this will create either plain service component
+					// registration or a service factory registration
+					scp.setState(Component.STATE_REGISTERED);
+					registerService(scp, sc.serviceFactory, null);
+				}
+			}
+		} catch (Throwable t) {
+			Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.EXCEPTION_BUILDING_COMPONENT, scp.serviceComponent), t);
+		} finally {
+			if (!successfullyBuilt) {
+				scp.setState(Component.STATE_UNSATISFIED);
+			}
+			freeLock();
+			if (Activator.PERF) {
+				start = System.currentTimeMillis() - start;
+				Activator.log.info("[DS perf] The component " + scp + " is built for " + Long.toString(start) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$//$NON-NLS-3$
+			}
+		}
+	}
+
+	/**
+	 * Builds the component configurations on several threads. The components are
+	 * built in waves: a component is built after the components in the list that
+	 * provide services it references. The components of a wave are independent
+	 * and are built concurrently. Components with cyclic dependencies are built
+	 * one by one at the end.
+	 * <p>
+	 * The calling thread holds the build lock during the whole operation and the
+	 * helper threads share it, so other threads still cannot build or dispose
+	 * components in the meantime.
+	 * 
+	 * @param listToBuild the component configurations marked as activating
+	 * @param security specifies whether to use security privileged call
+	 */
+	private void buildComponentsInParallel(Vector listToBuild, boolean security) {
+		long start = 0l;
+		if (Activator.PERF) {
+			start = System.currentTimeMillis();
+		}
+		Vector waves = getBuildWaves(listToBuild);
+		getLock();
+		try {
+			for (int i = 0; i < waves.size(); i++) {
+				Vector wave = (Vector) waves.elementAt(i);
+				if (wave.size() == 1) {
+					buildComponentConfiguration((ServiceComponentProp) wave.firstElement(), security);
+					continue;
+				}
+				ParallelBuild build = new ParallelBuild(wave, security);
+				int helpers = Math.min(Activator.ACTIVATION_THREADS, wave.size()) - 1;
+				for (int j = 0; j < helpers; j++) {
+					resolver.mgr.execute(build, "Component Activation Thread"); //$NON-NLS-1$
+				}
+				build.buildAll();
+				build.waitHelpers();
+			}
+		} finally {
+			freeLock();
+		}
+		if (Activator.PERF) {
+			start = System.currentTimeMillis() - start;
+			Activator.log.info("[DS perf] " + listToBuild.size() + " components are built in " + waves.size() + " waves for " + Long.toString(start) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+	}
+
+	/**
+	 * Splits the component configurations in waves of independent components.
+	 * 
+	 * @param listToBuild the component configurations to split
+	 * @return a Vector of waves, each wave being a Vector of SCPs in the order of the list.
+	 * The components with cyclic dependencies are in waves of their own.
+	 */
+	private Vector getBuildWaves(Vector listToBuild) {
+		// key - SCP; value - the SCPs in the list providing services to it
+		Hashtable providers = new Hashtable(listToBuild.size());
+		for (int i = 0; i < listToBuild.size(); i++) {
+			ServiceComponentProp scp = (ServiceComponentProp) listToBuild.elementAt(i);
+			Vector scpProviders = new Vector(2);
+			Vector refs = scp.references;
+			for (int j = 0; refs != null && j < refs.size(); j++) {
+				ServiceComponentProp[] refProviders = ((Reference) refs.elementAt(j)).selectProviders(listToBuild);
+				for (int k = 0; refProviders != null && k < refProviders.length; k++) {
+					if (refProviders[k] != scp && !scpProviders.contains(refProviders[k])) {
+						scpProviders.addElement(refProviders[k]);
 					}
-					freeLock();
-					if (Activator.PERF) {
-						start = System.currentTimeMillis() - start;
-						Activator.log.info("[DS perf] The component " + scp + " is built for " + Long.toString(start) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$//$NON-NLS-3$
+				}
+			}
+			providers.put(scp, scpProviders);
+		}
+
+		Vector waves = new Vector(2);
+		Vector remaining = (Vector) listToBuild.clone();
+		while (!remaining.isEmpty()) {
+			Vector wave = new Vector(remaining.size());
+			for (int i = 0; i < remaining.size(); i++) {
+				ServiceComponentProp scp = (ServiceComponentProp) remaining.elementAt(i);
+				Vector scpProviders = (Vector) providers.get(scp);
+				boolean ready = true;
+				for (int j = 0; j < scpProviders.size(); j++) {
+					if (remaining.contains(scpProviders.elementAt(j))) {
+						ready = false;
+						break;
 					}
 				}
-			} // end for
-		} // end if (list != null)
+				if (ready) {
+					wave.addElement(scp);
+				}
+			}
+			if (wave.isEmpty()) {
+				// the remaining components depend on each other - build them one by one
+				for (int i = 0; i < remaining.size(); i++) {
+					Vector single = new Vector(1);
+					single.addElement(remaining.elementAt(i));
+					waves.addElement(single);
+				}
+				break;
+			}
+			for (int i = 0; i < wave.size(); i++) {
+				remaining.removeElement(wave.elementAt(i));
+			}
+			waves.addElement(wave);
+		}
+		return waves;
 	}
 
 	/**
@@ -611,8 +731,13 @@ public class InstanceProcess {
 			if (counter.count == 0 && !delayedBindList.isEmpty()) {
 				// put delayed dynamic binds on the queue.
 				// (this is used to handle circularity)
-				resolver.mgr.enqueueWork(resolver, Resolver.DYNAMICBIND, delayedBindList.clone(), security);
-				delayedBindList.removeAllElements();
+				Vector toBind;
+				synchronized (delayedBindList) {
+					// other threads may add delayed binds when building in parallel
+					toBind = (Vector) delayedBindList.clone();
+					delayedBindList.removeAllElements();
+				}
+				resolver.mgr.enqueueWork(resolver, Resolver.DYNAMICBIND, toBind, security);
 			}
 
 			return componentInstance;
@@ -780,6 +905,72 @@ public class InstanceProcess {
 		return true;
 	}
 
+	/**
+	 * Builds the components of a wave. It is run by the helper threads while the
+	 * thread which started the build builds components of the wave too.
+	 */
+	private class ParallelBuild implements Runnable {
+		private Vector wave;
+		private boolean security;
+		private int next = 0;
+		private int runningHelpers = 0;
+
+		ParallelBuild(Vector wave, boolean security) {
+			this.wave = wave;
+			this.security = security;
+		}
+
+		public void run() {
+			synchronized (this) {
+				if (next >= wave.size()) {
+					// the wave is already built
+					return;
+				}
+				runningHelpers++;
+			}
+			Thread currentThread = Thread.currentThread();
+			synchronized (lock) {
+				parallelThreads.addElement(currentThread);
+			}
+			try {
+				buildAll();
+			} finally {
+				synchronized (lock) {
+					parallelThreads.removeElement(currentThread);
+				}
+				synchronized (this) {
+					runningHelpers--;
+					notifyAll();
+				}
+			}
+		}
+
+		void buildAll() {
+			ServiceComponentProp scp;
+			while ((scp = nextComponent()) != null) {
+				try {
+					buildComponentConfiguration(scp, security);
+				} catch (Throwable t) {
+					Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.EXCEPTION_BUILDING_COMPONENT, scp.serviceComponent), t);
+				}
+			}
+		}
+
+		private synchronized ServiceComponentProp nextComponent() {
+			return next < wave.size() ? (ServiceComponentProp) wave.elementAt(next++) : null;
+		}
+
+		synchronized void waitHelpers() {
+			while (runningHelpers > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					// do nothing
+				}
+			}
+		}
+	}
+
 	/**
 	 * Counts re-entry in to the
 	 * {@link InstanceProcess#buildComponent(Bundle, ServiceComponentProp, Object)} method. 
@@ -166,6 +166,10 @@ public class Messages extends NLS {
 	public static String ERROR_MODIFYING_COMPONENT;
 	public static String ERROR_SAVING_COMPONENT_DEFINITIONS;
 	public static String FILE_DOESNT_EXIST_OR_DIRECTORY;
+	public static String PRINT_PARSE_TIMES;
+	public static String PARSE_TIMES;
+	public static String NOT_PARSED;
+	public static String TOTAL_PARSE_TIME;
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.ds;
+
+import java.util.Hashtable;
+import java.util.Vector;
+import org.eclipse.equinox.internal.ds.model.ServiceComponentProp;
+
+/**
+ * Indexes the enabled SCPs by the interface names of their references, so that
+ * the resolver only has to check the components interested in the service of a
+ * service event. The target filters of the references are not indexed; they are
+ * evaluated by the resolver for the selected components only.
+ * <p>
+ * The SCPs of an interface are kept in the order they have in the resolver's
+ * list of enabled SCPs, so the components are processed in the same order as
+ * when all the enabled SCPs are checked.
+ * </p>
+ */
+final class ReferenceIndex {
+
+	// key: interface name, value: Vector of ServiceComponentProp sorted by sequence
+	private Hashtable scpsByInterface = new Hashtable();
+
+	// key: ServiceComponentProp, value: Entry
+	private Hashtable entries = new Hashtable();
+
+	private long nextSequence = 0;
+
+	/**
+	 * Adds an SCP at the end of the index
+	 * @param scp the SCP which is appended to the list of enabled SCPs
+	 */
+	synchronized void add(ServiceComponentProp scp) {
+		if (entries.containsKey(scp)) {
+			return;
+		}
+		Vector refs = scp.references;
+		String[] interfaceNames = new String[refs == null ? 0 : refs.size()];
+		for (int i = 0; i < interfaceNames.length; i++) {
+			interfaceNames[i] = ((Reference) refs.elementAt(i)).interfaceName;
+		}
+		entries.put(scp, new Entry(nextSequence++, interfaceNames));
+		for (int i = 0; i < interfaceNames.length; i++) {
+			String interfaceName = interfaceNames[i];
+			Vector scps = (Vector) scpsByInterface.get(interfaceName);
+			if (scps == null) {
+				scps = new Vector(4);
+				scpsByInterface.put(interfaceName, scps);
+			}
+			if (scps.isEmpty() || scps.lastElement() != scp) {
+				// several references of the SCP may have the same interface
+				scps.addElement(scp);
+			}
+		}
+	}
+
+	/**
+	 * Removes an SCP from the index
+	 * @param scp the SCP which is removed from the list of enabled SCPs
+	 */
+	synchronized void remove(ServiceComponentProp scp) {
+		// the references of the SCP may have changed since it was added
+		Entry entry = (Entry) entries.remove(scp);
+		if (entry == null) {
+			return;
+		}
+		for (int i = 0; i < entry.interfaceNames.length; i++) {
+			String interfaceName = entry.interfaceNames[i];
+			Vector scps = (Vector) scpsByInterface.get(interfaceName);
+			if (scps != null) {
+				scps.removeElement(scp);
+				if (scps.isEmpty()) {
+					scpsByInterface.remove(interfaceName);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves an SCP to the end of the index
+	 * @param scp the SCP which is moved to the end of the list of enabled SCPs
+	 */
+	synchronized void moveToEnd(ServiceComponentProp scp) {
+		if (entries.containsKey(scp)) {
+			remove(scp);
+			add(scp);
+		}
+	}
+
+	/**
+	 * Returns the SCPs having a reference to at least one of the specified interfaces
+	 * @param interfaceNames the object classes of a service
+	 * @return the SCPs in the order of the list of enabled SCPs. The returned vector
+	 * may be modified by the caller.
+	 */
+	synchronized Vector getSCPs(String[] interfaceNames) {
+		Vector result = null;
+		for (int i = 0; interfaceNames != null && i < interfaceNames.length; i++) {
+			Vector scps = (Vector) scpsByInterface.get(interfaceNames[i]);
+			if (scps == null) {
+				continue;
+			}
+			if (result == null) {
+				result = (Vector) scps.clone();
+			} else {
+				result = merge(result, scps);
+			}
+		}
+		return result == null ? new Vector(1) : result;
+	}
+
+	// merges two vectors of SCPs sorted by sequence, dropping the duplicates
+	private Vector merge(Vector first, Vector second) {
+		Vector result = new Vector(first.size() + second.size());
+		int i = 0;
+		int j = 0;
+		while (i < first.size() && j < second.size()) {
+			long firstSequence = getSequence(first.elementAt(i));
+			long secondSequence = getSequence(second.elementAt(j));
+			if (firstSequence < secondSequence) {
+				result.addElement(first.elementAt(i++));
+			} else if (firstSequence > secondSequence) {
+				result.addElement(second.elementAt(j++));
+			} else {
+				result.addElement(first.elementAt(i++));
+				j++;
+			}
+		}
+		for (; i < first.size(); i++) {
+			result.addElement(first.elementAt(i));
+		}
+		for (; j < second.size(); j++) {
+			result.addElement(second.elementAt(j));
+		}
+		return result;
+	}
+
+	private long getSequence(Object scp) {
+		return ((Entry) entries.get(scp)).sequence;
+	}
+
+	private static final class Entry {
+		final long sequence;
+		final String[] interfaceNames;
+
+		Entry(long sequence, String[] interfaceNames) {
+			this.sequence = sequence;
+			this.interfaceNames = interfaceNames;
+		}
+	}
+}
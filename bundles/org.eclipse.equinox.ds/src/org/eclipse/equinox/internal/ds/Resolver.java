@@ -54,6 +54,9 @@ public final class Resolver implements WorkPerformer {
 	/* Holds the enabled SCPs*/
 	protected Vector scpEnabled;
 
+	/* Indexes the enabled SCPs by the interfaces they reference */
+	private ReferenceIndex referenceIndex = new ReferenceIndex();
+
 	private InstanceProcess instanceProcess;
 
 	private Object syncLock = new Object();
@@ -62,12 +65,6 @@ public final class Resolver implements WorkPerformer {
 
 	public SCRManager mgr;
 
-	// TODO: Add a hashtable connecting servicereference to a list of References
-	// which they are bound to
-	// This way the search of references to unbind becomes faster when there are
-	// plenty of components.
-	// Keep in mind that build process is asynchronous.
-
 	static {
 		/** preload some DS bundle classes to avoid classloader deadlocks */
 		Reference.class.getName();
@@ -272,6 +269,7 @@ public final class Resolver implements WorkPerformer {
 			}
 			component.addServiceComponentProp(scp);
 			scpEnabled.addElement(scp);
+			referenceIndex.add(scp);
 
 		} catch (Throwable t) {
 			Activator.log(component.bc, LogService.LOG_ERROR, NLS.bind(Messages.ERROR_CREATING_SCP, component), t);
@@ -310,8 +308,9 @@ public final class Resolver implements WorkPerformer {
 					if (scpEnabled.isEmpty())
 						return; // check for any enabled configurations
 
-					resolvedComponents = getComponentsToBuild();
-					target = selectDynamicBind(scpEnabled, event.getServiceReference());
+					// only the components referencing the service can become satisfied
+					resolvedComponents = getComponentsToBuild(getSCPsToCheck(event.getServiceReference()));
+					target = selectDynamicBind(getSCPsToCheck(event.getServiceReference()), event.getServiceReference());
 				}
 
 				//do synchronous bind
@@ -333,7 +332,7 @@ public final class Resolver implements WorkPerformer {
 				Vector componentsToDispose;
 				synchronized (syncLock) {
 					//check for components with static reference to this service
-					componentsToDispose = selectStaticUnBind(scpEnabled, event.getServiceReference(), false);
+					componentsToDispose = selectStaticUnBind(getSCPsToCheck(event.getServiceReference()), event.getServiceReference(), false);
 				}
 				//dispose instances from staticUnbind
 				if (componentsToDispose != null) {
@@ -346,7 +345,7 @@ public final class Resolver implements WorkPerformer {
 					if (scpEnabled.isEmpty())
 						return; // check for any enabled configurations
 
-					newlyUnsatisfiedSCPs = selectNewlyUnsatisfied(event.getServiceReference());
+					newlyUnsatisfiedSCPs = selectNewlyUnsatisfied(getSCPsToCheck(event.getServiceReference()), event.getServiceReference());
 				}
 				if (!newlyUnsatisfiedSCPs.isEmpty()) {
 					// synchronously dispose newly unsatisfied components
@@ -356,12 +355,12 @@ public final class Resolver implements WorkPerformer {
 				synchronized (syncLock) {
 					// Pass in the set of currently resolved components, check each one -
 					// do we need to unbind
-					target = selectDynamicUnBind(scpEnabled, event.getServiceReference(), false);
+					target = selectDynamicUnBind(getSCPsToCheck(event.getServiceReference()), event.getServiceReference(), false);
 
 					if (componentsToDispose != null || !newlyUnsatisfiedSCPs.isEmpty()) {
 						// some components with static references were disposed. Try to build them again
 						// get list of newly satisfied SCPs and build them
-						resolvedComponents = getComponentsToBuild();
+						resolvedComponents = getComponentsToBuild(getSCPsToCheck(event.getServiceReference()));
 					}
 				}
 
@@ -380,7 +379,7 @@ public final class Resolver implements WorkPerformer {
 
 					// check for newly unsatisfied components and synchronously
 					// dispose them
-					newlyUnsatisfiedSCPs = selectNewlyUnsatisfied(event.getServiceReference());
+					newlyUnsatisfiedSCPs = selectNewlyUnsatisfied(getSCPsToCheck(event.getServiceReference()), event.getServiceReference());
 				}
 
 				if (!newlyUnsatisfiedSCPs.isEmpty()) {
@@ -389,7 +388,7 @@ public final class Resolver implements WorkPerformer {
 
 				synchronized (syncLock) {
 					//check for components with static reference to this service
-					componentsToDispose = selectStaticUnBind(scpEnabled, event.getServiceReference(), true);
+					componentsToDispose = selectStaticUnBind(getSCPsToCheck(event.getServiceReference()), event.getServiceReference(), true);
 				}
 
 				if (componentsToDispose != null) {
@@ -399,7 +398,7 @@ public final class Resolver implements WorkPerformer {
 				synchronized (syncLock) {
 					// dynamic unbind
 					// check each satisfied scp - do we need to unbind
-					target = selectDynamicUnBind(scpEnabled, event.getServiceReference(), true);
+					target = selectDynamicUnBind(getSCPsToCheck(event.getServiceReference()), event.getServiceReference(), true);
 				}
 
 				if (target != null) {
@@ -408,10 +407,10 @@ public final class Resolver implements WorkPerformer {
 
 				synchronized (syncLock) {
 					// dynamic bind
-					target = selectDynamicBind(scpEnabled, event.getServiceReference());
+					target = selectDynamicBind(getSCPsToCheck(event.getServiceReference()), event.getServiceReference());
 
 					// get list of newly satisfied SCPs and build them
-					resolvedComponents = getComponentsToBuild();
+					resolvedComponents = getComponentsToBuild(getSCPsToCheck(event.getServiceReference()));
 				}
 
 				if (target != null) {
@@ -428,13 +427,24 @@ public final class Resolver implements WorkPerformer {
 		}
 	}
 
+	/**
+	 * Returns the enabled SCPs which have a reference to one of the interfaces of the
+	 * specified service. Only they can be affected by an event of the service.
+	 * 
+	 * @param serviceReference the service reference of a service event
+	 * @return the SCPs in the order of the enabled SCPs list
+	 */
+	private Vector getSCPsToCheck(ServiceReference serviceReference) {
+		return referenceIndex.getSCPs((String[]) serviceReference.getProperty(Constants.OBJECTCLASS));
+	}
+
 	public void buildNewlySatisfied(boolean checkForDependencyCycles) {
 		Vector resolvedComponents;
 		synchronized (syncLock) {
 			if (checkForDependencyCycles) {
 				findDependencyCycles();
 			}
-			resolvedComponents = getComponentsToBuild();
+			resolvedComponents = getComponentsToBuild((Vector) scpEnabled.clone());
 		}
 
 		if (!resolvedComponents.isEmpty()) {
@@ -442,8 +452,15 @@ public final class Resolver implements WorkPerformer {
 		}
 	}
 
-	private Vector getComponentsToBuild() {
-		Vector resolvedComponents = resolveEligible();
+	/**
+	 * Returns the satisfied components among the specified SCPs which are not built yet
+	 * 
+	 * @param scps the enabled SCPs to check, in the order of the enabled SCPs list. The
+	 * vector is modified.
+	 * @return the SCPs to build
+	 */
+	private Vector getComponentsToBuild(Vector scps) {
+		Vector resolvedComponents = resolveEligible(scps);
 		// select the satisfied components only
 		ServiceComponentProp scp;
 		for (int i = resolvedComponents.size() - 1; i >= 0; i--) {
@@ -464,9 +481,8 @@ public final class Resolver implements WorkPerformer {
 		//
 	}
 
-	private Vector resolveEligible() {
+	private Vector resolveEligible(Vector enabledSCPs) {
 		try {
-			Vector enabledSCPs = (Vector) scpEnabled.clone();
 			for (int k = enabledSCPs.size() - 1; k >= 0; k--) {
 				ServiceComponentProp scp = (ServiceComponentProp) enabledSCPs.elementAt(k);
 				try {
@@ -490,7 +506,8 @@ public final class Resolver implements WorkPerformer {
 					}
 				} catch (IllegalStateException ise) {
 					//the bundle of the scp is probably already uninstalled
-					scpEnabled.removeElementAt(k);
+					scpEnabled.removeElement(scp);
+					referenceIndex.remove(scp);
 					enabledSCPs.removeElementAt(k);
 					continue;
 				}
@@ -544,9 +561,9 @@ public final class Resolver implements WorkPerformer {
 		}
 	}
 
-	private Vector selectNewlyUnsatisfied(ServiceReference serviceRef) {
+	private Vector selectNewlyUnsatisfied(Vector scps, ServiceReference serviceRef) {
 		try {
-			Vector result = (Vector) scpEnabled.clone();
+			Vector result = (Vector) scps.clone();
 			for (int k = result.size() - 1; k >= 0; k--) {
 				ServiceComponentProp scp = (ServiceComponentProp) result.elementAt(k);
 				Vector refs = scp.references;
@@ -681,6 +698,9 @@ public final class Resolver implements WorkPerformer {
 		// unregister, deactivate, and unbind
 		synchronized (syncLock) {
 			removeAll(scpEnabled, scps);
+			for (int i = 0; i < scps.size(); i++) {
+				referenceIndex.remove((ServiceComponentProp) scps.elementAt(i));
+			}
 		}
 		instanceProcess.disposeInstances(scps, deactivateReason);
 	}
@@ -883,7 +903,7 @@ public final class Resolver implements WorkPerformer {
 
 			// get list of newly satisfied SCPs and check whether the new SCP is
 			// satisfied
-			Vector eligibleSCPs = resolveEligible();
+			Vector eligibleSCPs = resolveEligible((Vector) scpEnabled.clone());
 			if (!eligibleSCPs.contains(newSCP)) {
 				removeEnabledSCP(newSCP);
 				throw new ComponentException(NLS.bind(Messages.CANT_RESOLVE_COMPONENT_INSTANCE, newSCP, configProperties));
@@ -1049,6 +1069,7 @@ public final class Resolver implements WorkPerformer {
 
 	private void removeEnabledSCP(ServiceComponentProp scp) {
 		scpEnabled.removeElement(scp);
+		referenceIndex.remove(scp);
 		scp.serviceComponent.componentProps.remove(scp);
 		scp.setState(Component.STATE_DISPOSED);
 	}
@@ -1061,6 +1082,7 @@ public final class Resolver implements WorkPerformer {
 		synchronized (syncLock) {
 			if (scpEnabled.removeElement(scp)) {
 				scpEnabled.addElement(scp);
+				referenceIndex.moveToEnd(scp);
 			}
 		}
 	}
@@ -80,6 +80,9 @@ public class SCRCommandProvider implements CommandProvider {
 		if (all || "disableAll".equals(commandName) || "disAll".equals(commandName)) { //$NON-NLS-1$ //$NON-NLS-2$
 			res.append("\n\tdisableAll/disAll [bundle id] - ").append(Messages.DISABLE_ALL_COMPONENTS).append("\n"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		if (all || "parseTimes".equals(commandName) || "pt".equals(commandName)) { //$NON-NLS-1$ //$NON-NLS-2$
+			res.append("\tparseTimes/pt [bundle id] - ").append(Messages.PRINT_PARSE_TIMES).append("\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
 		return res.toString();
 	}
 
@@ -262,6 +265,32 @@ public class SCRCommandProvider implements CommandProvider {
 		_disableAll(intp);
 	}
 
+	/**
+	 *  Handle the parseTimes command
+	 *
+	 *  @param intp A CommandInterpreter object containing the command and it's arguments.
+	 */
+	public void _parseTimes(CommandInterpreter intp) throws Exception {
+		String[] params = getParams(intp);
+		Bundle b = null;
+		if (params.length > 0) {
+			b = getBundle(intp, params[0]);
+			if (b == null) {
+				return;
+			}
+		}
+		printParseTimes(intp, b);
+	}
+
+	/**
+	 *  Shortcut to parseTimes command
+	 *
+	 *  @param intp A CommandInterpreter object containing the command and it's arguments.
+	 */
+	public void _pt(CommandInterpreter intp) throws Exception {
+		_parseTimes(intp);
+	}
+
 	/**
 	 * Handles the help command
 	 * 
@@ -576,6 +605,28 @@ public class SCRCommandProvider implements CommandProvider {
 
 	/* commands */
 
+	private void printParseTimes(CommandInterpreter intp, Bundle b) {
+		Hashtable parseTimes = scrManager.getStorage().getParseTimes();
+		Bundle[] bundles = b != null ? new Bundle[] {b} : Activator.bc.getBundles();
+		intp.println(Messages.PARSE_TIMES);
+		long total = 0;
+		for (int i = 0; i < bundles.length; i++) {
+			if (bundles[i].getHeaders("").get(ComponentConstants.SERVICE_COMPONENT) == null) { //$NON-NLS-1$
+				continue;
+			}
+			ComponentStorage.ParseTime parseTime = (ComponentStorage.ParseTime) parseTimes.get(new Long(bundles[i].getBundleId()));
+			intp.print(bundles[i].getBundleId() + "\t"); //$NON-NLS-1$
+			if (parseTime != null) {
+				total += parseTime.time;
+				intp.print(parseTime.time + "ms\t" + parseTime.components); //$NON-NLS-1$
+			} else {
+				intp.print(Messages.NOT_PARSED);
+			}
+			intp.println("\t\t" + getBundleRepresentationName(bundles[i])); //$NON-NLS-1$
+		}
+		intp.println(NLS.bind(Messages.TOTAL_PARSE_TIME, Long.toString(total)));
+	}
+
 	private void listComponents(CommandInterpreter intp, Bundle b, boolean completeInfo) {
 		if (componentRefsIDs == null)
 			componentRefsIDs = new Hashtable(101);
@@ -101,19 +101,71 @@ public class SCRManager implements ServiceListener, SynchronousBundleListener, C
 		// loop through the currently installed bundles
 		Bundle[] bundles = Activator.bc.getBundles();
 		if (bundles != null) {
+			Vector started = new Vector(bundles.length);
 			for (int i = 0; i < bundles.length; i++) {
 				Bundle current = bundles[i];
 				// try to process the active ones.
 				if (current.getState() == Bundle.ACTIVE) {
-					startedBundle(current);
+					started.addElement(current);
 				} else if (current.getState() == Bundle.STARTING) {
 					String lazy = (String) current.getHeaders("").get(Constants.BUNDLE_ACTIVATIONPOLICY); //$NON-NLS-1$
 					if (lazy != null && lazy.indexOf(Constants.ACTIVATION_LAZY) >= 0) {
-						startedBundle(current);
+						started.addElement(current);
 					}
 				}
 			}
+			if (Activator.PARSE_THREADS > 1 && started.size() > 1) {
+				// load the component definitions of all bundles in parallel
+				// and process them in bundle order
+				Vector[] components = loadComponentDefinitions(started);
+				for (int i = 0; i < started.size(); i++) {
+					if (components[i] != null) {
+						processComponentDefinitions((Bundle) started.elementAt(i), components[i], Activator.PERF ? System.currentTimeMillis() : 0l);
+					}
+				}
+			} else {
+				for (int i = 0; i < started.size(); i++) {
+					startedBundle((Bundle) started.elementAt(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads the component definitions of several bundles on a pool of threads
+	 * 
+	 * @param bundles the started bundles
+	 * @return the component definitions of each bundle; the element is null if
+	 * there is nothing to process for the bundle
+	 */
+	private Vector[] loadComponentDefinitions(Vector bundles) {
+		long start = 0l;
+		if (Activator.PERF) {
+			start = System.currentTimeMillis();
+		}
+		ParseJob job = new ParseJob(bundles);
+		int helpers = Math.min(Activator.PARSE_THREADS, bundles.size()) - 1;
+		for (int i = 0; i < helpers; i++) {
+			execute(job, "Component Parse Thread"); //$NON-NLS-1$
+		}
+		job.parseAll();
+		job.waitHelpers();
+		if (Activator.PERF) {
+			start = System.currentTimeMillis() - start;
+			Activator.log.info("[DS perf] The components of " + bundles.size() + " bundles are loaded for " + start + "ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		}
+		return job.components;
+	}
+
+	// returns the DS header of the bundle or null if the bundle has no components to process
+	private String getComponentsHeader(Bundle bundle) {
+		if (bundleToServiceComponents != null && bundleToServiceComponents.get(bundle) != null) {
+			// the bundle is already processed - skipping it
+			return null;
+		}
+		Dictionary allHeaders = bundle.getHeaders(""); //$NON-NLS-1$
+		// null if there are no component descriptions in this bundle
+		return (String) allHeaders.get(ComponentConstants.SERVICE_COMPONENT);
 	}
 
 	/**
@@ -161,6 +213,88 @@ public class SCRManager implements ServiceListener, SynchronousBundleListener, C
 		return null;
 	}
 
+	/**
+	 * Executes a job on a thread of the thread pool if available, or on a new thread
+	 * 
+	 * @param job the job to execute
+	 * @param threadName the name of the thread
+	 */
+	void execute(Runnable job, String threadName) {
+		ThreadPoolManager threadPool = (ThreadPoolManager) threadPoolManagerTracker.getService();
+		if (threadPool != null) {
+			threadPool.execute(job, threadName);
+		} else {
+			new Thread(job, threadName).start();
+		}
+	}
+
+	ComponentStorage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * Loads the component definitions of a list of bundles. It is run by the helper
+	 * threads while the thread which started the job loads definitions too.
+	 */
+	private class ParseJob implements Runnable {
+		private Vector bundles;
+		Vector[] components;
+		private int next = 0;
+		private int runningHelpers = 0;
+
+		ParseJob(Vector bundles) {
+			this.bundles = bundles;
+			this.components = new Vector[bundles.size()];
+		}
+
+		public void run() {
+			synchronized (this) {
+				if (next >= bundles.size()) {
+					// all bundles are already taken
+					return;
+				}
+				runningHelpers++;
+			}
+			try {
+				parseAll();
+			} finally {
+				synchronized (this) {
+					runningHelpers--;
+					notifyAll();
+				}
+			}
+		}
+
+		void parseAll() {
+			int i;
+			while ((i = nextBundle()) != -1) {
+				Bundle bundle = (Bundle) bundles.elementAt(i);
+				try {
+					String dsHeader = getComponentsHeader(bundle);
+					if (dsHeader != null) {
+						components[i] = storage.loadComponentDefinitions(bundle, dsHeader);
+					}
+				} catch (Throwable t) {
+					Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.PROCESSING_BUNDLE_FAILED, Long.toString(bundle.getBundleId()), bundle), t);
+				}
+			}
+		}
+
+		private synchronized int nextBundle() {
+			return next < bundles.size() ? next++ : -1;
+		}
+
+		synchronized void waitHelpers() {
+			while (runningHelpers > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					// do nothing
+				}
+			}
+		}
+	}
+
 	public void queueBlocked() {
 		resolver.queueBlocked();
 		synchronized (queue) {
@@ -231,6 +365,9 @@ public class SCRManager implements ServiceListener, SynchronousBundleListener, C
 		if (type == BundleEvent.STOPPING) {
 			stoppingBundle(event.getBundle());
 		} else if (type == BundleEvent.STARTED) {
+			// The bundles started after SCR are parsed one at a time on the thread starting
+			// them, so their components are known when Bundle.start() returns. Only the
+			// bundles started before SCR are parsed on equinox.ds.parse_threads threads
 			startedBundle(event.getBundle());
 		} else if (type == BundleEvent.LAZY_ACTIVATION) {
 			startedBundle(event.getBundle());
@@ -570,21 +707,19 @@ public class SCRManager implements ServiceListener, SynchronousBundleListener, C
 		if (Activator.PERF) {
 			start = System.currentTimeMillis();
 		}
-		if (bundleToServiceComponents != null && bundleToServiceComponents.get(bundle) != null) {
-			// the bundle is already processed - skipping it
-			return;
-		}
-
-		String dsHeader = null;
-		Dictionary allHeaders = bundle.getHeaders(""); //$NON-NLS-1$
-
-		if (!((dsHeader = (String) allHeaders.get(ComponentConstants.SERVICE_COMPONENT)) != null)) {
-			// no component descriptions in this bundle
+		String dsHeader = getComponentsHeader(bundle);
+		if (dsHeader == null) {
 			return;
 		}
+		processComponentDefinitions(bundle, storage.loadComponentDefinitions(bundle, dsHeader), start);
+	}
 
-		Vector components = storage.loadComponentDefinitions(bundle, dsHeader);
+	private void processComponentDefinitions(Bundle bundle, Vector components, long start) {
 		if (components != null && !components.isEmpty()) {
+			if (bundleToServiceComponents != null && bundleToServiceComponents.get(bundle) != null) {
+				// the bundle has been processed in the meantime
+				return;
+			}
 			if (!hasRegisteredServiceListener) {
 				hasRegisteredServiceListener = true;
 				Activator.bc.addServiceListener(this);
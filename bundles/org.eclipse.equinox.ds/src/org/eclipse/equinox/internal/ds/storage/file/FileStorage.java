@@ -12,17 +12,13 @@
 package org.eclipse.equinox.internal.ds.storage.file;
 
 import java.io.*;
-import java.net.URL;
-import java.net.URLConnection;
-import java.util.Dictionary;
 import java.util.Vector;
 import org.eclipse.equinox.internal.ds.*;
 import org.eclipse.equinox.internal.ds.model.ServiceComponent;
 import org.eclipse.equinox.internal.util.io.ExternalizableDictionary;
-import org.eclipse.osgi.util.ManifestElement;
 import org.eclipse.osgi.util.NLS;
-import org.osgi.framework.*;
-import org.osgi.service.component.ComponentConstants;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.service.log.LogService;
 
 /**
@@ -217,45 +213,4 @@ public class FileStorage extends ComponentStorage {
 			return pathBuffer.toString();
 		}
 	}
-
-	/**
-	 * The last modified timestamp of the bundle. Should only be called in development mode
-	 * 
-	 * @param bundle
-	 * @return the last modified timestamp of the bundle
-	 */
-	protected long getLastModifiedTimestamp(Bundle bundle) {
-		if (bundle == null)
-			return 0;
-		long result = 0;
-		ManifestElement[] elements = parseManifestHeader(bundle);
-		for (int i = 0; i < elements.length; i++) {
-			URL componentURL = bundle.getEntry(elements[i].getValue());
-			if (componentURL != null) {
-				try {
-					URLConnection connection = componentURL.openConnection();
-					long lastModified = connection.getLastModified();
-					if (lastModified > result)
-						result = lastModified;
-				} catch (IOException e) {
-					//last modified cannot be calculated. should force reparse 
-					return Long.MAX_VALUE;
-				}
-			}
-		}
-		return result;
-	}
-
-	private ManifestElement[] parseManifestHeader(Bundle bundle) {
-		Dictionary headers = bundle.getHeaders(""); //$NON-NLS-1$
-		String files = (String) headers.get(ComponentConstants.SERVICE_COMPONENT);
-		if (files == null)
-			return new ManifestElement[0];
-		try {
-			return ManifestElement.parseHeader(ComponentConstants.SERVICE_COMPONENT, files);
-		} catch (BundleException e) {
-			Activator.log(bundle.getBundleContext(), LogService.LOG_ERROR, Messages.ERROR_PARSING_MANIFEST_HEADER, e);
-			return new ManifestElement[0];
-		}
-	}
 }
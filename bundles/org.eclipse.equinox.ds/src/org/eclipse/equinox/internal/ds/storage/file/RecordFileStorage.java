@@ -0,0 +1,505 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.ds.storage.file;
+
+import java.io.*;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.zip.CRC32;
+import org.eclipse.equinox.internal.ds.*;
+import org.eclipse.equinox.internal.ds.model.ServiceComponent;
+import org.eclipse.osgi.util.NLS;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.log.LogService;
+
+/**
+ * A cache for the parsed component XML descriptions which stores the components
+ * of each bundle in a separate record.
+ * <p>
+ * The records are appended to a log file as soon as the components of a bundle
+ * are parsed, and a removal record is appended when a bundle is uninstalled, so
+ * the cache of the other bundles is never lost. Every record carries a checksum;
+ * a record torn by a crash is dropped at the next start.
+ * </p><p>
+ * An index file holding the offset of the live record of each bundle is written
+ * when SCR stops. At start up only the index and the records appended after it
+ * are read. The components of a bundle are read from the log when the bundle is
+ * started. The log is compacted when it holds more dead records than live ones.
+ * </p><p>
+ * The data file of {@link FileStorage} is only deleted once the log has been
+ * written to the disk and its index has been saved.
+ * </p>
+ */
+public class RecordFileStorage extends ComponentStorage {
+
+	private static final String RECORDS_FILE = "SCR.records"; //$NON-NLS-1$
+	private static final String INDEX_FILE = "SCR.index"; //$NON-NLS-1$
+	// the data file of FileStorage
+	private static final String OLD_DB_NAME = "SCR"; //$NON-NLS-1$
+
+	private static final int RECORDS_MAGIC = 0x53435252; // SCRR
+	private static final int INDEX_MAGIC = 0x53435249; // SCRI
+	private static final int VERSION = 1;
+	// magic, version, log id
+	private static final int LOG_HEADER_SIZE = 4 + 4 + 8;
+	// type, bundle id, last modified, length
+	private static final int RECORD_HEADER_SIZE = 1 + 8 + 8 + 4;
+	// checksum
+	private static final int RECORD_TRAILER_SIZE = 8;
+
+	private static final byte RECORD_COMPONENTS = 1;
+	private static final byte RECORD_REMOVED = 2;
+
+	// the log is not compacted while its dead records take less than this
+	private static final long COMPACT_THRESHOLD = 64 * 1024;
+
+	private BundleContext bc;
+	private File recordsFile;
+	private File indexFile;
+	// the data file of FileStorage
+	private File oldFile;
+	private RandomAccessFile records;
+	// identifies the log file; a new id is assigned when the log is created or compacted
+	private long logId;
+	// key - Long bundle id; value - Entry
+	private Hashtable index = new Hashtable();
+	// the size of the dead records in the log
+	private long garbage = 0;
+	private boolean indexDirty = false;
+
+	public RecordFileStorage(BundleContext bc) {
+		this.bc = bc;
+		recordsFile = bc.getDataFile(RECORDS_FILE);
+		indexFile = bc.getDataFile(INDEX_FILE);
+		if (recordsFile == null || indexFile == null) {
+			// the file system is not supported
+			return;
+		}
+		oldFile = bc.getDataFile(OLD_DB_NAME);
+		try {
+			open();
+		} catch (IOException e) {
+			Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.ERROR_LOADING_DATA_FILE, recordsFile.getAbsolutePath()), e);
+			try {
+				createLog();
+			} catch (IOException ioe) {
+				Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.ERROR_LOADING_DATA_FILE, recordsFile.getAbsolutePath()), ioe);
+				close();
+			}
+		}
+	}
+
+	public Vector loadComponentDefinitions(Bundle bundle, String dsHeader) {
+		try {
+			if (!Activator.DBSTORE || records == null) {
+				return parseXMLDeclaration(bundle, dsHeader);
+			}
+
+			long lastModified;
+			// if not dev mode, we simply use the bundle's timestamp
+			if (!Activator.getBoolean(FileStorage.PROP_CHECK_CONFIG)) {
+				lastModified = bundle.getLastModified();
+			} else {
+				lastModified = getLastModifiedTimestamp(bundle);
+			}
+
+			Vector components = loadComponentsFromLog(bundle, lastModified);
+			if (components == null) {
+				components = parseXMLDeclaration(bundle, dsHeader);
+				if (components != null && components.size() != 0) {
+					saveComponentDefinitions(components, bundle.getBundleId(), lastModified);
+				}
+			}
+			return components;
+		} catch (Throwable e) {
+			Activator.log(null, LogService.LOG_ERROR, NLS.bind(Messages.PROCESSING_BUNDLE_FAILED, Long.toString(bundle.getBundleId()), bundle), e);
+			return null;
+		}
+	}
+
+	// returns null if the components of the bundle are not cached or are out of date
+	private Vector loadComponentsFromLog(Bundle bundle, long lastModified) {
+		byte[] data;
+		synchronized (this) {
+			Entry entry = (Entry) index.get(new Long(bundle.getBundleId()));
+			if (entry == null || entry.lastModified != lastModified) {
+				return null;
+			}
+			try {
+				data = readRecord(entry);
+			} catch (IOException e) {
+				data = null;
+			}
+			if (data == null) {
+				// the record is damaged - the bundle will be parsed again
+				Activator.log(null, LogService.LOG_WARNING, NLS.bind(Messages.ERROR_LOADING_DATA_FILE, recordsFile.getAbsolutePath()), null);
+				index.remove(new Long(bundle.getBundleId()));
+				return null;
+			}
+		}
+		try {
+			DBObject value = new DBObject();
+			value.readObject(new ByteArrayInputStream(data));
+			Vector components = value.components;
+			if (components == null) {
+				return null;
+			}
+			for (int i = 0; i < components.size(); i++) {
+				ServiceComponent currentComponent = (ServiceComponent) components.elementAt(i);
+				currentComponent.bundle = bundle;
+				currentComponent.bc = bundle.getBundleContext();
+			}
+			return components;
+		} catch (Throwable t) {
+			Activator.log(null, LogService.LOG_ERROR, Messages.ERROR_LOADING_COMPONENTS, t);
+		}
+		return null;
+	}
+
+	private void saveComponentDefinitions(Vector components, long bundleID, long lastModified) {
+		try {
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			new DBObject(components).writeObject(buf);
+			byte[] data = buf.toByteArray();
+			synchronized (this) {
+				if (records == null) {
+					return;
+				}
+				long offset = append(RECORD_COMPONENTS, bundleID, lastModified, data);
+				Entry old = (Entry) index.put(new Long(bundleID), new Entry(lastModified, offset, data.length));
+				if (old != null) {
+					garbage += recordSize(old.length);
+				}
+			}
+		} catch (Exception e) {
+			Activator.log(null, LogService.LOG_ERROR, Messages.ERROR_SAVING_COMPONENT_DEFINITIONS, e);
+		}
+	}
+
+	public synchronized void deleteComponentDefinitions(long bundleID) {
+		Entry old = (Entry) index.remove(new Long(bundleID));
+		if (old == null || records == null) {
+			return;
+		}
+		try {
+			append(RECORD_REMOVED, bundleID, 0, new byte[0]);
+			garbage += recordSize(old.length) + recordSize(0);
+		} catch (IOException e) {
+			Activator.log(null, LogService.LOG_ERROR, Messages.ERROR_SAVING_COMPONENT_DEFINITIONS, e);
+		}
+	}
+
+	public synchronized void stop() {
+		if (records == null) {
+			return;
+		}
+		try {
+			if (garbage > COMPACT_THRESHOLD && garbage > records.length() - garbage) {
+				compact();
+			}
+			if (indexDirty) {
+				writeIndex();
+			}
+			if (!indexDirty && oldFile != null && oldFile.exists()) {
+				// the cache of FileStorage is no longer needed once the log is on the disk
+				records.getFD().sync();
+				oldFile.delete();
+			}
+		} catch (IOException e) {
+			Activator.log(null, LogService.LOG_ERROR, Messages.ERROR_WRITING_OBJECT, e);
+		} finally {
+			close();
+		}
+	}
+
+	private void open() throws IOException {
+		boolean exists = recordsFile.exists();
+		records = new RandomAccessFile(recordsFile, "rw"); //$NON-NLS-1$
+		if (!exists || records.length() < LOG_HEADER_SIZE) {
+			createLog();
+			return;
+		}
+		records.seek(0);
+		if (records.readInt() != RECORDS_MAGIC || records.readInt() != VERSION) {
+			createLog();
+			return;
+		}
+		logId = records.readLong();
+		long end = scan(readIndex());
+		if (end < records.length()) {
+			// drop the record torn by a crash
+			records.setLength(end);
+			indexDirty = true;
+		}
+	}
+
+	private void createLog() throws IOException {
+		if (records == null) {
+			records = new RandomAccessFile(recordsFile, "rw"); //$NON-NLS-1$
+		}
+		records.setLength(0);
+		logId = System.currentTimeMillis();
+		records.writeInt(RECORDS_MAGIC);
+		records.writeInt(VERSION);
+		records.writeLong(logId);
+		index.clear();
+		garbage = 0;
+		indexDirty = true;
+	}
+
+	private void close() {
+		if (records != null) {
+			try {
+				records.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			records = null;
+		}
+	}
+
+	/**
+	 * Reads the index file
+	 * @return the offset of the first record of the log not covered by the index
+	 */
+	private long readIndex() {
+		if (!indexFile.exists()) {
+			return LOG_HEADER_SIZE;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION || in.readLong() != logId) {
+				return LOG_HEADER_SIZE;
+			}
+			long covered = in.readLong();
+			if (covered < LOG_HEADER_SIZE || covered > records.length()) {
+				return LOG_HEADER_SIZE;
+			}
+			long indexGarbage = in.readLong();
+			int size = in.readInt();
+			Hashtable entries = new Hashtable(size * 2 + 1);
+			for (int i = 0; i < size; i++) {
+				long bundleId = in.readLong();
+				entries.put(new Long(bundleId), new Entry(in.readLong(), in.readLong(), in.readInt()));
+			}
+			index = entries;
+			garbage = indexGarbage;
+			return covered;
+		} catch (IOException e) {
+			// the index is damaged - the whole log will be scanned
+			return LOG_HEADER_SIZE;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of the log starting at the specified offset and updates the index
+	 * @return the offset after the last valid record
+	 */
+	private long scan(long offset) throws IOException {
+		if (offset == LOG_HEADER_SIZE) {
+			index.clear();
+			garbage = 0;
+		}
+		long length = records.length();
+		if (offset >= length) {
+			return offset;
+		}
+		indexDirty = true;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(recordsFile)));
+		try {
+			long skipped = 0;
+			while (skipped < offset) {
+				long n = in.skip(offset - skipped);
+				if (n <= 0) {
+					return offset;
+				}
+				skipped += n;
+			}
+			while (offset + RECORD_HEADER_SIZE + RECORD_TRAILER_SIZE <= length) {
+				byte type = in.readByte();
+				long bundleId = in.readLong();
+				long lastModified = in.readLong();
+				int dataLength = in.readInt();
+				if ((type != RECORD_COMPONENTS && type != RECORD_REMOVED) || dataLength < 0 || offset + recordSize(dataLength) > length) {
+					break;
+				}
+				byte[] data = new byte[dataLength];
+				in.readFully(data);
+				if (in.readLong() != checksum(type, bundleId, lastModified, data)) {
+					break;
+				}
+				Entry old;
+				if (type == RECORD_COMPONENTS) {
+					old = (Entry) index.put(new Long(bundleId), new Entry(lastModified, offset, dataLength));
+				} else {
+					old = (Entry) index.remove(new Long(bundleId));
+					garbage += recordSize(0);
+				}
+				if (old != null) {
+					garbage += recordSize(old.length);
+				}
+				offset += recordSize(dataLength);
+			}
+		} catch (EOFException e) {
+			// the last record is incomplete
+		} finally {
+			in.close();
+		}
+		return offset;
+	}
+
+	// returns the data of a components record or null if the record is damaged
+	private byte[] readRecord(Entry entry) throws IOException {
+		records.seek(entry.offset);
+		byte type = records.readByte();
+		long bundleId = records.readLong();
+		long lastModified = records.readLong();
+		int dataLength = records.readInt();
+		if (type != RECORD_COMPONENTS || lastModified != entry.lastModified || dataLength != entry.length) {
+			return null;
+		}
+		byte[] data = new byte[dataLength];
+		records.readFully(data);
+		if (records.readLong() != checksum(type, bundleId, lastModified, data)) {
+			return null;
+		}
+		return data;
+	}
+
+	// appends a record at the end of the log and returns its offset
+	private long append(byte type, long bundleId, long lastModified, byte[] data) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(recordSize(data.length));
+		DataOutputStream out = new DataOutputStream(buf);
+		out.writeByte(type);
+		out.writeLong(bundleId);
+		out.writeLong(lastModified);
+		out.writeInt(data.length);
+		out.write(data);
+		out.writeLong(checksum(type, bundleId, lastModified, data));
+		long offset = records.length();
+		records.seek(offset);
+		records.write(buf.toByteArray());
+		indexDirty = true;
+		return offset;
+	}
+
+	private long checksum(byte type, long bundleId, long lastModified, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			crc.update((int) (bundleId >>> shift));
+		}
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			crc.update((int) (lastModified >>> shift));
+		}
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	private static int recordSize(int dataLength) {
+		return RECORD_HEADER_SIZE + dataLength + RECORD_TRAILER_SIZE;
+	}
+
+	// copies the live records to a new log
+	private void compact() throws IOException {
+		File tmpFile = bc.getDataFile(RECORDS_FILE + ".tmp"); //$NON-NLS-1$
+		long newLogId = System.currentTimeMillis();
+		if (newLogId <= logId) {
+			newLogId = logId + 1;
+		}
+		Hashtable newIndex = new Hashtable(index.size() * 2 + 1);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try {
+			out.writeInt(RECORDS_MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(newLogId);
+			long offset = LOG_HEADER_SIZE;
+			for (Enumeration e = index.keys(); e.hasMoreElements();) {
+				Object bundleId = e.nextElement();
+				Entry entry = (Entry) index.get(bundleId);
+				byte[] record = new byte[recordSize(entry.length)];
+				records.seek(entry.offset);
+				records.readFully(record);
+				out.write(record);
+				newIndex.put(bundleId, new Entry(entry.lastModified, offset, entry.length));
+				offset += record.length;
+			}
+		} finally {
+			out.close();
+		}
+		records.close();
+		records = null;
+		if (!recordsFile.delete() || !tmpFile.renameTo(recordsFile)) {
+			// keep the old log
+			tmpFile.delete();
+			records = new RandomAccessFile(recordsFile, "rw"); //$NON-NLS-1$
+			return;
+		}
+		records = new RandomAccessFile(recordsFile, "rw"); //$NON-NLS-1$
+		logId = newLogId;
+		index = newIndex;
+		garbage = 0;
+		indexDirty = true;
+	}
+
+	private void writeIndex() throws IOException {
+		File tmpFile = bc.getDataFile(INDEX_FILE + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(logId);
+			out.writeLong(records.length());
+			out.writeLong(garbage);
+			out.writeInt(index.size());
+			for (Enumeration e = index.keys(); e.hasMoreElements();) {
+				Long bundleId = (Long) e.nextElement();
+				Entry entry = (Entry) index.get(bundleId);
+				out.writeLong(bundleId.longValue());
+				out.writeLong(entry.lastModified);
+				out.writeLong(entry.offset);
+				out.writeInt(entry.length);
+			}
+		} finally {
+			out.close();
+		}
+		indexFile.delete();
+		if (!tmpFile.renameTo(indexFile)) {
+			tmpFile.delete();
+			return;
+		}
+		indexDirty = false;
+	}
+
+	// the position of the live record of a bundle in the log
+	private static class Entry {
+		long lastModified;
+		long offset;
+		int length;
+
+		Entry(long lastModified, long offset, int length) {
+			this.lastModified = lastModified;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
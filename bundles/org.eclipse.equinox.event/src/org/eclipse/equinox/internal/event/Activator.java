@@ -16,7 +16,7 @@ import org.osgi.service.event.EventAdmin;
 
 public class Activator implements BundleActivator {
 	private static final String PROP_USE_DS = "equinox.use.ds"; //$NON-NLS-1$
-	private ServiceRegistration<EventAdmin> eventAdminService;
+	private ServiceRegistration<?> eventAdminService;
 	private EventComponent eventAdmin;
 
 	public void start(BundleContext bundleContext) throws InvalidSyntaxException {
@@ -34,7 +34,7 @@ public class Activator implements BundleActivator {
 
 		eventAdmin = new EventComponent();
 		eventAdmin.activate(bundleContext);
-		eventAdminService = bundleContext.registerService(EventAdmin.class, eventAdmin, null);
+		eventAdminService = bundleContext.registerService(new String[] {serviceName, ExtendedEventAdmin.class.getName()}, eventAdmin, null);
 	}
 
 	public void stop(BundleContext bundleContext) {
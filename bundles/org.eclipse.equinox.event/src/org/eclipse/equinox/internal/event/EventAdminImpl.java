@@ -12,11 +12,11 @@
 package org.eclipse.equinox.internal.event;
 
 import java.security.Permission;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 import org.eclipse.osgi.framework.eventmgr.*;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.event.*;
 import org.osgi.service.log.LogService;
 
@@ -24,11 +24,35 @@ import org.osgi.service.log.LogService;
  * Implementation of org.osgi.service.event.EventAdmin. EventAdminImpl uses
  * org.eclipse.osgi.framework.eventmgr.EventManager. It is assumed
  * org.eclipse.osgi.framework.eventmgr package is exported by some other bundle.
+ * <p>
+ * Asynchronous events are delivered by a configurable number of lanes, each
+ * backed by its own EventManager thread. A handler requesting ordered delivery
+ * is always assigned to the same lane so it receives events in the order they
+ * were posted; handlers requesting unordered delivery are spread over all lanes.
+ * <p>
+ * Handlers which repeatedly exceed the configured handler timeout are denied
+ * further events. A handler still running when the timeout expires is detected
+ * by a watchdog thread; the thread delivering to a hung handler stays blocked
+ * but the handler receives no further events. Handler statistics, collected while a
+ * handler timeout is configured, are available from the {@link EventAdminStatistics} service.
  */
-public class EventAdminImpl implements EventAdmin {
+public class EventAdminImpl implements ExtendedEventAdmin {
+	/** Framework property specifying the number of asynchronous delivery threads */
+	static final String PROP_ASYNC_THREADS = "org.eclipse.equinox.event.async.threads"; //$NON-NLS-1$
+	/** Framework property specifying the time in milliseconds a handler may take to handle an event; 0 disables the check */
+	static final String PROP_HANDLER_TIMEOUT = "org.eclipse.equinox.event.handler.timeout"; //$NON-NLS-1$
+	/** Framework property specifying the number of consecutive timeouts after which a handler is denied further events */
+	static final String PROP_HANDLER_TIMEOUT_LIMIT = "org.eclipse.equinox.event.handler.timeout.limit"; //$NON-NLS-1$
+
 	private final LogTracker log;
 	private final EventHandlerTracker handlers;
-	private volatile EventManager eventManager;
+	private final long handlerTimeout;
+	private final BundleContext context;
+	private volatile EventManager[] eventManagers;
+	private ServiceRegistration<EventAdminStatistics> statisticsRegistration;
+	private Watchdog watchdog;
+	// lane for the next unordered delivery; races are harmless since any lane will do
+	private int nextUnorderedLane;
 
 	/**
 	 * Constructor for EventAdminImpl.
@@ -37,8 +61,11 @@ public class EventAdminImpl implements EventAdmin {
 	 */
 	EventAdminImpl(BundleContext context) {
 		super();
+		this.context = context;
 		log = new LogTracker(context, System.out);
-		handlers = new EventHandlerTracker(context, log);
+		handlerTimeout = getIntProperty(PROP_HANDLER_TIMEOUT, 0, 0);
+		int timeoutLimit = getIntProperty(PROP_HANDLER_TIMEOUT_LIMIT, 3, 1);
+		handlers = new EventHandlerTracker(context, log, handlerTimeout, timeoutLimit);
 	}
 
 	/**
@@ -48,17 +75,68 @@ public class EventAdminImpl implements EventAdmin {
 		log.open();
 		ThreadGroup eventGroup = new ThreadGroup("Equinox Event Admin"); //$NON-NLS-1$
 		eventGroup.setDaemon(true);
-		eventManager = new EventManager(EventAdminMsg.EVENT_ASYNC_THREAD_NAME, eventGroup);
+		int lanes = getIntProperty(PROP_ASYNC_THREADS, 1, 1);
+		EventManager[] managers = new EventManager[lanes];
+		if (lanes == 1) {
+			managers[0] = new EventManager(EventAdminMsg.EVENT_ASYNC_THREAD_NAME, eventGroup);
+		} else {
+			for (int i = 0; i < lanes; i++)
+				managers[i] = new EventManager(NLS.bind(EventAdminMsg.EVENT_ASYNC_LANE_THREAD_NAME, new Integer(i)), eventGroup);
+		}
+		eventManagers = managers;
 		handlers.open();
+		if (handlerTimeout > 0) {
+			watchdog = new Watchdog();
+			Thread thread = new Thread(eventGroup, watchdog, EventAdminMsg.EVENT_WATCHDOG_THREAD_NAME);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		statisticsRegistration = context.registerService(EventAdminStatistics.class, handlers, null);
+	}
+
+	/**
+	 * Returns the value of an integer framework property.
+	 * 
+	 * @param key the property key
+	 * @param defaultValue the value to use if the property is not set or invalid
+	 * @param minValue the smallest valid value
+	 * @return the configured value; the default value if not configured or invalid
+	 */
+	private int getIntProperty(String key, int defaultValue, int minValue) {
+		String value = context.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			int result = Integer.parseInt(value.trim());
+			if (result >= minValue) {
+				return result;
+			}
+		} catch (NumberFormatException e) {
+			// fall through and log
+		}
+		log.log(LogService.LOG_WARNING, NLS.bind(EventAdminMsg.EVENT_INVALID_PROPERTY, new Object[] {key, value, new Integer(defaultValue)}));
+		return defaultValue;
 	}
 
 	/**
 	 * This method should be called after unregistering EventAdmin service
 	 */
 	void stop() {
+		try {
+			statisticsRegistration.unregister();
+		} catch (IllegalStateException e) {
+			// ignore; the bundle is stopping
+		}
+		if (watchdog != null) {
+			watchdog.stop();
+			watchdog = null;
+		}
 		handlers.close();
-		eventManager.close();
-		eventManager = null; // signify we have stopped
+		EventManager[] managers = eventManagers;
+		eventManagers = null; // signify we have stopped
+		for (int i = 0; i < managers.length; i++)
+			managers[i].close();
 		log.close();
 	}
 
@@ -78,6 +156,31 @@ public class EventAdminImpl implements EventAdmin {
 		dispatchEvent(event, false);
 	}
 
+	/**
+	 * @param events
+	 * @see org.eclipse.equinox.internal.event.ExtendedEventAdmin#postEvents(org.osgi.service.event.Event[])
+	 */
+	public void postEvents(Event[] events) {
+		dispatchEvents(events, true);
+	}
+
+	/**
+	 * @param events
+	 * @param coalesceProperty
+	 * @see org.eclipse.equinox.internal.event.ExtendedEventAdmin#postEvents(org.osgi.service.event.Event[], java.lang.String)
+	 */
+	public void postEvents(Event[] events, String coalesceProperty) {
+		dispatchEvents(coalesce(events, coalesceProperty), true);
+	}
+
+	/**
+	 * @param events
+	 * @see org.eclipse.equinox.internal.event.ExtendedEventAdmin#sendEvents(org.osgi.service.event.Event[])
+	 */
+	public void sendEvents(Event[] events) {
+		dispatchEvents(events, false);
+	}
+
 	/**
 	 * Internal main method for sendEvent() and postEvent(). Dispatching an
 	 * event to EventHandler. All exceptions are logged except when dealing with
@@ -89,8 +192,8 @@ public class EventAdminImpl implements EventAdmin {
 	 */
 	private void dispatchEvent(Event event, boolean isAsync) {
 		// keep a local copy in case we are stopped in the middle of dispatching
-		EventManager currentManager = eventManager;
-		if (currentManager == null) {
+		EventManager[] currentManagers = eventManagers;
+		if (currentManagers == null) {
 			// EventAdmin is stopped
 			return;
 		}
@@ -110,21 +213,30 @@ public class EventAdminImpl implements EventAdmin {
 			throw e;
 		}
 
-		Set<EventHandlerWrapper> eventHandlers = handlers.getHandlers(topic);
+		EventHandlerWrapper[] eventHandlers = handlers.getHandlers(topic);
 		// If there are no handlers, then we are done
-		if (eventHandlers.isEmpty()) {
+		if (eventHandlers.length == 0) {
 			return;
 		}
 
 		SecurityManager sm = System.getSecurityManager();
 		Permission perm = (sm == null) ? null : new TopicPermission(topic, TopicPermission.SUBSCRIBE);
 
-		Map<EventHandlerWrapper, Permission> listeners = new CopyOnWriteIdentityMap<EventHandlerWrapper, Permission>();
-		for (EventHandlerWrapper wrapper : eventHandlers)
-			listeners.put(wrapper, perm);
+		CopyOnWriteIdentityMap<EventHandlerWrapper, Permission> listeners = new CopyOnWriteIdentityMap<EventHandlerWrapper, Permission>();
+		if (perm == null) {
+			listeners.putAll(eventHandlers);
+		} else {
+			for (EventHandlerWrapper wrapper : eventHandlers)
+				listeners.put(wrapper, perm);
+		}
+
+		if (isAsync && currentManagers.length > 1) {
+			dispatchEventLanes(listeners, handlers, event, currentManagers);
+			return;
+		}
 
 		// Create the listener queue for this event delivery
-		ListenerQueue<EventHandlerWrapper, Permission, Event> listenerQueue = new ListenerQueue<EventHandlerWrapper, Permission, Event>(currentManager);
+		ListenerQueue<EventHandlerWrapper, Permission, Event> listenerQueue = new ListenerQueue<EventHandlerWrapper, Permission, Event>(currentManagers[0]);
 		// Add the listeners to the queue and associate them with the event
 		// dispatcher
 		listenerQueue.queueListeners(listeners.entrySet(), handlers);
@@ -136,6 +248,153 @@ public class EventAdminImpl implements EventAdmin {
 		}
 	}
 
+	/**
+	 * Internal main method for sendEvents() and postEvents(). Dispatching a
+	 * batch of events to EventHandlers. The publish permission is checked for 
+	 * every event before any event is delivered. Each handler is queued only 
+	 * once and receives all the events of the batch it subscribes to, in batch 
+	 * order.
+	 * 
+	 * @param events to be delivered
+	 * @param isAsync must be set to true for synchronous event delivery, false
+	 *        for asynchronous delivery.
+	 */
+	private void dispatchEvents(Event[] events, boolean isAsync) {
+		// keep a local copy in case we are stopped in the middle of dispatching
+		EventManager[] currentManagers = eventManagers;
+		if (currentManagers == null) {
+			// EventAdmin is stopped
+			return;
+		}
+
+		// Map<EventHandlerWrapper, List<Event>> the events each handler subscribes to
+		Map<EventHandlerWrapper, List<Event>> handlerEvents = new HashMap<EventHandlerWrapper, List<Event>>();
+		String checkedTopic = null;
+		for (int i = 0; i < events.length; i++) {
+			Event event = events[i];
+			if (event == null) {
+				log.log(LogService.LOG_ERROR, EventAdminMsg.EVENT_NULL_EVENT);
+				continue;
+			}
+			String topic = event.getTopic();
+			// batches usually repeat a topic; avoid checking the same topic again
+			if (!topic.equals(checkedTopic)) {
+				try {
+					checkTopicPermissionPublish(topic);
+				} catch (SecurityException e) {
+					String msg = NLS.bind(EventAdminMsg.EVENT_NO_TOPICPERMISSION_PUBLISH, topic);
+					log.log(LogService.LOG_ERROR, msg);
+					// must throw a security exception here according to the EventAdmin spec
+					throw e;
+				}
+				checkedTopic = topic;
+			}
+
+			EventHandlerWrapper[] eventHandlers = handlers.getHandlers(topic);
+			for (EventHandlerWrapper wrapper : eventHandlers) {
+				List<Event> wrapperEvents = handlerEvents.get(wrapper);
+				if (wrapperEvents == null) {
+					wrapperEvents = new ArrayList<Event>();
+					handlerEvents.put(wrapper, wrapperEvents);
+				}
+				wrapperEvents.add(event);
+			}
+		}
+		// If there are no handlers, then we are done
+		if (handlerEvents.isEmpty()) {
+			return;
+		}
+
+		CopyOnWriteIdentityMap<EventHandlerWrapper, Event[]> listeners = new CopyOnWriteIdentityMap<EventHandlerWrapper, Event[]>();
+		for (Map.Entry<EventHandlerWrapper, List<Event>> entry : handlerEvents.entrySet()) {
+			List<Event> wrapperEvents = entry.getValue();
+			listeners.put(entry.getKey(), wrapperEvents.toArray(new Event[wrapperEvents.size()]));
+		}
+
+		if (isAsync && currentManagers.length > 1) {
+			dispatchEventLanes(listeners, BatchDispatcher.INSTANCE, null, currentManagers);
+			return;
+		}
+
+		ListenerQueue<EventHandlerWrapper, Event[], Object> listenerQueue = new ListenerQueue<EventHandlerWrapper, Event[], Object>(currentManagers[0]);
+		listenerQueue.queueListeners(listeners.entrySet(), BatchDispatcher.INSTANCE);
+		if (isAsync) {
+			listenerQueue.dispatchEventAsynchronous(0, null);
+		} else {
+			listenerQueue.dispatchEventSynchronous(0, null);
+		}
+	}
+
+	/**
+	 * Asynchronously dispatches an event using multiple delivery lanes. Ordered
+	 * handlers are queued to their own lane; unordered handlers are queued to the
+	 * next lane in turn. Each lane delivers in FIFO order on its own thread.
+	 * 
+	 * @param listeners the handlers to deliver to and their listener objects
+	 * @param dispatcher the dispatcher which delivers to the handlers
+	 * @param eventObject the event object passed to the dispatcher
+	 * @param managers the event managers of the delivery lanes
+	 */
+	private <V, E> void dispatchEventLanes(Map<EventHandlerWrapper, V> listeners, EventDispatcher<EventHandlerWrapper, V, E> dispatcher, E eventObject, EventManager[] managers) {
+		final int lanes = managers.length;
+		@SuppressWarnings("unchecked")
+		Map<EventHandlerWrapper, V>[] laneListeners = new Map[lanes];
+		int unorderedLane = nextUnorderedLane;
+		for (Map.Entry<EventHandlerWrapper, V> entry : listeners.entrySet()) {
+			EventHandlerWrapper wrapper = entry.getKey();
+			int lane;
+			if (wrapper.isOrdered()) {
+				lane = wrapper.getLane(lanes);
+			} else {
+				lane = unorderedLane;
+				unorderedLane = (unorderedLane + 1) % lanes;
+			}
+			if (laneListeners[lane] == null)
+				laneListeners[lane] = new CopyOnWriteIdentityMap<EventHandlerWrapper, V>();
+			laneListeners[lane].put(wrapper, entry.getValue());
+		}
+		nextUnorderedLane = unorderedLane;
+
+		for (int i = 0; i < lanes; i++) {
+			if (laneListeners[i] == null)
+				continue;
+			ListenerQueue<EventHandlerWrapper, V, E> listenerQueue = new ListenerQueue<EventHandlerWrapper, V, E>(managers[i]);
+			listenerQueue.queueListeners(laneListeners[i].entrySet(), dispatcher);
+			listenerQueue.dispatchEventAsynchronous(0, eventObject);
+		}
+	}
+
+	/**
+	 * Removes all but the last event for each combination of topic and value
+	 * of the coalesce property. The remaining events keep their batch order.
+	 * 
+	 * @param events the events to coalesce
+	 * @param coalesceProperty the event property to coalesce by in addition to 
+	 *        the topic; may be null to coalesce by topic only
+	 * @return the coalesced events
+	 */
+	private static Event[] coalesce(Event[] events, String coalesceProperty) {
+		Set<CoalesceKey> seen = new HashSet<CoalesceKey>();
+		Event[] kept = new Event[events.length];
+		int count = 0;
+		// walk backwards so the last event for a key is the one kept
+		for (int i = events.length - 1; i >= 0; i--) {
+			Event event = events[i];
+			if (event == null) {
+				continue;
+			}
+			Object value = (coalesceProperty == null) ? null : event.getProperty(coalesceProperty);
+			if (seen.add(new CoalesceKey(event.getTopic(), value))) {
+				kept[count++] = event;
+			}
+		}
+		Event[] result = new Event[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = kept[count - 1 - i];
+		}
+		return result;
+	}
+
 	/**
 	 * Checks if the caller bundle has right PUBLISH TopicPermision.
 	 * 
@@ -149,4 +408,74 @@ public class EventAdminImpl implements EventAdmin {
 		sm.checkPermission(new TopicPermission(topic, TopicPermission.PUBLISH));
 	}
 
+	/**
+	 * Delivers a batch of events to a handler. The listener object is the 
+	 * events the handler subscribes to, in batch order.
+	 */
+	private static final class BatchDispatcher implements EventDispatcher<EventHandlerWrapper, Event[], Object> {
+		static final BatchDispatcher INSTANCE = new BatchDispatcher();
+
+		public void dispatchEvent(EventHandlerWrapper eventListener, Event[] listenerObject, int eventAction, Object eventObject) {
+			SecurityManager sm = System.getSecurityManager();
+			for (int i = 0; i < listenerObject.length; i++) {
+				Event event = listenerObject[i];
+				Permission perm = (sm == null) ? null : new TopicPermission(event.getTopic(), TopicPermission.SUBSCRIBE);
+				eventListener.handleEvent(event, perm);
+			}
+		}
+	}
+
+	/**
+	 * The key used to coalesce events: the topic and the value of the 
+	 * coalesce property.
+	 */
+	private static final class CoalesceKey {
+		private final String topic;
+		private final Object value;
+
+		CoalesceKey(String topic, Object value) {
+			this.topic = topic;
+			this.value = value;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CoalesceKey))
+				return false;
+			CoalesceKey other = (CoalesceKey) obj;
+			return topic.equals(other.topic) && (value == null ? other.value == null : value.equals(other.value));
+		}
+
+		public int hashCode() {
+			return topic.hashCode() * 31 + (value == null ? 0 : value.hashCode());
+		}
+	}
+
+	/**
+	 * Periodically checks for handlers still running after the handler timeout.
+	 */
+	private class Watchdog implements Runnable {
+		private boolean stopped;
+
+		public void run() {
+			// check often enough to detect a timeout within half the timeout
+			long interval = Math.max(handlerTimeout / 2, 1);
+			synchronized (this) {
+				while (!stopped) {
+					try {
+						wait(interval);
+					} catch (InterruptedException e) {
+						return;
+					}
+					if (!stopped) {
+						handlers.checkTimeouts(System.currentTimeMillis());
+					}
+				}
+			}
+		}
+
+		synchronized void stop() {
+			stopped = true;
+			notifyAll();
+		}
+	}
 }
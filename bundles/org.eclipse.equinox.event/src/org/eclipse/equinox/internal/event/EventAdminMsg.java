@@ -17,11 +17,16 @@ public class EventAdminMsg extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.equinox.internal.event.ExternalMessages"; //$NON-NLS-1$
 
 	public static String EVENT_ASYNC_THREAD_NAME;
+	public static String EVENT_ASYNC_LANE_THREAD_NAME;
+	public static String EVENT_WATCHDOG_THREAD_NAME;
 	public static String EVENT_NULL_EVENT;
 	public static String EVENT_NO_TOPICPERMISSION_PUBLISH;
 	public static String EVENT_DISPATCH_HANDLER_EXCEPTION;
 	public static String EVENT_INVALID_HANDLER_FILTER;
 	public static String EVENT_INVALID_HANDLER_TOPICS;
+	public static String EVENT_INVALID_PROPERTY;
+	public static String EVENT_HANDLER_TIMEOUT;
+	public static String EVENT_HANDLER_DENIED;
 
 	static {
 		// initialize resource bundles
@@ -0,0 +1,24 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.event;
+
+/**
+ * Service registered by the Event Admin implementation to expose event 
+ * delivery statistics for the tracked event handlers.
+ */
+public interface EventAdminStatistics {
+	/**
+	 * Returns the statistics of all handlers currently tracked by Event Admin.
+	 * 
+	 * @return the handler statistics; an empty array if no handlers are tracked
+	 */
+	public EventHandlerStatistics[] getHandlerStatistics();
+}
@@ -13,9 +13,8 @@ package org.eclipse.equinox.internal.event;
 import org.eclipse.equinox.internal.event.mapper.EventRedeliverer;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.event.Event;
-import org.osgi.service.event.EventAdmin;
 
-public class EventComponent implements EventAdmin {
+public class EventComponent implements ExtendedEventAdmin {
 	private EventRedeliverer eventRedeliverer;
 	private EventAdminImpl eventAdmin;
 
@@ -38,4 +37,16 @@ public class EventComponent implements EventAdmin {
 	public void sendEvent(Event event) {
 		eventAdmin.sendEvent(event);
 	}
+
+	public void postEvents(Event[] events) {
+		eventAdmin.postEvents(events);
+	}
+
+	public void postEvents(Event[] events, String coalesceProperty) {
+		eventAdmin.postEvents(events, coalesceProperty);
+	}
+
+	public void sendEvents(Event[] events) {
+		eventAdmin.sendEvents(events);
+	}
 }
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.event;
+
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Event delivery statistics of a single event handler. All times are in 
+ * milliseconds. Deliveries are only counted and timed while a handler timeout 
+ * is configured; without a timeout handlers are called directly.
+ */
+public interface EventHandlerStatistics {
+	/**
+	 * @return the service reference of the event handler
+	 */
+	public ServiceReference<EventHandler> getReference();
+
+	/**
+	 * @return the number of events delivered to the handler
+	 */
+	public long getEventCount();
+
+	/**
+	 * @return the total time spent by the handler handling events
+	 */
+	public long getTotalTime();
+
+	/**
+	 * @return the longest time spent by the handler handling a single event
+	 */
+	public long getMaxTime();
+
+	/**
+	 * @return the number of events for which the handler exceeded the handler timeout
+	 */
+	public long getTimeoutCount();
+
+	/**
+	 * @return true if the handler is denied further events because it 
+	 * repeatedly exceeded the handler timeout
+	 */
+	public boolean isDenied();
+}
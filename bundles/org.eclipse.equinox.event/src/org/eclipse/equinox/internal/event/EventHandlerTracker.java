@@ -21,26 +21,37 @@ import org.osgi.service.event.EventHandler;
 import org.osgi.service.log.LogService;
 import org.osgi.util.tracker.ServiceTracker;
 
-public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandlerWrapper> implements EventDispatcher<EventHandlerWrapper, Permission, Event> {
+public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandlerWrapper> implements EventDispatcher<EventHandlerWrapper, Permission, Event>, EventAdminStatistics {
+	// number of topics which can be held in the handler cache; must be a power of 2
+	private static final int CACHE_SIZE = 1024;
+	private static final EventHandlerWrapper[] NO_HANDLERS = new EventHandlerWrapper[0];
 
 	private final LogService log;
+	private final long timeout;
+	private final int timeoutLimit;
 	//* List<EventHandlerWrapper> of all handlers with topic of "*"
 	private final List<EventHandlerWrapper> globalWildcard;
 	// Map<String,List<EventHandlerWrapper>> key is topic prefix of partial wildcard
 	private final Map<String, List<EventHandlerWrapper>> partialWildcard;
 	// Map<String,List<EventHandlerWrapper>> key is topic name
 	private final Map<String, List<EventHandlerWrapper>> topicName;
+	// Resolved handlers keyed by topic hash; replaced with an empty cache whenever the buckets change.
+	// Entries are immutable so the cache can be read without holding the lock.
+	private volatile CacheEntry[] cache;
 
-	public EventHandlerTracker(BundleContext context, LogService log) {
+	public EventHandlerTracker(BundleContext context, LogService log, long timeout, int timeoutLimit) {
 		super(context, EventHandler.class.getName(), null);
 		this.log = log;
+		this.timeout = timeout;
+		this.timeoutLimit = timeoutLimit;
 		globalWildcard = new ArrayList<EventHandlerWrapper>();
 		partialWildcard = new HashMap<String, List<EventHandlerWrapper>>();
 		topicName = new HashMap<String, List<EventHandlerWrapper>>();
+		cache = new CacheEntry[CACHE_SIZE];
 	}
 
 	public EventHandlerWrapper addingService(ServiceReference<EventHandler> reference) {
-		EventHandlerWrapper wrapper = new EventHandlerWrapper(reference, context, log);
+		EventHandlerWrapper wrapper = new EventHandlerWrapper(reference, context, log, timeout, timeoutLimit);
 		synchronized (this) {
 			if (wrapper.init()) {
 				bucket(wrapper);
@@ -50,6 +61,8 @@ public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandl
 	}
 
 	public void modifiedService(ServiceReference<EventHandler> reference, EventHandlerWrapper service) {
+		// give a handler which was denied for exceeding the timeout another chance
+		service.resetTimeouts();
 		synchronized (this) {
 			unbucket(service);
 			if (service.init()) {
@@ -104,6 +117,9 @@ public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandl
 				wrappers.add(wrapper);
 			}
 		}
+		if (length > 0) {
+			cache = new CacheEntry[CACHE_SIZE];
+		}
 	}
 
 	/**
@@ -143,16 +159,41 @@ public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandl
 				}
 			}
 		}
+		if (length > 0) {
+			cache = new CacheEntry[CACHE_SIZE];
+		}
+	}
+
+	/**
+	 * Return the handlers which subscribe to the event topic. A handler is 
+	 * included only once even if it subscribes to the topic more than once.
+	 * <p>
+	 * The handlers for recently published topics are cached so this method 
+	 * does not lock or allocate for a topic which has already been resolved.
+	 * The returned array is shared and must not be modified.
+	 * 
+	 * @param topic
+	 * @return an array of handlers
+	 */
+	public EventHandlerWrapper[] getHandlers(final String topic) {
+		CacheEntry[] entries = cache;
+		int index = topic.hashCode() & (entries.length - 1);
+		CacheEntry entry = entries[index];
+		if ((entry != null) && entry.topic.equals(topic)) {
+			return entry.handlers;
+		}
+		return resolveHandlers(topic, index);
 	}
 
 	/**
-	 * Return the set of handlers which subscribe to the event topic.
-	 * A set is used to ensure a handler is not called for an event more than once.
+	 * Resolve the handlers which subscribe to the event topic and store them
+	 * in the cache.
 	 * 
 	 * @param topic
-	 * @return a set of handlers
+	 * @param cacheIndex the cache index of the topic
+	 * @return an array of handlers
 	 */
-	public synchronized Set<EventHandlerWrapper> getHandlers(final String topic) {
+	private synchronized EventHandlerWrapper[] resolveHandlers(final String topic, int cacheIndex) {
 		// Use a set to remove duplicates
 		Set<EventHandlerWrapper> handlers = new HashSet<EventHandlerWrapper>();
 
@@ -180,7 +221,26 @@ public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandl
 			handlers.addAll(wrappers);
 		}
 
-		return handlers;
+		EventHandlerWrapper[] result = handlers.isEmpty() ? NO_HANDLERS : handlers.toArray(new EventHandlerWrapper[handlers.size()]);
+		// the cache may have been replaced since the caller read it; always use the current one
+		cache[cacheIndex] = new CacheEntry(topic, result);
+		return result;
+	}
+
+	public EventHandlerStatistics[] getHandlerStatistics() {
+		return getServices(new EventHandlerWrapper[0]);
+	}
+
+	/**
+	 * Counts the deliveries still running after the handler timeout as timed out.
+	 * 
+	 * @param now The current time in milliseconds
+	 */
+	public void checkTimeouts(long now) {
+		EventHandlerWrapper[] wrappers = getServices(NO_HANDLERS);
+		for (int i = 0; i < wrappers.length; i++) {
+			wrappers[i].checkTimeouts(now);
+		}
 	}
 
 	/**
@@ -196,4 +256,17 @@ public class EventHandlerTracker extends ServiceTracker<EventHandler, EventHandl
 	public void dispatchEvent(EventHandlerWrapper eventListener, Permission listenerObject, int eventAction, Event eventObject) {
 		eventListener.handleEvent(eventObject, listenerObject);
 	}
+
+	/**
+	 * An immutable entry of the handler cache.
+	 */
+	private static final class CacheEntry {
+		final String topic;
+		final EventHandlerWrapper[] handlers;
+
+		CacheEntry(String topic, EventHandlerWrapper[] handlers) {
+			this.topic = topic;
+			this.handlers = handlers;
+		}
+	}
 }
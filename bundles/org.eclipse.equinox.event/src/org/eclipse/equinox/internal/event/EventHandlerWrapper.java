@@ -12,7 +12,7 @@
 package org.eclipse.equinox.internal.event;
 
 import java.security.Permission;
-import java.util.Collection;
+import java.util.*;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.*;
 import org.osgi.service.event.*;
@@ -20,16 +20,33 @@ import org.osgi.service.log.LogService;
 
 /**
  * A wrapper for EventHandlers. This class caches property values and 
- * performs final checks before calling the wrapped handler.
- *
+ * performs final checks before calling the wrapped handler. It also records
+ * the time the handler takes for each event and denies further events to a 
+ * handler which exceeds the handler timeout too many times in a row.
+ * <p>
+ * A handler still running when the timeout expires is counted as timed out by
+ * {@link #checkTimeouts(long)}, so a handler which hangs is denied further
+ * events even though the thread delivering to it remains blocked.
  */
-public class EventHandlerWrapper {
+public class EventHandlerWrapper implements EventHandlerStatistics {
 	private final ServiceReference<EventHandler> reference;
 	private final LogService log;
 	private final BundleContext context;
+	private final long serviceId;
+	private final long timeout;
+	private final int timeoutLimit;
 	private EventHandler handler;
 	private String[] topics;
 	private Filter filter;
+	private boolean ordered;
+	private long eventCount;
+	private long totalTime;
+	private long maxTime;
+	private long timeoutCount;
+	private int consecutiveTimeouts;
+	private volatile boolean denied;
+	// the deliveries in progress; deliveries are only tracked and timed if a timeout is set
+	private final List<Delivery> deliveries = new ArrayList<Delivery>(1);
 
 	/**
 	 * Create an EventHandlerWrapper. 
@@ -37,11 +54,17 @@ public class EventHandlerWrapper {
 	 * @param reference Reference to the EventHandler
 	 * @param context Bundle Context of the Event Admin bundle
 	 * @param log LogService object for logging
+	 * @param timeout The time in milliseconds the handler may take to handle an event; 0 for no limit
+	 * @param timeoutLimit The number of consecutive timeouts after which the handler is denied further events
 	 */
-	public EventHandlerWrapper(ServiceReference<EventHandler> reference, BundleContext context, LogService log) {
+	public EventHandlerWrapper(ServiceReference<EventHandler> reference, BundleContext context, LogService log, long timeout, int timeoutLimit) {
 		this.reference = reference;
 		this.context = context;
 		this.log = log;
+		this.timeout = timeout;
+		this.timeoutLimit = timeoutLimit;
+		Object id = reference.getProperty(Constants.SERVICE_ID);
+		this.serviceId = (id instanceof Long) ? ((Long) id).longValue() : 0;
 	}
 
 	/**
@@ -52,6 +75,7 @@ public class EventHandlerWrapper {
 	public synchronized boolean init() {
 		topics = null;
 		filter = null;
+		ordered = true;
 
 		// Get topic names
 		Object o = reference.getProperty(EventConstants.EVENT_TOPIC);
@@ -84,6 +108,36 @@ public class EventHandlerWrapper {
 			}
 		}
 
+		// get delivery qualities; asynchronous delivery is ordered unless only unordered is requested
+		o = reference.getProperty(EventConstants.EVENT_DELIVERY);
+		if (o != null) {
+			String[] delivery = null;
+			if (o instanceof String) {
+				delivery = new String[] {(String) o};
+			} else if (o instanceof String[]) {
+				delivery = (String[]) o;
+			} else if (o instanceof Collection) {
+				try {
+					delivery = ((Collection<?>) o).toArray(new String[0]);
+				} catch (ArrayStoreException e) {
+					// ignore; fall back to ordered delivery
+				}
+			}
+			if (delivery != null) {
+				boolean unordered = false;
+				for (int i = 0; i < delivery.length; i++) {
+					if (EventConstants.DELIVERY_ASYNC_ORDERED.equals(delivery[i])) {
+						unordered = false;
+						break;
+					}
+					if (EventConstants.DELIVERY_ASYNC_UNORDERED.equals(delivery[i])) {
+						unordered = true;
+					}
+				}
+				ordered = !unordered;
+			}
+		}
+
 		return true;
 	}
 
@@ -113,6 +167,28 @@ public class EventHandlerWrapper {
 		return topics;
 	}
 
+	/**
+	 * Indicates if the wrapped handler requires asynchronous events to be delivered
+	 * in the order they were posted.
+	 * 
+	 * @return false if the handler only asked for unordered delivery; true otherwise
+	 */
+	public synchronized boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Return the asynchronous delivery lane for the wrapped handler. The lane is
+	 * derived from the service id so all events for an ordered handler are always
+	 * delivered by the same thread.
+	 * 
+	 * @param lanes The number of available lanes
+	 * @return The lane index in the range 0 to lanes - 1
+	 */
+	public int getLane(int lanes) {
+		return (int) (serviceId % lanes);
+	}
+
 	/**
 	 * Return the wrapped handler. 
 	 * @return The wrapped handler.
@@ -170,6 +246,11 @@ public class EventHandlerWrapper {
 	 * @param perm The permission to be checked
 	 */
 	public void handleEvent(Event event, Permission perm) {
+		// has the handler been denied for exceeding the timeout?
+		if (denied) {
+			return;
+		}
+
 		Bundle bundle = reference.getBundle();
 		// is service unregistered?
 		if (bundle == null) {
@@ -193,18 +274,174 @@ public class EventHandlerWrapper {
 			return;
 		}
 
+		if (timeout <= 0) {
+			// nothing to time: call the handler directly
+			try {
+				handlerService.handleEvent(event);
+			} catch (Throwable t) {
+				handlerFailed(event, handlerService, t);
+			}
+			return;
+		}
+
+		Delivery delivery = new Delivery(event, handlerService, System.currentTimeMillis());
+		synchronized (this) {
+			deliveries.add(delivery);
+		}
 		try {
 			handlerService.handleEvent(event);
 		} catch (Throwable t) {
-			if (event.getTopic().startsWith("org/osgi/service/log/LogEntry")) { //$NON-NLS-1$
-				Object exception = event.getProperty("exception"); //$NON-NLS-1$
-				if (exception instanceof LogTopicException)
-					return; // avoid endless event dispatching
-				// wrap exception in a LogTopicException to detect endless event dispatching
-				t = new LogTopicException(t);
+			handlerFailed(event, handlerService, t);
+		} finally {
+			recordTime(delivery, System.currentTimeMillis() - delivery.start);
+		}
+	}
+
+	/**
+	 * Log a Throwable thrown by the handler.
+	 * 
+	 * @param event The event being handled
+	 * @param handlerService The handler
+	 * @param t The Throwable thrown by the handler
+	 */
+	private void handlerFailed(Event event, EventHandler handlerService, Throwable t) {
+		if (event.getTopic().startsWith("org/osgi/service/log/LogEntry")) { //$NON-NLS-1$
+			Object exception = event.getProperty("exception"); //$NON-NLS-1$
+			if (exception instanceof LogTopicException)
+				return; // avoid endless event dispatching
+			// wrap exception in a LogTopicException to detect endless event dispatching
+			t = new LogTopicException(t);
+		}
+		// log/handle any Throwable thrown by the listener
+		log.log(LogService.LOG_ERROR, NLS.bind(EventAdminMsg.EVENT_DISPATCH_HANDLER_EXCEPTION, event, handlerService), t);
+	}
+
+	/**
+	 * Count the deliveries which are still running after the timeout as timed out
+	 * and deny the handler further events if it exceeded the timeout too many times
+	 * in a row.
+	 * 
+	 * @param now The current time in milliseconds
+	 */
+	public void checkTimeouts(long now) {
+		if (timeout <= 0) {
+			return;
+		}
+		List<Delivery> timedOut = null;
+		boolean deny = false;
+		synchronized (this) {
+			for (Iterator<Delivery> iDeliveries = deliveries.iterator(); iDeliveries.hasNext();) {
+				Delivery delivery = iDeliveries.next();
+				if (delivery.timedOut || now - delivery.start <= timeout) {
+					continue;
+				}
+				delivery.timedOut = true;
+				timeoutCount++;
+				if (++consecutiveTimeouts >= timeoutLimit && !denied) {
+					denied = deny = true;
+				}
+				if (timedOut == null) {
+					timedOut = new ArrayList<Delivery>(1);
+				}
+				timedOut.add(delivery);
 			}
-			// log/handle any Throwable thrown by the listener
-			log.log(LogService.LOG_ERROR, NLS.bind(EventAdminMsg.EVENT_DISPATCH_HANDLER_EXCEPTION, event, handlerService), t);
+		}
+		if (timedOut == null) {
+			return;
+		}
+		for (Iterator<Delivery> iTimedOut = timedOut.iterator(); iTimedOut.hasNext();) {
+			Delivery delivery = iTimedOut.next();
+			log.log(LogService.LOG_WARNING, NLS.bind(EventAdminMsg.EVENT_HANDLER_TIMEOUT, new Object[] {delivery.handlerService, new Long(now - delivery.start), delivery.event, new Long(timeout)}));
+		}
+		if (deny) {
+			log.log(LogService.LOG_ERROR, NLS.bind(EventAdminMsg.EVENT_HANDLER_DENIED, timedOut.get(0).handlerService, new Integer(timeoutLimit)));
+		}
+	}
+
+	/**
+	 * Forget the timeouts of the handler so a denied handler receives events again.
+	 * Called when the handler's service properties are modified.
+	 */
+	public synchronized void resetTimeouts() {
+		consecutiveTimeouts = 0;
+		denied = false;
+	}
+
+	/**
+	 * Record the time taken by the handler to handle an event and deny the 
+	 * handler further events if it exceeded the timeout too many times in a row.
+	 * 
+	 * @param delivery The delivery which completed
+	 * @param time The time taken in milliseconds
+	 */
+	private void recordTime(Delivery delivery, long time) {
+		boolean timedOut = false;
+		boolean deny = false;
+		synchronized (this) {
+			eventCount++;
+			totalTime += time;
+			if (time > maxTime) {
+				maxTime = time;
+			}
+			deliveries.remove(delivery);
+			if (delivery.timedOut) {
+				// already counted by checkTimeouts
+			} else if (time > timeout) {
+				timedOut = true;
+				timeoutCount++;
+				if (++consecutiveTimeouts >= timeoutLimit && !denied) {
+					denied = deny = true;
+				}
+			} else {
+				consecutiveTimeouts = 0;
+			}
+		}
+		if (timedOut) {
+			log.log(LogService.LOG_WARNING, NLS.bind(EventAdminMsg.EVENT_HANDLER_TIMEOUT, new Object[] {delivery.handlerService, new Long(time), delivery.event, new Long(timeout)}));
+		}
+		if (deny) {
+			log.log(LogService.LOG_ERROR, NLS.bind(EventAdminMsg.EVENT_HANDLER_DENIED, delivery.handlerService, new Integer(timeoutLimit)));
+		}
+	}
+
+	public ServiceReference<EventHandler> getReference() {
+		return reference;
+	}
+
+	public synchronized long getEventCount() {
+		return eventCount;
+	}
+
+	public synchronized long getTotalTime() {
+		return totalTime;
+	}
+
+	public synchronized long getMaxTime() {
+		return maxTime;
+	}
+
+	public synchronized long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	public boolean isDenied() {
+		return denied;
+	}
+
+	/**
+	 * An event being handled by the handler.
+	 */
+	private static class Delivery {
+		final Event event;
+		final EventHandler handlerService;
+		final long start;
+		// guarded by the wrapper
+		boolean timedOut;
+
+		Delivery(Event event, EventHandler handlerService, long start) {
+			this.event = event;
+			this.handlerService = handlerService;
+			this.start = start;
 		}
 	}
 
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.event;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+/**
+ * An EventAdmin which can deliver a batch of events in one call. The 
+ * permission check, handler lookup and queuing is done once for the batch
+ * instead of once per event. Each handler receives the events of the batch 
+ * it subscribes to in batch order.
+ */
+public interface ExtendedEventAdmin extends EventAdmin {
+	/**
+	 * Initiate asynchronous, ordered delivery of a batch of events.
+	 * 
+	 * @param events The events to send to all listeners which subscribe to 
+	 *        the topic of the event.
+	 * @throws SecurityException If the caller does not have 
+	 *         <code>TopicPermission[topic,PUBLISH]</code> for the topic of
+	 *         any of the events. No event is delivered in this case.
+	 */
+	public void postEvents(Event[] events);
+
+	/**
+	 * Initiate asynchronous, ordered delivery of a batch of events after 
+	 * coalescing the events. Only the last event of the batch for each 
+	 * combination of topic and value of the coalesce property is delivered. 
+	 * Property values are compared using <code>equals</code>.
+	 * 
+	 * @param events The events to send to all listeners which subscribe to 
+	 *        the topic of the event.
+	 * @param coalesceProperty The event property to coalesce by in addition 
+	 *        to the topic. If <code>null</code>, events are coalesced by topic 
+	 *        only.
+	 * @throws SecurityException If the caller does not have 
+	 *         <code>TopicPermission[topic,PUBLISH]</code> for the topic of
+	 *         any of the delivered events. No event is delivered in this case.
+	 */
+	public void postEvents(Event[] events, String coalesceProperty);
+
+	/**
+	 * Initiate synchronous delivery of a batch of events. This method does 
+	 * not return to the caller until delivery of all events is completed.
+	 * 
+	 * @param events The events to send to all listeners which subscribe to 
+	 *        the topic of the event.
+	 * @throws SecurityException If the caller does not have 
+	 *         <code>TopicPermission[topic,PUBLISH]</code> for the topic of
+	 *         any of the events. No event is delivered in this case.
+	 */
+	public void sendEvents(Event[] events);
+}
@@ -1,5 +1,6 @@
 package org.eclipse.equinox.log.test;
 
+import java.util.*;
 import junit.framework.TestCase;
 import org.eclipse.equinox.log.*;
 import org.osgi.framework.Bundle;
@@ -14,6 +15,9 @@ public class ExtendedLogReaderServiceTest extends TestCase {
 	private ServiceReference readerReference;
 	private boolean called;
 
+	private static final int LOGGING_THREADS = 4;
+	private static final int ENTRIES_PER_THREAD = 2000;
+
 	public ExtendedLogReaderServiceTest(String name) {
 		super(name);
 	}
@@ -145,4 +149,75 @@ public class ExtendedLogReaderServiceTest extends TestCase {
 		assertTrue(listener.getEntryX().getContext() == logReference);
 		assertTrue(listener.getEntryX().getSequenceNumber() > sequenceNumberBefore);
 	}
+
+	public void testConcurrentLogging() throws Exception {
+		final List entries = Collections.synchronizedList(new ArrayList());
+		final Bundle testBundle = Activator.getBundleContext().getBundle();
+		reader.addLogListener(new SynchronousLogListener() {
+			public void logged(LogEntry entry) {
+				entries.add(entry);
+			}
+		}, new LogFilter() {
+			public boolean isLoggable(Bundle b, String loggerName, int logLevel) {
+				// only the accepted logger of the test bundle is loggable
+				return b == testBundle && "accepted".equals(loggerName) && logLevel == LogService.LOG_INFO;
+			}
+		});
+
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[LOGGING_THREADS];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread("Test Logger " + i) {
+				public void run() {
+					try {
+						Logger accepted = log.getLogger("accepted");
+						Logger rejected = log.getLogger("rejected");
+						for (int j = 0; j < ENTRIES_PER_THREAD; j++) {
+							// the loggable decisions are cached while the other threads use the same cache
+							assertTrue(accepted.isLoggable(LogService.LOG_INFO));
+							assertFalse(accepted.isLoggable(LogService.LOG_DEBUG));
+							assertFalse(rejected.isLoggable(LogService.LOG_INFO));
+							accepted.log(LogService.LOG_INFO, getName() + ' ' + j);
+							rejected.log(LogService.LOG_INFO, getName() + ' ' + j);
+						}
+					} catch (Throwable t) {
+						synchronized (failure) {
+							failure[0] = t;
+						}
+					}
+				}
+			};
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].start();
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		synchronized (failure) {
+			if (failure[0] != null)
+				throw new Exception("A logging thread failed", failure[0]);
+		}
+
+		// every accepted entry is delivered once with a sequence number of its own
+		assertEquals("Wrong number of entries", LOGGING_THREADS * ENTRIES_PER_THREAD, entries.size());
+		Set sequenceNumbers = new HashSet();
+		Map lastSequenceNumbers = new HashMap();
+		Map counts = new HashMap();
+		for (Iterator it = entries.iterator(); it.hasNext();) {
+			ExtendedLogEntry entry = (ExtendedLogEntry) it.next();
+			assertEquals("accepted", entry.getLoggerName());
+			Long sequenceNumber = new Long(entry.getSequenceNumber());
+			assertTrue("Duplicate sequence number " + sequenceNumber, sequenceNumbers.add(sequenceNumber));
+
+			// the entries of a thread are numbered in the order they were logged
+			String threadName = entry.getThreadName();
+			int index = Integer.parseInt(entry.getMessage().substring(threadName.length() + 1));
+			Integer count = (Integer) counts.get(threadName);
+			assertEquals("Entry out of order: " + entry.getMessage(), count == null ? 0 : count.intValue(), index);
+			counts.put(threadName, new Integer(index + 1));
+			Long last = (Long) lastSequenceNumbers.put(threadName, sequenceNumber);
+			if (last != null)
+				assertTrue("Sequence number decreased for " + threadName, sequenceNumber.longValue() > last.longValue());
+		}
+		assertEquals(LOGGING_THREADS, counts.size());
+	}
 }
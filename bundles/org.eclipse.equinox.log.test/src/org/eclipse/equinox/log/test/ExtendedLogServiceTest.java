@@ -13,8 +13,11 @@ import junit.framework.TestCase;
 import org.eclipse.equinox.log.ExtendedLogReaderService;
 import org.eclipse.equinox.log.ExtendedLogService;
 import org.eclipse.equinox.log.LogFilter;
+import org.eclipse.equinox.log.SynchronousLogListener;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogListener;
 import org.osgi.service.log.LogService;
 
 public class ExtendedLogServiceTest extends TestCase {
@@ -167,6 +170,59 @@ public class ExtendedLogServiceTest extends TestCase {
 		assertTrue(listener.getEntry().getServiceReference() == logReference);
 	}
 
+	public void testNamedLoggerLogFormatted() throws Exception {
+		Throwable t = new Throwable("test");
+		synchronized (listener) {
+			log.getLogger("test").log(LogService.LOG_INFO, "{0} of {1} {2}", new Object[] {new Integer(1), "2", null}, t);
+			listener.wait();
+		}
+		assertTrue(listener.getEntryX().getLoggerName() == "test");
+		assertTrue(listener.getEntry().getLevel() == LogService.LOG_INFO);
+		assertEquals("1 of 2 null", listener.getEntry().getMessage());
+		assertTrue(listener.getEntry().getException() == t);
+	}
+
+	public void testLoggerNotFormattedWhenNotLoggable() throws Exception {
+		final int[] formatCount = new int[1];
+		Object argument = new Object() {
+			public String toString() {
+				formatCount[0]++;
+				return "argument";
+			}
+		};
+		// a synchronous listener reads the message on the logging thread, so any formatting happens before log returns
+		final int[] loggedCount = new int[1];
+		LogListener formattingListener = new SynchronousLogListener() {
+			public void logged(LogEntry entry) {
+				loggedCount[0]++;
+				entry.getMessage();
+			}
+		};
+		reader.removeLogListener(listener);
+		reader.addLogListener(formattingListener, new LogFilter() {
+			public boolean isLoggable(Bundle b, String loggerName, int logLevel) {
+				return false;
+			}
+		});
+		try {
+			log.getLogger("test").log(LogService.LOG_INFO, "{0}", new Object[] {argument}, null);
+			assertEquals("Entry delivered although not loggable", 0, loggedCount[0]);
+			assertEquals("Message formatted for a log entry which is not loggable", 0, formatCount[0]);
+
+			reader.addLogListener(formattingListener, new LogFilter() {
+				public boolean isLoggable(Bundle b, String loggerName, int logLevel) {
+					return true;
+				}
+			});
+			log.getLogger("test").log(LogService.LOG_INFO, "{0}", new Object[] {argument}, null);
+			assertEquals("Loggable entry not delivered", 1, loggedCount[0]);
+			assertEquals("Message not formatted once", 1, formatCount[0]);
+		} finally {
+			reader.removeLogListener(formattingListener);
+			reader.addLogListener(listener);
+		}
+	}
+
 	public void testLoggerIsLoggableTrue() throws Exception {
 		reader.addLogListener(listener, new LogFilter() {
 
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation All rights reserved. This program
+ * and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.equinox.log.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import junit.framework.TestCase;
+import org.eclipse.equinox.log.ExtendedLogEntry;
+import org.eclipse.equinox.log.internal.ExtendedLogEntryImpl;
+import org.eclipse.equinox.log.internal.LogHistory;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogReaderService;
+import org.osgi.service.log.LogService;
+
+public class LogHistoryTest extends TestCase {
+
+	private static final String PROP_HISTORY_MAX = "org.eclipse.equinox.log.history.max"; //$NON-NLS-1$
+
+	public LogHistoryTest(String name) {
+		super(name);
+	}
+
+	public void testCapacity() {
+		// 2 errors, 3 warnings, no info and 1 debug entry are retained
+		LogHistory history = new LogHistory(new int[] {0, 2, 3, 0, 1});
+		assertTrue(history.isRetained(LogService.LOG_ERROR));
+		assertFalse(history.isRetained(LogService.LOG_INFO));
+		assertFalse(history.isRetained(0));
+		for (int i = 1; i <= 5; i++) {
+			history.add(entry(LogService.LOG_ERROR, "error" + i));
+			history.add(entry(LogService.LOG_WARNING, "warning" + i));
+			history.add(entry(LogService.LOG_INFO, "info" + i));
+			history.add(entry(LogService.LOG_DEBUG, "debug" + i));
+			history.add(entry(0, "other" + i));
+		}
+		assertLog(history, new String[] {"debug5", "warning5", "error5", "warning4", "error4", "warning3"});
+	}
+
+	public void testEvictionOrder() {
+		LogHistory history = new LogHistory(new int[] {0, 3});
+		assertLog(history, new String[0]);
+		history.add(entry(LogService.LOG_ERROR, "1"));
+		history.add(entry(LogService.LOG_ERROR, "2"));
+		assertLog(history, new String[] {"2", "1"});
+		// the oldest entries are overwritten first
+		for (int i = 3; i <= 7; i++)
+			history.add(entry(LogService.LOG_ERROR, String.valueOf(i)));
+		assertLog(history, new String[] {"7", "6", "5"});
+		history.add(entry(LogService.LOG_ERROR, "8"));
+		assertLog(history, new String[] {"8", "7", "6"});
+	}
+
+	public void testOtherLevels() {
+		// the capacity at index 0 applies to the levels out of LOG_ERROR to LOG_DEBUG
+		LogHistory history = new LogHistory(new int[] {2});
+		history.add(entry(0, "1"));
+		history.add(entry(LogService.LOG_ERROR, "2"));
+		history.add(entry(LogService.LOG_DEBUG + 1, "3"));
+		history.add(entry(-1, "4"));
+		assertTrue(history.isRetained(LogService.LOG_DEBUG + 1));
+		assertFalse(history.isRetained(LogService.LOG_ERROR));
+		assertLog(history, new String[] {"4", "3"});
+	}
+
+	public void testReplayToLateReader() throws Exception {
+		String oldMax = System.getProperty(PROP_HISTORY_MAX);
+		System.setProperty(PROP_HISTORY_MAX, "3"); //$NON-NLS-1$
+		ServiceReference logReference = null;
+		ServiceReference readerReference = null;
+		try {
+			Activator.getBundle("org.eclipse.equinox.log").stop(); //$NON-NLS-1$
+			Activator.getBundle("org.eclipse.equinox.log").start(); //$NON-NLS-1$
+			logReference = Activator.getBundleContext().getServiceReference(LogService.class.getName());
+			LogService log = (LogService) Activator.getBundleContext().getService(logReference);
+			for (int i = 1; i <= 5; i++)
+				log.log(LogService.LOG_WARNING, "history" + i); //$NON-NLS-1$
+
+			// a reader which is got after the entries were logged finds the last ones
+			readerReference = Activator.getBundleContext().getServiceReference(LogReaderService.class.getName());
+			LogReaderService reader = (LogReaderService) Activator.getBundleContext().getService(readerReference);
+			List messages = new ArrayList();
+			for (Enumeration e = reader.getLog(); e.hasMoreElements();) {
+				LogEntry entry = (LogEntry) e.nextElement();
+				if (entry.getMessage().startsWith("history")) //$NON-NLS-1$
+					messages.add(entry.getMessage());
+			}
+			assertEquals(Arrays.asList(new String[] {"history5", "history4", "history3"}), messages); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		} finally {
+			if (logReference != null)
+				Activator.getBundleContext().ungetService(logReference);
+			if (readerReference != null)
+				Activator.getBundleContext().ungetService(readerReference);
+			if (oldMax == null)
+				System.getProperties().remove(PROP_HISTORY_MAX);
+			else
+				System.setProperty(PROP_HISTORY_MAX, oldMax);
+			Activator.getBundle("org.eclipse.equinox.log").stop(); //$NON-NLS-1$
+		}
+	}
+
+	private static ExtendedLogEntry entry(int level, String message) {
+		return new ExtendedLogEntryImpl(null, null, null, level, message, null);
+	}
+
+	private static void assertLog(LogHistory history, String[] expected) {
+		List messages = new ArrayList();
+		for (Enumeration e = history.getLog(); e.hasMoreElements();)
+			messages.add(((LogEntry) e.nextElement()).getMessage());
+		assertEquals(Arrays.asList(expected), messages);
+	}
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation All rights reserved. This program
+ * and the accompanying materials are made available under the terms of the
+ * Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.equinox.log.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+import org.eclipse.equinox.log.internal.LogListenerQueue;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogListener;
+import org.osgi.service.log.LogService;
+
+public class LogListenerQueueTest extends TestCase {
+
+	private static final long TIMEOUT = 5000;
+
+	private LogListenerQueue queue;
+	private final List logged = new ArrayList();
+	private boolean blocked = true;
+
+	public LogListenerQueueTest(String name) {
+		super(name);
+	}
+
+	protected void tearDown() throws Exception {
+		release();
+		if (queue != null)
+			queue.close();
+	}
+
+	public void testDropNewest() throws Exception {
+		queue = new LogListenerQueue(new BlockingListener(), "Test Queue", 2, LogListenerQueue.POLICY_DROP_NEWEST, 1);
+		fill();
+		queue.put(new Entry("4"));
+		assertEquals(1, queue.getDroppedCount());
+		release();
+		assertLogged(new String[] {"1", "2", "3"});
+	}
+
+	public void testDropOldest() throws Exception {
+		queue = new LogListenerQueue(new BlockingListener(), "Test Queue", 2, LogListenerQueue.POLICY_DROP_OLDEST, 1);
+		fill();
+		queue.put(new Entry("4"));
+		queue.put(new Entry("5"));
+		assertEquals(2, queue.getDroppedCount());
+		release();
+		assertLogged(new String[] {"1", "4", "5"});
+	}
+
+	public void testSample() throws Exception {
+		queue = new LogListenerQueue(new BlockingListener(), "Test Queue", 2, LogListenerQueue.POLICY_SAMPLE, 3);
+		fill();
+		// one of every three overflowing entries replaces the oldest queued entry
+		for (int i = 4; i <= 9; i++)
+			queue.put(new Entry(String.valueOf(i)));
+		assertEquals(6, queue.getDroppedCount());
+		release();
+		assertLogged(new String[] {"1", "4", "7"});
+	}
+
+	public void testBlock() throws Exception {
+		queue = new LogListenerQueue(new BlockingListener(), "Test Queue", 1, LogListenerQueue.POLICY_BLOCK, 1);
+		queue.put(new Entry("1"));
+		waitForLogged(1);
+		queue.put(new Entry("2"));
+		Thread logger = startLogger(new Entry("3"));
+		logger.join(200);
+		assertTrue("The logging thread should wait for room in the queue", logger.isAlive());
+		release();
+		logger.join(TIMEOUT);
+		assertFalse(logger.isAlive());
+		assertLogged(new String[] {"1", "2", "3"});
+		assertEquals(0, queue.getDroppedCount());
+	}
+
+	public void testBlockInterrupted() throws Exception {
+		queue = new LogListenerQueue(new BlockingListener(), "Test Queue", 1, LogListenerQueue.POLICY_BLOCK, 1);
+		queue.put(new Entry("1"));
+		waitForLogged(1);
+		queue.put(new Entry("2"));
+		final boolean[] interrupted = new boolean[1];
+		Thread logger = new Thread("Test Logger") {
+			public void run() {
+				queue.put(new Entry("3"));
+				interrupted[0] = Thread.currentThread().isInterrupted();
+			}
+		};
+		logger.start();
+		logger.join(100);
+		logger.interrupt();
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		boolean cpuTime = threadBean.isThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+		long startTime = cpuTime ? threadBean.getThreadCpuTime(logger.getId()) : 0;
+		logger.join(500);
+		assertTrue("The interrupted logging thread should still wait for room in the queue", logger.isAlive());
+		if (cpuTime) {
+			long spent = (threadBean.getThreadCpuTime(logger.getId()) - startTime) / 1000000;
+			assertTrue("The interrupted logging thread should not spin: " + spent + "ms", spent < 250);
+		}
+
+		release();
+		logger.join(TIMEOUT);
+		assertFalse(logger.isAlive());
+		assertTrue("The interrupted state should be restored", interrupted[0]);
+		assertLogged(new String[] {"1", "2", "3"});
+	}
+
+	public void testBlockClosed() throws Exception {
+		queue = new LogListenerQueue(new BlockingListener(), "Test Queue", 1, LogListenerQueue.POLICY_BLOCK, 1);
+		queue.put(new Entry("1"));
+		waitForLogged(1);
+		queue.put(new Entry("2"));
+		Thread logger = startLogger(new Entry("3"));
+		logger.join(100);
+		queue.close();
+		logger.join(TIMEOUT);
+		assertFalse("Closing the queue should release the logging thread", logger.isAlive());
+		queue.put(new Entry("4"));
+		release();
+		assertLogged(new String[] {"1", "2"});
+	}
+
+	// logs 1, which blocks in the listener, and queues 2 and 3
+	private void fill() throws InterruptedException {
+		queue.put(new Entry("1"));
+		waitForLogged(1);
+		queue.put(new Entry("2"));
+		queue.put(new Entry("3"));
+		assertEquals(0, queue.getDroppedCount());
+	}
+
+	private Thread startLogger(final LogEntry entry) {
+		Thread logger = new Thread("Test Logger") {
+			public void run() {
+				queue.put(entry);
+			}
+		};
+		logger.start();
+		return logger;
+	}
+
+	synchronized void logged(LogEntry entry) {
+		logged.add(entry.getMessage());
+		notifyAll();
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (blocked && System.currentTimeMillis() < end) {
+			try {
+				wait(Math.max(end - System.currentTimeMillis(), 1));
+			} catch (InterruptedException e) {
+				// ignore
+			}
+		}
+	}
+
+	private synchronized void release() {
+		blocked = false;
+		notifyAll();
+	}
+
+	private synchronized void waitForLogged(int count) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (logged.size() < count && System.currentTimeMillis() < end)
+			wait(Math.max(end - System.currentTimeMillis(), 1));
+		assertEquals("Wrong number of entries logged", count, logged.size());
+	}
+
+	private void assertLogged(String[] expected) throws InterruptedException {
+		waitForLogged(expected.length);
+		// give a wrongly queued entry the chance to show up
+		Thread.sleep(100);
+		synchronized (this) {
+			assertEquals(Arrays.asList(expected), logged);
+		}
+	}
+
+	private class BlockingListener implements LogListener {
+		public void logged(LogEntry entry) {
+			LogListenerQueueTest.this.logged(entry);
+		}
+	}
+
+	private static class Entry implements LogEntry {
+		private final String message;
+
+		Entry(String message) {
+			this.message = message;
+		}
+
+		public Bundle getBundle() {
+			return null;
+		}
+
+		public ServiceReference getServiceReference() {
+			return null;
+		}
+
+		public int getLevel() {
+			return LogService.LOG_INFO;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		public Throwable getException() {
+			return null;
+		}
+
+		public long getTime() {
+			return 0;
+		}
+	}
+}
@@ -60,6 +60,36 @@ public interface Logger {
 	 */
 	public void log(Object context, int level, String message, Throwable exception);
 
+	/**
+	 * Logs a message built from a pattern and arguments. The message is only 
+	 * built if a LogListener is listening for a matching log entry, and it is 
+	 * built at most once no matter how many listeners receive the entry. 
+	 * Each <code>{n}</code> in the pattern is replaced by 
+	 * <code>String.valueOf(arguments[n])</code>; an argument is therefore only 
+	 * converted to a string when the message is built.
+	 * 
+	 * @param level The log level or severity of the message.
+	 * @param pattern The message pattern.
+	 * @param arguments The arguments referenced by the pattern.
+	 * @param exception The exception associated with this entry; may be <code>null</code>.
+	 * @see #isLoggable(int)
+	 * @since 1.1
+	 */
+	public void log(int level, String pattern, Object[] arguments, Throwable exception);
+
+	/**
+	 * Logs a message built from a pattern and arguments with a context object.
+	 * 
+	 * @param context The context object this message is associated with.
+	 * @param level The log level or severity of the message.
+	 * @param pattern The message pattern.
+	 * @param arguments The arguments referenced by the pattern.
+	 * @param exception The exception associated with this entry; may be <code>null</code>.
+	 * @see #log(int, String, Object[], Throwable)
+	 * @since 1.1
+	 */
+	public void log(Object context, int level, String pattern, Object[] arguments, Throwable exception);
+
 	/**
 	 * Pre-checks if there are LogListeners who are listening for a matching log entry from this <code>Logger</code>. 
 	 * 
@@ -18,6 +18,16 @@ public class Activator implements BundleActivator, BundleListener, FrameworkList
 	private static final String EVENT_ADMIN_CLASS = "org.osgi.service.event.EventAdmin"; //$NON-NLS-1$
 	private static final String[] LOGSERVICE_CLASSES = {LogService.class.getName(), ExtendedLogService.class.getName()};
 	private static final String[] LOGREADERSERVICE_CLASSES = {LogReaderService.class.getName(), ExtendedLogReaderService.class.getName()};
+	private static final String PROP_QUEUE_CAPACITY = "org.eclipse.equinox.log.listener.queue.capacity"; //$NON-NLS-1$
+	private static final String PROP_QUEUE_POLICY = "org.eclipse.equinox.log.listener.queue.policy"; //$NON-NLS-1$
+	private static final String PROP_QUEUE_SAMPLE_RATE = "org.eclipse.equinox.log.listener.queue.sample.rate"; //$NON-NLS-1$
+	// indexed by the LogListenerQueue policy constants
+	private static final String[] QUEUE_POLICIES = {"block", "drop-oldest", "drop-newest", "sample"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final String PROP_HISTORY_MAX = "org.eclipse.equinox.log.history.max"; //$NON-NLS-1$
+	// indexed by log level; the history size of a level defaults to the value of PROP_HISTORY_MAX
+	private static final String[] HISTORY_LEVELS = {null, "error", "warning", "info", "debug"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+	private static final int DEFAULT_QUEUE_SAMPLE_RATE = 10;
 
 	private ServiceRegistration logReaderServiceRegistration;
 	private ServiceRegistration logServiceRegistration;
@@ -33,7 +43,9 @@ public class Activator implements BundleActivator, BundleListener, FrameworkList
 				if (provider != null && provider.getBundleId() == 0)
 					return;
 			}
-		logReaderServiceFactory = new ExtendedLogReaderServiceFactory();
+		int queueCapacity = getIntProperty(context, PROP_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY);
+		int queueSampleRate = getIntProperty(context, PROP_QUEUE_SAMPLE_RATE, DEFAULT_QUEUE_SAMPLE_RATE);
+		logReaderServiceFactory = new ExtendedLogReaderServiceFactory(queueCapacity, getQueuePolicy(context), queueSampleRate, new LogHistory(getHistoryCapacities(context)));
 		context.addBundleListener(this);
 		context.addServiceListener(this);
 		context.addFrameworkListener(this);
@@ -66,6 +78,41 @@ public class Activator implements BundleActivator, BundleListener, FrameworkList
 		context.removeBundleListener(this);
 	}
 
+	private static int getIntProperty(BundleContext context, String key, int defaultValue) {
+		return getIntProperty(context, key, defaultValue, 1);
+	}
+
+	private static int getIntProperty(BundleContext context, String key, int defaultValue, int minValue) {
+		String value = context.getProperty(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			int result = Integer.parseInt(value.trim());
+			return result >= minValue ? result : defaultValue;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	private static int[] getHistoryCapacities(BundleContext context) {
+		int defaultCapacity = getIntProperty(context, PROP_HISTORY_MAX, 0, 0);
+		int[] capacities = new int[HISTORY_LEVELS.length];
+		for (int i = 0; i < HISTORY_LEVELS.length; i++)
+			capacities[i] = HISTORY_LEVELS[i] == null ? defaultCapacity : getIntProperty(context, PROP_HISTORY_MAX + '.' + HISTORY_LEVELS[i], defaultCapacity, 0);
+		return capacities;
+	}
+
+	private static int getQueuePolicy(BundleContext context) {
+		String value = context.getProperty(PROP_QUEUE_POLICY);
+		if (value != null) {
+			for (int i = 0; i < QUEUE_POLICIES.length; i++)
+				if (QUEUE_POLICIES[i].equalsIgnoreCase(value.trim()))
+					return i;
+		}
+		// a slow listener must not stall the logging threads unless blocking is asked for
+		return LogListenerQueue.POLICY_DROP_OLDEST;
+	}
+
 	private static boolean checkEventAdmin() {
 		// cannot support scheduling without the event admin package
 		try {
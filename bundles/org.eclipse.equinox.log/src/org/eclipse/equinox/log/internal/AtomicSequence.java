@@ -0,0 +1,22 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.equinox.log.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sequence number generator which does not lock. This class must only be
+ * loaded when java.util.concurrent.atomic is available.
+ */
+class AtomicSequence {
+	private final AtomicLong next = new AtomicLong(1L);
+
+	long next() {
+		return next.getAndIncrement();
+	}
+}
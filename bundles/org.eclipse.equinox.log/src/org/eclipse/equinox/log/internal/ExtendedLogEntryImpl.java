@@ -18,11 +18,16 @@ public class ExtendedLogEntryImpl implements ExtendedLogEntry {
 	private static long nextSequenceNumber = 1L;
 	private static long nextThreadId = 1L;
 	private static final Map threadIds = createThreadIdMap();
+	private static final AtomicSequence atomicSequence = createAtomicSequence();
 
 	private final String loggerName;
 	private final Bundle bundle;
 	private final int level;
+	// the message, or the message pattern if arguments is not null
 	private final String message;
+	private final Object[] arguments;
+	// guarded by this; formatted from message and arguments on first use
+	private String formattedMessage;
 	private final Throwable throwable;
 	private final Object contextObject;
 	private final long time;
@@ -39,6 +44,15 @@ public class ExtendedLogEntryImpl implements ExtendedLogEntry {
 		return null;
 	}
 
+	private static AtomicSequence createAtomicSequence() {
+		try {
+			Class.forName("java.util.concurrent.atomic.AtomicLong"); //$NON-NLS-1$
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+		return new AtomicSequence();
+	}
+
 	private static long getId(Thread thread) {
 		if (threadIds == null)
 			return thread.getId();
@@ -52,20 +66,35 @@ public class ExtendedLogEntryImpl implements ExtendedLogEntry {
 	}
 
 	public ExtendedLogEntryImpl(Bundle bundle, String loggerName, Object contextObject, int level, String message, Throwable throwable) {
+		this(bundle, loggerName, contextObject, level, message, null, throwable);
+	}
+
+	/**
+	 * Creates an entry whose message is formatted from a pattern and arguments the first
+	 * time it is requested.
+	 */
+	public ExtendedLogEntryImpl(Bundle bundle, String loggerName, Object contextObject, int level, String pattern, Object[] arguments, Throwable throwable) {
 		this.time = System.currentTimeMillis();
 		this.loggerName = loggerName;
 		this.bundle = bundle;
 		this.level = level;
-		this.message = message;
+		this.message = pattern;
+		this.arguments = arguments;
 		this.throwable = throwable;
 		this.contextObject = contextObject;
 
 		Thread currentThread = Thread.currentThread();
 		this.threadName = currentThread.getName();
 
-		synchronized (ExtendedLogEntryImpl.class) {
-			this.threadId = getId(currentThread);
-			this.sequenceNumber = nextSequenceNumber++;
+		if (threadIds == null && atomicSequence != null) {
+			// no shared state to guard
+			this.threadId = currentThread.getId();
+			this.sequenceNumber = atomicSequence.next();
+		} else {
+			synchronized (ExtendedLogEntryImpl.class) {
+				this.threadId = getId(currentThread);
+				this.sequenceNumber = nextSequenceNumber++;
+			}
 		}
 	}
 
@@ -98,7 +127,56 @@ public class ExtendedLogEntryImpl implements ExtendedLogEntry {
 	}
 
 	public String getMessage() {
-		return message;
+		if (arguments == null)
+			return message;
+
+		synchronized (this) {
+			if (formattedMessage == null)
+				formattedMessage = format(message, arguments);
+			return formattedMessage;
+		}
+	}
+
+	/**
+	 * Replaces each <code>{n}</code> in the pattern with the string value of argument n.
+	 * Anything else, including a reference to a missing argument, is copied unchanged.
+	 */
+	static String format(String pattern, Object[] arguments) {
+		if (pattern == null)
+			return null;
+
+		int length = pattern.length();
+		StringBuffer buffer = new StringBuffer(length + 16 * arguments.length);
+		int i = 0;
+		while (i < length) {
+			char c = pattern.charAt(i);
+			if (c == '{') {
+				int end = pattern.indexOf('}', i + 1);
+				int index = (end < 0) ? -1 : parseIndex(pattern, i + 1, end);
+				if (index >= 0 && index < arguments.length) {
+					buffer.append(String.valueOf(arguments[index]));
+					i = end + 1;
+					continue;
+				}
+			}
+			buffer.append(c);
+			i++;
+		}
+		return buffer.toString();
+	}
+
+	private static int parseIndex(String pattern, int start, int end) {
+		if (start == end)
+			return -1;
+
+		int index = 0;
+		for (int i = start; i < end; i++) {
+			char c = pattern.charAt(i);
+			if (c < '0' || c > '9' || index > 100000)
+				return -1;
+			index = index * 10 + (c - '0');
+		}
+		return index;
 	}
 
 	public ServiceReference getServiceReference() {
@@ -18,30 +18,6 @@ import org.osgi.service.log.LogListener;
 
 public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 
-	static final class LogTask implements Runnable {
-		private final LogEntry logEntry;
-		private final LogListener listener;
-
-		LogTask(LogEntry logEntry, LogListener listener) {
-			this.logEntry = logEntry;
-			this.listener = listener;
-		}
-
-		public void run() {
-			safeLogged(listener, logEntry);
-		}
-	}
-
-	private static final Enumeration EMPTY_ENUMERATION = new Enumeration() {
-		public boolean hasMoreElements() {
-			return false;
-		}
-
-		public Object nextElement() {
-			return null;
-		}
-	};
-
 	static final LogFilter NULL_LOGGER_FILTER = new LogFilter() {
 		public boolean isLoggable(Bundle b, String loggerName, int logLevel) {
 			return true;
@@ -49,14 +25,38 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 	};
 
 	private static final LogFilter[] ALWAYS_LOG = new LogFilter[0];
+	// number of isLoggable decisions which can be cached; must be a power of 2
+	private static final int LOGGABLE_CACHE_SIZE = 1024;
 
 	private static PrintStream errorStream;
 
+	private final int queueCapacity;
+	private final int queuePolicy;
+	private final int queueSampleRate;
+	private final LogHistory history;
+
 	private Map listeners = new HashMap();
-	private LogFilter[] filters = null;
+	private volatile LogFilter[] filters = null;
+	// cached isLoggable decisions; replaced with an empty cache whenever the listeners change
+	private volatile LoggableCacheEntry[] loggableCache = new LoggableCacheEntry[LOGGABLE_CACHE_SIZE];
+	// Object[] {LogListener, LogFilter, LogListenerQueue} for each listener; replaced whenever the listeners change
+	private volatile Object[][] listenerSnapshot = new Object[0][];
 
 	private BasicReadWriteLock listenersLock = new BasicReadWriteLock();
 
+	/**
+	 * @param queueCapacity the maximum number of entries queued for each asynchronous listener
+	 * @param queuePolicy the LogListenerQueue policy used when a listener queue is full
+	 * @param queueSampleRate the sample rate used with LogListenerQueue.POLICY_SAMPLE
+	 * @param history the history of recent log entries returned by getLog
+	 */
+	public ExtendedLogReaderServiceFactory(int queueCapacity, int queuePolicy, int queueSampleRate, LogHistory history) {
+		this.queueCapacity = queueCapacity;
+		this.queuePolicy = queuePolicy;
+		this.queueSampleRate = queueSampleRate;
+		this.history = history;
+	}
+
 	static boolean safeIsLoggable(LogFilter filter, Bundle bundle, String name, int level) {
 		try {
 			return filter.isLoggable(bundle, name, level);
@@ -109,48 +109,63 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 	}
 
 	boolean isLoggable(Bundle bundle, String name, int level) {
-		listenersLock.readLock();
-		try {
-			if (filters == null)
-				return false;
+		// read the cache before the filters; the filters are always replaced before the cache
+		// so a decision computed with outdated filters can only be stored in an outdated cache
+		LoggableCacheEntry[] cache = loggableCache;
+		LogFilter[] currentFilters = filters;
+		if (currentFilters == null)
+			return false;
 
-			if (filters == ALWAYS_LOG)
-				return true;
+		if (currentFilters == ALWAYS_LOG)
+			return true;
 
-			int filtersLength = filters.length;
-			for (int i = 0; i < filtersLength; i++) {
-				LogFilter filter = filters[i];
-				if (safeIsLoggable(filter, bundle, name, level))
-					return true;
+		int index = LoggableCacheEntry.hash(bundle, name, level) & (cache.length - 1);
+		LoggableCacheEntry entry = cache[index];
+		if (entry != null && entry.matches(bundle, name, level))
+			return entry.loggable;
+
+		boolean loggable = false;
+		int filtersLength = currentFilters.length;
+		for (int i = 0; i < filtersLength; i++) {
+			LogFilter filter = currentFilters[i];
+			if (safeIsLoggable(filter, bundle, name, level)) {
+				loggable = true;
+				break;
 			}
-		} finally {
-			listenersLock.readUnlock();
 		}
-		return false;
+		cache[index] = new LoggableCacheEntry(bundle, name, level, loggable);
+		return loggable;
 	}
 
 	void log(Bundle bundle, String name, Object context, int level, String message, Throwable exception) {
-		LogEntry logEntry = new ExtendedLogEntryImpl(bundle, name, context, level, message, exception);
-		listenersLock.readLock();
-		try {
-			for (Iterator it = listeners.entrySet().iterator(); it.hasNext();) {
-				Entry entry = (Entry) it.next();
-				Object[] listenerObjects = (Object[]) entry.getValue();
-				LogFilter filter = (LogFilter) listenerObjects[0];
-				if (safeIsLoggable(filter, bundle, name, level)) {
-					LogListener listener = (LogListener) entry.getKey();
-					SerializedTaskQueue taskQueue = (SerializedTaskQueue) listenerObjects[1];
-					if (taskQueue != null) {
-						taskQueue.put(new LogTask(logEntry, listener));
-					} else {
-						// log synchronously
-						safeLogged(listener, logEntry);
-
-					}
+		log(bundle, name, context, level, message, null, exception);
+	}
+
+	/**
+	 * @param arguments the arguments if message is a pattern to be formatted on first use; otherwise null
+	 */
+	void log(Bundle bundle, String name, Object context, int level, String message, Object[] arguments, Throwable exception) {
+		// a pattern is only worth an entry if the entry is retained or someone is listening
+		if (arguments != null && !history.isRetained(level) && !isLoggable(bundle, name, level))
+			return;
+		ExtendedLogEntryImpl logEntry = new ExtendedLogEntryImpl(bundle, name, context, level, message, arguments, exception);
+		history.add(logEntry);
+		// the snapshot is never modified so entries are queued without holding the listeners lock;
+		// this allows a full queue to block the logging thread without blocking listener changes
+		Object[][] snapshot = listenerSnapshot;
+		for (int i = 0; i < snapshot.length; i++) {
+			Object[] listenerObjects = snapshot[i];
+			LogFilter filter = (LogFilter) listenerObjects[1];
+			if (safeIsLoggable(filter, bundle, name, level)) {
+				LogListener listener = (LogListener) listenerObjects[0];
+				LogListenerQueue queue = (LogListenerQueue) listenerObjects[2];
+				if (queue != null) {
+					queue.put(logEntry);
+				} else {
+					// log synchronously
+					safeLogged(listener, logEntry);
 				}
 			}
-		} finally {
-			listenersLock.readUnlock();
 		}
 	}
 
@@ -159,9 +174,9 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 		try {
 			Object[] listenerObjects = (Object[]) listeners.get(listener);
 			if (listenerObjects == null) {
-				// Only create a task queue for non-SynchronousLogListeners
-				SerializedTaskQueue taskQueue = (listener instanceof SynchronousLogListener) ? null : new SerializedTaskQueue(listener.toString());
-				listenerObjects = new Object[] {filter, taskQueue};
+				// Only create a queue for non-SynchronousLogListeners
+				LogListenerQueue queue = (listener instanceof SynchronousLogListener) ? null : new LogListenerQueue(listener, listener.toString(), queueCapacity, queuePolicy, queueSampleRate);
+				listenerObjects = new Object[] {filter, queue};
 			} else if (filter != listenerObjects[0]) {
 				// update the filter
 				listenerObjects[0] = filter;
@@ -174,34 +189,94 @@ public class ExtendedLogReaderServiceFactory implements ServiceFactory {
 	}
 
 	private void recalculateFilters() {
+		Object[][] snapshot = new Object[listeners.size()][];
+		int index = 0;
+		for (Iterator it = listeners.entrySet().iterator(); it.hasNext();) {
+			Entry entry = (Entry) it.next();
+			Object[] listenerObjects = (Object[]) entry.getValue();
+			snapshot[index++] = new Object[] {entry.getKey(), listenerObjects[0], listenerObjects[1]};
+		}
+		listenerSnapshot = snapshot;
+
+		filters = calculateFilters();
+		loggableCache = new LoggableCacheEntry[LOGGABLE_CACHE_SIZE];
+	}
+
+	private LogFilter[] calculateFilters() {
 		List filtersList = new ArrayList();
 		for (Iterator it = listeners.values().iterator(); it.hasNext();) {
 			Object[] listenerObjects = (Object[]) it.next();
 			LogFilter filter = (LogFilter) listenerObjects[0];
-			if (filter == NULL_LOGGER_FILTER) {
-				filters = ALWAYS_LOG;
-				return;
-			}
+			if (filter == NULL_LOGGER_FILTER)
+				return ALWAYS_LOG;
 			filtersList.add(filter);
 		}
 
 		if (filtersList.isEmpty())
-			filters = null;
+			return null;
 
-		filters = (LogFilter[]) filtersList.toArray(new LogFilter[filtersList.size()]);
+		return (LogFilter[]) filtersList.toArray(new LogFilter[filtersList.size()]);
 	}
 
 	void removeLogListener(LogListener listener) {
 		listenersLock.writeLock();
 		try {
-			listeners.remove(listener);
+			Object[] listenerObjects = (Object[]) listeners.remove(listener);
+			if (listenerObjects != null && listenerObjects[1] != null)
+				((LogListenerQueue) listenerObjects[1]).close();
 			recalculateFilters();
 		} finally {
 			listenersLock.writeUnlock();
 		}
 	}
 
+	/**
+	 * Returns the number of log entries discarded for an asynchronous listener
+	 * because its queue was full.
+	 * 
+	 * @param listener the listener
+	 * @return the number of discarded entries; 0 if the listener is not registered or is synchronous
+	 */
+	long getDroppedCount(LogListener listener) {
+		listenersLock.readLock();
+		try {
+			Object[] listenerObjects = (Object[]) listeners.get(listener);
+			if (listenerObjects == null || listenerObjects[1] == null)
+				return 0;
+			return ((LogListenerQueue) listenerObjects[1]).getDroppedCount();
+		} finally {
+			listenersLock.readUnlock();
+		}
+	}
+
 	Enumeration getLog() {
-		return EMPTY_ENUMERATION;
+		return history.getLog();
+	}
+
+	/**
+	 * An immutable isLoggable decision for a bundle, logger name and level.
+	 */
+	private static final class LoggableCacheEntry {
+		final Bundle bundle;
+		final String name;
+		final int level;
+		final boolean loggable;
+
+		LoggableCacheEntry(Bundle bundle, String name, int level, boolean loggable) {
+			this.bundle = bundle;
+			this.name = name;
+			this.level = level;
+			this.loggable = loggable;
+		}
+
+		static int hash(Bundle bundle, String name, int level) {
+			int hash = System.identityHashCode(bundle);
+			hash = hash * 31 + (name == null ? 0 : name.hashCode());
+			return hash * 31 + level;
+		}
+
+		boolean matches(Bundle otherBundle, String otherName, int otherLevel) {
+			return bundle == otherBundle && level == otherLevel && (name == null ? otherName == null : name.equals(otherName));
+		}
 	}
 }
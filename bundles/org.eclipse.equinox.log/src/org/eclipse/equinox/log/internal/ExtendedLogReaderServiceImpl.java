@@ -54,6 +54,18 @@ public class ExtendedLogReaderServiceImpl implements ExtendedLogReaderService {
 		listeners.remove(listener);
 	}
 
+	/**
+	 * Returns the number of log entries discarded for an asynchronous listener
+	 * because its queue was full.
+	 * 
+	 * @param listener the listener
+	 * @return the number of discarded entries
+	 */
+	public long getDroppedCount(LogListener listener) {
+		checkShutdown();
+		return factory.getDroppedCount(listener);
+	}
+
 	private synchronized void checkShutdown() {
 		if (listeners == null)
 			throw new IllegalStateException("LogReaderService for " + bundle.getSymbolicName() + " (id=" + bundle.getBundleId() + ") is shutdown."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
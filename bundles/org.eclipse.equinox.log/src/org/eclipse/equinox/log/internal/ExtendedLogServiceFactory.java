@@ -65,8 +65,8 @@ public class ExtendedLogServiceFactory implements ServiceFactory, BundleListener
 		return logReaderServiceFactory.isLoggable(bundle, name, level);
 	}
 
-	protected void log(Bundle bundle, String name, Object context, int level, String message, Throwable exception) {
-		logReaderServiceFactory.log(bundle, name, context, level, message, exception);
+	protected void log(Bundle bundle, String name, Object context, int level, String message, Object[] arguments, Throwable exception) {
+		logReaderServiceFactory.log(bundle, name, context, level, message, arguments, exception);
 	}
 
 	protected void checkLogPermission() throws SecurityException {
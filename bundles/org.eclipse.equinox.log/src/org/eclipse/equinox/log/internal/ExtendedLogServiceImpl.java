@@ -48,6 +48,14 @@ public class ExtendedLogServiceImpl implements ExtendedLogService {
 		getLogger(null).log(context, level, message, exception);
 	}
 
+	public void log(int level, String pattern, Object[] arguments, Throwable exception) {
+		getLogger(null).log(level, pattern, arguments, exception);
+	}
+
+	public void log(Object context, int level, String pattern, Object[] arguments, Throwable exception) {
+		getLogger(null).log(context, level, pattern, arguments, exception);
+	}
+
 	public synchronized Logger getLogger(String name) {
 		Logger logger = (Logger) loggerCache.get(name);
 		if (logger == null) {
@@ -81,6 +89,11 @@ public class ExtendedLogServiceImpl implements ExtendedLogService {
 
 	// package private methods called from Logger
 	void log(String name, Object context, int level, String message, Throwable exception) {
-		factory.log(bundle, name, context, level, message, exception);
+		factory.log(bundle, name, context, level, message, null, exception);
+	}
+
+	// package private methods called from Logger
+	void log(String name, Object context, int level, String pattern, Object[] arguments, Throwable exception) {
+		factory.log(bundle, name, context, level, pattern, arguments, exception);
 	}
 }
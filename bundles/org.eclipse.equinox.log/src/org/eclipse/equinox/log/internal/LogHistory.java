@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.equinox.log.internal;
+
+import java.util.*;
+import org.eclipse.equinox.log.ExtendedLogEntry;
+import org.osgi.service.log.LogService;
+
+/**
+ * LogHistory retains the most recent log entries in preallocated ring buffers, one
+ * for each log level, so each level can be given its own retention. Adding an entry
+ * does not allocate. Taking a snapshot reads the buffers without locking so it never
+ * blocks the logging threads. Retaining entries does not change what is loggable;
+ * entries are recorded whether or not a listener accepts them.
+ */
+public class LogHistory {
+
+	private static final Enumeration EMPTY_ENUMERATION = new Enumeration() {
+		public boolean hasMoreElements() {
+			return false;
+		}
+
+		public Object nextElement() {
+			throw new NoSuchElementException();
+		}
+	};
+
+	private static final Comparator MOST_RECENT_FIRST = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			long s1 = ((ExtendedLogEntry) o1).getSequenceNumber();
+			long s2 = ((ExtendedLogEntry) o2).getSequenceNumber();
+			return s1 > s2 ? -1 : (s1 == s2 ? 0 : 1);
+		}
+	};
+
+	// indexed by log level; index 0 holds the entries of levels other than LOG_ERROR to LOG_DEBUG
+	private final ExtendedLogEntry[][] rings;
+	private final int[] nextIndex;
+
+	/**
+	 * @param capacities the number of entries to retain for each log level, indexed by
+	 * level; index 0 applies to all levels other than LOG_ERROR to LOG_DEBUG
+	 */
+	public LogHistory(int[] capacities) {
+		rings = new ExtendedLogEntry[LogService.LOG_DEBUG + 1][];
+		nextIndex = new int[rings.length];
+		for (int i = 0; i < rings.length; i++)
+			rings[i] = new ExtendedLogEntry[i < capacities.length ? capacities[i] : 0];
+	}
+
+	private static int ringIndex(int level) {
+		return (level >= LogService.LOG_ERROR && level <= LogService.LOG_DEBUG) ? level : 0;
+	}
+
+	/**
+	 * Returns whether entries of the given level are retained.
+	 * @param level the log level
+	 * @return true if entries of the level are retained
+	 */
+	public boolean isRetained(int level) {
+		return rings[ringIndex(level)].length > 0;
+	}
+
+	public void add(ExtendedLogEntry entry) {
+		int index = ringIndex(entry.getLevel());
+		ExtendedLogEntry[] ring = rings[index];
+		if (ring.length == 0)
+			return;
+
+		synchronized (ring) {
+			ring[nextIndex[index]] = entry;
+			nextIndex[index] = (nextIndex[index] + 1) % ring.length;
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the retained entries, most recent first. A slot can be read
+	 * while it is being overwritten; the snapshot then contains either the old or the
+	 * new entry. The state of an entry is set when it is created, except for a lazily
+	 * formatted message which the entry guards itself.
+	 *
+	 * @return an enumeration of the retained entries
+	 */
+	public Enumeration getLog() {
+		int size = 0;
+		for (int i = 0; i < rings.length; i++)
+			size += rings[i].length;
+		if (size == 0)
+			return EMPTY_ENUMERATION;
+
+		ExtendedLogEntry[] snapshot = new ExtendedLogEntry[size];
+		int count = 0;
+		for (int i = 0; i < rings.length; i++) {
+			ExtendedLogEntry[] ring = rings[i];
+			for (int j = 0; j < ring.length; j++) {
+				ExtendedLogEntry entry = ring[j];
+				if (entry != null)
+					snapshot[count++] = entry;
+			}
+		}
+		Arrays.sort(snapshot, 0, count, MOST_RECENT_FIRST);
+
+		final ExtendedLogEntry[] entries = snapshot;
+		final int length = count;
+		return new Enumeration() {
+			private int next = 0;
+
+			public boolean hasMoreElements() {
+				return next < length;
+			}
+
+			public Object nextElement() {
+				if (next >= length)
+					throw new NoSuchElementException();
+				return entries[next++];
+			}
+		};
+	}
+}
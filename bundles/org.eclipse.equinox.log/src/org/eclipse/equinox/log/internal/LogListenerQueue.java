@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.equinox.log.internal;
+
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogListener;
+
+/**
+ * LogListenerQueue delivers log entries to a single asynchronous LogListener in the
+ * order they were logged. Entries are held in a preallocated ring buffer of fixed
+ * capacity; the overflow policy decides what happens when the buffer is full.
+ * The delivery thread is created on first use and lives until the queue is closed.
+ */
+public class LogListenerQueue {
+	/** Block the logging thread until there is room in the queue */
+	public static final int POLICY_BLOCK = 0;
+	/** Discard the oldest queued entry to make room for the new entry */
+	public static final int POLICY_DROP_OLDEST = 1;
+	/** Discard the new entry */
+	public static final int POLICY_DROP_NEWEST = 2;
+	/** Keep one of every sample rate new entries, discarding the oldest queued entry to make room */
+	public static final int POLICY_SAMPLE = 3;
+
+	private final LogListener listener;
+	private final String queueName;
+	private final LogEntry[] entries;
+	private final int policy;
+	private final int sampleRate;
+	private int head;
+	private int count;
+	private int overflowCount;
+	private long droppedCount;
+	private boolean closed;
+	private Thread thread;
+
+	public LogListenerQueue(LogListener listener, String queueName, int capacity, int policy, int sampleRate) {
+		this.listener = listener;
+		this.queueName = queueName;
+		this.entries = new LogEntry[capacity];
+		this.policy = policy;
+		this.sampleRate = sampleRate;
+	}
+
+	public synchronized void put(LogEntry entry) {
+		if (closed)
+			return;
+
+		if (count == entries.length) {
+			switch (policy) {
+				case POLICY_BLOCK :
+					// the delivery thread must never wait for itself
+					if (Thread.currentThread() == thread) {
+						droppedCount++;
+						return;
+					}
+					boolean interrupted = false;
+					while (count == entries.length && !closed) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							// keep waiting; the interrupted state is restored once there is room
+							interrupted = true;
+						}
+					}
+					if (interrupted)
+						Thread.currentThread().interrupt();
+					if (closed)
+						return;
+					break;
+				case POLICY_SAMPLE :
+					if (overflowCount++ % sampleRate != 0) {
+						droppedCount++;
+						return;
+					}
+					removeFirst();
+					droppedCount++;
+					break;
+				case POLICY_DROP_NEWEST :
+					droppedCount++;
+					return;
+				default :
+					removeFirst();
+					droppedCount++;
+			}
+		} else {
+			overflowCount = 0;
+		}
+
+		entries[(head + count) % entries.length] = entry;
+		count++;
+		if (thread == null) {
+			thread = new Thread(queueName) {
+				public void run() {
+					LogEntry next = nextEntry();
+					while (next != null) {
+						ExtendedLogReaderServiceFactory.safeLogged(listener, next);
+						next = nextEntry();
+					}
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		} else
+			notifyAll();
+	}
+
+	/**
+	 * Stops delivery once the entries already queued have been delivered.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the number of entries discarded by the overflow policy.
+	 * @return the number of discarded entries
+	 */
+	public synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+
+	synchronized LogEntry nextEntry() {
+		while (count == 0) {
+			if (closed) {
+				thread = null;
+				return null;
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				// ignore -- we control the stack here and do not need to propagate it.
+			}
+		}
+		LogEntry entry = removeFirst();
+		if (policy == POLICY_BLOCK)
+			notifyAll();
+		return entry;
+	}
+
+	private LogEntry removeFirst() {
+		LogEntry entry = entries[head];
+		entries[head] = null;
+		head = (head + 1) % entries.length;
+		count--;
+		return entry;
+	}
+}
@@ -51,4 +51,13 @@ public class LoggerImpl implements Logger {
 	public void log(Object context, int level, String message, Throwable exception) {
 		logServiceImpl.log(name, context, level, message, exception);
 	}
+
+	public void log(int level, String pattern, Object[] arguments, Throwable exception) {
+		log(null, level, pattern, arguments, exception);
+	}
+
+	public void log(Object context, int level, String pattern, Object[] arguments, Throwable exception) {
+		// the entry is only created if it is retained or someone is listening; the message is only formatted when read
+		logServiceImpl.log(name, context, level, pattern, arguments, exception);
+	}
 }
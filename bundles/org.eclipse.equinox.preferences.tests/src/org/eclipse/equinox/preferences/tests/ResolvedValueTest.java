@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import junit.framework.TestCase;
+import org.eclipse.core.internal.preferences.PreferencesService;
+import org.eclipse.core.runtime.preferences.*;
+import org.osgi.service.prefs.BackingStoreException;
+import org.osgi.service.prefs.Preferences;
+
+/**
+ * Checks that the values resolved by the preference service, which are cached,
+ * follow the changes of the preference nodes and of the look-up orders.
+ */
+public class ResolvedValueTest extends TestCase {
+
+	private static final String QUALIFIER = "org.eclipse.equinox.preferences.tests.resolved"; //$NON-NLS-1$
+	private static final String OTHER_QUALIFIER = "org.eclipse.equinox.preferences.tests.resolved2"; //$NON-NLS-1$
+
+	private IPreferencesService service = PreferencesService.getDefault();
+
+	protected void tearDown() throws Exception {
+		service.setDefaultLookupOrder(QUALIFIER, "key", null); //$NON-NLS-1$
+		removeNode(InstanceScope.INSTANCE.getNode(QUALIFIER));
+		removeNode(DefaultScope.INSTANCE.getNode(QUALIFIER));
+		removeNode(InstanceScope.INSTANCE.getNode(OTHER_QUALIFIER));
+	}
+
+	public void testPutAndRemove() {
+		assertNull(getString(QUALIFIER, "key")); //$NON-NLS-1$
+		DefaultScope.INSTANCE.getNode(QUALIFIER).put("key", "default"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("default", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		InstanceScope.INSTANCE.getNode(QUALIFIER).put("key", "instance"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("instance", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		InstanceScope.INSTANCE.getNode(QUALIFIER).put("key", "instance2"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("instance2", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		InstanceScope.INSTANCE.getNode(QUALIFIER).remove("key"); //$NON-NLS-1$
+		assertEquals("default", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		DefaultScope.INSTANCE.getNode(QUALIFIER).remove("key"); //$NON-NLS-1$
+		assertNull(getString(QUALIFIER, "key")); //$NON-NLS-1$
+	}
+
+	public void testOtherKeys() {
+		IEclipsePreferences node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+		node.put("key", "value"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.put("other", "value"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("value", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("value", getString(QUALIFIER, "other")); //$NON-NLS-1$ //$NON-NLS-2$
+		// a change of a key leaves the values of the other keys unchanged
+		node.put("other", "value2"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("value", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("value2", getString(QUALIFIER, "other")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testSameKeyInOtherNodes() {
+		IEclipsePreferences node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+		IEclipsePreferences otherNode = InstanceScope.INSTANCE.getNode(OTHER_QUALIFIER);
+		node.put("key", "value"); //$NON-NLS-1$ //$NON-NLS-2$
+		otherNode.put("key", "other"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.node("child").put("key", "child"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals("value", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("other", getString(OTHER_QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("child", getString(QUALIFIER, "child/key")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		otherNode.put("key", "other2"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("value", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("other2", getString(OTHER_QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("child", getString(QUALIFIER, "child/key")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// a key with a path is invalidated by its child node
+		node.node("child").put("key", "child2"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals("child2", getString(QUALIFIER, "child/key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("child2", getString(QUALIFIER, "child//key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("value", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testScopes() {
+		DefaultScope.INSTANCE.getNode(QUALIFIER).put("key", "default"); //$NON-NLS-1$ //$NON-NLS-2$
+		IScopeContext[] scopes = new IScopeContext[] {InstanceScope.INSTANCE};
+		assertEquals("default", service.getString(QUALIFIER, "key", null, scopes)); //$NON-NLS-1$ //$NON-NLS-2$
+		InstanceScope.INSTANCE.getNode(QUALIFIER).put("key", "instance"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("instance", service.getString(QUALIFIER, "key", null, scopes)); //$NON-NLS-1$ //$NON-NLS-2$
+		// the caller may reuse its array
+		scopes[0] = DefaultScope.INSTANCE;
+		assertEquals("instance", service.getString(QUALIFIER, "key", null, scopes)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testNodeRemoval() throws BackingStoreException {
+		DefaultScope.INSTANCE.getNode(QUALIFIER).put("key", "default"); //$NON-NLS-1$ //$NON-NLS-2$
+		InstanceScope.INSTANCE.getNode(QUALIFIER).node("child").put("key", "instance"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals("instance", getString(QUALIFIER, "child/key")); //$NON-NLS-1$ //$NON-NLS-2$
+		InstanceScope.INSTANCE.getNode(QUALIFIER).node("child").removeNode(); //$NON-NLS-1$
+		assertNull(getString(QUALIFIER, "child/key")); //$NON-NLS-1$
+
+		InstanceScope.INSTANCE.getNode(QUALIFIER).put("key", "instance"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("instance", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		InstanceScope.INSTANCE.getNode(QUALIFIER).removeNode();
+		assertEquals("default", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testLookupOrder() {
+		DefaultScope.INSTANCE.getNode(QUALIFIER).put("key", "default"); //$NON-NLS-1$ //$NON-NLS-2$
+		InstanceScope.INSTANCE.getNode(QUALIFIER).put("key", "instance"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("instance", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		service.setDefaultLookupOrder(QUALIFIER, "key", new String[] {DefaultScope.SCOPE, InstanceScope.SCOPE}); //$NON-NLS-1$
+		assertEquals("default", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+		service.setDefaultLookupOrder(QUALIFIER, "key", null); //$NON-NLS-1$
+		assertEquals("instance", getString(QUALIFIER, "key")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testManyKeys() {
+		// more keys than the cache holds, so that the values are published in
+		// several batches and the cache is cleared
+		final int KEYS = 1500;
+		IEclipsePreferences node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+		for (int i = 0; i < KEYS; i++)
+			node.put("key" + i, "value" + i); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = 0; i < KEYS; i++)
+			assertEquals("value" + i, getString(QUALIFIER, "key" + i)); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = 0; i < KEYS; i += 2)
+			node.put("key" + i, "changed" + i); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = KEYS - 1; i >= 0; i--)
+			assertEquals((i % 2 == 0 ? "changed" : "value") + i, getString(QUALIFIER, "key" + i)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		for (int i = 0; i < KEYS; i += 3)
+			node.remove("key" + i); //$NON-NLS-1$
+		for (int i = 0; i < KEYS; i++)
+			assertEquals(i % 3 == 0 ? null : (i % 2 == 0 ? "changed" : "value") + i, getString(QUALIFIER, "key" + i)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	public void testConcurrentChanges() throws InterruptedException {
+		final int WRITERS = 4;
+		final int CHANGES = 1000;
+		final IEclipsePreferences node = InstanceScope.INSTANCE.getNode(QUALIFIER);
+		final Throwable[] failure = new Throwable[1];
+		final boolean[] done = new boolean[1];
+		Thread[] writers = new Thread[WRITERS];
+		for (int t = 0; t < WRITERS; t++) {
+			// the threads change the same key name in different nodes
+			final Preferences child = node.node("child" + t); //$NON-NLS-1$
+			final String key = "child" + t + "/key"; //$NON-NLS-1$ //$NON-NLS-2$
+			writers[t] = new Thread() {
+				public void run() {
+					try {
+						// every thread reads its own key back after it changes it
+						for (int i = 0; i < CHANGES; i++) {
+							child.put("key", Integer.toString(i)); //$NON-NLS-1$
+							assertEquals(Integer.toString(i), getString(QUALIFIER, key));
+							assertEquals(Integer.toString(i), getString(QUALIFIER, key));
+						}
+					} catch (Throwable e) {
+						synchronized (failure) {
+							failure[0] = e;
+						}
+					}
+				}
+			};
+		}
+		// the values are also resolved while they are changed by the other threads
+		Thread reader = new Thread() {
+			public void run() {
+				while (true) {
+					synchronized (done) {
+						if (done[0])
+							return;
+					}
+					for (int t = 0; t < WRITERS; t++)
+						getString(QUALIFIER, "child" + t + "/key"); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		};
+		reader.start();
+		for (int t = 0; t < WRITERS; t++)
+			writers[t].start();
+		for (int t = 0; t < WRITERS; t++)
+			writers[t].join();
+		synchronized (done) {
+			done[0] = true;
+		}
+		reader.join();
+		synchronized (failure) {
+			if (failure[0] != null)
+				fail(failure[0].toString());
+		}
+		for (int t = 0; t < WRITERS; t++)
+			assertEquals(Integer.toString(CHANGES - 1), getString(QUALIFIER, "child" + t + "/key")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private String getString(String qualifier, String key) {
+		return service.getString(qualifier, key, null, null);
+	}
+
+	private static void removeNode(Preferences node) throws BackingStoreException {
+		if (node.nodeExists("")) //$NON-NLS-1$
+			node.removeNode();
+	}
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.preferences.tests;
+
+import java.io.*;
+import java.util.Properties;
+import junit.framework.TestCase;
+import org.eclipse.core.runtime.preferences.ConfigurationScope;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.osgi.framework.*;
+import org.osgi.service.prefs.BackingStoreException;
+
+/**
+ * Tests the write-behind mode of the instance and configuration preferences.
+ * The preferences bundle is restarted with the write-behind mode enabled.
+ */
+public class WriteBehindTest extends TestCase {
+
+	private static final String PROP_WRITE_BEHIND = "eclipse.preferences.writeBehind"; //$NON-NLS-1$
+	private static final String QUALIFIER = "org.eclipse.equinox.preferences.tests.writebehind"; //$NON-NLS-1$
+	private static final long DELAY = 1000;
+	private static final long TIMEOUT = 5000;
+
+	private String oldWriteBehind;
+
+	protected void setUp() throws Exception {
+		oldWriteBehind = System.getProperty(PROP_WRITE_BEHIND);
+		System.setProperty(PROP_WRITE_BEHIND, Long.toString(DELAY));
+		restartPreferences();
+	}
+
+	protected void tearDown() throws Exception {
+		IEclipsePreferences node = ConfigurationScope.INSTANCE.getNode(QUALIFIER);
+		node.removeNode();
+		if (oldWriteBehind == null)
+			System.getProperties().remove(PROP_WRITE_BEHIND);
+		else
+			System.setProperty(PROP_WRITE_BEHIND, oldWriteBehind);
+		restartPreferences();
+		getFile(QUALIFIER).delete();
+	}
+
+	public void testCoalescing() throws Exception {
+		IEclipsePreferences node = ConfigurationScope.INSTANCE.getNode(QUALIFIER);
+		File file = getFile(QUALIFIER);
+		for (int i = 0; i < 5; i++) {
+			node.put("key", "value" + i); //$NON-NLS-1$ //$NON-NLS-2$
+			node.flush();
+		}
+		// the flushes return before the node is saved, once for all of them
+		assertFalse("The node should not be saved by the flush", file.exists()); //$NON-NLS-1$
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (!file.exists() && System.currentTimeMillis() < end)
+			Thread.sleep(50);
+		assertEquals("value4", readValue(file)); //$NON-NLS-1$
+	}
+
+	public void testSync() throws Exception {
+		IEclipsePreferences node = ConfigurationScope.INSTANCE.getNode(QUALIFIER);
+		File file = getFile(QUALIFIER);
+		node.put("key", "value"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.flush();
+		assertFalse("The node should not be saved by the flush", file.exists()); //$NON-NLS-1$
+		// a sync saves the flushed node before it returns
+		node.sync();
+		assertEquals("value", readValue(file)); //$NON-NLS-1$
+
+		node.put("key", "value2"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.flush();
+		node.sync();
+		assertEquals("value2", readValue(file)); //$NON-NLS-1$
+		assertFalse(new File(file.getPath() + ".tmp").exists()); //$NON-NLS-1$
+		assertFalse(new File(file.getPath() + ".bak").exists()); //$NON-NLS-1$
+	}
+
+	public void testStop() throws Exception {
+		IEclipsePreferences node = ConfigurationScope.INSTANCE.getNode(QUALIFIER);
+		File file = getFile(QUALIFIER);
+		node.put("key", "value"); //$NON-NLS-1$ //$NON-NLS-2$
+		node.flush();
+		assertFalse("The node should not be saved by the flush", file.exists()); //$NON-NLS-1$
+		// the flushed nodes are saved when the bundle stops
+		restartPreferences();
+		assertEquals("value", readValue(file)); //$NON-NLS-1$
+	}
+
+	public void testBackupRecovery() throws Exception {
+		// a node which is not loaded yet
+		String qualifier = QUALIFIER + System.currentTimeMillis();
+		File file = getFile(qualifier);
+		File backup = new File(file.getPath() + ".bak"); //$NON-NLS-1$
+		// the state left by a replacement of the file which did not complete
+		Properties properties = new Properties();
+		properties.put("key", "value"); //$NON-NLS-1$ //$NON-NLS-2$
+		backup.getParentFile().mkdirs();
+		OutputStream output = new FileOutputStream(backup);
+		try {
+			properties.store(output, null);
+		} finally {
+			output.close();
+		}
+		try {
+			assertEquals("value", ConfigurationScope.INSTANCE.getNode(qualifier).get("key", null)); //$NON-NLS-1$ //$NON-NLS-2$
+			assertTrue("The backup should be restored", file.exists()); //$NON-NLS-1$
+			assertFalse(backup.exists());
+		} finally {
+			ConfigurationScope.INSTANCE.getNode(qualifier).removeNode();
+			file.delete();
+			backup.delete();
+		}
+	}
+
+	private static File getFile(String qualifier) {
+		return ConfigurationScope.INSTANCE.getLocation().append(".settings").append(qualifier + ".prefs").toFile(); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static String readValue(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream input = new FileInputStream(file);
+		try {
+			properties.load(input);
+		} finally {
+			input.close();
+		}
+		return properties.getProperty("key"); //$NON-NLS-1$
+	}
+
+	private void restartPreferences() throws BundleException, BackingStoreException {
+		Bundle[] bundles = FrameworkUtil.getBundle(getClass()).getBundleContext().getBundles();
+		for (int i = 0; i < bundles.length; i++) {
+			if ("org.eclipse.equinox.preferences".equals(bundles[i].getSymbolicName())) { //$NON-NLS-1$
+				bundles[i].stop();
+				bundles[i].start();
+				return;
+			}
+		}
+		fail("The preferences bundle is not installed"); //$NON-NLS-1$
+	}
+}
@@ -34,6 +34,11 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer {
 	private static final String PROP_REGISTER_PERF_SERVICE = "eclipse.service.pref"; //$NON-NLS-1$
 	// the system property
 	private static final String PROP_CUSTOMIZATION = "eclipse.pluginCustomization"; //$NON-NLS-1$
+	/**
+	 * Eclipse property. Set to <code>true</code>, or to a delay in milliseconds, to
+	 * save the flushed instance and configuration preferences in the background.
+	 */
+	private static final String PROP_WRITE_BEHIND = "eclipse.preferences.writeBehind"; //$NON-NLS-1$
 
 	/**
 	 * Track the registry service - only register preference service if the registry is 
@@ -64,6 +69,7 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer {
 		// Open the services first before processing the command-line args, order is important! (Bug 150288)
 		PreferencesOSGiUtils.getDefault().openServices();
 		processCommandLine();
+		startWriteBehind();
 
 		boolean shouldRegister = !"false".equalsIgnoreCase(context.getProperty(PROP_REGISTER_PERF_SERVICE)); //$NON-NLS-1$
 		if (shouldRegister) {
@@ -79,6 +85,8 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer {
 	 * @see org.osgi.framework.BundleActivator#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		// save the nodes waiting to be written behind while the locations are available
+		WriteBehindQueue.stop();
 		PreferencesOSGiUtils.getDefault().closeServices();
 		if (registryServiceTracker != null) {
 			registryServiceTracker.close();
@@ -141,6 +149,19 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer {
 		bundleContext.ungetService(reference);
 	}
 
+	private void startWriteBehind() {
+		String value = bundleContext.getProperty(PROP_WRITE_BEHIND);
+		if (value == null || "false".equalsIgnoreCase(value)) //$NON-NLS-1$
+			return;
+		long delay = WriteBehindQueue.DEFAULT_DELAY;
+		try {
+			delay = Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			// not a delay, use the default one
+		}
+		WriteBehindQueue.start(delay);
+	}
+
 	/**
 	 * Look for the plug-in customization file in the system properties and command-line args.
 	 */
@@ -73,6 +73,10 @@ public class ConfigurationPreferences extends EclipsePreferences {
 		return location;
 	}
 
+	protected boolean canWriteBehind() {
+		return true;
+	}
+
 	protected boolean isAlreadyLoaded(IEclipsePreferences node) {
 		return loadedNodes.contains(node.name());
 	}
@@ -37,6 +37,7 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 
 	public static final String DEFAULT_PREFERENCES_DIRNAME = ".settings"; //$NON-NLS-1$
 	public static final String PREFS_FILE_EXTENSION = "prefs"; //$NON-NLS-1$
+	private static final String BACKUP_EXTENSION = ".bak"; //$NON-NLS-1$
 	protected static final IEclipsePreferences[] EMPTY_NODE_ARRAY = new IEclipsePreferences[0];
 	protected static final String[] EMPTY_STRING_ARRAY = new String[0];
 	private static final String FALSE = "false"; //$NON-NLS-1$
@@ -238,6 +239,11 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 					if (filename.endsWith(extension)) {
 						String shortName = filename.substring(0, filename.length() - extension.length());
 						result.add(shortName);
+					} else if (filename.endsWith(extension + BACKUP_EXTENSION)) {
+						// the backup of a file whose replacement did not complete
+						String shortName = filename.substring(0, filename.length() - extension.length() - BACKUP_EXTENSION.length());
+						if (!new File(file, shortName + extension).exists())
+							result.add(shortName);
 					}
 				}
 			}
@@ -292,6 +298,11 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 			return;
 		parentFile.mkdirs();
 
+		// in write-behind mode the file is replaced atomically and forced to disk
+		if (WriteBehindQueue.isEnabled()) {
+			writeAtomically(properties, location);
+			return;
+		}
 		OutputStream output = null;
 		try {
 			output = new BufferedOutputStream(new FileOutputStream(new File(location.toOSString())));
@@ -311,6 +322,52 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		}
 	}
 
+	/*
+	 * Writes the properties to a temporary file which then replaces the file
+	 * at the given location, so the file is never seen partially written.
+	 * Where a file cannot be renamed onto an existing one, the existing file is
+	 * first renamed to a backup which #loadProperties restores if the process
+	 * stops before the temporary file is renamed.
+	 */
+	private static void writeAtomically(Properties properties, IPath location) throws BackingStoreException {
+		File target = new File(location.toOSString());
+		File temp = new File(target.getPath() + ".tmp"); //$NON-NLS-1$
+		File backup = new File(target.getPath() + BACKUP_EXTENSION);
+		FileOutputStream output = null;
+		try {
+			output = new FileOutputStream(temp);
+			output.write(removeTimestampFromTable(properties).getBytes("UTF-8")); //$NON-NLS-1$
+			output.getFD().sync();
+			output.close();
+			output = null;
+			// renaming onto an existing file fails on some platforms
+			if (!temp.renameTo(target)) {
+				if (target.exists()) {
+					backup.delete();
+					if (!target.renameTo(backup))
+						throw new IOException("Unable to rename " + target + " to " + backup); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				if (!temp.renameTo(target)) {
+					backup.renameTo(target);
+					throw new IOException("Unable to rename " + temp + " to " + target); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				backup.delete();
+			}
+		} catch (IOException e) {
+			String message = NLS.bind(PrefsMessages.preferences_saveException, location);
+			log(new Status(IStatus.ERROR, PrefsMessages.OWNER_NAME, IStatus.ERROR, message, e));
+			throw new BackingStoreException(message);
+		} finally {
+			if (output != null)
+				try {
+					output.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			temp.delete();
+		}
+	}
+
 	protected static String removeTimestampFromTable(Properties properties) throws IOException {
 		// store the properties in a string and then skip the first line (date/timestamp)
 		ByteArrayOutputStream output = new ByteArrayOutputStream();
@@ -431,6 +488,15 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 
 		// this node is a load level
 		// any work to do?
+		if (!dirty)
+			return;
+		// in write-behind mode the node is saved later in the background
+		if (WriteBehindQueue.schedule(this))
+			return;
+		saveDirty();
+	}
+
+	private void saveDirty() throws BackingStoreException {
 		if (!dirty)
 			return;
 		//remove dirty bit before saving, to ensure that concurrent 
@@ -445,6 +511,24 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		}
 	}
 
+	/*
+	 * Saves this load level node for the write-behind queue. Synchronized
+	 * like #flush() so a flush in progress is completed first.
+	 */
+	synchronized void saveWrittenBehind() throws BackingStoreException {
+		if (removed)
+			return;
+		saveDirty();
+	}
+
+	/*
+	 * Subclasses to over-ride. Return true if flushing this load level node
+	 * may save it in the background when the write-behind mode is enabled.
+	 */
+	protected boolean canWriteBehind() {
+		return false;
+	}
+
 	/*
 	 * @see org.osgi.service.prefs.Preferences#get(java.lang.String, java.lang.String)
 	 */
@@ -651,6 +735,7 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		if (DEBUG_PREFERENCE_SET)
 			PrefsMessages.message("Setting preference: " + absolutePath() + '/' + key + '=' + newValue); //$NON-NLS-1$
 		properties = properties.put(key, newValue);
+		PreferencesService.resolvedValues.invalidate(key);
 		return oldValue;
 	}
 
@@ -690,6 +775,10 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 			input = new BufferedInputStream(new FileInputStream(location.toFile()));
 			result.load(input);
 		} catch (FileNotFoundException e) {
+			// a write-behind save which did not complete leaves the previous file as a backup
+			File backup = new File(location.toOSString() + BACKUP_EXTENSION);
+			if (backup.exists() && backup.renameTo(location.toFile()))
+				return loadProperties(location);
 			// file doesn't exist but that's ok.
 			if (DEBUG_PREFERENCE_GENERAL)
 				PrefsMessages.message("Preference file does not exist: " + location); //$NON-NLS-1$
@@ -952,6 +1041,7 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		if (oldValue == null)
 			return;
 		properties = properties.removeKey(key);
+		PreferencesService.resolvedValues.invalidate(key);
 		makeDirty();
 		firePreferenceEvent(key, oldValue, null);
 	}
@@ -999,8 +1089,10 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 					children = null;
 			}
 		}
-		if (wasRemoved)
+		if (wasRemoved) {
+			PreferencesService.resolvedValues.invalidate();
 			fireNodeEvent(new NodeChangeEvent(this, child), false);
+		}
 	}
 
 	/*
@@ -1010,8 +1102,10 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 		synchronized (this) {
 			if (children != null) {
 				boolean wasRemoved = children.remove(key) != null;
-				if (wasRemoved)
+				if (wasRemoved) {
+					PreferencesService.resolvedValues.invalidate();
 					makeDirty();
+				}
 				if (children.isEmpty())
 					children = null;
 			}
@@ -1208,8 +1302,12 @@ public class EclipsePreferences implements IEclipsePreferences, IScope {
 			return;
 		}
 		if (node instanceof EclipsePreferences) {
+			// save the changes still waiting to be written behind before they are reloaded
+			WriteBehindQueue.saveNow((EclipsePreferences) node);
 			((EclipsePreferences) node).load();
 			node.flush();
+			// a sync returns only when the node is saved
+			WriteBehindQueue.saveNow((EclipsePreferences) node);
 		}
 	}
 
@@ -71,6 +71,10 @@ public class InstancePreferences extends EclipsePreferences {
 		// accessed before the instance location is set.
 	}
 
+	protected boolean canWriteBehind() {
+		return true;
+	}
+
 	protected boolean isAlreadyLoaded(IEclipsePreferences node) {
 		return loadedNodes.contains(node.name());
 	}
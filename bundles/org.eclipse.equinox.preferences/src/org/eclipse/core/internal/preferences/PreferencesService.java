@@ -46,6 +46,8 @@ public class PreferencesService implements IPreferencesService {
 	private static final String EMPTY_STRING = ""; //$NON-NLS-1$
 
 	private static PreferencesService instance;
+	// must be created before the root node
+	static final ResolvedValueCache resolvedValues = new ResolvedValueCache();
 	static final RootPreferences root = new RootPreferences();
 	private static final Map defaultsRegistry = Collections.synchronizedMap(new HashMap());
 	private Object registryHelper = null;
@@ -474,7 +476,7 @@ public class PreferencesService implements IPreferencesService {
 	 * @see org.eclipse.core.runtime.preferences.IPreferencesService#getBoolean(java.lang.String, java.lang.String, boolean, org.eclipse.core.runtime.preferences.IScope[])
 	 */
 	public boolean getBoolean(String qualifier, String key, boolean defaultValue, IScopeContext[] scopes) {
-		String result = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String result = getResolvedValue(qualifier, key, scopes);
 		return result == null ? defaultValue : Boolean.valueOf(result).booleanValue();
 	}
 
@@ -512,7 +514,7 @@ public class PreferencesService implements IPreferencesService {
 	 * @see org.eclipse.core.runtime.preferences.IPreferencesService#getByteArray(java.lang.String, java.lang.String, byte[], org.eclipse.core.runtime.preferences.IScope[])
 	 */
 	public byte[] getByteArray(String qualifier, String key, byte[] defaultValue, IScopeContext[] scopes) {
-		String result = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String result = getResolvedValue(qualifier, key, scopes);
 		return result == null ? defaultValue : Base64.decode(result.getBytes());
 	}
 
@@ -528,7 +530,7 @@ public class PreferencesService implements IPreferencesService {
 	 * @see org.eclipse.core.runtime.preferences.IPreferencesService#getDouble(java.lang.String, java.lang.String, double, org.eclipse.core.runtime.preferences.IScope[])
 	 */
 	public double getDouble(String qualifier, String key, double defaultValue, IScopeContext[] scopes) {
-		String value = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String value = getResolvedValue(qualifier, key, scopes);
 		if (value == null)
 			return defaultValue;
 		try {
@@ -542,7 +544,7 @@ public class PreferencesService implements IPreferencesService {
 	 * @see org.eclipse.core.runtime.preferences.IPreferencesService#getFloat(java.lang.String, java.lang.String, float, org.eclipse.core.runtime.preferences.IScope[])
 	 */
 	public float getFloat(String qualifier, String key, float defaultValue, IScopeContext[] scopes) {
-		String value = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String value = getResolvedValue(qualifier, key, scopes);
 		if (value == null)
 			return defaultValue;
 		try {
@@ -556,7 +558,7 @@ public class PreferencesService implements IPreferencesService {
 	 * @see org.eclipse.core.runtime.preferences.IPreferencesService#getInt(java.lang.String, java.lang.String, int, org.eclipse.core.runtime.preferences.IScope[])
 	 */
 	public int getInt(String qualifier, String key, int defaultValue, IScopeContext[] scopes) {
-		String value = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String value = getResolvedValue(qualifier, key, scopes);
 		if (value == null)
 			return defaultValue;
 		try {
@@ -574,7 +576,7 @@ public class PreferencesService implements IPreferencesService {
 	 * @see org.eclipse.core.runtime.preferences.IPreferencesService#getLong(java.lang.String, java.lang.String, long, org.eclipse.core.runtime.preferences.IScope[])
 	 */
 	public long getLong(String qualifier, String key, long defaultValue, IScopeContext[] scopes) {
-		String value = get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		String value = getResolvedValue(qualifier, key, scopes);
 		if (value == null)
 			return defaultValue;
 		try {
@@ -598,6 +600,31 @@ public class PreferencesService implements IPreferencesService {
 		return order;
 	}
 
+	/*
+	 * Return the value of the key in the first scope of the look-up order which
+	 * has it, or null if none has it. The value is cached until a preference or
+	 * a look-up order is changed.
+	 */
+	private String getResolvedValue(String qualifier, String key, IScopeContext[] scopes) {
+		if (EclipsePreferences.DEBUG_PREFERENCE_GET)
+			return get(EclipsePreferences.decodePath(key)[1], null, getNodes(qualifier, key, scopes));
+		ResolvedValueCache.Key cacheKey = new ResolvedValueCache.Key(qualifier, key, scopes);
+		Object cached = resolvedValues.get(cacheKey);
+		if (cached != null)
+			return cached == ResolvedValueCache.NO_VALUE ? null : (String) cached;
+		String name = EclipsePreferences.decodePath(key)[1];
+		int generation = resolvedValues.getGeneration(name);
+		Preferences[] nodes = getNodes(qualifier, key, scopes);
+		String result = get(name, null, nodes);
+		// only our own nodes invalidate the cache when they change
+		for (int i = 0; i < nodes.length; i++) {
+			if (!(nodes[i] instanceof EclipsePreferences))
+				return result;
+		}
+		resolvedValues.put(cacheKey.copyScopes(), name, result, generation);
+		return result;
+	}
+
 	private Preferences[] getNodes(final String qualifier, String key, final IScopeContext[] contexts) {
 		String[] order = getLookupOrder(qualifier, key);
 		final String childPath = EclipsePreferences.makeRelative(EclipsePreferences.decodePath(key)[0]);
@@ -673,7 +700,8 @@ public class PreferencesService implements IPreferencesService {
 	 * @see org.eclipse.core.runtime.preferences.IPreferencesService#getString(java.lang.String, java.lang.String, java.lang.String, org.eclipse.core.runtime.preferences.IScope[])
 	 */
 	public String getString(String qualifier, String key, String defaultValue, IScopeContext[] scopes) {
-		return get(EclipsePreferences.decodePath(key)[1], defaultValue, getNodes(qualifier, key, scopes));
+		String result = getResolvedValue(qualifier, key, scopes);
+		return result == null ? defaultValue : result;
 	}
 
 	/*
@@ -930,6 +958,7 @@ public class PreferencesService implements IPreferencesService {
 			LookupOrder obj = new LookupOrder(order);
 			defaultsRegistry.put(registryKey, obj);
 		}
+		resolvedValues.invalidate();
 	}
 
 	public void setRegistryHelper(Object registryHelper) {
@@ -1121,5 +1150,6 @@ public class PreferencesService implements IPreferencesService {
 		if (order == null)
 			order = new String[0];
 		DEFAULT_DEFAULT_LOOKUP_ORDER = order;
+		resolvedValues.invalidate();
 	}
 }
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.preferences;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.eclipse.core.runtime.preferences.IScopeContext;
+
+/**
+ * Caches the values found by the preference service when it searches the scopes
+ * for a qualifier and a key. A value set or removed in a preference node
+ * invalidates the cached values of its key name. The removal of a node or the
+ * change of a look-up order invalidates the whole cache.
+ * <p>
+ * The key names are spread over stripes, each one with its own generation. A
+ * cached value records the generation of the stripe of its key name and is only
+ * returned while that generation is current, so an invalidation only increments
+ * a generation under the lock of the stripe. The stale values are dropped when
+ * the cached values are copied.
+ * </p>
+ * <p>
+ * The cached values are kept in a map which is never modified once it is
+ * published, so a hit takes no lock. New values are first added to a pending map
+ * and are published together once there are a quarter as many of them as of
+ * published ones, so a value is copied a bounded number of times on average.
+ * </p>
+ * <p>
+ * A value computed while its stripe is invalidated is not returned since it may
+ * already be stale.
+ * </p>
+ */
+class ResolvedValueCache {
+
+	/**
+	 * The value returned when the key is set in none of the scopes.
+	 */
+	static final Object NO_VALUE = new Object();
+
+	// the cache is cleared when it grows beyond this size
+	private static final int MAX_SIZE = 1000;
+	// must be a power of two
+	private static final int STRIPES = 64;
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	// Key -> Entry; never modified once it is published
+	private volatile Map values = new HashMap();
+	// Key -> Entry; the values not published yet
+	private Map pending = new HashMap();
+
+	ResolvedValueCache() {
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+	}
+
+	/**
+	 * Returns the cached value, NO_VALUE if the key is known to be unset
+	 * or null if the value is not cached.
+	 */
+	Object get(Key key) {
+		Entry entry = (Entry) values.get(key);
+		if (entry == null || !entry.isValid()) {
+			// the value may have been computed again since the map was published
+			synchronized (this) {
+				entry = (Entry) pending.get(key);
+			}
+		}
+		return entry == null || !entry.isValid() ? null : entry.value;
+	}
+
+	/**
+	 * Returns the current generation of the values of a key name. It must be read
+	 * before the value to cache is computed.
+	 */
+	int getGeneration(String name) {
+		return getStripe(name).generation;
+	}
+
+	/**
+	 * Caches a value of a key name unless the values of the name were invalidated
+	 * since the given generation.
+	 */
+	synchronized void put(Key key, String name, String value, int valueGeneration) {
+		Stripe stripe = getStripe(name);
+		if (valueGeneration != stripe.generation)
+			return;
+		pending.put(key, new Entry(value == null ? NO_VALUE : value, stripe, valueGeneration));
+		if (pending.size() * 4 >= values.size())
+			publish();
+	}
+
+	// publishes the valid values in a new map
+	private void publish() {
+		Map newValues = new HashMap();
+		copyValid(values, newValues);
+		// the cache is cleared when it is full, except for the new values
+		if (newValues.size() + pending.size() > MAX_SIZE)
+			newValues.clear();
+		copyValid(pending, newValues);
+		values = newValues;
+		pending = new HashMap();
+	}
+
+	private static void copyValid(Map from, Map to) {
+		for (Iterator i = from.entrySet().iterator(); i.hasNext();) {
+			Map.Entry mapEntry = (Map.Entry) i.next();
+			if (((Entry) mapEntry.getValue()).isValid())
+				to.put(mapEntry.getKey(), mapEntry.getValue());
+		}
+	}
+
+	/**
+	 * Invalidates the cached values of a key name in any node.
+	 */
+	void invalidate(String name) {
+		Stripe stripe = getStripe(name);
+		synchronized (stripe) {
+			stripe.generation++;
+		}
+	}
+
+	/**
+	 * Invalidates all the cached values.
+	 */
+	synchronized void invalidate() {
+		for (int i = 0; i < STRIPES; i++) {
+			synchronized (stripes[i]) {
+				stripes[i].generation++;
+			}
+		}
+		if (!values.isEmpty())
+			values = new HashMap();
+		pending = new HashMap();
+	}
+
+	private Stripe getStripe(String name) {
+		int hash = name == null ? 0 : name.hashCode();
+		return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+	}
+
+	// the generation of the values of the key names of a stripe
+	private static final class Stripe {
+		volatile int generation = 0;
+	}
+
+	// a cached value and the generation of its stripe it was computed at
+	private static final class Entry {
+		final Object value;
+		private final Stripe stripe;
+		private final int generation;
+
+		Entry(Object value, Stripe stripe, int generation) {
+			this.value = value;
+			this.stripe = stripe;
+			this.generation = generation;
+		}
+
+		boolean isValid() {
+			return generation == stripe.generation;
+		}
+	}
+
+	/**
+	 * The (qualifier, key, scope contexts) triple a value is searched for.
+	 */
+	static final class Key {
+		private final String qualifier;
+		private final String key;
+		private IScopeContext[] scopes;
+		private final int hashCode;
+
+		Key(String qualifier, String key, IScopeContext[] scopes) {
+			this.qualifier = qualifier;
+			this.key = key;
+			this.scopes = scopes;
+			int hash = qualifier.hashCode() * 31 + (key == null ? 0 : key.hashCode());
+			for (int i = 0; scopes != null && i < scopes.length; i++)
+				hash = hash * 31 + (scopes[i] == null ? 0 : scopes[i].hashCode());
+			this.hashCode = hash;
+		}
+
+		/*
+		 * The caller may reuse its array of scopes so a key must copy it
+		 * before it is stored.
+		 */
+		Key copyScopes() {
+			if (scopes != null)
+				scopes = (IScopeContext[]) scopes.clone();
+			return this;
+		}
+
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			if (hashCode != other.hashCode || !qualifier.equals(other.qualifier))
+				return false;
+			if (key == null ? other.key != null : !key.equals(other.key))
+				return false;
+			if (scopes == null || other.scopes == null)
+				return scopes == other.scopes;
+			if (scopes.length != other.scopes.length)
+				return false;
+			for (int i = 0; i < scopes.length; i++) {
+				if (scopes[i] == null ? other.scopes[i] != null : !scopes[i].equals(other.scopes[i]))
+					return false;
+			}
+			return true;
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
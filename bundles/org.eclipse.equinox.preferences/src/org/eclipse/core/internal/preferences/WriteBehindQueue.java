@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.preferences;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.osgi.service.prefs.BackingStoreException;
+
+/**
+ * Saves the flushed preference nodes in the background when the write-behind
+ * mode is enabled. A node flushed again before it is saved is saved only once,
+ * so the flushes of a node within the delay cost a single write of its file.
+ * <p>
+ * In write-behind mode a flush returns before the node is saved. A sync of the
+ * node saves it before returning.
+ * </p>
+ */
+class WriteBehindQueue implements Runnable {
+
+	static final long DEFAULT_DELAY = 1000;
+
+	// the running queue or null when the write-behind mode is disabled
+	private static WriteBehindQueue queue;
+
+	private final long delay;
+	// the load level nodes waiting to be saved
+	private final Set pending = new LinkedHashSet();
+	private Thread thread;
+	private boolean stopped = false;
+
+	private WriteBehindQueue(long delay) {
+		this.delay = delay;
+	}
+
+	/**
+	 * Enables the write-behind mode.
+	 *
+	 * @param delay the time in milliseconds a flushed node waits before it is saved
+	 */
+	static synchronized void start(long delay) {
+		if (queue != null)
+			return;
+		queue = new WriteBehindQueue(delay);
+		queue.thread = new Thread(queue, "Preferences Write-Behind"); //$NON-NLS-1$
+		queue.thread.setDaemon(true);
+		queue.thread.start();
+	}
+
+	/**
+	 * Disables the write-behind mode. The nodes waiting to be saved are saved
+	 * before this method returns.
+	 */
+	static void stop() {
+		WriteBehindQueue stopping;
+		synchronized (WriteBehindQueue.class) {
+			stopping = queue;
+			queue = null;
+		}
+		if (stopping == null)
+			return;
+		synchronized (stopping) {
+			stopping.stopped = true;
+			stopping.notifyAll();
+		}
+		try {
+			stopping.thread.join();
+		} catch (InterruptedException e) {
+			// ignore
+		}
+		// the thread stops without saving what was flushed after it was told to stop
+		stopping.saveAll();
+	}
+
+	static synchronized boolean isEnabled() {
+		return queue != null;
+	}
+
+	private static synchronized WriteBehindQueue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * Schedules the save of a load level node.
+	 *
+	 * @return false if the write-behind mode is disabled and the node must be
+	 * saved by the caller
+	 */
+	static boolean schedule(EclipsePreferences node) {
+		WriteBehindQueue current = getQueue();
+		if (current == null || !node.canWriteBehind())
+			return false;
+		synchronized (current) {
+			if (current.stopped)
+				return false;
+			if (current.pending.add(node) && current.pending.size() == 1)
+				current.notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * Saves a load level node now if it is written behind, waiting for a save
+	 * of the node which is in progress.
+	 */
+	static void saveNow(EclipsePreferences node) throws BackingStoreException {
+		WriteBehindQueue current = getQueue();
+		if (current == null || !node.canWriteBehind())
+			return;
+		synchronized (current) {
+			current.pending.remove(node);
+		}
+		node.saveWrittenBehind();
+	}
+
+	public void run() {
+		while (true) {
+			EclipsePreferences[] nodes;
+			synchronized (this) {
+				while (pending.isEmpty() && !stopped) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// ignore
+					}
+				}
+				if (stopped)
+					return;
+				// let the next flushes of the nodes join this save
+				if (delay > 0) {
+					try {
+						wait(delay);
+					} catch (InterruptedException e) {
+						// ignore
+					}
+				}
+				if (stopped)
+					return;
+				nodes = (EclipsePreferences[]) pending.toArray(new EclipsePreferences[pending.size()]);
+				pending.clear();
+			}
+			save(nodes);
+		}
+	}
+
+	private void saveAll() {
+		EclipsePreferences[] nodes;
+		synchronized (this) {
+			nodes = (EclipsePreferences[]) pending.toArray(new EclipsePreferences[pending.size()]);
+			pending.clear();
+		}
+		save(nodes);
+	}
+
+	private void save(EclipsePreferences[] nodes) {
+		for (int i = 0; i < nodes.length; i++) {
+			try {
+				nodes[i].saveWrittenBehind();
+			} catch (BackingStoreException e) {
+				// already logged by the node
+			} catch (RuntimeException e) {
+				EclipsePreferences.log(new Status(IStatus.ERROR, PrefsMessages.OWNER_NAME, IStatus.ERROR, PrefsMessages.preferences_saveProblems, e));
+			}
+		}
+	}
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.registry.tests;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class AllTests {
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Test for org.eclipse.equinox.registry.tests"); //$NON-NLS-1$
+		suite.addTestSuite(RegistryEventDispatchTest.class);
+		suite.addTestSuite(RegistryCacheTest.class);
+		suite.addTestSuite(AttributeIndexTest.class);
+		suite.addTestSuite(StringTableTest.class);
+		suite.addTestSuite(RegistryObjectManagerTest.class);
+		suite.addTestSuite(ParallelParseTest.class);
+		return suite;
+	}
+
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.registry.tests;
+
+import java.io.*;
+import junit.framework.TestCase;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.spi.RegistryStrategy;
+
+public class AttributeIndexTest extends TestCase {
+
+	private Object masterToken = new Object();
+	private IExtensionRegistry registry;
+	private File cacheDir;
+
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("registryCache", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		cacheDir.delete();
+		cacheDir.mkdirs();
+		startRegistry();
+		addContribution("test", "<plugin><extension-point id=\"xp\" name=\"XP\"/><extension-point id=\"other\" name=\"Other\"/></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+		addExtension("a", "<builder id=\"one\" kind=\"x\"/><builder id=\"two\" kind=\"y\"/><filter id=\"one\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+		addExtension("b", "<builder id=\"one\" kind=\"z\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	protected void tearDown() throws Exception {
+		if (registry != null)
+			registry.stop(masterToken);
+		File[] files = cacheDir.listFiles();
+		for (int i = 0; i < files.length; i++)
+			files[i].delete();
+		cacheDir.delete();
+	}
+
+	public void testLookup() throws Exception {
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"x", "z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "two"), new String[] {"y"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "kind", "z"), new String[] {"z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+		// a null element name matches the elements of any name
+		IConfigurationElement[] elements = registry.getConfigurationElementsFor("test.xp", null, "id", "one"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(3, elements.length);
+		assertEquals("filter", elements[1].getName()); //$NON-NLS-1$
+
+		assertEquals(0, registry.getConfigurationElementsFor("test.xp", "builder", "id", "three").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertEquals(0, registry.getConfigurationElementsFor("test.xp", "missing", "id", "one").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertEquals(0, registry.getConfigurationElementsFor("test.other", "builder", "id", "one").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertEquals(0, registry.getConfigurationElementsFor("test.unknown", "builder", "id", "one").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertEquals(0, registry.getConfigurationElementsFor("test.xp", "builder", "id", null).length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	public void testIncrementalUpdate() throws Exception {
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"x", "z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+
+		addExtension("c", "<builder id=\"one\" kind=\"w\"/><builder id=\"three\" kind=\"v\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"x", "z", "w"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "three"), new String[] {"v"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+		assertTrue(registry.removeExtension(registry.getExtension("a.e"), masterToken)); //$NON-NLS-1$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"z", "w"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		assertEquals(0, registry.getConfigurationElementsFor("test.xp", "builder", "id", "two").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertEquals(0, registry.getConfigurationElementsFor("test.xp", "filter", "id", "one").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		// removing all the extensions drops the indexes of the extension point
+		assertTrue(registry.removeExtension(registry.getExtension("b.e"), masterToken)); //$NON-NLS-1$
+		assertTrue(registry.removeExtension(registry.getExtension("c.e"), masterToken)); //$NON-NLS-1$
+		assertEquals(0, registry.getConfigurationElementsFor("test.xp", "builder", "id", "one").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		addExtension("d", "<builder id=\"one\" kind=\"u\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"u"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+
+	public void testSavedIndex() throws Exception {
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"x", "z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		restartRegistry();
+		int generation = getGeneration(".table"); //$NON-NLS-1$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"x", "z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "two"), new String[] {"y"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		// the index is read from the cache: building it again would make the registry save its cache
+		restartRegistry();
+		assertEquals("The index was built again", generation, getGeneration(".table")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// the saved index is kept up to date
+		addExtension("c", "<builder id=\"one\" kind=\"w\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(registry.removeExtension(registry.getExtension("a.e"), masterToken)); //$NON-NLS-1$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"z", "w"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		restartRegistry();
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"z", "w"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		assertEquals(0, registry.getConfigurationElementsFor("test.xp", "builder", "id", "two").length); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	public void testUnreadableIndexFile() throws Exception {
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"x", "z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		registry.stop(masterToken);
+		registry = null;
+
+		// the table still matches a file of the same length, the indexes are then built again
+		File indexFile = getFile(".attributeIndexes"); //$NON-NLS-1$
+		byte[] content = new byte[(int) indexFile.length()];
+		content[3] = 1; // one index followed by invalid data
+		content[4] = (byte) 0xFF;
+		content[5] = (byte) 0xFF;
+		writeFile(indexFile, content);
+		startRegistry();
+		assertNotNull("The cache was not used", registry.getExtension("a.e")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"x", "z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "two"), new String[] {"y"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+
+	public void testStaleIndexFile() throws Exception {
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"x", "z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		restartRegistry();
+		File indexFile = getFile(".attributeIndexes"); //$NON-NLS-1$
+		byte[] previous = readFile(indexFile);
+		addExtension("c", "<builder id=\"one\" kind=\"w\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+		registry.stop(masterToken);
+		registry = null;
+
+		// an index file of another save does not match the table, the cache is not used
+		writeFile(getFile(".attributeIndexes"), previous); //$NON-NLS-1$
+		startRegistry();
+		assertNull("The cache was used", registry.getExtension("a.e")); //$NON-NLS-1$ //$NON-NLS-2$
+		addContribution("test", "<plugin><extension-point id=\"xp\" name=\"XP\"/></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+		addExtension("a", "<builder id=\"one\" kind=\"x\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"x"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+
+	public void testMissingIndexFile() throws Exception {
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"x", "z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		registry.stop(masterToken);
+		registry = null;
+
+		assertTrue(getFile(".attributeIndexes").delete()); //$NON-NLS-1$
+		startRegistry();
+		assertNull("The cache was used", registry.getExtension("a.e")); //$NON-NLS-1$ //$NON-NLS-2$
+		addContribution("test", "<plugin><extension-point id=\"xp\" name=\"XP\"/></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+		addExtension("b", "<builder id=\"one\" kind=\"z\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		restartRegistry();
+		assertKinds(registry.getConfigurationElementsFor("test.xp", "builder", "id", "one"), new String[] {"z"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+
+	private void assertKinds(IConfigurationElement[] elements, String[] expected) {
+		String[] kinds = new String[elements.length];
+		for (int i = 0; i < elements.length; i++)
+			kinds[i] = elements[i].getAttribute("kind"); //$NON-NLS-1$
+		assertEquals(java.util.Arrays.asList(expected), java.util.Arrays.asList(kinds));
+	}
+
+	// the storage manager keeps each managed file as the name followed by its generation
+	private int getGeneration(String name) {
+		String[] names = cacheDir.list();
+		int generation = -1;
+		for (int i = 0; i < names.length; i++)
+			if (names[i].startsWith(name + '.'))
+				generation = Math.max(generation, Integer.parseInt(names[i].substring(name.length() + 1)));
+		assertTrue("Missing file " + name, generation != -1); //$NON-NLS-1$
+		return generation;
+	}
+
+	private File getFile(String name) {
+		return new File(cacheDir, name + '.' + getGeneration(name));
+	}
+
+	private byte[] readFile(File file) throws IOException {
+		byte[] content = new byte[(int) file.length()];
+		DataInputStream input = new DataInputStream(new FileInputStream(file));
+		try {
+			input.readFully(content);
+		} finally {
+			input.close();
+		}
+		return content;
+	}
+
+	private void writeFile(File file, byte[] content) throws IOException {
+		OutputStream output = new FileOutputStream(file);
+		try {
+			output.write(content);
+		} finally {
+			output.close();
+		}
+	}
+
+	private void startRegistry() {
+		registry = RegistryFactory.createRegistry(new RegistryStrategy(new File[] {cacheDir}, new boolean[] {false}), masterToken, null);
+	}
+
+	private void restartRegistry() {
+		registry.stop(masterToken);
+		registry = null;
+		startRegistry();
+	}
+
+	private void addExtension(String name, String elements) throws UnsupportedEncodingException {
+		addContribution(name, "<plugin><extension id=\"e\" point=\"test.xp\">" + elements + "</extension></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private void addContribution(String name, String xml) throws UnsupportedEncodingException {
+		IContributor contributor = ContributorFactorySimple.createContributor(name);
+		assertTrue("Could not add " + name, registry.addContribution(new ByteArrayInputStream(xml.getBytes("UTF-8")), contributor, true, name, null, masterToken)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
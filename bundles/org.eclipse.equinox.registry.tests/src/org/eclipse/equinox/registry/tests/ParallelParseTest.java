@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.registry.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.*;
+import junit.framework.TestCase;
+import org.eclipse.core.internal.registry.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.spi.RegistryStrategy;
+
+public class ParallelParseTest extends TestCase {
+
+	private static final int PARSERS = 4;
+	private static final int CONTRIBUTIONS = 40;
+
+	private Object masterToken = new Object();
+	private ExtensionRegistry registry;
+
+	protected void setUp() throws Exception {
+		RegistryProperties.setProperty(IRegistryConstants.PROP_EVENT_THREADS, "0"); //$NON-NLS-1$
+		registry = (ExtensionRegistry) RegistryFactory.createRegistry(new RegistryStrategy(null, null), masterToken, null);
+		IContributor contributor = ContributorFactorySimple.createContributor("test"); //$NON-NLS-1$
+		String xml = "<plugin><extension-point id=\"xp\" name=\"XP\"/></plugin>"; //$NON-NLS-1$
+		assertTrue(registry.addContribution(new ByteArrayInputStream(xml.getBytes("UTF-8")), contributor, false, "test", null, masterToken)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	protected void tearDown() throws Exception {
+		if (registry != null)
+			registry.stop(masterToken);
+	}
+
+	public void testParallelParse() throws Exception {
+		final Contribution[] contributions = new Contribution[CONTRIBUTIONS];
+		final List failures = Collections.synchronizedList(new ArrayList());
+		Thread[] parsers = new Thread[PARSERS];
+		for (int i = 0; i < PARSERS; i++) {
+			final int first = i;
+			parsers[i] = new Thread("Registry Parser " + i) { //$NON-NLS-1$
+				public void run() {
+					try {
+						// the contributions are parsed in the reverse order of their addition
+						for (int j = CONTRIBUTIONS - 1 - first; j >= 0; j -= PARSERS)
+							contributions[j] = parse(j);
+					} catch (Throwable t) {
+						failures.add(t.toString());
+					}
+				}
+			};
+			parsers[i].start();
+		}
+		for (int i = 0; i < PARSERS; i++)
+			parsers[i].join();
+		assertEquals("Parsing failed", Collections.EMPTY_LIST, failures); //$NON-NLS-1$
+
+		// nothing is visible before the contributions are added
+		assertEquals(0, registry.getExtensionPoint("test.xp").getExtensions().length); //$NON-NLS-1$
+		assertNull(registry.getExtensionPoint("shared.xp")); //$NON-NLS-1$
+
+		RegistryEventDispatchTest.RecordingListener listener = new RegistryEventDispatchTest.RecordingListener(false);
+		registry.addRegistryChangeListener(listener);
+		registry.addContributions(contributions, new long[CONTRIBUTIONS], masterToken);
+		listener.waitForEvents(CONTRIBUTIONS);
+		assertEquals("The contributions were not added as a single change", 1, listener.getCalls()); //$NON-NLS-1$
+		assertEquals(CONTRIBUTIONS, listener.getExtensions().size());
+
+		// the extensions are added in the order of the contributions
+		IExtension[] extensions = registry.getExtensionPoint("test.xp").getExtensions(); //$NON-NLS-1$
+		assertEquals(CONTRIBUTIONS, extensions.length);
+		for (int i = 0; i < CONTRIBUTIONS; i++) {
+			assertEquals("c" + i + ".e", extensions[i].getUniqueIdentifier()); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals("v" + i, extensions[i].getConfigurationElements()[0].getAttribute("value")); //$NON-NLS-1$ //$NON-NLS-2$
+			assertNotNull("Missing extension point of c" + i, registry.getExtensionPoint("c" + i + ".own")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+
+		// the first contribution declaring an extension point wins, although it was parsed last
+		assertEquals("c5", registry.getExtensionPoint("shared.xp").getLabel()); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = 5; i < CONTRIBUTIONS; i += 10)
+			assertEquals("Duplicate extension point kept for c" + i, i == 5 ? 2 : 1, registry.getExtensionPoints(ContributorFactorySimple.createContributor("c" + i)).length); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testParseFailure() throws Exception {
+		Contribution[] contributions = new Contribution[3];
+		contributions[0] = parse(0);
+		contributions[1] = registry.parseContribution(new ByteArrayInputStream("<plugin><extension".getBytes("UTF-8")), ContributorFactorySimple.createContributor("broken"), false, "broken", null, masterToken); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		assertNull("A broken contribution was parsed", contributions[1]); //$NON-NLS-1$
+		contributions[2] = parse(2);
+
+		// a contribution which could not be parsed does not prevent the others from being added
+		registry.addContributions(contributions, new long[contributions.length], masterToken);
+		IExtension[] extensions = registry.getExtensionPoint("test.xp").getExtensions(); //$NON-NLS-1$
+		assertEquals(2, extensions.length);
+		assertEquals("c0.e", extensions[0].getUniqueIdentifier()); //$NON-NLS-1$
+		assertEquals("c2.e", extensions[1].getUniqueIdentifier()); //$NON-NLS-1$
+	}
+
+	// Every tenth contribution also declares the same extension point, named after the contribution
+	Contribution parse(int i) throws UnsupportedEncodingException {
+		String name = "c" + i; //$NON-NLS-1$
+		StringBuffer xml = new StringBuffer("<?xml version=\"1.0\"?><?eclipse version=\"3.2\"?><plugin>"); //$NON-NLS-1$
+		xml.append("<extension-point id=\"own\" name=\"Own\"/>"); //$NON-NLS-1$
+		if (i % 10 == 5)
+			xml.append("<extension-point id=\"shared.xp\" name=\"" + name + "\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+		xml.append("<extension id=\"e\" point=\"test.xp\"><element value=\"v" + i + "\"/></extension></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+		IContributor contributor = ContributorFactorySimple.createContributor(name);
+		Contribution contribution = registry.parseContribution(new ByteArrayInputStream(xml.toString().getBytes("UTF-8")), contributor, false, name, null, masterToken); //$NON-NLS-1$
+		assertNotNull("Could not parse " + name, contribution); //$NON-NLS-1$
+		return contribution;
+	}
+}
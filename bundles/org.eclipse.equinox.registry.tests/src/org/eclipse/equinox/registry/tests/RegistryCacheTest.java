@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.registry.tests;
+
+import java.io.*;
+import java.util.*;
+import junit.framework.TestCase;
+import org.eclipse.core.internal.registry.IRegistryConstants;
+import org.eclipse.core.internal.registry.RegistryProperties;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.spi.RegistryStrategy;
+
+public class RegistryCacheTest extends TestCase {
+
+	private static final int POINTS = 3;
+	private static final int LOADERS = 4;
+	private static final int LOADED_EXTENSIONS = 500;
+
+	private Object masterToken = new Object();
+	private IExtensionRegistry registry;
+	private File cacheDir;
+
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("registryCache", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		cacheDir.delete();
+		cacheDir.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		if (registry != null)
+			registry.stop(masterToken);
+		File[] files = cacheDir.listFiles();
+		for (int i = 0; i < files.length; i++)
+			files[i].delete();
+		cacheDir.delete();
+		RegistryProperties.setProperty(IRegistryConstants.PROP_MAPPED_CACHE, "false"); //$NON-NLS-1$
+	}
+
+	public void testSegment() throws Exception {
+		startRegistry();
+		for (int i = 0; i < POINTS; i++)
+			addContribution("p" + i, "<plugin><extension-point id=\"xp\" name=\"XP\"/><extension point=\"p" + i + ".xp\"><element value=\"p" + i + "\"/></extension></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		restartRegistry();
+		assertEquals(1, getSegmentCount());
+		assertValues("p0.xp", new String[] {"p0"}); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// only the changed extension point tree is written into a new segment
+		long mainLength = getDataLength(".mainData"); //$NON-NLS-1$
+		addExtension("c0", "p0.xp"); //$NON-NLS-1$ //$NON-NLS-2$
+		restartRegistry();
+		assertEquals(2, getSegmentCount());
+		assertEquals("The first segment was written again", mainLength, getDataLength(".mainData")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("The new segment holds the whole registry", getDataLength(".mainData1") < mainLength); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// the trees are read from both segments
+		assertValues("p0.xp", new String[] {"p0", "c0"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertValues("p1.xp", new String[] {"p1"}); //$NON-NLS-1$ //$NON-NLS-2$
+		addExtension("c1", "p1.xp"); //$NON-NLS-1$ //$NON-NLS-2$
+		restartRegistry();
+		assertEquals(3, getSegmentCount());
+		assertValues("p0.xp", new String[] {"p0", "c0"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertValues("p1.xp", new String[] {"p1", "c1"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertValues("p2.xp", new String[] {"p2"}); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testMappedSegment() throws Exception {
+		RegistryProperties.setProperty(IRegistryConstants.PROP_MAPPED_CACHE, "true"); //$NON-NLS-1$
+		testSegment();
+	}
+
+	public void testCompaction() throws Exception {
+		startRegistry();
+		for (int i = 0; i < POINTS; i++)
+			addContribution("p" + i, "<plugin><extension-point id=\"xp\" name=\"XP\"/></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		restartRegistry();
+
+		List expected = new ArrayList();
+		int segments = 1;
+		int saves = 0;
+		do {
+			String name = "c" + saves; //$NON-NLS-1$
+			addExtension(name, "p0.xp"); //$NON-NLS-1$
+			expected.add(name);
+			restartRegistry();
+			saves++;
+			int count = getSegmentCount();
+			if (count != 1)
+				assertEquals("Wrong number of segments", segments + 1, count); //$NON-NLS-1$
+			segments = count;
+			assertValues("p0.xp", (String[]) expected.toArray(new String[expected.size()])); //$NON-NLS-1$
+		} while (segments > 1 && saves < 20);
+		assertEquals("The segments were not compacted", 1, segments); //$NON-NLS-1$
+		assertTrue("The segments were compacted too early: " + saves, saves > 2); //$NON-NLS-1$
+	}
+
+	public void testConcurrentLoads() throws Exception {
+		startRegistry();
+		addContribution("p", "<plugin><extension-point id=\"xp\" name=\"XP\"/></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+		StringBuffer xml = new StringBuffer("<plugin>"); //$NON-NLS-1$
+		for (int i = 0; i < LOADED_EXTENSIONS; i++)
+			xml.append("<extension point=\"p.xp\" id=\"e" + i + "\"><element value=\"v" + i + "\" other=\"o" + i + "\"><child>c" + i + "</child></element></extension>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		addContribution("c", xml.append("</plugin>").toString()); //$NON-NLS-1$ //$NON-NLS-2$
+		restartRegistry();
+
+		// the elements are loaded from the cache files by several threads at once; the extensions
+		// are not got through their extension point, which would load them with all their elements
+		final IExtension[] extensions = registry.getExtensions(ContributorFactorySimple.createContributor("c")); //$NON-NLS-1$
+		assertEquals(LOADED_EXTENSIONS, extensions.length);
+		final Object gate = new Object();
+		final boolean[] open = new boolean[1];
+		final List failures = Collections.synchronizedList(new ArrayList());
+		Thread[] loaders = new Thread[LOADERS];
+		for (int i = 0; i < LOADERS; i++) {
+			final int first = i * LOADED_EXTENSIONS / LOADERS;
+			loaders[i] = new Thread("Registry Loader " + i) { //$NON-NLS-1$
+				public void run() {
+					try {
+						synchronized (gate) {
+							while (!open[0])
+								gate.wait();
+						}
+						for (int j = 0; j < LOADED_EXTENSIONS; j++) {
+							IExtension extension = extensions[(first + j) % LOADED_EXTENSIONS];
+							String id = extension.getSimpleIdentifier().substring(1);
+							IConfigurationElement element = extension.getConfigurationElements()[0];
+							if (!("v" + id).equals(element.getAttribute("value")) || !("o" + id).equals(element.getAttribute("other")) || !("c" + id).equals(element.getChildren()[0].getValue())) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+								failures.add("Wrong element read for " + extension.getUniqueIdentifier()); //$NON-NLS-1$
+						}
+					} catch (Throwable t) {
+						failures.add(t.toString());
+					}
+				}
+			};
+			loaders[i].start();
+		}
+		synchronized (gate) {
+			open[0] = true;
+			gate.notifyAll();
+		}
+		for (int i = 0; i < LOADERS; i++)
+			loaders[i].join();
+		assertEquals("Loading failed", Collections.EMPTY_LIST, failures); //$NON-NLS-1$
+	}
+
+	public void testMappedConcurrentLoads() throws Exception {
+		RegistryProperties.setProperty(IRegistryConstants.PROP_MAPPED_CACHE, "true"); //$NON-NLS-1$
+		testConcurrentLoads();
+	}
+
+	private void assertValues(String point, String[] expected) {
+		IConfigurationElement[] elements = registry.getConfigurationElementsFor(point);
+		String[] values = new String[elements.length];
+		for (int i = 0; i < elements.length; i++)
+			values[i] = elements[i].getAttribute("value"); //$NON-NLS-1$
+		Set expectedValues = new HashSet(Arrays.asList(expected));
+		assertEquals("Wrong elements of " + point, expectedValues, new HashSet(Arrays.asList(values))); //$NON-NLS-1$
+		assertEquals("Wrong elements of " + point, expected.length, values.length); //$NON-NLS-1$
+	}
+
+	// the storage manager keeps each managed file as the name followed by its generation
+	private int getSegmentCount() {
+		Set segments = new HashSet();
+		String[] names = cacheDir.list();
+		for (int i = 0; i < names.length; i++)
+			if (names[i].startsWith(".mainData")) //$NON-NLS-1$
+				segments.add(names[i].substring(0, names[i].lastIndexOf('.')));
+		return segments.size();
+	}
+
+	private long getDataLength(String segment) {
+		String[] names = cacheDir.list();
+		int generation = -1;
+		for (int i = 0; i < names.length; i++)
+			if (names[i].startsWith(segment + '.'))
+				generation = Math.max(generation, Integer.parseInt(names[i].substring(segment.length() + 1)));
+		assertTrue("Missing segment " + segment, generation != -1); //$NON-NLS-1$
+		return new File(cacheDir, segment + '.' + generation).length();
+	}
+
+	private void startRegistry() {
+		registry = RegistryFactory.createRegistry(new RegistryStrategy(new File[] {cacheDir}, new boolean[] {false}), masterToken, null);
+	}
+
+	private void restartRegistry() {
+		registry.stop(masterToken);
+		registry = null;
+		startRegistry();
+	}
+
+	private void addExtension(String name, String point) throws UnsupportedEncodingException {
+		addContribution(name, "<plugin><extension point=\"" + point + "\"><element value=\"" + name + "\"/></extension></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	private void addContribution(String name, String xml) throws UnsupportedEncodingException {
+		IContributor contributor = ContributorFactorySimple.createContributor(name);
+		assertTrue("Could not add " + name, registry.addContribution(new ByteArrayInputStream(xml.getBytes("UTF-8")), contributor, true, name, null, masterToken)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
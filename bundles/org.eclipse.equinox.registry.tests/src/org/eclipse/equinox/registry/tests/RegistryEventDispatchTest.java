@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.registry.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.*;
+import junit.framework.TestCase;
+import org.eclipse.core.internal.registry.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.spi.RegistryStrategy;
+
+public class RegistryEventDispatchTest extends TestCase {
+
+	private static final int EVENTS = 5;
+	private static final long TIMEOUT = 5000;
+
+	private Object masterToken = new Object();
+	private IExtensionRegistry registry;
+
+	protected void tearDown() throws Exception {
+		if (registry != null)
+			registry.stop(masterToken);
+		RegistryProperties.setProperty(IRegistryConstants.PROP_EVENT_THREADS, "0"); //$NON-NLS-1$
+	}
+
+	public void testListenerOrder() throws Exception {
+		createRegistry(new RegistryStrategy(null, null), "2"); //$NON-NLS-1$
+		RecordingListener blocked = new RecordingListener(true);
+		RecordingListener fast = new RecordingListener(false);
+		registry.addRegistryChangeListener(blocked);
+		registry.addRegistryChangeListener(fast);
+
+		addExtension(0);
+		blocked.waitForEvents(1);
+		for (int i = 1; i < EVENTS; i++)
+			addExtension(i);
+
+		// the blocked listener does not delay the other one
+		fast.waitForEvents(EVENTS);
+		assertEquals("Wrong number of events received by the blocked listener", 1, blocked.getCalls()); //$NON-NLS-1$
+
+		blocked.release();
+		blocked.waitForEvents(EVENTS);
+		assertEquals("Events were combined", EVENTS, blocked.getCalls()); //$NON-NLS-1$
+		assertEquals("Events were combined", EVENTS, fast.getCalls()); //$NON-NLS-1$
+		assertEquals("Wrong event order", expectedExtensions(), blocked.getExtensions()); //$NON-NLS-1$
+		assertEquals("Wrong event order", expectedExtensions(), fast.getExtensions()); //$NON-NLS-1$
+	}
+
+	public void testCoalescingListener() throws Exception {
+		createRegistry(new RegistryStrategy(null, null), "2"); //$NON-NLS-1$
+		RecordingListener blocked = new CoalescingListener(true);
+		RecordingListener fast = new RecordingListener(false);
+		registry.addRegistryChangeListener(blocked);
+		registry.addRegistryChangeListener(fast);
+
+		addExtension(0);
+		blocked.waitForEvents(1);
+		for (int i = 1; i < EVENTS; i++)
+			addExtension(i);
+
+		// all the events are queued for the blocked listener once the other one received them
+		fast.waitForEvents(EVENTS);
+		blocked.release();
+		blocked.waitForEvents(EVENTS);
+		assertEquals("The queued events were not combined", 2, blocked.getCalls()); //$NON-NLS-1$
+		assertEquals("Wrong event order", expectedExtensions(), blocked.getExtensions()); //$NON-NLS-1$
+	}
+
+	public void testIdleThread() throws Exception {
+		createRegistry(new RegistryStrategy(null, null), "2"); //$NON-NLS-1$
+		RecordingListener fast = new RecordingListener(false);
+		registry.addRegistryChangeListener(fast);
+		addExtension(0);
+		fast.waitForEvents(1);
+		// let the thread become idle
+		Thread.sleep(100);
+
+		// the idle thread takes the queue of the blocked listener, which comes first
+		registry.removeRegistryChangeListener(fast);
+		RecordingListener blocked = new RecordingListener(true);
+		registry.addRegistryChangeListener(blocked);
+		registry.addRegistryChangeListener(fast);
+		addExtension(1);
+		blocked.waitForEvents(1);
+		fast.waitForEvents(2);
+		assertTrue("The other listener was held back by the blocked one", blocked.isWaiting()); //$NON-NLS-1$
+		blocked.release();
+	}
+
+	public void testListenerStatistics() throws Exception {
+		createRegistry(new RegistryStrategy(null, null), "2"); //$NON-NLS-1$
+		assertEquals(0, ((ExtensionRegistry) registry).getEventListenerQueues().length);
+		RecordingListener blocked = new CoalescingListener(true);
+		RecordingListener failing = new RecordingListener(false) {
+			public void registryChanged(IRegistryChangeEvent event) {
+				super.registryChanged(event);
+				throw new RuntimeException("Expected failure"); //$NON-NLS-1$
+			}
+		};
+		registry.addRegistryChangeListener(blocked);
+		registry.addRegistryChangeListener(failing, "test"); //$NON-NLS-1$
+
+		addExtension(0);
+		blocked.waitForEvents(1);
+		for (int i = 1; i < EVENTS; i++)
+			addExtension(i);
+		// the events are queued for all the listeners at once
+		failing.waitForEvents(EVENTS);
+		EventListenerQueue blockedQueue = getQueue(blocked);
+		assertNull(blockedQueue.getFilter());
+		assertEquals("Wrong number of pending events", EVENTS - 1, blockedQueue.getPendingEvents()); //$NON-NLS-1$
+		assertEquals(0, blockedQueue.getDeliveredEvents());
+		Thread.sleep(100);
+		blocked.release();
+		blocked.waitForEvents(EVENTS);
+
+		waitForStatistics(blockedQueue, EVENTS);
+		assertEquals(0, blockedQueue.getPendingEvents());
+		assertEquals("The queued events were not combined", 2, blockedQueue.getDeliveries()); //$NON-NLS-1$
+		assertEquals(0, blockedQueue.getFailures());
+		assertTrue("Wrong maximum latency: " + blockedQueue.getMaxLatency(), blockedQueue.getMaxLatency() >= 100); //$NON-NLS-1$
+		assertTrue("Wrong average latency: " + blockedQueue.getAverageLatency(), blockedQueue.getAverageLatency() <= blockedQueue.getMaxLatency()); //$NON-NLS-1$
+
+		EventListenerQueue failingQueue = getQueue(failing);
+		assertEquals("test", failingQueue.getFilter()); //$NON-NLS-1$
+		waitForStatistics(failingQueue, EVENTS);
+		assertEquals(EVENTS, failingQueue.getDeliveries());
+		assertEquals("Wrong number of failures", EVENTS, failingQueue.getFailures()); //$NON-NLS-1$
+	}
+
+	public void testSynchronousByDefault() throws Exception {
+		final IStatus[] result = new IStatus[1];
+		final Thread[] notifier = new Thread[2];
+		createRegistry(new RegistryStrategy(null, null) {
+			public void scheduleChangeEvent(Object[] listeners, Map deltas, Object extensionRegistry) {
+				notifier[0] = Thread.currentThread();
+				result[0] = processChangeEvent(listeners, deltas, extensionRegistry);
+			}
+		}, null);
+		registry.addRegistryChangeListener(new IRegistryChangeListener() {
+			public void registryChanged(IRegistryChangeEvent event) {
+				notifier[1] = Thread.currentThread();
+				throw new RuntimeException("Expected failure"); //$NON-NLS-1$
+			}
+		});
+
+		addExtension(0);
+
+		assertNotNull("The event was not processed", result[0]); //$NON-NLS-1$
+		assertSame("The listener was not notified on the processing thread", notifier[0], notifier[1]); //$NON-NLS-1$
+		assertEquals("The listener failure was not reported", IStatus.ERROR, result[0].getSeverity()); //$NON-NLS-1$
+	}
+
+	private EventListenerQueue getQueue(Object listener) {
+		EventListenerQueue[] queues = ((ExtensionRegistry) registry).getEventListenerQueues();
+		for (int i = 0; i < queues.length; i++)
+			if (queues[i].getListener() == listener)
+				return queues[i];
+		fail("No queue for the listener"); //$NON-NLS-1$
+		return null;
+	}
+
+	// the statistics are updated after the listener returns
+	private void waitForStatistics(EventListenerQueue queue, int count) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (queue.getDeliveredEvents() < count && System.currentTimeMillis() < end)
+			Thread.sleep(10);
+		assertEquals("Wrong number of delivered events", count, queue.getDeliveredEvents()); //$NON-NLS-1$
+	}
+
+	private void createRegistry(RegistryStrategy strategy, String eventThreads) throws UnsupportedEncodingException {
+		RegistryProperties.setProperty(IRegistryConstants.PROP_EVENT_THREADS, eventThreads == null ? "0" : eventThreads); //$NON-NLS-1$
+		registry = RegistryFactory.createRegistry(strategy, masterToken, null);
+		addContribution("test", "<plugin><extension-point id=\"xp\" name=\"XP\"/></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private void addExtension(int i) throws UnsupportedEncodingException {
+		addContribution("c" + i, "<plugin><extension id=\"e\" point=\"test.xp\"/></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private void addContribution(String name, String xml) throws UnsupportedEncodingException {
+		IContributor contributor = ContributorFactorySimple.createContributor(name);
+		assertTrue("Could not add " + name, registry.addContribution(new ByteArrayInputStream(xml.getBytes("UTF-8")), contributor, false, name, null, masterToken)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private List expectedExtensions() {
+		List expected = new ArrayList();
+		for (int i = 0; i < EVENTS; i++)
+			expected.add("c" + i + ".e"); //$NON-NLS-1$ //$NON-NLS-2$
+		return expected;
+	}
+
+	static class RecordingListener implements IRegistryChangeListener {
+		private final List extensions = new ArrayList();
+		private int calls = 0;
+		private boolean blocked;
+		private boolean waiting = false;
+
+		RecordingListener(boolean blocked) {
+			this.blocked = blocked;
+		}
+
+		public void registryChanged(IRegistryChangeEvent event) {
+			IExtensionDelta[] deltas = event.getExtensionDeltas();
+			synchronized (this) {
+				calls++;
+				for (int i = 0; i < deltas.length; i++)
+					extensions.add(deltas[i].getExtension().getUniqueIdentifier());
+				notifyAll();
+				long end = System.currentTimeMillis() + TIMEOUT;
+				waiting = blocked;
+				while (blocked && System.currentTimeMillis() < end) {
+					try {
+						wait(Math.max(end - System.currentTimeMillis(), 1));
+					} catch (InterruptedException e) {
+						// ignore
+					}
+				}
+				waiting = false;
+			}
+		}
+
+		synchronized void release() {
+			blocked = false;
+			notifyAll();
+		}
+
+		synchronized void waitForEvents(int count) throws InterruptedException {
+			long end = System.currentTimeMillis() + TIMEOUT;
+			while (extensions.size() < count && System.currentTimeMillis() < end)
+				wait(Math.max(end - System.currentTimeMillis(), 1));
+			assertEquals("Wrong number of events received", count, extensions.size()); //$NON-NLS-1$
+		}
+
+		synchronized boolean isWaiting() {
+			return waiting;
+		}
+
+		synchronized int getCalls() {
+			return calls;
+		}
+
+		synchronized List getExtensions() {
+			return new ArrayList(extensions);
+		}
+	}
+
+	static class CoalescingListener extends RecordingListener implements ICoalescingRegistryChangeListener {
+		CoalescingListener(boolean blocked) {
+			super(blocked);
+		}
+	}
+}
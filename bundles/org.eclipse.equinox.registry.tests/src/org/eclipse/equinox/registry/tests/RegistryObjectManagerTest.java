@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.registry.tests;
+
+import java.io.*;
+import java.util.*;
+import junit.framework.TestCase;
+import org.eclipse.core.internal.registry.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.spi.RegistryStrategy;
+
+public class RegistryObjectManagerTest extends TestCase {
+
+	private static final int READERS = 4;
+	private static final int EXTENSIONS = 100;
+
+	private Object masterToken = new Object();
+	private IExtensionRegistry registry;
+	private File cacheDir;
+	private IExtension[] extensions;
+	private int[] ids;
+
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("registryCache", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		cacheDir.delete();
+		cacheDir.mkdirs();
+		startRegistry();
+		addContribution("p", "<plugin><extension-point id=\"xp\" name=\"XP\"/></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = 0; i < EXTENSIONS; i++)
+			addContribution("c" + i, "<plugin><extension point=\"p.xp\" id=\"e\"><element value=\"v" + i + "\"/></extension></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		// the configuration elements are loaded from the cache when they are first used; the extensions
+		// are not got through their extension point, which would load them with all their elements
+		registry.stop(masterToken);
+		startRegistry();
+		extensions = new IExtension[EXTENSIONS];
+		ids = new int[EXTENSIONS];
+		for (int i = 0; i < EXTENSIONS; i++) {
+			extensions[i] = registry.getExtensions(ContributorFactorySimple.createContributor("c" + i))[0]; //$NON-NLS-1$
+			ids[i] = ((Handle) extensions[i].getConfigurationElements()[0]).getId();
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		if (registry != null)
+			registry.stop(masterToken);
+		File[] files = cacheDir.listFiles();
+		for (int i = 0; i < files.length; i++)
+			files[i].delete();
+		cacheDir.delete();
+	}
+
+	public void testConcurrentGetObject() throws Exception {
+		final RegistryObjectManager objectManager = ((ExtensionRegistry) registry).getObjectManager();
+		final Object[][] results = new Object[READERS][EXTENSIONS];
+		final Object gate = new Object();
+		final boolean[] open = new boolean[1];
+		final List failures = Collections.synchronizedList(new ArrayList());
+		Thread[] readers = new Thread[READERS];
+		for (int i = 0; i < READERS; i++) {
+			final int reader = i;
+			readers[i] = new Thread("Registry Reader " + i) { //$NON-NLS-1$
+				public void run() {
+					try {
+						synchronized (gate) {
+							while (!open[0])
+								gate.wait();
+						}
+						// the readers load the same elements in the same order
+						for (int j = 0; j < EXTENSIONS; j++)
+							results[reader][j] = objectManager.getObject(ids[j], RegistryObjectManager.CONFIGURATION_ELEMENT);
+					} catch (Throwable t) {
+						failures.add(t.toString());
+					}
+				}
+			};
+			readers[i].start();
+		}
+		synchronized (gate) {
+			open[0] = true;
+			gate.notifyAll();
+		}
+		for (int i = 0; i < READERS; i++)
+			readers[i].join();
+		assertEquals("Reading failed", Collections.EMPTY_LIST, failures); //$NON-NLS-1$
+
+		// an object loaded by several readers at once is published only once
+		for (int i = 0; i < EXTENSIONS; i++) {
+			Object loaded = objectManager.getObject(ids[i], RegistryObjectManager.CONFIGURATION_ELEMENT);
+			assertEquals("v" + i, ((ConfigurationElement) loaded).getAttribute("value")); //$NON-NLS-1$ //$NON-NLS-2$
+			for (int j = 0; j < READERS; j++)
+				assertSame("Reader " + j + " got another instance of element " + i, loaded, results[j][i]); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	public void testRemoveWhileReading() throws Exception {
+		final RegistryObjectManager objectManager = ((ExtensionRegistry) registry).getObjectManager();
+		final boolean[] stop = new boolean[1];
+		final List failures = Collections.synchronizedList(new ArrayList());
+		Thread[] readers = new Thread[READERS];
+		for (int i = 0; i < READERS; i++) {
+			readers[i] = new Thread("Registry Reader " + i) { //$NON-NLS-1$
+				public void run() {
+					try {
+						while (true) {
+							synchronized (stop) {
+								if (stop[0])
+									return;
+							}
+							for (int j = 0; j < EXTENSIONS; j++) {
+								try {
+									ConfigurationElement element = (ConfigurationElement) objectManager.getObject(ids[j], RegistryObjectManager.CONFIGURATION_ELEMENT);
+									if (!("v" + j).equals(element.getAttribute("value"))) //$NON-NLS-1$ //$NON-NLS-2$
+										failures.add("Wrong element read for c" + j); //$NON-NLS-1$
+								} catch (InvalidRegistryObjectException e) {
+									// the element has been removed
+								}
+							}
+						}
+					} catch (Throwable t) {
+						failures.add(t.toString());
+					}
+				}
+			};
+			readers[i].start();
+		}
+
+		// the even extensions are removed while the readers load the elements
+		for (int i = 0; i < EXTENSIONS; i += 2)
+			assertTrue(registry.removeExtension(extensions[i], masterToken));
+		synchronized (stop) {
+			stop[0] = true;
+		}
+		for (int i = 0; i < READERS; i++)
+			readers[i].join();
+		assertEquals("Reading failed", Collections.EMPTY_LIST, failures); //$NON-NLS-1$
+
+		// a removed element is never loaded again from the cache
+		for (int i = 0; i < EXTENSIONS; i++) {
+			try {
+				ConfigurationElement element = (ConfigurationElement) objectManager.getObject(ids[i], RegistryObjectManager.CONFIGURATION_ELEMENT);
+				assertTrue("Removed element c" + i + " was loaded", i % 2 == 1); //$NON-NLS-1$ //$NON-NLS-2$
+				assertEquals("v" + i, element.getAttribute("value")); //$NON-NLS-1$ //$NON-NLS-2$
+			} catch (InvalidRegistryObjectException e) {
+				assertTrue("Element c" + i + " is missing", i % 2 == 0); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		assertEquals(EXTENSIONS / 2, registry.getConfigurationElementsFor("p.xp").length); //$NON-NLS-1$
+	}
+
+	private void startRegistry() {
+		registry = RegistryFactory.createRegistry(new RegistryStrategy(new File[] {cacheDir}, new boolean[] {false}), masterToken, null);
+	}
+
+	private void addContribution(String name, String xml) throws UnsupportedEncodingException {
+		IContributor contributor = ContributorFactorySimple.createContributor(name);
+		assertTrue("Could not add " + name, registry.addContribution(new ByteArrayInputStream(xml.getBytes("UTF-8")), contributor, true, name, null, masterToken)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.registry.tests;
+
+import java.io.*;
+import junit.framework.TestCase;
+import org.eclipse.core.internal.registry.StringTable;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.spi.RegistryStrategy;
+
+public class StringTableTest extends TestCase {
+
+	private Object masterToken = new Object();
+	private IExtensionRegistry registry;
+	private File cacheDir;
+
+	protected void setUp() throws Exception {
+		cacheDir = File.createTempFile("stringTable", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		cacheDir.delete();
+		cacheDir.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		if (registry != null)
+			registry.stop(masterToken);
+		File[] files = cacheDir.listFiles();
+		for (int i = 0; i < files.length; i++)
+			files[i].delete();
+		cacheDir.delete();
+	}
+
+	public void testIds() throws IOException {
+		StringTable table = new StringTable();
+		assertEquals(0, table.add("a")); //$NON-NLS-1$
+		assertEquals(1, table.add("b")); //$NON-NLS-1$
+		assertEquals(0, table.add(new String("a"))); //$NON-NLS-1$
+		assertEquals(2, table.size());
+		assertNull(table.get(table.add(null)));
+		assertEquals("b", table.get(1)); //$NON-NLS-1$
+		try {
+			table.get(2);
+			fail("An id out of the table should be rejected"); //$NON-NLS-1$
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testCopy() throws IOException {
+		StringTable table = new StringTable();
+		table.add("a"); //$NON-NLS-1$
+		StringTable copy = table.copy();
+		// the copy keeps the ids and grows on its own
+		assertEquals(0, copy.add("a")); //$NON-NLS-1$
+		assertEquals(1, copy.add("b")); //$NON-NLS-1$
+		assertSame(table.get(0), copy.get(0));
+		assertEquals(1, table.size());
+		assertEquals(1, table.add("c")); //$NON-NLS-1$
+		assertEquals("b", copy.get(1)); //$NON-NLS-1$
+	}
+
+	public void testLoad() throws IOException {
+		StringTable table = new StringTable();
+		for (int i = 0; i < 1000; i++)
+			table.add("string" + i); //$NON-NLS-1$
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		table.save(out);
+		out.close();
+
+		StringTable loaded = load(bytes.toByteArray());
+		assertEquals(1000, loaded.size());
+		for (int i = 0; i < 1000; i++)
+			assertEquals("string" + i, loaded.get(i)); //$NON-NLS-1$
+		assertEquals(500, loaded.add("string500")); //$NON-NLS-1$
+		assertEquals(1000, loaded.add("new")); //$NON-NLS-1$
+
+		// a table loaded again holds equal strings, which are new instances
+		StringTable reloaded = load(bytes.toByteArray());
+		assertEquals(loaded.get(10), reloaded.get(10));
+		assertNotSame(loaded.get(10), reloaded.get(10));
+	}
+
+	public void testSharedInstances() throws UnsupportedEncodingException {
+		startRegistry();
+		addContribution("a", "<plugin><extension-point id=\"xp\" name=\"XP\"/><extension point=\"a.xp\"><element value=\"shared\"/></extension></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+		addContribution("b", "<plugin><extension point=\"a.xp\"><element value=\"shared\"/></extension></plugin>"); //$NON-NLS-1$ //$NON-NLS-2$
+		registry.stop(masterToken);
+		startRegistry();
+
+		// the elements read from the cache share the instance of the string table
+		IConfigurationElement[] elements = registry.getConfigurationElementsFor("a.xp"); //$NON-NLS-1$
+		assertEquals(2, elements.length);
+		assertEquals("shared", elements[0].getAttribute("value")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertSame(elements[0].getAttribute("value"), elements[1].getAttribute("value")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertSame(elements[0].getName(), elements[1].getName());
+	}
+
+	private StringTable load(byte[] bytes) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return StringTable.load(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private void startRegistry() {
+		registry = RegistryFactory.createRegistry(new RegistryStrategy(new File[] {cacheDir}, new boolean[] {false}), masterToken, null);
+	}
+
+	private void addContribution(String name, String xml) throws UnsupportedEncodingException {
+		IContributor contributor = ContributorFactorySimple.createContributor(name);
+		assertTrue("Could not add " + name, registry.addContribution(new ByteArrayInputStream(xml.getBytes("UTF-8")), contributor, true, name, null, masterToken)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
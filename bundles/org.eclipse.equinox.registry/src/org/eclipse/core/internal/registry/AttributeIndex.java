@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.registry;
+
+import java.util.*;
+
+/**
+ * Index of the top level configuration elements contributed to an extension point
+ * by the value of one of their attributes. Only the elements with the given name
+ * are indexed, or all the elements if the name is null. For each value the ids of
+ * the elements are kept in the order of the extensions of the extension point.
+ * <p>
+ * The index is not thread safe; it is protected by the lock of the object manager.
+ * </p>
+ */
+public class AttributeIndex {
+
+	private final String extensionPoint;
+	private final String elementName;
+	private final String attributeName;
+	// Map key: attribute value, value: int[] of configuration element ids
+	private final HashMap values;
+
+	public AttributeIndex(String extensionPoint, String elementName, String attributeName) {
+		this(extensionPoint, elementName, attributeName, new HashMap());
+	}
+
+	AttributeIndex(String extensionPoint, String elementName, String attributeName, HashMap values) {
+		this.extensionPoint = extensionPoint;
+		this.elementName = elementName;
+		this.attributeName = attributeName;
+		this.values = values;
+	}
+
+	/**
+	 * Returns the key identifying the index among the indexes of its extension point.
+	 */
+	static String getKey(String elementName, String attributeName) {
+		// element names can not contain '/' so the key is not ambiguous
+		return (elementName == null ? RegistryProperties.empty : elementName) + '/' + attributeName;
+	}
+
+	String getKey() {
+		return getKey(elementName, attributeName);
+	}
+
+	String getExtensionPoint() {
+		return extensionPoint;
+	}
+
+	String getElementName() {
+		return elementName;
+	}
+
+	String getAttributeName() {
+		return attributeName;
+	}
+
+	Map getValues() {
+		return values;
+	}
+
+	/**
+	 * Returns whether the element is covered by this index.
+	 */
+	boolean accepts(ConfigurationElement element) {
+		return elementName == null || elementName.equals(element.getName());
+	}
+
+	/**
+	 * Adds the element if it is covered by this index and has the indexed attribute.
+	 */
+	void add(ConfigurationElement element) {
+		if (!accepts(element))
+			return;
+		String value = element.getAttributeAsIs(attributeName);
+		if (value == null)
+			return;
+		int[] existing = (int[]) values.get(value);
+		if (existing == null) {
+			values.put(value, new int[] {element.getObjectId()});
+			return;
+		}
+		int[] result = new int[existing.length + 1];
+		System.arraycopy(existing, 0, result, 0, existing.length);
+		result[existing.length] = element.getObjectId();
+		values.put(value, result);
+	}
+
+	/**
+	 * Removes the given elements from the index.
+	 *
+	 * @param elements set of the Integer ids of the elements to remove
+	 */
+	void remove(Set elements) {
+		for (Iterator iter = values.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry entry = (Map.Entry) iter.next();
+			int[] existing = (int[]) entry.getValue();
+			int size = 0;
+			int[] result = new int[existing.length];
+			for (int i = 0; i < existing.length; i++)
+				if (!elements.contains(new Integer(existing[i])))
+					result[size++] = existing[i];
+			if (size == existing.length)
+				continue;
+			if (size == 0) {
+				iter.remove();
+				continue;
+			}
+			int[] trimmed = new int[size];
+			System.arraycopy(result, 0, trimmed, 0, size);
+			entry.setValue(trimmed);
+		}
+	}
+
+	/**
+	 * Returns the ids of the elements whose attribute has the given value.
+	 */
+	int[] get(String value) {
+		int[] result = (int[]) values.get(value);
+		return result == null ? RegistryObjectManager.EMPTY_INT_ARRAY : result;
+	}
+}
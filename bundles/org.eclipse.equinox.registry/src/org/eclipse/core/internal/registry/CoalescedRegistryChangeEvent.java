@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.eclipse.core.runtime.IExtensionDelta;
+import org.eclipse.core.runtime.IRegistryChangeEvent;
+
+/**
+ * A registry change event made of several consecutive events, delivered at once to an
+ * {@link org.eclipse.core.runtime.ICoalescingRegistryChangeListener} that could not keep up
+ * with the registry changes. The extension deltas are
+ * returned in the order of the events; if several events have a delta for the same
+ * extension, {@link #getExtensionDelta(String, String, String)} returns the latest one.
+ */
+public final class CoalescedRegistryChangeEvent implements IRegistryChangeEvent {
+	private IRegistryChangeEvent[] events;
+
+	public CoalescedRegistryChangeEvent(IRegistryChangeEvent[] events) {
+		this.events = events;
+	}
+
+	public IExtensionDelta[] getExtensionDeltas() {
+		ArrayList result = new ArrayList();
+		for (int i = 0; i < events.length; i++)
+			result.addAll(Arrays.asList(events[i].getExtensionDeltas()));
+		return (IExtensionDelta[]) result.toArray(new IExtensionDelta[result.size()]);
+	}
+
+	public IExtensionDelta[] getExtensionDeltas(String hostName) {
+		ArrayList result = new ArrayList();
+		for (int i = 0; i < events.length; i++)
+			result.addAll(Arrays.asList(events[i].getExtensionDeltas(hostName)));
+		return (IExtensionDelta[]) result.toArray(new IExtensionDelta[result.size()]);
+	}
+
+	public IExtensionDelta[] getExtensionDeltas(String hostName, String extensionPoint) {
+		ArrayList result = new ArrayList();
+		for (int i = 0; i < events.length; i++)
+			result.addAll(Arrays.asList(events[i].getExtensionDeltas(hostName, extensionPoint)));
+		return (IExtensionDelta[]) result.toArray(new IExtensionDelta[result.size()]);
+	}
+
+	public IExtensionDelta getExtensionDelta(String hostName, String extensionPoint, String extension) {
+		for (int i = events.length - 1; i >= 0; i--) {
+			IExtensionDelta delta = events[i].getExtensionDelta(hostName, extensionPoint, extension);
+			if (delta != null)
+				return delta;
+		}
+		return null;
+	}
+
+	public String toString() {
+		return "CoalescedRegistryChangeEvent:  " + Arrays.asList(events); //$NON-NLS-1$
+	}
+}
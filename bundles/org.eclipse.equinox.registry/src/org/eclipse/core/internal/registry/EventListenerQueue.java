@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.registry;
+
+import java.util.*;
+import org.eclipse.core.internal.registry.RegistryEventDispatcher.Delivery;
+import org.eclipse.core.runtime.*;
+
+/**
+ * The events waiting to be delivered to one registry listener, and the statistics of
+ * the deliveries made to the listener. The pending events are protected by the lock of
+ * the {@link RegistryEventDispatcher}; the statistics by the lock of the queue.
+ */
+public class EventListenerQueue {
+	private final EventListener listener;
+	private final String filter;
+
+	final List pending = new ArrayList(); // of Delivery
+	boolean scheduled = false; // true while the queue is ready or being processed by a thread
+
+	private long deliveredEvents = 0;
+	private long deliveries = 0;
+	private long failures = 0;
+	private long totalLatency = 0;
+	private long maxLatency = 0;
+
+	EventListenerQueue(EventListener listener, String filter) {
+		this.listener = listener;
+		this.filter = filter;
+	}
+
+	/**
+	 * Delivers the events to the listener, in order. Consecutive events of the same kind
+	 * are combined for an {@link IRegistryEventListener}. Events for an {@link IRegistryChangeListener}
+	 * are delivered one at a time, unless it is an {@link ICoalescingRegistryChangeListener} in which 
+	 * case they are combined in a {@link CoalescedRegistryChangeEvent}.
+	 */
+	void deliver(Delivery[] events) {
+		int calls = 0;
+		int failed = 0;
+		if (listener instanceof IRegistryChangeListener) {
+			ArrayList changeEvents = new ArrayList(events.length);
+			for (int i = 0; i < events.length; i++)
+				if (events[i].changeEvent != null)
+					changeEvents.add(events[i].changeEvent);
+			if (changeEvents.size() > 1 && listener instanceof ICoalescingRegistryChangeListener) {
+				IRegistryChangeEvent coalesced = new CoalescedRegistryChangeEvent((IRegistryChangeEvent[]) changeEvents.toArray(new IRegistryChangeEvent[changeEvents.size()]));
+				changeEvents.clear();
+				changeEvents.add(coalesced);
+			}
+			for (Iterator iter = changeEvents.iterator(); iter.hasNext();) {
+				calls++;
+				if (!notifyChangeListener((IRegistryChangeEvent) iter.next()))
+					failed++;
+			}
+		}
+		if (listener instanceof IRegistryEventListener) {
+			int start = 0;
+			while (start < events.length) {
+				// combine the consecutive events of the same kind
+				boolean addition = events[start].event.combinedDelta.isAddition();
+				ArrayList extensionPoints = new ArrayList();
+				ArrayList extensions = new ArrayList();
+				int end = start;
+				for (; end < events.length && events[end].event.combinedDelta.isAddition() == addition; end++) {
+					if (events[end].extensionPoints != null)
+						extensionPoints.addAll(Arrays.asList(events[end].extensionPoints));
+					if (events[end].extensions != null)
+						extensions.addAll(Arrays.asList(events[end].extensions));
+				}
+				calls++;
+				if (!notifyEventListener(addition, extensionPoints, extensions))
+					failed++;
+				start = end;
+			}
+		}
+
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < events.length; i++)
+			events[i].event.delivered();
+		synchronized (this) {
+			deliveries += calls;
+			deliveredEvents += events.length;
+			failures += failed;
+			for (int i = 0; i < events.length; i++) {
+				long latency = now - events[i].event.time;
+				totalLatency += latency;
+				if (latency > maxLatency)
+					maxLatency = latency;
+			}
+		}
+	}
+
+	private boolean notifyChangeListener(final IRegistryChangeEvent event) {
+		return safeRun(new ISafeRunnable() {
+			public void run() throws Exception {
+				((IRegistryChangeListener) listener).registryChanged(event);
+			}
+
+			public void handleException(Throwable exception) {
+				// already logged by the SafeRunner
+			}
+		});
+	}
+
+	private boolean notifyEventListener(final boolean addition, List extensionPoints, List extensions) {
+		final IRegistryEventListener extensionListener = (IRegistryEventListener) listener;
+		final IExtensionPoint[] points = extensionPoints.isEmpty() ? null : (IExtensionPoint[]) extensionPoints.toArray(new IExtensionPoint[extensionPoints.size()]);
+		final IExtension[] exts = extensions.isEmpty() ? null : (IExtension[]) extensions.toArray(new IExtension[extensions.size()]);
+		return safeRun(new ISafeRunnable() {
+			public void run() throws Exception {
+				// notification order - on addition: extension points; then extensions
+				if (addition) {
+					if (points != null)
+						extensionListener.added(points);
+					if (exts != null)
+						extensionListener.added(exts);
+				} else { // on removal: extensions; then extension points
+					if (exts != null)
+						extensionListener.removed(exts);
+					if (points != null)
+						extensionListener.removed(points);
+				}
+			}
+
+			public void handleException(Throwable exception) {
+				// already logged by the SafeRunner
+			}
+		});
+	}
+
+	private boolean safeRun(final ISafeRunnable code) {
+		final boolean[] success = new boolean[] {false};
+		SafeRunner.run(new ISafeRunnable() {
+			public void run() throws Exception {
+				code.run();
+				success[0] = true;
+			}
+
+			public void handleException(Throwable exception) {
+				code.handleException(exception);
+			}
+		});
+		return success[0];
+	}
+
+	public EventListener getListener() {
+		return listener;
+	}
+
+	public String getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Returns the number of events waiting to be delivered to the listener. The value
+	 * is read without locking so it is only an estimate.
+	 */
+	public int getPendingEvents() {
+		return pending.size();
+	}
+
+	/**
+	 * Returns the number of events delivered to the listener.
+	 */
+	public synchronized long getDeliveredEvents() {
+		return deliveredEvents;
+	}
+
+	/**
+	 * Returns the number of calls made to the listener. It is lower than the number
+	 * of delivered events when events have been coalesced.
+	 */
+	public synchronized long getDeliveries() {
+		return deliveries;
+	}
+
+	/**
+	 * Returns the number of calls to the listener that threw an exception.
+	 */
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Returns the average time in milliseconds between an event being fired and the
+	 * listener returning from its notification.
+	 */
+	public synchronized long getAverageLatency() {
+		return deliveredEvents == 0 ? 0 : totalLatency / deliveredEvents;
+	}
+
+	/**
+	 * Returns the maximum time in milliseconds between an event being fired and the
+	 * listener returning from its notification.
+	 */
+	public synchronized long getMaxLatency() {
+		return maxLatency;
+	}
+}
@@ -314,6 +314,39 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 		return extension.getConfigurationElements();
 	}
 
+	/*
+	 *  (non-Javadoc)
+	 * @see org.eclipse.core.runtime.IExtensionRegistry#getConfigurationElementsFor(java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+	 */
+	public IConfigurationElement[] getConfigurationElementsFor(String extensionPointId, String elementName, String attributeName, String attributeValue) {
+		if (extensionPointId == null || attributeName == null || attributeValue == null)
+			return ConfigurationElementHandle.EMPTY_ARRAY;
+		// attribute values are only translated when read from a multi-language registry, they can't be indexed 
+		if (isMultiLanguage())
+			return filterConfigurationElements(getConfigurationElementsFor(extensionPointId), elementName, attributeName, attributeValue);
+		access.enterRead();
+		try {
+			ExtensionPoint extPoint = registryObjects.getExtensionPointObject(extensionPointId);
+			if (extPoint == null)
+				return ConfigurationElementHandle.EMPTY_ARRAY;
+			int[] elements = registryObjects.getIndexedConfigurationElements(extPoint, elementName, attributeName, attributeValue);
+			return (IConfigurationElement[]) registryObjects.getHandles(elements, RegistryObjectManager.CONFIGURATION_ELEMENT);
+		} finally {
+			access.exitRead();
+		}
+	}
+
+	private IConfigurationElement[] filterConfigurationElements(IConfigurationElement[] elements, String elementName, String attributeName, String attributeValue) {
+		ArrayList result = new ArrayList();
+		for (int i = 0; i < elements.length; i++) {
+			if (elementName != null && !elementName.equals(elements[i].getName()))
+				continue;
+			if (attributeValue.equals(elements[i].getAttribute(attributeName)))
+				result.add(elements[i]);
+		}
+		return (IConfigurationElement[]) result.toArray(new IConfigurationElement[result.size()]);
+	}
+
 	private RegistryDelta getDelta(String namespace) {
 		// is there a delta for the plug-in?
 		RegistryDelta existingDelta = (RegistryDelta) deltas.get(namespace);
@@ -501,6 +534,7 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 	}
 
 	private void link(ExtensionPoint extPoint, int[] extensions) {
+		registryObjects.updateAttributeIndexes(extPoint, extensions);
 		extPoint.setRawChildren(extensions);
 		registryObjects.add(extPoint, true);
 	}
@@ -641,12 +675,18 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 		synchronized (listeners) {
 			listeners.remove(new ListenerInfo(listener, null));
 		}
+		RegistryEventDispatcher dispatcher = getEventDispatcher();
+		if (dispatcher != null)
+			dispatcher.removeListener(listener);
 	}
 
 	public void removeListener(IRegistryEventListener listener) {
 		synchronized (listeners) {
 			listeners.remove(new ListenerInfo(listener, null));
 		}
+		RegistryEventDispatcher dispatcher = getEventDispatcher();
+		if (dispatcher != null)
+			dispatcher.removeListener(listener);
 	}
 
 	public ExtensionRegistry(RegistryStrategy registryStrategy, Object masterToken, Object userToken) {
@@ -673,12 +713,14 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 			if (checkCache()) {
 				try {
 					theTableReader.setTableFile(cacheStorageManager.lookup(TableReader.TABLE, false));
-					theTableReader.setExtraDataFile(cacheStorageManager.lookup(TableReader.EXTRA, false));
-					theTableReader.setMainDataFile(cacheStorageManager.lookup(TableReader.MAIN, false));
+					theTableReader.setExtraDataFile(lookupDataSegments(TableReader.EXTRA));
+					theTableReader.setMainDataFile(lookupDataSegments(TableReader.MAIN));
 					theTableReader.setContributionsFile(cacheStorageManager.lookup(TableReader.CONTRIBUTIONS, false));
 					theTableReader.setContributorsFile(cacheStorageManager.lookup(TableReader.CONTRIBUTORS, false));
 					theTableReader.setNamespacesFile(cacheStorageManager.lookup(TableReader.NAMESPACES, false));
 					theTableReader.setOrphansFile(cacheStorageManager.lookup(TableReader.ORPHANS, false));
+					theTableReader.setAttributeIndexesFile(cacheStorageManager.lookup(TableReader.ATTRIBUTE_INDEXES, false));
+					theTableReader.setStringsFile(cacheStorageManager.lookup(TableReader.STRINGS, false));
 					long timestamp = strategy.getContributionsTimestamp();
 					isRegistryFilledFromCache = registryObjects.init(timestamp);
 					if (isRegistryFilledFromCache)
@@ -758,6 +800,8 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 		File contributorsFile = null;
 		File namespacesFile = null;
 		File orphansFile = null;
+		File attributeIndexesFile = null;
+		File stringsFile = null;
 
 		TableWriter theTableWriter = new TableWriter(this);
 
@@ -769,6 +813,8 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 			cacheStorageManager.lookup(TableReader.CONTRIBUTORS, true);
 			cacheStorageManager.lookup(TableReader.NAMESPACES, true);
 			cacheStorageManager.lookup(TableReader.ORPHANS, true);
+			cacheStorageManager.lookup(TableReader.ATTRIBUTE_INDEXES, true);
+			cacheStorageManager.lookup(TableReader.STRINGS, true);
 			tableFile = File.createTempFile(TableReader.TABLE, ".new", cacheStorageManager.getBase()); //$NON-NLS-1$
 			mainFile = File.createTempFile(TableReader.MAIN, ".new", cacheStorageManager.getBase()); //$NON-NLS-1$
 			extraFile = File.createTempFile(TableReader.EXTRA, ".new", cacheStorageManager.getBase()); //$NON-NLS-1$
@@ -776,6 +822,8 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 			contributorsFile = File.createTempFile(TableReader.CONTRIBUTORS, ".new", cacheStorageManager.getBase()); //$NON-NLS-1$
 			namespacesFile = File.createTempFile(TableReader.NAMESPACES, ".new", cacheStorageManager.getBase()); //$NON-NLS-1$
 			orphansFile = File.createTempFile(TableReader.ORPHANS, ".new", cacheStorageManager.getBase()); //$NON-NLS-1$
+			attributeIndexesFile = File.createTempFile(TableReader.ATTRIBUTE_INDEXES, ".new", cacheStorageManager.getBase()); //$NON-NLS-1$
+			stringsFile = File.createTempFile(TableReader.STRINGS, ".new", cacheStorageManager.getBase()); //$NON-NLS-1$
 			theTableWriter.setTableFile(tableFile);
 			theTableWriter.setExtraDataFile(extraFile);
 			theTableWriter.setMainDataFile(mainFile);
@@ -783,6 +831,8 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 			theTableWriter.setContributorsFile(contributorsFile);
 			theTableWriter.setNamespacesFile(namespacesFile);
 			theTableWriter.setOrphansFile(orphansFile);
+			theTableWriter.setAttributeIndexesFile(attributeIndexesFile);
+			theTableWriter.setStringsFile(stringsFile);
 		} catch (IOException e) {
 			cacheStorageManager.close();
 			return; //Ignore the exception since we can recompute the cache
@@ -799,8 +849,17 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 			else
 				timestamp = strategy.getContributionsTimestamp(); // use legacy approach
 
-			if (theTableWriter.saveCache(registryObjects, timestamp))
-				cacheStorageManager.update(new String[] {TableReader.TABLE, TableReader.MAIN, TableReader.EXTRA, TableReader.CONTRIBUTIONS, TableReader.CONTRIBUTORS, TableReader.NAMESPACES, TableReader.ORPHANS}, new String[] {tableFile.getName(), mainFile.getName(), extraFile.getName(), contributionsFile.getName(), contributorsFile.getName(), namespacesFile.getName(), orphansFile.getName()});
+			if (theTableWriter.saveCache(registryObjects, timestamp)) {
+				// the data files written are a new segment unless the previous segments have been compacted
+				int segment = theTableWriter.getDataSegment();
+				String mainSegment = TableReader.getSegmentName(TableReader.MAIN, segment);
+				String extraSegment = TableReader.getSegmentName(TableReader.EXTRA, segment);
+				cacheStorageManager.lookup(mainSegment, true);
+				cacheStorageManager.lookup(extraSegment, true);
+				cacheStorageManager.update(new String[] {TableReader.TABLE, mainSegment, extraSegment, TableReader.CONTRIBUTIONS, TableReader.CONTRIBUTORS, TableReader.NAMESPACES, TableReader.ORPHANS, TableReader.ATTRIBUTE_INDEXES, TableReader.STRINGS}, new String[] {tableFile.getName(), mainFile.getName(), extraFile.getName(), contributionsFile.getName(), contributorsFile.getName(), namespacesFile.getName(), orphansFile.getName(), attributeIndexesFile.getName(), stringsFile.getName()});
+				if (segment == 0)
+					removeDataSegments(1);
+			}
 		} catch (IOException e) {
 			//Ignore the exception since we can recompute the cache
 		}
@@ -812,16 +871,52 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 	 * Clear the registry cache files from the file manager so on next start-up we recompute it.
 	 */
 	public void clearRegistryCache() {
-		String[] keys = new String[] {TableReader.TABLE, TableReader.MAIN, TableReader.EXTRA, TableReader.CONTRIBUTIONS, TableReader.ORPHANS};
+		String[] keys = new String[] {TableReader.TABLE, TableReader.MAIN, TableReader.EXTRA, TableReader.CONTRIBUTIONS, TableReader.ORPHANS, TableReader.ATTRIBUTE_INDEXES, TableReader.STRINGS};
 		for (int i = 0; i < keys.length; i++)
 			try {
 				cacheStorageManager.remove(keys[i]);
 			} catch (IOException e) {
 				log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, IStatus.ERROR, RegistryMessages.meta_registryCacheReadProblems, e));
 			}
+		try {
+			removeDataSegments(1);
+		} catch (IOException e) {
+			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, IStatus.ERROR, RegistryMessages.meta_registryCacheReadProblems, e));
+		}
 		aggregatedTimestamp.reset();
 	}
 
+	/*
+	 * Returns the segments of the given data file, which are managed under consecutive names.
+	 */
+	private File[] lookupDataSegments(String name) throws IOException {
+		List segments = new ArrayList();
+		File segment;
+		while ((segment = cacheStorageManager.lookup(TableReader.getSegmentName(name, segments.size()), false)) != null)
+			segments.add(segment);
+		if (segments.isEmpty())
+			throw new FileNotFoundException(name);
+		return (File[]) segments.toArray(new File[segments.size()]);
+	}
+
+	/*
+	 * Removes the segments of the data files starting with the given one. The file manager 
+	 * only deletes outdated generations of the files it still manages so the files are deleted here.
+	 */
+	private void removeDataSegments(int first) throws IOException {
+		for (int i = first; cacheStorageManager.lookup(TableReader.getSegmentName(TableReader.MAIN, i), false) != null; i++) {
+			removeManagedFile(TableReader.getSegmentName(TableReader.MAIN, i));
+			removeManagedFile(TableReader.getSegmentName(TableReader.EXTRA, i));
+		}
+	}
+
+	private void removeManagedFile(String name) throws IOException {
+		File file = cacheStorageManager.lookup(name, false);
+		cacheStorageManager.remove(name);
+		if (file != null)
+			file.delete(); // fails on Windows while the file is still open, it is then left behind
+	}
+
 	/////////////////////////////////////////////////////////////////////////////////////////////////
 	// Registry Object Factory
 	// The factory produces contributions, extension points, extensions, and configuration elements 
@@ -912,6 +1007,13 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 		// Separate new event delta from the pack
 		final CombinedEventDelta extendedDelta = (CombinedEventDelta) scheduledDeltas.remove(notNamespace);
 
+		RegistryEventDispatcher dispatcher = getEventDispatcher();
+		if (dispatcher != null) {
+			// Listeners are notified on the dispatcher threads; their exceptions are logged there
+			dispatcher.dispatch(listenerInfos, scheduledDeltas, extendedDelta);
+			return Status.OK_STATUS;
+		}
+
 		final MultiStatus result = new MultiStatus(RegistryMessages.OWNER_NAME, IStatus.OK, RegistryMessages.plugin_eventListenerError, null);
 		for (int i = 0; i < listenerInfos.length; i++) {
 			final ListenerInfo listenerInfo = (ListenerInfo) listenerInfos[i];
@@ -956,6 +1058,46 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 		return result;
 	}
 
+	// Returns null if the listeners are notified synchronously
+	private synchronized RegistryEventDispatcher getEventDispatcher() {
+		if (eventDispatcher == null && !noEventDispatcher) {
+			int threads = getEventThreads();
+			if (threads > 0)
+				eventDispatcher = new RegistryEventDispatcher(threads);
+			else
+				noEventDispatcher = true; // synchronous notification, don't look the property up again
+		}
+		return eventDispatcher;
+	}
+
+	private static int getEventThreads() {
+		String threads = RegistryProperties.getProperty(IRegistryConstants.PROP_EVENT_THREADS);
+		if (threads != null) {
+			try {
+				return Integer.parseInt(threads);
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		// the listeners are notified synchronously unless dispatcher threads are asked for
+		return DEFAULT_EVENT_THREADS;
+	}
+
+	/**
+	 * Returns the event queues of the registered listeners which have received events, with
+	 * the statistics of the deliveries made to them.
+	 * 
+	 * @return the event queues of the listeners
+	 */
+	public EventListenerQueue[] getEventListenerQueues() {
+		RegistryEventDispatcher dispatcher = getEventDispatcher();
+		return dispatcher == null ? new EventListenerQueue[0] : dispatcher.getQueues();
+	}
+
+	private RegistryEventDispatcher eventDispatcher = null; // delivers registry events to the listeners; null for synchronous notification
+	private boolean noEventDispatcher = false; // true if no dispatcher is to be created, because of the configuration or the registry stopping
+	private static final int DEFAULT_EVENT_THREADS = 0;
+
 	private RegistryEventThread eventThread = null; // registry event loop
 	protected final List queue = new LinkedList(); // stores registry events info
 
@@ -1017,6 +1159,13 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 				eventThread = null;
 			}
 		}
+		RegistryEventDispatcher dispatcher;
+		synchronized (this) {
+			dispatcher = eventDispatcher;
+			noEventDispatcher = true;
+		}
+		if (dispatcher != null)
+			dispatcher.stop();
 	}
 
 	/**
@@ -1046,6 +1195,27 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 	public boolean addContribution(InputStream is, IContributor contributor, boolean persist, String contributionName, ResourceBundle translationBundle, Object key) {
 		if (!checkReadWriteAccess(key, persist))
 			throw new IllegalArgumentException("Unauthorized access to the ExtensionRegistry.addContribution() method. Check if proper access token is supplied."); //$NON-NLS-1$
+		Contribution contribution = basicParseContribution(is, contributor, persist, contributionName, translationBundle, false);
+		if (contribution == null)
+			return false;
+		add(contribution); // the add() method does synchronization
+		return true;
+	}
+
+	/**
+	 * Parses a contribution without adding it to the registry. Unlike addContribution(), 
+	 * this method can be called by several threads at once. The extension points of the 
+	 * contribution are only registered when it is added with {@link #addContributions(Contribution[], long[], Object)}.
+	 * 
+	 * @return the parsed contribution, or <code>null</code> if the contribution could not be parsed
+	 */
+	public Contribution parseContribution(InputStream is, IContributor contributor, boolean persist, String contributionName, ResourceBundle translationBundle, Object key) {
+		if (!checkReadWriteAccess(key, persist))
+			throw new IllegalArgumentException("Unauthorized access to the ExtensionRegistry.parseContribution() method. Check if proper access token is supplied."); //$NON-NLS-1$
+		return basicParseContribution(is, contributor, persist, contributionName, translationBundle, true);
+	}
+
+	private Contribution basicParseContribution(InputStream is, IContributor contributor, boolean persist, String contributionName, ResourceBundle translationBundle, boolean deferExtensionPoints) {
 		if (contributionName == null)
 			contributionName = ""; //$NON-NLS-1$
 
@@ -1056,6 +1226,7 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 		String message = NLS.bind(RegistryMessages.parse_problems, ownerName);
 		MultiStatus problems = new MultiStatus(RegistryMessages.OWNER_NAME, ExtensionsParser.PARSE_PROBLEM, message, null);
 		ExtensionsParser parser = new ExtensionsParser(problems, this);
+		parser.setDeferExtensionPoints(deferExtensionPoints);
 		Contribution contribution = getElementFactory().createContribution(internalContributor.getActualId(), persist);
 
 		try {
@@ -1064,17 +1235,17 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 			if (status != IStatus.OK) {
 				log(problems);
 				if (status == IStatus.ERROR || status == IStatus.CANCEL)
-					return false;
+					return null;
 			}
 		} catch (ParserConfigurationException e) {
 			logError(ownerName, contributionName, e);
-			return false;
+			return null;
 		} catch (SAXException e) {
 			logError(ownerName, contributionName, e);
-			return false;
+			return null;
 		} catch (IOException e) {
 			logError(ownerName, contributionName, e);
-			return false;
+			return null;
 		} finally {
 			try {
 				is.close();
@@ -1082,8 +1253,56 @@ public class ExtensionRegistry implements IExtensionRegistry, IDynamicExtensionR
 				// nothing to do
 			}
 		}
-		add(contribution); // the add() method does synchronization
-		return true;
+		return contribution;
+	}
+
+	/**
+	 * Adds contributions obtained from {@link #parseContribution(InputStream, IContributor, boolean, String, ResourceBundle, Object)}
+	 * to the registry in a single operation. The contributions are added in the order of the array; 
+	 * when several contributions declare the same extension point, the first one wins. 
+	 * 
+	 * @param contributions the parsed contributions; <code>null</code> elements are ignored
+	 * @param timestamps the timestamps of the contributions, 0 if not known
+	 * @param key the master token
+	 */
+	public void addContributions(Contribution[] contributions, long[] timestamps, Object key) {
+		if (!checkReadWriteAccess(key, true))
+			throw new IllegalArgumentException("Unauthorized access to the ExtensionRegistry.addContributions() method. Check if proper access token is supplied."); //$NON-NLS-1$
+		access.enterWrite();
+		try {
+			eventDelta = CombinedEventDelta.recordAddition();
+			for (int i = 0; i < contributions.length; i++) {
+				if (contributions[i] == null)
+					continue;
+				registerExtensionPoints(contributions[i]);
+				basicAdd(contributions[i], true);
+			}
+			fireRegistryChangeEvent();
+			eventDelta = null;
+		} finally {
+			access.exitWrite();
+		}
+		for (int i = 0; i < timestamps.length; i++) {
+			if (contributions[i] != null && timestamps[i] != 0)
+				aggregatedTimestamp.add(timestamps[i]);
+		}
+	}
+
+	// Registers the extension points of a contribution parsed with deferred extension points. 
+	// Duplicates of already registered extension points are discarded, as ExtensionsParser does.
+	private void registerExtensionPoints(Contribution contribution) {
+		int[] extensionPoints = contribution.getExtensionPoints();
+		for (int i = 0; i < extensionPoints.length; i++) {
+			ExtensionPoint extPoint = (ExtensionPoint) registryObjects.getObject(extensionPoints[i], RegistryObjectManager.EXTENSION_POINT);
+			if (registryObjects.registerExtensionPoint(extPoint))
+				continue;
+			if (debug()) {
+				String msg = NLS.bind(RegistryMessages.parse_duplicateExtensionPoint, extPoint.getUniqueIdentifier(), contribution.getDefaultNamespace());
+				log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, 0, msg, null));
+			}
+			registryObjects.remove(extensionPoints[i], true);
+			contribution.unlinkChild(extensionPoints[i]);
+		}
 	}
 
 	private void logError(String owner, String contributionName, Exception e) {
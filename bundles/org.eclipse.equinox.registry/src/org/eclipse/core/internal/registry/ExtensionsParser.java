@@ -14,6 +14,7 @@ package org.eclipse.core.internal.registry;
 import java.io.IOException;
 import java.util.*;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import org.eclipse.core.runtime.*;
 import org.eclipse.osgi.util.NLS;
@@ -84,6 +85,11 @@ public class ExtensionsParser extends DefaultHandler {
 
 	private Contribution contribution;
 
+	// If true, the extension points are added to the object manager but are not registered under their
+	// unique identifiers. This allows several contributions to be parsed at once; the registry registers 
+	// the extension points in the order the contributions are added.
+	private boolean deferExtensionPoints = false;
+
 	//This keeps tracks of the value of the configuration element in case the value comes in several pieces (see characters()). See as well bug 75592. 
 	private String configurationElementValue;
 
@@ -294,7 +300,7 @@ public class ExtensionsParser extends DefaultHandler {
 	private void cleanup() {
 		for (Iterator i = addedRegistryObjects.iterator(); i.hasNext();) {
 			RegistryObject object = (RegistryObject) i.next();
-			if (object instanceof ExtensionPoint) {
+			if (object instanceof ExtensionPoint && !deferExtensionPoints) {
 				String id = ((ExtensionPoint) object).getUniqueIdentifier();
 				objectManager.removeExtensionPoint(id);
 			} else
@@ -395,14 +401,19 @@ public class ExtensionsParser extends DefaultHandler {
 			locationName = in.getSystemId();
 			if (locationName == null)
 				locationName = manifestName;
-			factory.setNamespaceAware(true);
-			try {
-				factory.setFeature("http://xml.org/sax/features/string-interning", true); //$NON-NLS-1$
-			} catch (SAXException se) {
-				// ignore; we can still operate without string-interning
+			SAXParser parser;
+			// the factory is shared; only the parsers it creates can be used concurrently
+			synchronized (factory) {
+				factory.setNamespaceAware(true);
+				try {
+					factory.setFeature("http://xml.org/sax/features/string-interning", true); //$NON-NLS-1$
+				} catch (SAXException se) {
+					// ignore; we can still operate without string-interning
+				}
+				factory.setValidating(false);
+				parser = factory.newSAXParser();
 			}
-			factory.setValidating(false);
-			factory.newSAXParser().parse(in, this);
+			parser.parse(in, this);
 			return (Contribution) objectStack.pop();
 		} finally {
 			if (registry.debug()) {
@@ -412,6 +423,14 @@ public class ExtensionsParser extends DefaultHandler {
 		}
 	}
 
+	/**
+	 * Defers the registration of the extension points under their unique identifiers
+	 * to the registry. Must be called before the manifest is parsed.
+	 */
+	void setDeferExtensionPoints(boolean defer) {
+		this.deferExtensionPoints = defer;
+	}
+
 	private void parseConfigurationElementAttributes(Attributes attributes) {
 		ConfigurationElement parentConfigurationElement = (ConfigurationElement) objectStack.peek();
 
@@ -563,7 +582,9 @@ public class ExtensionsParser extends DefaultHandler {
 			stateStack.push(new Integer(IGNORED_ELEMENT_STATE));
 			return;
 		}
-		if (!objectManager.addExtensionPoint(currentExtPoint, true)) {
+		if (deferExtensionPoints)
+			objectManager.add(currentExtPoint, true);
+		else if (!objectManager.addExtensionPoint(currentExtPoint, true)) {
 			// avoid adding extension point second time as it might cause 
 			// extensions associated with the existing extension point to 
 			// become inaccessible.
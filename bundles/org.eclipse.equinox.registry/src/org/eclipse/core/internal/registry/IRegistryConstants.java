@@ -30,6 +30,9 @@ public interface IRegistryConstants {
 	public static final String PROP_DEFAULT_REGISTRY = "eclipse.createRegistry"; //$NON-NLS-1$
 	public static final String PROP_REGISTRY_NULL_USER_TOKEN = "eclipse.registry.nulltoken"; //$NON-NLS-1$
 	public static final String PROP_MULTI_LANGUAGE = "eclipse.registry.MultiLanguage"; //$NON-NLS-1$
+	public static final String PROP_MAPPED_CACHE = "eclipse.registry.mappedCache"; //$NON-NLS-1$
+	public static final String PROP_PARSE_THREADS = "eclipse.registry.parseThreads"; //$NON-NLS-1$
+	public static final String PROP_EVENT_THREADS = "eclipse.registry.eventThreads"; //$NON-NLS-1$
 
 	// OSGI system properties
 	public static final String PROP_NL = "osgi.nl"; //$NON-NLS-1$
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.registry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Provides positional reads from a file mapped into memory. Every call to
+ * {@link #getInput(int)} returns a stream with its own read position so any
+ * number of threads can read from the file at the same time without locking.
+ * <p>
+ * The file can be stored as a sequence of segment files which are addressed
+ * as if they were concatenated, see {@link SegmentedRandomInputStream}. A
+ * stream does not continue into the next segment.
+ * </p>
+ * <p>
+ * This class must only be loaded when java.nio is available.
+ * </p>
+ */
+public class MappedFileInput {
+
+	private final String filePath; // Canonical path to the first segment used for logging
+	private final long[] starts;
+	private final long length;
+	// never read from directly: their positions must stay untouched so they can be safely duplicated
+	private ByteBuffer[] buffers;
+
+	public MappedFileInput(File file) throws IOException {
+		this(new File[] {file});
+	}
+
+	public MappedFileInput(File[] segments) throws IOException {
+		filePath = segments[0].getCanonicalPath();
+		starts = new long[segments.length];
+		ByteBuffer[] mapped = new ByteBuffer[segments.length];
+		long total = 0;
+		for (int i = 0; i < segments.length; i++) {
+			RandomAccessFile inputFile = new RandomAccessFile(segments[i], "r"); //$NON-NLS-1$
+			try {
+				FileChannel channel = inputFile.getChannel();
+				long size = channel.size();
+				if (total + size > Integer.MAX_VALUE)
+					throw new IOException(segments[i].getCanonicalPath());
+				// the mapping stays valid once the file is closed
+				mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				starts[i] = total;
+				total += size;
+			} finally {
+				inputFile.close();
+			}
+		}
+		length = total;
+		buffers = mapped;
+	}
+
+	/**
+	 * Returns a new stream positioned at the given offset. The stream is not
+	 * thread safe but it is independent of any other stream on the same file.
+	 *
+	 * @param offset offset in the file
+	 * @return data stream reading from the offset
+	 * @throws IOException if the file has been closed or the offset is invalid
+	 */
+	public DataInputStream getInput(int offset) throws IOException {
+		ByteBuffer[] sources = buffers;
+		if (sources == null)
+			throw new IOException(filePath);
+		if (offset < 0 || offset > length)
+			throw new EOFException(filePath);
+		int segment = SegmentedRandomInputStream.findSegment(starts, offset);
+		ByteBuffer view = sources[segment].duplicate();
+		view.position((int) (offset - starts[segment]));
+		return new DataInputStream(new ByteBufferInputStream(view));
+	}
+
+	/**
+	 * Returns the length of the given segment.
+	 * @param segment index of the segment
+	 * @return segment length
+	 */
+	public long length(int segment) {
+		return (segment + 1 < starts.length ? starts[segment + 1] : length) - starts[segment];
+	}
+
+	/**
+	 * Returns the number of segments.
+	 * @return number of segments
+	 */
+	public int getSegmentCount() {
+		return starts.length;
+	}
+
+	/**
+	 * Returns the total length of the segments.
+	 * @return file length
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Releases the mapping. The memory is unmapped once the buffers are garbage collected;
+	 * until then the files stay open, which on Windows prevents the files from being
+	 * deleted or replaced.
+	 */
+	public void close() {
+		buffers = null;
+	}
+
+	public String toString() {
+		return filePath;
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer view;
+
+		ByteBufferInputStream(ByteBuffer view) {
+			this.view = view;
+		}
+
+		public int read() {
+			if (!view.hasRemaining())
+				return -1;
+			return view.get() & 0xFF;
+		}
+
+		public int read(byte b[], int off, int len) {
+			if (len == 0)
+				return 0;
+			int available = view.remaining();
+			if (available == 0)
+				return -1;
+			if (len > available)
+				len = available;
+			view.get(b, off, len);
+			return len;
+		}
+
+		public long skip(long n) {
+			if (n <= 0)
+				return 0;
+			int skipped = (int) Math.min(n, view.remaining());
+			view.position(view.position() + skipped);
+			return skipped;
+		}
+
+		public int available() {
+			return view.remaining();
+		}
+	}
+}
@@ -46,6 +46,15 @@ public final class OffsetTable {
 		valueTable[key] = value;
 	}
 
+	/**
+	 * Returns a copy of this table that has room for at least the given number of keys.
+	 */
+	public OffsetTable copy(int size) {
+		OffsetTable result = new OffsetTable(Math.max(size, valueTable.length));
+		System.arraycopy(valueTable, 0, result.valueTable, 0, valueTable.length);
+		return result;
+	}
+
 	public void save(DataOutputStream out) throws IOException {
 		int tableSize = valueTable.length;
 		out.writeInt(tableSize);
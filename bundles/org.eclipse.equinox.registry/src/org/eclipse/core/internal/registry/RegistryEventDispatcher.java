@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.registry;
+
+import java.util.*;
+import org.eclipse.core.internal.registry.ExtensionRegistry.ListenerInfo;
+import org.eclipse.core.runtime.*;
+
+/**
+ * Delivers registry change events to the listeners on a bounded pool of threads.
+ * <p>
+ * Each listener has its own queue of events. The events of a listener are delivered
+ * in order and never concurrently, but a slow listener does not hold back the other
+ * listeners. When an {@link IRegistryEventListener} has fallen behind, its queued 
+ * events are delivered together; an {@link IRegistryChangeListener} only receives its 
+ * queued events in one call if it is an {@link ICoalescingRegistryChangeListener}.
+ * </p><p>
+ * The temporary object managers of an event are closed once the event has been
+ * delivered to all the listeners it was queued for, or once the dispatcher is stopped.
+ * </p>
+ */
+public class RegistryEventDispatcher {
+
+	private final int maxThreads;
+	private int threads = 0;
+	private int idleThreads = 0;
+	private boolean stopped = false;
+
+	// the queues that have events to deliver and are not being processed by a thread
+	private final LinkedList readyQueues = new LinkedList();
+	// key: listener, value: EventListenerQueue
+	private final Map queues = new HashMap();
+
+	public RegistryEventDispatcher(int maxThreads) {
+		this.maxThreads = maxThreads < 1 ? 1 : maxThreads;
+	}
+
+	/**
+	 * Queues an event for the interested listeners.
+	 *
+	 * @param listenerInfos the listeners registered when the event was fired
+	 * @param deltas the registry deltas by namespace
+	 * @param combinedDelta the delta of the extension points and extensions
+	 */
+	public void dispatch(Object[] listenerInfos, Map deltas, CombinedEventDelta combinedDelta) {
+		Event event = new Event(deltas, combinedDelta);
+		synchronized (this) {
+			if (!stopped) {
+				for (int i = 0; i < listenerInfos.length; i++) {
+					ListenerInfo listenerInfo = (ListenerInfo) listenerInfos[i];
+					Delivery delivery = createDelivery(listenerInfo, event);
+					if (delivery == null)
+						continue;
+					event.retain();
+					EventListenerQueue queue = (EventListenerQueue) queues.get(listenerInfo.listener);
+					if (queue == null) {
+						queue = new EventListenerQueue(listenerInfo.listener, listenerInfo.filter);
+						queues.put(listenerInfo.listener, queue);
+					}
+					queue.pending.add(delivery);
+					if (!queue.scheduled) {
+						queue.scheduled = true;
+						readyQueues.add(queue);
+						startThread();
+					}
+				}
+				notifyAll();
+			}
+		}
+		// release the reference held while queuing
+		event.delivered();
+	}
+
+	private Delivery createDelivery(ListenerInfo listenerInfo, Event event) {
+		Delivery delivery = new Delivery(event);
+		boolean interested = false;
+		if ((listenerInfo.listener instanceof IRegistryChangeListener) && event.deltas.size() != 0) {
+			if (listenerInfo.filter == null || event.deltas.containsKey(listenerInfo.filter)) {
+				delivery.changeEvent = new RegistryChangeEvent(event.deltas, listenerInfo.filter);
+				interested = true;
+			}
+		}
+		if (listenerInfo.listener instanceof IRegistryEventListener) {
+			delivery.extensions = event.combinedDelta.getExtensions(listenerInfo.filter);
+			delivery.extensionPoints = event.combinedDelta.getExtensionPoints(listenerInfo.filter);
+			if (delivery.extensions != null || delivery.extensionPoints != null)
+				interested = true;
+		}
+		return interested ? delivery : null;
+	}
+
+	// must be called while holding the lock; an idle thread takes only one queue, the
+	// others need threads of their own
+	private void startThread() {
+		if (readyQueues.size() <= idleThreads || threads >= maxThreads)
+			return;
+		threads++;
+		Thread thread = new Thread("Extension Registry Event Dispatcher " + threads) { //$NON-NLS-1$
+			public void run() {
+				dispatchLoop();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	void dispatchLoop() {
+		EventListenerQueue queue = null;
+		while (true) {
+			Delivery[] deliveries;
+			synchronized (this) {
+				if (queue != null) {
+					// put the queue back at the end so the other listeners get their turn
+					if (queue.pending.isEmpty())
+						queue.scheduled = false;
+					else
+						readyQueues.add(queue);
+				}
+				idleThreads++;
+				while (readyQueues.isEmpty() && !stopped) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// ignore, the dispatcher is stopped explicitly
+					}
+				}
+				idleThreads--;
+				if (stopped) {
+					threads--;
+					return;
+				}
+				queue = (EventListenerQueue) readyQueues.removeFirst();
+				deliveries = (Delivery[]) queue.pending.toArray(new Delivery[queue.pending.size()]);
+				queue.pending.clear();
+			}
+			queue.deliver(deliveries);
+		}
+	}
+
+	/**
+	 * Forgets the queue of a listener which has been removed from the registry. The events
+	 * already queued for the listener are still delivered.
+	 */
+	public synchronized void removeListener(Object listener) {
+		queues.remove(listener);
+	}
+
+	/**
+	 * Returns the queues of the registered listeners which have received events.
+	 */
+	public synchronized EventListenerQueue[] getQueues() {
+		return (EventListenerQueue[]) queues.values().toArray(new EventListenerQueue[queues.size()]);
+	}
+
+	/**
+	 * Stops the delivery. Events that are queued and not yet being delivered are discarded.
+	 */
+	public void stop() {
+		List discarded = new ArrayList();
+		synchronized (this) {
+			stopped = true;
+			readyQueues.clear();
+			for (Iterator iter = queues.values().iterator(); iter.hasNext();) {
+				EventListenerQueue queue = (EventListenerQueue) iter.next();
+				discarded.addAll(queue.pending);
+				queue.pending.clear();
+			}
+			notifyAll();
+		}
+		// close the object managers of the events no listener will receive any more
+		for (Iterator iter = discarded.iterator(); iter.hasNext();)
+			((Delivery) iter.next()).event.delivered();
+	}
+
+	// An event fired by the registry
+	static class Event {
+		final Map deltas;
+		final CombinedEventDelta combinedDelta;
+		final long time = System.currentTimeMillis();
+		private int pending = 1; // number of listeners that have not received the event yet, plus one while queuing
+
+		Event(Map deltas, CombinedEventDelta combinedDelta) {
+			this.deltas = deltas;
+			this.combinedDelta = combinedDelta;
+		}
+
+		synchronized void retain() {
+			pending++;
+		}
+
+		void delivered() {
+			synchronized (this) {
+				if (--pending > 0)
+					return;
+			}
+			close();
+		}
+
+		void close() {
+			for (Iterator iter = deltas.values().iterator(); iter.hasNext();) {
+				((RegistryDelta) iter.next()).getObjectManager().close();
+			}
+			IObjectManager manager = combinedDelta.getObjectManager();
+			if (manager != null)
+				manager.close();
+		}
+	}
+
+	// The part of an event that is delivered to one listener
+	static class Delivery {
+		final Event event;
+		IRegistryChangeEvent changeEvent;
+		IExtensionPoint[] extensionPoints;
+		IExtension[] extensions;
+
+		Delivery(Event event) {
+			this.event = event;
+		}
+	}
+}
@@ -53,6 +53,7 @@ public class RegistryMessages extends NLS {
 	public static String parse_nonSingleton;
 	public static String parse_nonSingletonFragment;
 	public static String parse_problems;
+	public static String parse_parallelFailed;
 	public static String parse_duplicateExtension;
 	public static String parse_duplicateExtensionPoint;
 
@@ -29,6 +29,7 @@ public class RegistryObjectManager implements IObjectManager {
 
 	static final int CACHE_INITIAL_SIZE = 512; //This value has been picked because it is the minimal size required to startup an RCP app. (FYI, eclipse requires 3 growths).
 	static final float DEFAULT_LOADFACTOR = 0.75f; //This is the default factor used in reference map.
+	static final int CACHE_STRIPES = 16; //The number of independently locked parts of the cache. Must be a power of 2.
 
 	static final int[] EMPTY_INT_ARRAY = new int[0];
 	static final String[] EMPTY_STRING_ARRAY = new String[0];
@@ -40,7 +41,9 @@ public class RegistryObjectManager implements IObjectManager {
 	// key: extensionPointName, value: object id
 	private HashtableOfStringAndInt extensionPoints; //This is loaded on startup. Then entries can be added when loading a new plugin from the xml.
 	// key: object id, value: an object
-	private ReferenceMap cache; //Entries are added by getter. The structure is not thread safe.
+	// The cache is split in stripes by object id. Each stripe is guarded by its own monitor so that readers 
+	// resolving objects do not contend on the object manager.  
+	private ReferenceMap[] cache; //Entries are added by getter. The structure is not thread safe.
 	//key: int, value: int
 	private OffsetTable fileOffsets = null; //This is read once on startup when loading from the cache. Entries are never added here. They are only removed to prevent "removed" objects to be reloaded.
 
@@ -59,6 +62,11 @@ public class RegistryObjectManager implements IObjectManager {
 	// The orphan access does not need to be synchronized because the it is protected by the lock in extension registry.
 	private Object orphanExtensions;
 
+	// Map key: extensionPointFullyQualifiedName, value: HashMap of the AttributeIndex of the extension point by index key.
+	// The indexes are built lazily when queried and loaded lazily from the cache. 
+	private HashMap attributeIndexes;
+	private boolean attributeIndexesDirty = false;
+
 	private KeyedHashSet heldObjects = new KeyedHashSet(); //strong reference to the objects that must be hold on to
 
 	//Indicate if objects have been removed or added from the table. This only needs to be set in a couple of places (addNamespace and removeNamespace)
@@ -74,11 +82,12 @@ public class RegistryObjectManager implements IObjectManager {
 
 	public RegistryObjectManager(ExtensionRegistry registry) {
 		extensionPoints = new HashtableOfStringAndInt();
-		if ("true".equalsIgnoreCase(RegistryProperties.getProperty(PROP_NO_REGISTRY_FLUSHING))) { //$NON-NLS-1$
-			cache = new ReferenceMap(ReferenceMap.HARD, CACHE_INITIAL_SIZE, DEFAULT_LOADFACTOR);
-		} else {
-			cache = new ReferenceMap(ReferenceMap.SOFT, CACHE_INITIAL_SIZE, DEFAULT_LOADFACTOR);
-		}
+		int referenceType = ReferenceMap.SOFT;
+		if ("true".equalsIgnoreCase(RegistryProperties.getProperty(PROP_NO_REGISTRY_FLUSHING))) //$NON-NLS-1$
+			referenceType = ReferenceMap.HARD;
+		cache = new ReferenceMap[CACHE_STRIPES];
+		for (int i = 0; i < CACHE_STRIPES; i++)
+			cache[i] = new ReferenceMap(referenceType, CACHE_INITIAL_SIZE / CACHE_STRIPES, DEFAULT_LOADFACTOR);
 		newContributions = new KeyedHashSet();
 
 		this.registry = registry;
@@ -226,28 +235,37 @@ public class RegistryObjectManager implements IObjectManager {
 		return result;
 	}
 
+	// The stripe of the cache holding the object with the given id
+	private ReferenceMap getCacheStripe(int id) {
+		return cache[id & (CACHE_STRIPES - 1)];
+	}
+
 	synchronized public void add(RegistryObject registryObject, boolean hold) {
 		if (registryObject.getObjectId() == UNKNOWN) {
 			int id = nextId++;
 			registryObject.setObjectId(id);
 		}
-		cache.put(registryObject.getObjectId(), registryObject);
+		ReferenceMap stripe = getCacheStripe(registryObject.getObjectId());
+		synchronized (stripe) {
+			stripe.put(registryObject.getObjectId(), registryObject);
+		}
 		if (hold)
 			hold(registryObject);
 	}
 
-	private void remove(RegistryObject registryObject, boolean release) {
-		cache.remove(registryObject.getObjectId());
-		if (release)
-			release(registryObject);
-	}
-
 	synchronized void remove(int id, boolean release) {
-		RegistryObject toRemove = (RegistryObject) cache.get(id);
-		if (fileOffsets != null)
-			fileOffsets.removeKey(id);
-		if (toRemove != null)
-			remove(toRemove, release);
+		RegistryObject toRemove;
+		ReferenceMap stripe = getCacheStripe(id);
+		// the offset is removed under the stripe lock so that a concurrent reader can not put back the object it loaded
+		synchronized (stripe) {
+			toRemove = (RegistryObject) stripe.get(id);
+			if (fileOffsets != null)
+				fileOffsets.removeKey(id);
+			if (toRemove != null)
+				stripe.remove(id);
+		}
+		if (toRemove != null && release)
+			release(toRemove);
 	}
 
 	private void hold(RegistryObject toHold) {
@@ -258,22 +276,46 @@ public class RegistryObjectManager implements IObjectManager {
 		heldObjects.remove(toRelease);
 	}
 
-	public synchronized Object getObject(int id, byte type) {
+	public Object getObject(int id, byte type) {
 		return basicGetObject(id, type);
 	}
 
+	// Does not lock the object manager: only the stripe of the cache holding the object is locked, and
+	// it is not held while the object is loaded. Two readers might load the same object; the first one 
+	// put in the cache wins. 
 	private Object basicGetObject(int id, byte type) {
-		Object result = cache.get(id);
+		ReferenceMap stripe = getCacheStripe(id);
+		Object result;
+		synchronized (stripe) {
+			result = stripe.get(id);
+		}
 		if (result != null)
 			return result;
-		if (fromCache)
-			result = load(id, type);
+		if (fromCache) {
+			if (type == CONFIGURATION_ELEMENT || type == EXTENSION)
+				result = load(id, type);
+			else
+				result = loadSubtree(id, type);
+		}
 		if (result == null)
 			throw new InvalidRegistryObjectException();
-		cache.put(id, result);
+		synchronized (stripe) {
+			Object existing = stripe.get(id);
+			if (existing != null)
+				return existing;
+			if (fileOffsets.get(id) == Integer.MIN_VALUE) // removed while it was being loaded
+				throw new InvalidRegistryObjectException();
+			stripe.put(id, result);
+		}
 		return result;
 	}
 
+	// Extension points and third level configuration elements are loaded with their children which are 
+	// added to the object manager, so the object manager is locked before the table reader.
+	private synchronized Object loadSubtree(int id, byte type) {
+		return load(id, type);
+	}
+
 	// The current impementation of this method assumes that we don't cache dynamic 
 	// extension. In this case all extensions not yet loaded (i.e. not in the memory cache) 
 	// are "not dynamic" and we actually check memory objects to see if they are dynamic.
@@ -283,13 +325,17 @@ public class RegistryObjectManager implements IObjectManager {
 	// its "dynamic" status. The problem is that id alone is not enough to get the object
 	// from the disk; object type is needed as well.
 	public boolean shouldPersist(int id) {
-		Object result = cache.get(id);
+		Object result;
+		ReferenceMap stripe = getCacheStripe(id);
+		synchronized (stripe) {
+			result = stripe.get(id);
+		}
 		if (result != null)
 			return ((RegistryObject) result).shouldPersist();
 		return true;
 	}
 
-	public synchronized RegistryObject[] getObjects(int[] values, byte type) {
+	public RegistryObject[] getObjects(int[] values, byte type) {
 		if (values.length == 0) {
 			switch (type) {
 				case EXTENSION_POINT :
@@ -321,9 +367,12 @@ public class RegistryObjectManager implements IObjectManager {
 		return results;
 	}
 
-	synchronized ExtensionPoint getExtensionPointObject(String xptUniqueId) {
+	ExtensionPoint getExtensionPointObject(String xptUniqueId) {
 		int id;
-		if ((id = extensionPoints.get(xptUniqueId)) == HashtableOfStringAndInt.MISSING_ELEMENT)
+		synchronized (this) {
+			id = extensionPoints.get(xptUniqueId);
+		}
+		if (id == HashtableOfStringAndInt.MISSING_ELEMENT)
 			return null;
 		return (ExtensionPoint) getObject(id, EXTENSION_POINT);
 	}
@@ -440,6 +489,16 @@ public class RegistryObjectManager implements IObjectManager {
 		return true;
 	}
 
+	// Registers an extension point already added to the object manager under its unique identifier.
+	// Returns false if another extension point is registered with the same identifier.
+	synchronized boolean registerExtensionPoint(ExtensionPoint currentExtPoint) {
+		String uniqueId = currentExtPoint.getUniqueIdentifier();
+		if (extensionPoints.get(uniqueId) != HashtableOfStringAndInt.MISSING_ELEMENT)
+			return false;
+		extensionPoints.put(uniqueId, currentExtPoint.getObjectId());
+		return true;
+	}
+
 	synchronized void removeExtensionPoint(String extensionPointId) {
 		int pointId = extensionPoints.removeKey(extensionPointId);
 		if (pointId == HashtableOfStringAndInt.MISSING_ELEMENT)
@@ -448,7 +507,7 @@ public class RegistryObjectManager implements IObjectManager {
 	}
 
 	public boolean isDirty() {
-		return isDirty;
+		return isDirty || attributeIndexesDirty;
 	}
 
 	public void markDirty() {
@@ -557,11 +616,124 @@ public class RegistryObjectManager implements IObjectManager {
 		return getOrphans();
 	}
 
+	private HashMap getAttributeIndexes() {
+		if (attributeIndexes == null) {
+			if (fromCache)
+				attributeIndexes = registry.getTableReader().loadAttributeIndexes();
+			if (attributeIndexes == null)
+				attributeIndexes = new HashMap();
+		}
+		return attributeIndexes;
+	}
+
+	//This method is only used by the writer to reach in
+	synchronized AttributeIndex[] getAllAttributeIndexes() {
+		ArrayList result = new ArrayList();
+		for (Iterator iter = getAttributeIndexes().values().iterator(); iter.hasNext();)
+			result.addAll(((HashMap) iter.next()).values());
+		return (AttributeIndex[]) result.toArray(new AttributeIndex[result.size()]);
+	}
+
+	/**
+	 * Returns the ids of the top level configuration elements of the extension point which have 
+	 * the given name and whose attribute has the given value. The index answering the query is 
+	 * built on first use and then kept up to date as extensions are linked and unlinked.
+	 * 
+	 * @param extensionPoint the extension point
+	 * @param elementName the name of the elements, or null for all elements
+	 * @param attributeName the name of the attribute
+	 * @param attributeValue the value of the attribute
+	 * @return the ids of the matching configuration elements, in the order of the extensions
+	 */
+	synchronized int[] getIndexedConfigurationElements(ExtensionPoint extensionPoint, String elementName, String attributeName, String attributeValue) {
+		String xptId = extensionPoint.getUniqueIdentifier();
+		HashMap indexes = (HashMap) getAttributeIndexes().get(xptId);
+		if (indexes == null) {
+			indexes = new HashMap();
+			attributeIndexes.put(xptId, indexes);
+		}
+		String key = AttributeIndex.getKey(elementName, attributeName);
+		AttributeIndex index = (AttributeIndex) indexes.get(key);
+		if (index == null) {
+			index = new AttributeIndex(xptId, elementName, attributeName);
+			int[] extensions = extensionPoint.getRawChildren();
+			for (int i = 0; i < extensions.length; i++)
+				addToIndex(index, extensions[i]);
+			indexes.put(key, index);
+			attributeIndexesDirty = true;
+		}
+		return index.get(attributeValue);
+	}
+
+	private void addToIndex(AttributeIndex index, int extension) {
+		int[] elements = ((Extension) getObject(extension, EXTENSION)).getRawChildren();
+		for (int i = 0; i < elements.length; i++)
+			index.add((ConfigurationElement) getObject(elements[i], CONFIGURATION_ELEMENT));
+	}
+
+	/**
+	 * Updates the attribute indexes of the extension point before the extension point is linked 
+	 * to a new set of extensions.
+	 * 
+	 * @param extensionPoint the extension point, still linked to its previous extensions
+	 * @param extensions the extensions about to be linked to the extension point 
+	 */
+	synchronized void updateAttributeIndexes(ExtensionPoint extensionPoint, int[] extensions) {
+		String xptId = extensionPoint.getUniqueIdentifier();
+		HashMap indexes = (HashMap) getAttributeIndexes().get(xptId);
+		if (indexes == null)
+			return;
+		attributeIndexesDirty = true;
+		if (extensions.length == 0) {
+			attributeIndexes.remove(xptId);
+			return;
+		}
+		int[] previous = extensionPoint.getRawChildren();
+		Set previousSet = new HashSet(previous.length);
+		for (int i = 0; i < previous.length; i++)
+			previousSet.add(new Integer(previous[i]));
+		Set linkedSet = new HashSet(extensions.length);
+		for (int i = 0; i < extensions.length; i++)
+			linkedSet.add(new Integer(extensions[i]));
+
+		Set removedElements = new HashSet();
+		for (int i = 0; i < previous.length; i++) {
+			if (linkedSet.contains(new Integer(previous[i])))
+				continue;
+			int[] elements = ((Extension) getObject(previous[i], EXTENSION)).getRawChildren();
+			for (int j = 0; j < elements.length; j++)
+				removedElements.add(new Integer(elements[j]));
+		}
+		for (Iterator iter = indexes.values().iterator(); iter.hasNext();) {
+			AttributeIndex index = (AttributeIndex) iter.next();
+			if (!removedElements.isEmpty())
+				index.remove(removedElements);
+			for (int i = 0; i < extensions.length; i++) {
+				if (!previousSet.contains(new Integer(extensions[i])))
+					addToIndex(index, extensions[i]);
+			}
+		}
+	}
+
 	//	This method is only used by the writer to reach in
 	int getNextId() {
 		return nextId;
 	}
 
+	//	This method is only used by the reader and the writer to reach in
+	OffsetTable getFileOffsets() {
+		return fileOffsets;
+	}
+
+	// Returns the object if it is in memory, without reading it from the cache. 
+	// This method is only used by the writer to reach in
+	RegistryObject getCachedObject(int id) {
+		ReferenceMap stripe = getCacheStripe(id);
+		synchronized (stripe) {
+			return (RegistryObject) stripe.get(id);
+		}
+	}
+
 	//	This method is only used by the writer to reach in
 	HashtableOfStringAndInt getExtensionPoints() {
 		return extensionPoints;
@@ -772,16 +944,20 @@ public class RegistryObjectManager implements IObjectManager {
 		return unlinkChildFromContributions(getFormerContributions().elements, id);
 	}
 
-	synchronized public ExtensionPointHandle[] getExtensionPointsFromNamespace(String namespaceName) {
-		RegistryIndexElement indexElement = getNamespaceIndex(namespaceName);
-		int[] namespaceExtensionPoints = indexElement.getExtensionPoints();
+	public ExtensionPointHandle[] getExtensionPointsFromNamespace(String namespaceName) {
+		int[] namespaceExtensionPoints;
+		synchronized (this) {
+			namespaceExtensionPoints = getNamespaceIndex(namespaceName).getExtensionPoints();
+		}
 		return (ExtensionPointHandle[]) getHandles(namespaceExtensionPoints, EXTENSION_POINT);
 	}
 
 	// This method filters out extensions with no extension point
-	synchronized public ExtensionHandle[] getExtensionsFromNamespace(String namespaceName) {
-		RegistryIndexElement indexElement = getNamespaceIndex(namespaceName);
-		int[] namespaceExtensions = indexElement.getExtensions();
+	public ExtensionHandle[] getExtensionsFromNamespace(String namespaceName) {
+		int[] namespaceExtensions;
+		synchronized (this) {
+			namespaceExtensions = getNamespaceIndex(namespaceName).getExtensions();
+		}
 
 		// filter extensions with no extension point (orphan extensions)
 		List tmp = new ArrayList();
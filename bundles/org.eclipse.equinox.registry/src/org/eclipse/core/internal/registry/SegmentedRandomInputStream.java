@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.registry;
+
+import java.io.*;
+
+/**
+ * Provides buffered reads from a data file of the registry cache stored as a
+ * sequence of segment files. Offsets address the segments as if they were
+ * concatenated: the first byte of a segment is at the total length of the
+ * segments before it.
+ * <p>
+ * A read does not continue into the next segment. Every record of the cache
+ * is written into a single segment.
+ * </p>
+ */
+public class SegmentedRandomInputStream extends InputStream {
+
+	private final BufferedRandomInputStream[] segments;
+	private final long[] starts;
+	private final long length;
+	private BufferedRandomInputStream current;
+
+	public SegmentedRandomInputStream(File[] files) throws IOException {
+		segments = new BufferedRandomInputStream[files.length];
+		starts = new long[files.length];
+		long total = 0;
+		try {
+			for (int i = 0; i < files.length; i++) {
+				segments[i] = new BufferedRandomInputStream(files[i]);
+				starts[i] = total;
+				total += segments[i].length();
+			}
+		} catch (IOException e) {
+			try {
+				close();
+			} catch (IOException e1) {
+				// report the original failure
+			}
+			throw e;
+		}
+		length = total;
+		current = segments[0];
+	}
+
+	/**
+	 * Returns the index of the segment holding the given offset of segments starting
+	 * at the given offsets: the last segment starting at or before the offset.
+	 */
+	static int findSegment(long[] starts, long offset) {
+		int low = 0;
+		int high = starts.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (starts[middle] <= offset)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+	public int read() throws IOException {
+		return current.read();
+	}
+
+	public int read(byte b[], int off, int len) throws IOException {
+		return current.read(b, off, len);
+	}
+
+	public long skip(long n) throws IOException {
+		return current.skip(n);
+	}
+
+	public int available() throws IOException {
+		return current.available();
+	}
+
+	public void close() throws IOException {
+		IOException failure = null;
+		for (int i = 0; i < segments.length; i++) {
+			if (segments[i] == null)
+				continue;
+			try {
+				segments[i].close();
+			} catch (IOException e) {
+				failure = e;
+			}
+			segments[i] = null;
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	public String toString() {
+		return current.toString();
+	}
+
+	/**
+	 * Positions the stream at the given offset of the concatenated segments.
+	 *
+	 * @param pos offset
+	 * @throws IOException
+	 */
+	public void seek(long pos) throws IOException {
+		int segment = findSegment(starts, pos);
+		current = segments[segment];
+		current.seek(pos - starts[segment]);
+	}
+
+	/**
+	 * Returns the length of the given segment.
+	 * @param segment index of the segment
+	 * @return segment length
+	 * @throws IOException
+	 */
+	public long length(int segment) throws IOException {
+		return segments[segment].length();
+	}
+
+	/**
+	 * Returns the total length of the segments.
+	 * @return total length
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Returns the number of segments.
+	 * @return number of segments
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.registry;
+
+import java.io.*;
+import java.util.HashMap;
+
+/**
+ * The distinct strings of the registry cache. The data files refer to the strings
+ * by their id in the table, so a string used by many registry objects is written
+ * once and all the objects read from the cache share the same instance.
+ * <p>
+ * Ids are never reassigned: strings are only added at the end of the table so the
+ * data files written against a table stay valid when the table grows.
+ * </p><p>
+ * The instances are only shared through one table. A table loaded again from the
+ * same file holds new instances, equal to the former ones: the objects read
+ * before keep the instances of the former table, so a string can be held twice
+ * until those objects are reclaimed. The registry compares the strings with
+ * <code>equals</code> only.
+ * </p>
+ */
+public class StringTable {
+	static final int NULL_ID = -1;
+
+	private static final int GROWTH = 256;
+
+	private String[] strings;
+	private int size;
+	private HashMap ids; // key: string, value: Integer id. Only created when strings are added
+
+	public StringTable() {
+		this(new String[GROWTH], 0);
+	}
+
+	private StringTable(String[] strings, int size) {
+		this.strings = strings;
+		this.size = size;
+	}
+
+	/**
+	 * Returns a table starting with the same strings with the same ids, to which strings
+	 * can be added without affecting this table.
+	 */
+	public StringTable copy() {
+		String[] newStrings = new String[size + GROWTH];
+		System.arraycopy(strings, 0, newStrings, 0, size);
+		return new StringTable(newStrings, size);
+	}
+
+	public String get(int id) throws IOException {
+		if (id == NULL_ID)
+			return null;
+		if (id < 0 || id >= size)
+			throw new IOException("Invalid string id: " + id); //$NON-NLS-1$
+		return strings[id];
+	}
+
+	/**
+	 * Returns the id of the string, adding it to the table if needed.
+	 */
+	public int add(String string) {
+		if (string == null)
+			return NULL_ID;
+		if (ids == null) {
+			ids = new HashMap(size * 2 + GROWTH);
+			for (int i = 0; i < size; i++)
+				ids.put(strings[i], new Integer(i));
+		}
+		Integer id = (Integer) ids.get(string);
+		if (id != null)
+			return id.intValue();
+		if (size == strings.length) {
+			String[] newStrings = new String[Math.max(size * 2, GROWTH)];
+			System.arraycopy(strings, 0, newStrings, 0, size);
+			strings = newStrings;
+		}
+		ids.put(string, new Integer(size));
+		strings[size] = string;
+		return size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void save(DataOutputStream out) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++)
+			out.writeUTF(strings[i]);
+	}
+
+	public static StringTable load(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		String[] strings = new String[size];
+		for (int i = 0; i < size; i++)
+			strings[i] = in.readUTF();
+		return new StringTable(strings, size);
+	}
+}
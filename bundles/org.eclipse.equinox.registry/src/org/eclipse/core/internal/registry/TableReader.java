@@ -11,6 +11,8 @@
 package org.eclipse.core.internal.registry;
 
 import java.io.*;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
 import java.util.HashMap;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -23,24 +25,38 @@ public class TableReader {
 	static final int OBJECT = 1;
 
 	//The version of the cache
-	static final int CACHE_VERSION = 7;
+	static final int CACHE_VERSION = 11;
 	// Version 1 -> 2: the contributor Ids changed from "long" to "String"
 	// Version 2 -> 3: added namespace index and the table of contributors
 	// Version 3 -> 4: offset table saved in a binary form (performance)
 	// Version 4 -> 5: remove support added in version 4 to save offset table in a binary form (performance)
 	// Version 5 -> 6: replace HashtableOfInt with OffsetTable (memory usage optimization)
 	// Version 6 -> 7: added option for multi-language support
+	// Version 7 -> 8: added position of the orphans and number of saves since the data files were rewritten
+	// Version 8 -> 9: added the attribute indexes file
+	// Version 9 -> 10: strings of the data files are replaced by their id in the string table
+	// Version 10 -> 11: the data files are stored as segments, replacing the number of saves since the data files were rewritten
 
 	//Informations representing the MAIN file
 	static final String MAIN = ".mainData"; //$NON-NLS-1$
-	BufferedRandomInputStream mainDataFile = null;
+	SegmentedRandomInputStream mainDataFile = null;
+	MappedFileInput mainDataMap = null; // used instead of the mainDataFile when the file can be mapped
 	DataInputStream mainInput = null;
 
 	//Informations representing the EXTRA file
 	static final String EXTRA = ".extraData"; //$NON-NLS-1$
-	BufferedRandomInputStream extraDataFile = null;
+	SegmentedRandomInputStream extraDataFile = null;
+	MappedFileInput extraDataMap = null; // used instead of the extraDataFile when the file can be mapped
 	DataInputStream extraInput = null;
 
+	// The main and extra data files are stored as the same number of segments. A save either writes the 
+	// data files from scratch as a single segment or adds a segment holding only the extension point trees 
+	// that changed and the orphans; the trees of the previous segments are kept where they are. Offsets 
+	// address the segments as if they were concatenated.
+	// Position of the orphan extensions in the data files, always in the last segment
+	int orphansMainOffset;
+	int orphansExtraOffset;
+
 	//The table file
 	static final String TABLE = ".table"; //$NON-NLS-1$
 	File tableFile;
@@ -61,6 +77,18 @@ public class TableReader {
 	static final String ORPHANS = ".orphans"; //$NON-NLS-1$
 	File orphansFile;
 
+	//The string table file
+	static final String STRINGS = ".strings"; //$NON-NLS-1$
+	File stringsFile;
+	// SoftReference to the StringTable shared by the objects read from the data files. It is read on first
+	// use, and read again if it was reclaimed; the objects already read keep the strings they use, which
+	// are not shared with the objects read through the new table.
+	private volatile SoftReference stringTable = null;
+
+	//The attribute indexes file
+	static final String ATTRIBUTE_INDEXES = ".attributeIndexes"; //$NON-NLS-1$
+	File attributeIndexesFile;
+
 	//Status code
 	private static final byte fileError = 0;
 	private static final boolean DEBUG = false; //TODO need to change
@@ -69,16 +97,96 @@ public class TableReader {
 
 	private ExtensionRegistry registry;
 
-	void setMainDataFile(File main) throws IOException {
-		mainDataFile = new BufferedRandomInputStream(main);
+	// Memory mapped data files are read concurrently without locking. The java.nio 
+	// classes are not available on all the supported execution environments.
+	// A mapping is only released when its buffer is garbage collected and Windows 
+	// does not allow a mapped file to be deleted or replaced, so the cache files 
+	// would stay locked after the reader is closed. Mapping is therefore opt-in 
+	// and never used on Windows.
+	private static final boolean mappingAvailable = isMappingAvailable();
+
+	private static boolean isMappingAvailable() {
+		if (File.separatorChar == '\\')
+			return false;
+		try {
+			Class.forName("java.nio.MappedByteBuffer"); //$NON-NLS-1$
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	// Returns null if the file could not be mapped
+	private MappedFileInput mapFile(File[] segments) {
+		if (!mappingAvailable || !"true".equalsIgnoreCase(RegistryProperties.getProperty(IRegistryConstants.PROP_MAPPED_CACHE))) //$NON-NLS-1$
+			return null;
+		try {
+			return new MappedFileInput(segments);
+		} catch (IOException e) {
+			// fall back to the buffered stream
+		} catch (RuntimeException e) {
+			// some file systems do not support mapping
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the name under which the given segment of a data file is stored.
+	 */
+	static String getSegmentName(String name, int segment) {
+		return segment == 0 ? name : name + segment;
+	}
+
+	void setMainDataFile(File[] segments) throws IOException {
+		mainDataMap = mapFile(segments);
+		if (mainDataMap != null) {
+			mainInput = mainDataMap.getInput(0);
+			return;
+		}
+		mainDataFile = new SegmentedRandomInputStream(segments);
 		mainInput = new DataInputStream(mainDataFile);
 	}
 
-	void setExtraDataFile(File extra) throws IOException {
-		extraDataFile = new BufferedRandomInputStream(extra);
+	void setExtraDataFile(File[] segments) throws IOException {
+		extraDataMap = mapFile(segments);
+		if (extraDataMap != null) {
+			extraInput = extraDataMap.getInput(0);
+			return;
+		}
+		extraDataFile = new SegmentedRandomInputStream(segments);
 		extraInput = new DataInputStream(extraDataFile);
 	}
 
+	/**
+	 * Returns the number of segments of the data files, or 0 if the data files are not set.
+	 */
+	int getDataSegmentCount() {
+		if (mainDataMap != null)
+			return mainDataMap.getSegmentCount();
+		return mainDataFile != null ? mainDataFile.getSegmentCount() : 0;
+	}
+
+	/**
+	 * Returns the lengths of the segments of the main data file.
+	 */
+	long[] getMainDataSegmentLengths() throws IOException {
+		return getSegmentLengths(mainDataMap, mainDataFile);
+	}
+
+	/**
+	 * Returns the lengths of the segments of the extra data file.
+	 */
+	long[] getExtraDataSegmentLengths() throws IOException {
+		return getSegmentLengths(extraDataMap, extraDataFile);
+	}
+
+	private static long[] getSegmentLengths(MappedFileInput map, SegmentedRandomInputStream file) throws IOException {
+		long[] lengths = new long[map != null ? map.getSegmentCount() : file.getSegmentCount()];
+		for (int i = 0; i < lengths.length; i++)
+			lengths[i] = map != null ? map.length(i) : file.length(i);
+		return lengths;
+	}
+
 	void setTableFile(File table) {
 		tableFile = table;
 	}
@@ -99,6 +207,14 @@ public class TableReader {
 		orphansFile = orphan;
 	}
 
+	void setStringsFile(File file) {
+		stringsFile = file;
+	}
+
+	void setAttributeIndexesFile(File file) {
+		attributeIndexesFile = file;
+	}
+
 	public TableReader(ExtensionRegistry registry) {
 		this.registry = registry;
 	}
@@ -114,6 +230,8 @@ public class TableReader {
 				return null;
 
 			Integer nextId = new Integer(tableInput.readInt());
+			orphansMainOffset = tableInput.readInt();
+			orphansExtraOffset = tableInput.readInt();
 			OffsetTable offsets = OffsetTable.load(tableInput);
 			extensionPoints = new HashtableOfStringAndInt();
 			extensionPoints.load(tableInput);
@@ -142,12 +260,19 @@ public class TableReader {
 
 			long installStamp = in.readLong();
 			long registryStamp = in.readLong();
-			long mainDataFileSize = in.readLong();
-			long extraDataFileSize = in.readLong();
+			int segments = in.readInt();
+			long[] mainDataSegmentSizes = new long[segments];
+			long[] extraDataSegmentSizes = new long[segments];
+			for (int i = 0; i < segments; i++) {
+				mainDataSegmentSizes[i] = in.readLong();
+				extraDataSegmentSizes[i] = in.readLong();
+			}
 			long contributionsFileSize = in.readLong();
 			long contributorsFileSize = in.readLong();
 			long namespacesFileSize = in.readLong();
 			long orphansFileSize = in.readLong();
+			long attributeIndexesFileSize = in.readLong();
+			long stringsFileSize = in.readLong();
 			String osStamp = in.readUTF();
 			String windowsStamp = in.readUTF();
 			String localeStamp = in.readUTF();
@@ -163,14 +288,16 @@ public class TableReader {
 			if (!validTime || !validInstall || !validOS || !validWS || !validNL || !validMultiLang)
 				return false;
 
-			boolean validMain = (mainDataFileSize == mainDataFile.length());
-			boolean validExtra = (extraDataFileSize == extraDataFile.length());
+			boolean validMain = Arrays.equals(mainDataSegmentSizes, getMainDataSegmentLengths());
+			boolean validExtra = Arrays.equals(extraDataSegmentSizes, getExtraDataSegmentLengths());
 			boolean validContrib = (contributionsFileSize == contributionsFile.length());
 			boolean validContributors = (contributorsFileSize == contributorsFile.length());
 			boolean validNamespace = (namespacesFileSize == namespacesFile.length());
 			boolean validOrphan = (orphansFileSize == orphansFile.length());
+			boolean validAttributeIndexes = (attributeIndexesFileSize == attributeIndexesFile.length());
+			boolean validStrings = (stringsFileSize == stringsFile.length());
 
-			return (validMain && validExtra && validContrib && validContributors && validNamespace && validOrphan);
+			return (validMain && validExtra && validContrib && validContributors && validNamespace && validOrphan && validAttributeIndexes && validStrings);
 		} catch (IOException e) {
 			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, RegistryMessages.meta_registryCacheInconsistent, e));
 			return false;
@@ -179,12 +306,14 @@ public class TableReader {
 
 	public Object loadConfigurationElement(int offset) {
 		try {
+			if (mainDataMap != null)
+				return basicLoadConfigurationElement(mainDataMap.getInput(offset), null);
 			synchronized (mainDataFile) {
 				goToInputFile(offset);
 				return basicLoadConfigurationElement(mainInput, null);
 			}
 		} catch (IOException e) {
-			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, mainDataFile);
+			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, getMainDataName());
 			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, message, e));
 			if (DEBUG)
 				log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, "Error reading a configuration element (" + offset + ") from the registry cache", e)); //$NON-NLS-1$//$NON-NLS-2$
@@ -193,13 +322,14 @@ public class TableReader {
 	}
 
 	private ConfigurationElement basicLoadConfigurationElement(DataInputStream is, String actualContributorId) throws IOException {
+		StringTable strings = getStringTable();
 		int self = is.readInt();
-		String contributorId = readStringOrNull(is);
-		String name = readStringOrNull(is);
+		String contributorId = strings.get(is.readInt());
+		String name = strings.get(is.readInt());
 		int parentId = is.readInt();
 		byte parentType = is.readByte();
 		int misc = is.readInt();//this is set in second level CEs, to indicate where in the extra data file the children CEs are
-		String[] propertiesAndValue = readPropertiesAndValue(is);
+		String[] propertiesAndValue = readPropertiesAndValue(is, strings);
 		int[] children = readArray(is);
 		if (actualContributorId == null)
 			actualContributorId = contributorId;
@@ -235,12 +365,14 @@ public class TableReader {
 
 	public Object loadThirdLevelConfigurationElements(int offset, RegistryObjectManager objectManager) {
 		try {
+			if (extraDataMap != null)
+				return loadConfigurationElementAndChildren(null, extraDataMap.getInput(offset), 3, Integer.MAX_VALUE, objectManager, null);
 			synchronized (extraDataFile) {
 				goToExtraFile(offset);
 				return loadConfigurationElementAndChildren(null, extraInput, 3, Integer.MAX_VALUE, objectManager, null);
 			}
 		} catch (IOException e) {
-			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, extraDataFile);
+			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, getExtraDataName());
 			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, message, e));
 			if (DEBUG)
 				log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, "Error reading a third level configuration element (" + offset + ") from the registry cache", e)); //$NON-NLS-1$//$NON-NLS-2$
@@ -268,25 +400,27 @@ public class TableReader {
 		return ce;
 	}
 
-	private String[] readPropertiesAndValue(DataInputStream inputStream) throws IOException {
+	private String[] readPropertiesAndValue(DataInputStream inputStream, StringTable strings) throws IOException {
 		int numberOfProperties = inputStream.readInt();
 		if (numberOfProperties == 0)
 			return RegistryObjectManager.EMPTY_STRING_ARRAY;
 		String[] properties = new String[numberOfProperties];
 		for (int i = 0; i < numberOfProperties; i++) {
-			properties[i] = readStringOrNull(inputStream);
+			properties[i] = strings.get(inputStream.readInt());
 		}
 		return properties;
 	}
 
 	public Object loadExtension(int offset) {
 		try {
+			if (mainDataMap != null)
+				return basicLoadExtension(mainDataMap.getInput(offset));
 			synchronized (mainDataFile) {
 				goToInputFile(offset);
 				return basicLoadExtension(mainInput);
 			}
 		} catch (IOException e) {
-			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, mainDataFile);
+			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, getMainDataName());
 			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, message, e));
 			if (DEBUG)
 				log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, "Error reading an extension (" + offset + ") from the registry cache", e)); //$NON-NLS-1$//$NON-NLS-2$
@@ -295,37 +429,25 @@ public class TableReader {
 	}
 
 	private Extension basicLoadExtension(DataInputStream inputStream) throws IOException {
+		StringTable strings = getStringTable();
 		int self = inputStream.readInt();
-		String simpleId = readStringOrNull(mainInput);
-		String namespace = readStringOrNull(mainInput);
-		int[] children = readArray(mainInput);
-		int extraData = mainInput.readInt();
+		String simpleId = strings.get(inputStream.readInt());
+		String namespace = strings.get(inputStream.readInt());
+		int[] children = readArray(inputStream);
+		int extraData = inputStream.readInt();
 		return getObjectFactory().createExtension(self, simpleId, namespace, children, extraData, true);
 	}
 
 	public ExtensionPoint loadExtensionPointTree(int offset, RegistryObjectManager objects) {
 		try {
+			if (mainDataMap != null)
+				return basicLoadExtensionPointTree(mainDataMap.getInput(offset), objects);
 			synchronized (mainDataFile) {
-				ExtensionPoint xpt = (ExtensionPoint) loadExtensionPoint(offset);
-				int[] children = xpt.getRawChildren();
-				int nbrOfExtension = children.length;
-				for (int i = 0; i < nbrOfExtension; i++) {
-					Extension loaded = basicLoadExtension(mainInput);
-					objects.add(loaded, holdObjects);
-				}
-
-				for (int i = 0; i < nbrOfExtension; i++) {
-					int nbrOfCe = mainInput.readInt();
-					for (int j = 0; j < nbrOfCe; j++) {
-						// note that max depth is set to 2 and extra input is never going to 
-						// be used in this call to the loadConfigurationElementAndChildren().
-						objects.add(loadConfigurationElementAndChildren(mainInput, null, 1, 2, objects, null), holdObjects);
-					}
-				}
-				return xpt;
+				goToInputFile(offset);
+				return basicLoadExtensionPointTree(mainInput, objects);
 			}
 		} catch (IOException e) {
-			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, mainDataFile);
+			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, getMainDataName());
 			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, message, e));
 			if (DEBUG)
 				log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, "Error reading an extension point tree (" + offset + ") from the registry cache", e)); //$NON-NLS-1$//$NON-NLS-2$
@@ -333,23 +455,30 @@ public class TableReader {
 		}
 	}
 
-	private Object loadExtensionPoint(int offset) {
-		try {
-			goToInputFile(offset);
-			return basicLoadExtensionPoint();
-		} catch (IOException e) {
-			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, mainDataFile);
-			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, message, e));
-			if (DEBUG)
-				log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, "Error reading an extension point (" + offset + ") from the registry cache", e)); //$NON-NLS-1$ //$NON-NLS-2$
-			return null;
+	private ExtensionPoint basicLoadExtensionPointTree(DataInputStream is, RegistryObjectManager objects) throws IOException {
+		ExtensionPoint xpt = basicLoadExtensionPoint(is);
+		int[] children = xpt.getRawChildren();
+		int nbrOfExtension = children.length;
+		for (int i = 0; i < nbrOfExtension; i++) {
+			Extension loaded = basicLoadExtension(is);
+			objects.add(loaded, holdObjects);
 		}
+
+		for (int i = 0; i < nbrOfExtension; i++) {
+			int nbrOfCe = is.readInt();
+			for (int j = 0; j < nbrOfCe; j++) {
+				// note that max depth is set to 2 and extra input is never going to 
+				// be used in this call to the loadConfigurationElementAndChildren().
+				objects.add(loadConfigurationElementAndChildren(is, null, 1, 2, objects, null), holdObjects);
+			}
+		}
+		return xpt;
 	}
 
-	private ExtensionPoint basicLoadExtensionPoint() throws IOException {
-		int self = mainInput.readInt();
-		int[] children = readArray(mainInput);
-		int extraData = mainInput.readInt();
+	private ExtensionPoint basicLoadExtensionPoint(DataInputStream is) throws IOException {
+		int self = is.readInt();
+		int[] children = readArray(is);
+		int extraData = is.readInt();
 		return getObjectFactory().createExtensionPoint(self, children, extraData, true);
 	}
 
@@ -372,6 +501,66 @@ public class TableReader {
 		extraDataFile.seek(offset);
 	}
 
+	// Positions the main input used to read the whole cache
+	private void goToMainInput(int offset) throws IOException {
+		if (mainDataMap != null)
+			mainInput = mainDataMap.getInput(offset);
+		else
+			goToInputFile(offset);
+	}
+
+	// Positions the extra input used to read the whole cache
+	private void goToExtraInput(int offset) throws IOException {
+		if (extraDataMap != null)
+			extraInput = extraDataMap.getInput(offset);
+		else
+			goToExtraFile(offset);
+	}
+
+	// The name of the main data file used for logging
+	private Object getMainDataName() {
+		return mainDataMap != null ? (Object) mainDataMap : mainDataFile;
+	}
+
+	// The name of the extra data file used for logging
+	private Object getExtraDataName() {
+		return extraDataMap != null ? (Object) extraDataMap : extraDataFile;
+	}
+
+	/**
+	 * Returns the string table of the data files, reading it on first use. The table
+	 * is only softly reachable from the reader so it can be reclaimed under memory 
+	 * pressure; it is then read again on the next use. The strings of a table read
+	 * again are new instances, which are not shared with the objects read before
+	 * (see {@link StringTable}). Once read, the table is returned without locking.
+	 * 
+	 * @return the string table
+	 * @throws IOException if the table can not be read
+	 */
+	StringTable getStringTable() throws IOException {
+		StringTable result = getLoadedStringTable();
+		if (result != null)
+			return result;
+		synchronized (stringsFile) {
+			result = getLoadedStringTable();
+			if (result != null)
+				return result;
+			DataInputStream stringsInput = new DataInputStream(new BufferedInputStream(new FileInputStream(stringsFile)));
+			try {
+				result = StringTable.load(stringsInput);
+			} finally {
+				stringsInput.close();
+			}
+			stringTable = new SoftReference(result);
+			return result;
+		}
+	}
+
+	private StringTable getLoadedStringTable() {
+		SoftReference reference = stringTable;
+		return reference == null ? null : (StringTable) reference.get();
+	}
+
 	private String readStringOrNull(DataInputStream in) throws IOException {
 		byte type = in.readByte();
 		if (type == NULL)
@@ -379,14 +568,43 @@ public class TableReader {
 		return in.readUTF();
 	}
 
+	/**
+	 * Reads the children of the extension point stored at the given offset as
+	 * they were when the cache was saved.
+	 * 
+	 * @param offset the offset of the extension point in the main data file
+	 * @return the children of the extension point, or null if they could not be read
+	 */
+	public int[] loadExtensionPointChildren(int offset) {
+		try {
+			if (mainDataMap != null)
+				return basicLoadExtensionPointChildren(mainDataMap.getInput(offset));
+			synchronized (mainDataFile) {
+				goToInputFile(offset);
+				return basicLoadExtensionPointChildren(mainInput);
+			}
+		} catch (IOException e) {
+			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, getMainDataName());
+			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, message, e));
+			return null;
+		}
+	}
+
+	private int[] basicLoadExtensionPointChildren(DataInputStream is) throws IOException {
+		is.readInt(); // the id of the extension point
+		return readArray(is);
+	}
+
 	public String[] loadExtensionExtraData(int dataPosition) {
 		try {
+			if (extraDataMap != null)
+				return basicLoadExtensionExtraData(extraDataMap.getInput(dataPosition));
 			synchronized (extraDataFile) {
 				goToExtraFile(dataPosition);
-				return basicLoadExtensionExtraData();
+				return basicLoadExtensionExtraData(extraInput);
 			}
 		} catch (IOException e) {
-			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, extraDataFile);
+			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, getExtraDataName());
 			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, message, e));
 			if (DEBUG)
 				log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, "Error reading extension label (" + dataPosition + ") from the registry cache", e)); //$NON-NLS-1$ //$NON-NLS-2$
@@ -394,18 +612,21 @@ public class TableReader {
 		}
 	}
 
-	private String[] basicLoadExtensionExtraData() throws IOException {
-		return new String[] {readStringOrNull(extraInput), readStringOrNull(extraInput), readStringOrNull(extraInput)};
+	private String[] basicLoadExtensionExtraData(DataInputStream is) throws IOException {
+		StringTable strings = getStringTable();
+		return new String[] {strings.get(is.readInt()), strings.get(is.readInt()), strings.get(is.readInt())};
 	}
 
 	public String[] loadExtensionPointExtraData(int offset) {
 		try {
+			if (extraDataMap != null)
+				return basicLoadExtensionPointExtraData(extraDataMap.getInput(offset));
 			synchronized (extraDataFile) {
 				goToExtraFile(offset);
-				return basicLoadExtensionPointExtraData();
+				return basicLoadExtensionPointExtraData(extraInput);
 			}
 		} catch (IOException e) {
-			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, extraDataFile);
+			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, getExtraDataName());
 			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, message, e));
 			if (DEBUG)
 				log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, "Error reading extension point data (" + offset + ") from the registry cache", e)); //$NON-NLS-1$ //$NON-NLS-2$
@@ -413,13 +634,14 @@ public class TableReader {
 		}
 	}
 
-	private String[] basicLoadExtensionPointExtraData() throws IOException {
+	private String[] basicLoadExtensionPointExtraData(DataInputStream is) throws IOException {
+		StringTable strings = getStringTable();
 		String[] result = new String[5];
-		result[0] = readStringOrNull(extraInput); //the label
-		result[1] = readStringOrNull(extraInput); //the schema
-		result[2] = readStringOrNull(extraInput); //the fully qualified name
-		result[3] = readStringOrNull(extraInput); //the namespace
-		result[4] = readStringOrNull(extraInput); //the contributor Id 
+		result[0] = strings.get(is.readInt()); //the label
+		result[1] = strings.get(is.readInt()); //the schema
+		result[2] = strings.get(is.readInt()); //the fully qualified name
+		result[3] = strings.get(is.readInt()); //the namespace
+		result[4] = strings.get(is.readInt()); //the contributor Id 
 		return result;
 	}
 
@@ -517,6 +739,8 @@ public class TableReader {
 
 	private void loadAllOrphans(RegistryObjectManager objectManager) throws IOException {
 		//Read the extensions and configuration elements of the orphans
+		goToMainInput(orphansMainOffset);
+		goToExtraInput(orphansExtraOffset);
 		int orphans = objectManager.getOrphanExtensions().size();
 		for (int k = 0; k < orphans; k++) {
 			int numberOfOrphanExtensions = mainInput.readInt();
@@ -535,13 +759,16 @@ public class TableReader {
 	// Do not need to synchronize - called only from a synchronized method
 	public boolean readAllCache(RegistryObjectManager objectManager) {
 		try {
-			int size = objectManager.getExtensionPoints().size();
-			for (int i = 0; i < size; i++) {
+			// the extension point trees are not necessarily contiguous in the data files
+			int[] extensionPoints = objectManager.getExtensionPoints().getValues();
+			OffsetTable offsets = objectManager.getFileOffsets();
+			for (int i = 0; i < extensionPoints.length; i++) {
+				goToMainInput(offsets.get(extensionPoints[i]));
 				objectManager.add(readAllExtensionPointTree(objectManager), holdObjects);
 			}
 			loadAllOrphans(objectManager);
 		} catch (IOException e) {
-			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, mainDataFile);
+			String message = NLS.bind(RegistryMessages.meta_regCacheIOExceptionReading, getMainDataName());
 			log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, fileError, message, e));
 			return false;
 		}
@@ -566,8 +793,10 @@ public class TableReader {
 	}
 
 	private ExtensionPoint loadFullExtensionPoint() throws IOException { //TODO I don't like this. 
-		ExtensionPoint xpt = basicLoadExtensionPoint();
-		String[] tmp = basicLoadExtensionPointExtraData();
+		ExtensionPoint xpt = basicLoadExtensionPoint(mainInput);
+		// the extra data of the whole tree follows the extra data of the extension point
+		goToExtraInput(xpt.getExtraDataOffset());
+		String[] tmp = basicLoadExtensionPointExtraData(extraInput);
 		xpt.setLabel(tmp[0]);
 		xpt.setSchema(tmp[1]);
 		xpt.setUniqueIdentifier(tmp[2]);
@@ -579,7 +808,7 @@ public class TableReader {
 	private Extension loadFullExtension(RegistryObjectManager objectManager) throws IOException {
 		String[] tmp;
 		Extension loaded = basicLoadExtension(mainInput);
-		tmp = basicLoadExtensionExtraData();
+		tmp = basicLoadExtensionExtraData(extraInput);
 		loaded.setLabel(tmp[0]);
 		loaded.setExtensionPointIdentifier(tmp[1]);
 		loaded.setContributorId(tmp[2]);
@@ -613,6 +842,46 @@ public class TableReader {
 		}
 	}
 
+	// Map key: extension point unique id, value: HashMap of AttributeIndex by index key
+	public HashMap loadAttributeIndexes() {
+		DataInputStream indexInput = null;
+		try {
+			synchronized (attributeIndexesFile) {
+				indexInput = new DataInputStream(new BufferedInputStream(new FileInputStream(attributeIndexesFile)));
+				int size = indexInput.readInt();
+				HashMap result = new HashMap();
+				for (int i = 0; i < size; i++) {
+					String extensionPoint = indexInput.readUTF();
+					String elementName = readStringOrNull(indexInput);
+					String attributeName = indexInput.readUTF();
+					int valueCount = indexInput.readInt();
+					HashMap values = new HashMap(valueCount);
+					for (int j = 0; j < valueCount; j++) {
+						String value = indexInput.readUTF();
+						values.put(value, readArray(indexInput));
+					}
+					AttributeIndex index = new AttributeIndex(extensionPoint, elementName, attributeName, values);
+					HashMap indexes = (HashMap) result.get(extensionPoint);
+					if (indexes == null) {
+						indexes = new HashMap();
+						result.put(extensionPoint, indexes);
+					}
+					indexes.put(index.getKey(), index);
+				}
+				return result;
+			}
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (indexInput != null)
+				try {
+					indexInput.close();
+				} catch (IOException e1) {
+					//ignore
+				}
+		}
+	}
+
 	// Don't need to synchronize - called only from a synchronized method
 	public void setHoldObjects(boolean holdObjects) {
 		this.holdObjects = holdObjects;
@@ -632,6 +901,10 @@ public class TableReader {
 	}
 
 	public void close() {
+		if (mainDataMap != null)
+			mainDataMap.close();
+		if (extraDataMap != null)
+			extraDataMap.close();
 		try {
 			if (mainInput != null)
 				mainInput.close();
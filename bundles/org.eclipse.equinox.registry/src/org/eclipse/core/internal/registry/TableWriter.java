@@ -18,6 +18,10 @@ import org.eclipse.core.runtime.spi.RegistryContributor;
 public class TableWriter {
 	private static final byte fileError = 0;
 
+	// The data files are compacted, that is written from scratch as a single segment, once they have this 
+	// number of segments, which drops the outdated copies of changed extension point trees
+	static final int MAX_DATA_SEGMENTS = 10;
+
 	File mainDataFile;
 	File extraDataFile;
 	File tableFile;
@@ -25,6 +29,8 @@ public class TableWriter {
 	File contributorsFile;
 	File namespacesFile;
 	File orphansFile;
+	File attributeIndexesFile;
+	File stringsFile;
 
 	void setMainDataFile(File main) {
 		mainDataFile = main;
@@ -54,12 +60,32 @@ public class TableWriter {
 		orphansFile = orphan;
 	}
 
+	void setStringsFile(File file) {
+		stringsFile = file;
+	}
+
+	void setAttributeIndexesFile(File file) {
+		attributeIndexesFile = file;
+	}
+
 	DataOutputStream mainOutput;
 	DataOutputStream extraOutput;
 	FileOutputStream mainFileOutput = null;
 	FileOutputStream extraFileOutput = null;
 
 	private OffsetTable offsets;
+	private StringTable strings;
+
+	private int orphansMainOffset;
+	private int orphansExtraOffset;
+
+	// The segment of the data files being written and the lengths of the previous segments
+	private int segment;
+	private long[] mainSegmentLengths;
+	private long[] extraSegmentLengths;
+	// The offsets at which the segment being written starts
+	private int mainBase;
+	private int extraBase;
 
 	private ExtensionRegistry registry;
 	private RegistryObjectManager objectManager;
@@ -68,8 +94,24 @@ public class TableWriter {
 		this.registry = registry;
 	}
 
+	private int getMainDataPosition() {
+		return mainBase + mainOutput.size();
+	}
+
 	private int getExtraDataPosition() {
-		return extraOutput.size();
+		return extraBase + extraOutput.size();
+	}
+
+	private int getPosition(DataOutputStream output) {
+		return output == extraOutput ? getExtraDataPosition() : getMainDataPosition();
+	}
+
+	/**
+	 * Returns the segment of the data files written by the last save. The data files
+	 * have been compacted into a single segment if it is 0.
+	 */
+	int getDataSegment() {
+		return segment;
 	}
 
 	public boolean saveCache(RegistryObjectManager objectManager, long timestamp) {
@@ -138,18 +180,86 @@ public class TableWriter {
 
 	private void saveExtensionRegistry(long timestamp) throws IOException {
 		ExtensionPointHandle[] points = objectManager.getExtensionPointsHandles();
-		offsets = new OffsetTable(objectManager.getNextId());
+		boolean[] unchanged = findUnchangedExtensionPoints(points);
+		if (unchanged == null) {
+			offsets = new OffsetTable(objectManager.getNextId());
+			strings = new StringTable();
+			segment = 0;
+			mainSegmentLengths = new long[0];
+			extraSegmentLengths = new long[0];
+		} else {
+			// Keep the previous segments of the data files and write only the extension point trees that 
+			// changed into a new segment; the unchanged trees are not serialized again. The 
+			// objects that have been removed have already been removed from the offsets.
+			TableReader reader = registry.getTableReader();
+			offsets = objectManager.getFileOffsets().copy(objectManager.getNextId());
+			strings = reader.getStringTable().copy(); // the previous segments refer to its ids
+			segment = reader.getDataSegmentCount();
+			mainSegmentLengths = reader.getMainDataSegmentLengths();
+			extraSegmentLengths = reader.getExtraDataSegmentLengths();
+		}
+		mainBase = (int) sum(mainSegmentLengths);
+		extraBase = (int) sum(extraSegmentLengths);
 		for (int i = 0; i < points.length; i++) {
-			saveExtensionPoint(points[i]);
+			if (unchanged == null || !unchanged[i])
+				saveExtensionPoint(points[i]);
 		}
+		orphansMainOffset = getMainDataPosition();
+		orphansExtraOffset = getExtraDataPosition();
 		saveOrphans();
 		saveContributions(objectManager.getContributions());
 		saveContributors(objectManager.getContributors());
 		saveNamespaces(objectManager.getNamespacesIndex());
+		saveAttributeIndexes(objectManager.getAllAttributeIndexes());
+		saveStrings();
 		closeFiles(); //Close the files here so we can write the appropriate size information in the table file.
 		saveTables(timestamp); //Write the table last so if that is something went wrong we can know
 	}
 
+	/*
+	 * Returns which extension points are unchanged since the cache was read, or null if the data 
+	 * files have to be written from scratch. An extension point is changed when extensions are linked 
+	 * to it or unlinked from it, which also holds it in memory; an extension point which is not in 
+	 * memory does not need to be checked.
+	 */
+	private boolean[] findUnchangedExtensionPoints(ExtensionPointHandle[] points) {
+		TableReader reader = registry.getTableReader();
+		OffsetTable previousOffsets = objectManager.getFileOffsets();
+		if (previousOffsets == null || reader.getDataSegmentCount() == 0)
+			return null; // the registry was not read from the cache
+		if (registry.isMultiLanguage() || reader.getDataSegmentCount() >= MAX_DATA_SEGMENTS)
+			return null; // configuration elements might have new translations, or the data files hold too many outdated trees
+
+		boolean[] unchanged = new boolean[points.length];
+		int changed = 0;
+		for (int i = 0; i < points.length; i++) {
+			int id = points[i].getId();
+			int offset = previousOffsets.get(id);
+			if (offset != Integer.MIN_VALUE) {
+				RegistryObject xpt = objectManager.getCachedObject(id);
+				if (xpt == null)
+					unchanged[i] = true;
+				else {
+					int[] previousChildren = reader.loadExtensionPointChildren(offset);
+					unchanged[i] = previousChildren != null && Arrays.equals(previousChildren, filter(xpt.getRawChildren()));
+				}
+			}
+			if (!unchanged[i])
+				changed++;
+		}
+		// compact the data files if most of the registry is written again anyway
+		if (changed * 2 > points.length)
+			return null;
+		return unchanged;
+	}
+
+	private static long sum(long[] values) {
+		long result = 0;
+		for (int i = 0; i < values.length; i++)
+			result += values[i];
+		return result;
+	}
+
 	private void saveContributions(KeyedHashSet[] contributions) throws IOException {
 		FileOutputStream fosNamespace = new FileOutputStream(contributionsFile);
 		DataOutputStream outputNamespace = new DataOutputStream(new BufferedOutputStream(fosNamespace));
@@ -255,6 +365,8 @@ public class TableWriter {
 		DataOutputStream outputTable = new DataOutputStream(new BufferedOutputStream(fosTable));
 		writeCacheHeader(outputTable, registryTimeStamp);
 		outputTable.writeInt(objectManager.getNextId());
+		outputTable.writeInt(orphansMainOffset);
+		outputTable.writeInt(orphansExtraOffset);
 		offsets.save(outputTable);
 		objectManager.getExtensionPoints().save(outputTable, objectManager); // uses writer to filter contents
 		outputTable.flush();
@@ -266,12 +378,19 @@ public class TableWriter {
 		output.writeInt(TableReader.CACHE_VERSION);
 		output.writeLong(registry.computeState());
 		output.writeLong(registryTimeStamp);
+		output.writeInt(segment + 1);
+		for (int i = 0; i < segment; i++) {
+			output.writeLong(mainSegmentLengths[i]);
+			output.writeLong(extraSegmentLengths[i]);
+		}
 		output.writeLong(mainDataFile.length());
 		output.writeLong(extraDataFile.length());
 		output.writeLong(contributionsFile.length());
 		output.writeLong(contributorsFile.length());
 		output.writeLong(namespacesFile.length());
 		output.writeLong(orphansFile.length());
+		output.writeLong(attributeIndexesFile.length());
+		output.writeLong(stringsFile.length());
 		output.writeUTF(RegistryProperties.getProperty(IRegistryConstants.PROP_OS, RegistryProperties.empty));
 		output.writeUTF(RegistryProperties.getProperty(IRegistryConstants.PROP_WS, RegistryProperties.empty));
 		output.writeUTF(RegistryProperties.getProperty(IRegistryConstants.PROP_NL, RegistryProperties.empty));
@@ -293,7 +412,7 @@ public class TableWriter {
 		if (!xpt.shouldPersist())
 			return;
 		//save the file position
-		offsets.put(xpt.getId(), mainOutput.size());
+		offsets.put(xpt.getId(), getMainDataPosition());
 		//save the extensionPoint
 		mainOutput.writeInt(xpt.getId());
 		saveArray(filter(xpt.getObject().getRawChildren()), mainOutput);
@@ -306,10 +425,10 @@ public class TableWriter {
 	private void saveExtension(ExtensionHandle ext, DataOutputStream outputStream) throws IOException {
 		if (!ext.shouldPersist())
 			return;
-		offsets.put(ext.getId(), outputStream.size());
+		offsets.put(ext.getId(), getPosition(outputStream));
 		outputStream.writeInt(ext.getId());
-		writeStringOrNull(ext.getSimpleIdentifier(), outputStream);
-		writeStringOrNull(ext.getNamespaceIdentifier(), outputStream);
+		writeString(ext.getSimpleIdentifier(), outputStream);
+		writeString(ext.getNamespaceIdentifier(), outputStream);
 		saveArray(filter(ext.getObject().getRawChildren()), outputStream);
 		outputStream.writeInt(getExtraDataPosition());
 		saveExtensionData(ext);
@@ -339,17 +458,21 @@ public class TableWriter {
 		if (depth > 2)
 			currentOutput = extraOutputStream;
 
-		offsets.put(element.getId(), currentOutput.size());
+		offsets.put(element.getId(), getPosition(currentOutput));
 
 		currentOutput.writeInt(element.getId());
 		ConfigurationElement actualCe = (ConfigurationElement) element.getObject();
 
-		writeStringOrNull(actualCe.getContributorId(), currentOutput);
-		writeStringOrNull(actualCe.getName(), currentOutput);
+		writeString(actualCe.getContributorId(), currentOutput);
+		writeString(actualCe.getName(), currentOutput);
 		currentOutput.writeInt(actualCe.parentId);
 		currentOutput.writeByte(actualCe.parentType);
-		currentOutput.writeInt(depth > 1 ? extraOutputStream.size() : -1);
-		writeStringArray(actualCe.getPropertiesAndValue(), currentOutput);
+		currentOutput.writeInt(depth > 1 ? getPosition(extraOutputStream) : -1);
+		String[] propertiesAndValue = actualCe.getPropertiesAndValue();
+		int propertiesCount = propertiesAndValue == null ? 0 : propertiesAndValue.length;
+		currentOutput.writeInt(propertiesCount);
+		for (int i = 0; i < propertiesCount; i++)
+			writeString(propertiesAndValue[i], currentOutput);
 		//save the children
 		saveArray(filter(actualCe.getRawChildren()), currentOutput);
 
@@ -400,17 +523,31 @@ public class TableWriter {
 	}
 
 	private void saveExtensionPointData(ExtensionPointHandle xpt) throws IOException {
-		writeStringOrNull(xpt.getLabelAsIs(), extraOutput);
-		writeStringOrNull(xpt.getSchemaReference(), extraOutput);
-		writeStringOrNull(xpt.getUniqueIdentifier(), extraOutput);
-		writeStringOrNull(xpt.getNamespaceIdentifier(), extraOutput);
-		writeStringOrNull(((ExtensionPoint) xpt.getObject()).getContributorId(), extraOutput);
+		writeString(xpt.getLabelAsIs(), extraOutput);
+		writeString(xpt.getSchemaReference(), extraOutput);
+		writeString(xpt.getUniqueIdentifier(), extraOutput);
+		writeString(xpt.getNamespaceIdentifier(), extraOutput);
+		writeString(((ExtensionPoint) xpt.getObject()).getContributorId(), extraOutput);
 	}
 
 	private void saveExtensionData(ExtensionHandle extension) throws IOException {
-		writeStringOrNull(extension.getLabelAsIs(), extraOutput);
-		writeStringOrNull(extension.getExtensionPointUniqueIdentifier(), extraOutput);
-		writeStringOrNull(extension.getContributorId(), extraOutput);
+		writeString(extension.getLabelAsIs(), extraOutput);
+		writeString(extension.getExtensionPointUniqueIdentifier(), extraOutput);
+		writeString(extension.getContributorId(), extraOutput);
+	}
+
+	// Strings of the data files are written as their id in the string table
+	private void writeString(String string, DataOutputStream out) throws IOException {
+		out.writeInt(strings.add(string));
+	}
+
+	private void saveStrings() throws IOException {
+		FileOutputStream fosStrings = new FileOutputStream(stringsFile);
+		DataOutputStream outputStrings = new DataOutputStream(new BufferedOutputStream(fosStrings));
+		strings.save(outputStrings);
+		outputStrings.flush();
+		fosStrings.getFD().sync();
+		outputStrings.close();
 	}
 
 	private void writeStringOrNull(String string, DataOutputStream out) throws IOException {
@@ -450,6 +587,42 @@ public class TableWriter {
 		outputOrphan.close();
 	}
 
+	private void saveAttributeIndexes(AttributeIndex[] indexes) throws IOException {
+		// only keep the indexes of the extension points that are persisted, the elements of the other 
+		// extension points are indexed again if they are contributed again 
+		List filteredIndexes = new ArrayList(indexes.length);
+		for (int i = 0; i < indexes.length; i++) {
+			ExtensionPoint xpt = objectManager.getExtensionPointObject(indexes[i].getExtensionPoint());
+			if (xpt != null && xpt.shouldPersist())
+				filteredIndexes.add(indexes[i]);
+		}
+		FileOutputStream fosIndexes = new FileOutputStream(attributeIndexesFile);
+		DataOutputStream outputIndexes = new DataOutputStream(new BufferedOutputStream(fosIndexes));
+		outputIndexes.writeInt(filteredIndexes.size());
+		for (Iterator iter = filteredIndexes.iterator(); iter.hasNext();) {
+			AttributeIndex index = (AttributeIndex) iter.next();
+			outputIndexes.writeUTF(index.getExtensionPoint());
+			writeStringOrNull(index.getElementName(), outputIndexes);
+			outputIndexes.writeUTF(index.getAttributeName());
+			Map filteredValues = new HashMap();
+			for (Iterator values = index.getValues().entrySet().iterator(); values.hasNext();) {
+				Map.Entry entry = (Map.Entry) values.next();
+				int[] filteredValue = filter((int[]) entry.getValue());
+				if (filteredValue.length != 0)
+					filteredValues.put(entry.getKey(), filteredValue);
+			}
+			outputIndexes.writeInt(filteredValues.size());
+			for (Iterator values = filteredValues.entrySet().iterator(); values.hasNext();) {
+				Map.Entry entry = (Map.Entry) values.next();
+				outputIndexes.writeUTF((String) entry.getKey());
+				saveArray((int[]) entry.getValue(), outputIndexes);
+			}
+		}
+		outputIndexes.flush();
+		fosIndexes.getFD().sync();
+		outputIndexes.close();
+	}
+
 	private void log(Status status) {
 		registry.log(status);
 	}
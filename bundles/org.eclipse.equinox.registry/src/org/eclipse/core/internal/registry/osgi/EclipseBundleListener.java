@@ -13,8 +13,7 @@ package org.eclipse.core.internal.registry.osgi;
 import java.io.*;
 import java.net.URL;
 import java.util.*;
-import org.eclipse.core.internal.registry.ExtensionRegistry;
-import org.eclipse.core.internal.registry.RegistryMessages;
+import org.eclipse.core.internal.registry.*;
 import org.eclipse.core.internal.runtime.ResourceTranslator;
 import org.eclipse.core.internal.runtime.RuntimeLog;
 import org.eclipse.core.runtime.*;
@@ -85,6 +84,11 @@ public class EclipseBundleListener implements SynchronousBundleListener {
 	}
 
 	public void processBundles(Bundle[] bundles) {
+		int threads = getParseThreads();
+		if (threads > 1 && bundles.length > 1) {
+			processBundles(bundles, threads);
+			return;
+		}
 		for (int i = 0; i < bundles.length; i++) {
 			if (isBundleResolved(bundles[i]))
 				addBundle(bundles[i], false);
@@ -93,6 +97,89 @@ public class EclipseBundleListener implements SynchronousBundleListener {
 		}
 	}
 
+	/*
+	 * Parses the manifests of the resolved bundles on several threads, then adds all the
+	 * contributions to the registry at once. The contributions are added in the order of the 
+	 * bundles so the outcome is the same as adding the bundles one by one. A bundle which 
+	 * cannot be parsed on a parser thread is parsed again on the calling thread.
+	 */
+	private void processBundles(final Bundle[] bundles, int threads) {
+		for (int i = 0; i < bundles.length; i++) {
+			if (!isBundleResolved(bundles[i]))
+				removeBundle(bundles[i]);
+		}
+
+		final Contribution[] contributions = new Contribution[bundles.length];
+		final long[] timestamps = new long[bundles.length];
+		final int[] next = new int[] {0};
+		final boolean[] failed = new boolean[bundles.length];
+		Runnable parser = new Runnable() {
+			public void run() {
+				while (true) {
+					int index;
+					synchronized (next) {
+						if (next[0] == bundles.length)
+							return;
+						index = next[0]++;
+					}
+					try {
+						if (isBundleResolved(bundles[index]))
+							addBundle(bundles[index], contributions, timestamps, index);
+					} catch (RuntimeException e) {
+						String message = NLS.bind(RegistryMessages.parse_parallelFailed, bundles[index].getSymbolicName());
+						RuntimeLog.log(new Status(IStatus.ERROR, RegistryMessages.OWNER_NAME, 0, message, e));
+						failed[index] = true;
+					}
+				}
+			}
+		};
+		strategy.getXMLParser(); // open the parser tracker before it is used by several threads
+
+		Thread[] parsers = new Thread[Math.min(threads, bundles.length) - 1];
+		for (int i = 0; i < parsers.length; i++) {
+			parsers[i] = new Thread(parser, "Extension Registry Parser " + i); //$NON-NLS-1$
+			parsers[i].setDaemon(true);
+			parsers[i].start();
+		}
+		parser.run(); // the calling thread takes its share of the bundles
+		boolean interrupted = false;
+		for (int i = 0; i < parsers.length; i++) {
+			while (parsers[i].isAlive()) {
+				try {
+					parsers[i].join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		// the joins make the parser threads' results visible to this thread
+		for (int i = 0; i < bundles.length; i++) {
+			if (failed[i]) {
+				contributions[i] = null;
+				if (isBundleResolved(bundles[i]))
+					addBundle(bundles[i], contributions, timestamps, i);
+			}
+		}
+
+		registry.addContributions(contributions, timestamps, token);
+	}
+
+	private static int getParseThreads() {
+		String threads = RegistryProperties.getProperty(IRegistryConstants.PROP_PARSE_THREADS);
+		if (threads != null) {
+			try {
+				return Integer.parseInt(threads);
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		// parsing in parallel is opt-in
+		return 1;
+	}
+
 	private boolean isBundleResolved(Bundle bundle) {
 		return (bundle.getState() & (Bundle.RESOLVED | Bundle.ACTIVE | Bundle.STARTING | Bundle.STOPPING)) != 0;
 	}
@@ -155,6 +242,14 @@ public class EclipseBundleListener implements SynchronousBundleListener {
 	private void addBundle(Bundle bundle, boolean checkNLSFragments) {
 		if (checkNLSFragments)
 			checkForNLSFragment(bundle);
+		addBundle(bundle, null, null, 0);
+	}
+
+	/*
+	 * If contributions is null, the contribution of the bundle is added to the registry. Otherwise it is
+	 * only parsed, and the contribution and its timestamp are stored at the given index of the arrays.
+	 */
+	private void addBundle(Bundle bundle, Contribution[] contributions, long[] timestamps, int index) {
 		// if the given bundle already exists in the registry then return.
 		// note that this does not work for update cases.
 		IContributor contributor = ContributorFactoryOSGi.createContributor(bundle);
@@ -181,7 +276,12 @@ public class EclipseBundleListener implements SynchronousBundleListener {
 		long timestamp = 0;
 		if (strategy.checkContributionsTimestamp())
 			timestamp = strategy.getExtendedTimestamp(bundle, pluginManifest);
-		registry.addContribution(is, contributor, true, pluginManifest.getPath(), translationBundle, token, timestamp);
+		if (contributions == null) {
+			registry.addContribution(is, contributor, true, pluginManifest.getPath(), translationBundle, token, timestamp);
+			return;
+		}
+		contributions[index] = registry.parseContribution(is, contributor, true, pluginManifest.getPath(), translationBundle, token);
+		timestamps[index] = timestamp;
 	}
 
 	private void checkForNLSFragment(Bundle bundle) {
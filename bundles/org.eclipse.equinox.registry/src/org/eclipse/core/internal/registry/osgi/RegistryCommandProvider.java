@@ -12,6 +12,8 @@
 
 package org.eclipse.core.internal.registry.osgi;
 
+import org.eclipse.core.internal.registry.EventListenerQueue;
+import org.eclipse.core.internal.registry.ExtensionRegistry;
 import org.eclipse.core.runtime.*;
 import org.eclipse.osgi.framework.console.CommandInterpreter;
 import org.eclipse.osgi.framework.console.CommandProvider;
@@ -47,6 +49,10 @@ public class RegistryCommandProvider implements CommandProvider {
 			sb.append("\tpt [-v] uniqueExtensionPointId - display the extension point and extensions; add -v to display config elements"); //$NON-NLS-1$
 			sb.append(NEW_LINE);
 		}
+		if (all || "rlisteners".equals(commandName)) { //$NON-NLS-1$
+			sb.append("\trlisteners - display the registry listeners with their pending events and delivery latency"); //$NON-NLS-1$
+			sb.append(NEW_LINE);
+		}
 		return sb.toString();
 	}
 
@@ -100,6 +106,26 @@ public class RegistryCommandProvider implements CommandProvider {
 		}
 	}
 
+	public void _rlisteners(CommandInterpreter ci) throws Exception {
+		IExtensionRegistry registry = RegistryFactory.getRegistry();
+		if (!(registry instanceof ExtensionRegistry))
+			return;
+		EventListenerQueue[] queues = ((ExtensionRegistry) registry).getEventListenerQueues();
+		ci.println("Registry listener(s):"); //$NON-NLS-1$
+		ci.println("-------------------"); //$NON-NLS-1$
+		for (int i = 0; i < queues.length; i++) {
+			ci.print(queues[i].getListener().getClass().getName());
+			if (queues[i].getFilter() != null)
+				ci.print(" [filter " + queues[i].getFilter() + ']'); //$NON-NLS-1$
+			ci.println();
+			ci.print(indent + "pending: " + queues[i].getPendingEvents()); //$NON-NLS-1$
+			ci.print(" delivered: " + queues[i].getDeliveredEvents()); //$NON-NLS-1$
+			ci.print(" in " + queues[i].getDeliveries() + " calls"); //$NON-NLS-1$ //$NON-NLS-2$
+			ci.print(" failed: " + queues[i].getFailures()); //$NON-NLS-1$
+			ci.println(" latency avg/max: " + queues[i].getAverageLatency() + '/' + queues[i].getMaxLatency() + " ms"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
 	/**
 	 * Handles the help command
 	 * 
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime;
+
+/**
+ * A registry change listener which accepts several registry change events 
+ * combined in a single notification.
+ * <p>
+ * When the registry delivers events on its dispatcher threads (see the 
+ * <code>eclipse.registry.eventThreads</code> property) and the listener has 
+ * fallen behind, the events queued for the listener are passed to 
+ * {@link #registryChanged(IRegistryChangeEvent)} in one event. Its deltas are 
+ * the deltas of the combined events, in order; a delta for the same extension 
+ * may appear more than once. Other registry change listeners always receive 
+ * the events one at a time.
+ * </p><p>
+ * This interface can be used without OSGi running.
+ * </p><p>
+ * Clients may implement this interface.
+ * </p>
+ * 
+ * @since org.eclipse.equinox.registry 3.6
+ * @see IRegistryChangeListener
+ */
+public interface ICoalescingRegistryChangeListener extends IRegistryChangeListener {
+	// marker interface
+}
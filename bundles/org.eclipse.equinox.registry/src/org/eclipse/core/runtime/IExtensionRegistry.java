@@ -140,6 +140,30 @@ public interface IExtensionRegistry {
 	 */
 	public IConfigurationElement[] getConfigurationElementsFor(String namespace, String extensionPointName, String extensionId);
 
+	/**
+	 * Returns the configuration elements from all extensions configured into the
+	 * identified extension point which have the given name and whose attribute has
+	 * the given value. Only the top level configuration elements of the extensions
+	 * are considered. Returns an empty array if the extension point does not exist
+	 * or no configuration element matches.
+	 * <p>
+	 * The result is the same as filtering the configuration elements returned by
+	 * {@link #getConfigurationElementsFor(String)}, but the registry answers the query
+	 * from an index so the configuration elements which do not match do not need to
+	 * be read.
+	 * </p>
+	 *
+	 * @param extensionPointId the unique identifier of the extension point
+	 *		(e.g. <code>"org.eclipse.core.resources.builders"</code>)
+	 * @param elementName the name of the configuration elements
+	 * 		(e.g. <code>"builder"</code>), or <code>null</code> to match any name
+	 * @param attributeName the name of the attribute (e.g. <code>"id"</code>)
+	 * @param attributeValue the value of the attribute
+	 * @return the matching configuration elements
+	 * @since org.eclipse.equinox.registry 3.6
+	 */
+	public IConfigurationElement[] getConfigurationElementsFor(String extensionPointId, String elementName, String attributeName, String attributeValue);
+
 	/**
 	 * Returns the specified extension in this extension registry, 
 	 * or <code>null</code> if there is no such extension.
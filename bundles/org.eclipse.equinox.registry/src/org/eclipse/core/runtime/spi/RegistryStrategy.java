@@ -249,6 +249,13 @@ public class RegistryStrategy {
 	 * This method performs actual processing of the registry change event. It should 
 	 * only be used by overrides of the RegistryStrategy.scheduleChangeEvent. It will
 	 * return <code>null</code> if an unexpected registry type was encountered.
+	 * <p>
+	 * By default the listeners are notified on the calling thread and the status reports 
+	 * the listener failures. If the <code>eclipse.registry.eventThreads</code> property is 
+	 * set to a positive number, the event is instead handed to that many registry dispatcher 
+	 * threads, each listener receiving its events in order; the method then returns 
+	 * without waiting for the listeners and listener failures are only logged.
+	 * </p>
 	 * 
 	 * @param listeners the list of active listeners; may not be <code>null</code>
 	 * @param deltas the extension registry deltas; may not be <code>null</code>